@@ -20,6 +20,9 @@ START 1 CACHE 1 NO CYCLE;
 CREATE SEQUENCE IF NOT EXISTS seq_feed INCREMENT BY 1 MINVALUE 1
 START 1 CACHE 1 NO CYCLE;
 
+CREATE SEQUENCE IF NOT EXISTS seq_outbox INCREMENT BY 1 MINVALUE 1
+START 1 CACHE 1 NO CYCLE;
+
 -- Создание таблиц
 CREATE TABLE IF NOT EXISTS users
 (
@@ -57,6 +60,7 @@ CREATE TABLE IF NOT EXISTS films
   release_date DATE,
   duration integer,
   rating_id integer,
+  change_version bigint DEFAULT 0 NOT NULL,
   CONSTRAINT films_pk PRIMARY KEY(id),
   CONSTRAINT films_ratings_fk FOREIGN KEY (rating_id) REFERENCES ratings(id),
   CONSTRAINT films_duration_ck CHECK (duration > 0)
@@ -68,6 +72,8 @@ COMMENT ON COLUMN films.description IS 'Описание';
 COMMENT ON COLUMN films.release_date IS 'Дата релиза';
 COMMENT ON COLUMN films.duration IS 'Длительность';
 COMMENT ON COLUMN films.rating_id IS 'Ссылка на рейтинг';
+COMMENT ON COLUMN films.change_version IS 'Версия последнего изменения фильма, его жанров или режиссеров';
+CREATE INDEX IF NOT EXISTS films_change_version_idx ON films (change_version);
 
 CREATE TABLE IF NOT EXISTS users_films
 (
@@ -83,6 +89,24 @@ COMMENT ON COLUMN users_films.user_id IS 'Ссылка на идентифика
 COMMENT ON COLUMN users_films.film_id IS 'Ссылка на идентификатор фильма';
 COMMENT ON COLUMN users_films.mark IS 'Оценка пользователя';
 
+CREATE TABLE IF NOT EXISTS film_stats
+(
+  film_id integer NOT NULL,
+  likes_count integer NOT NULL DEFAULT 0,
+  mark_sum double precision NOT NULL DEFAULT 0,
+  mark_count integer NOT NULL DEFAULT 0,
+  rate double precision GENERATED ALWAYS AS (CASE WHEN mark_count > 0 THEN mark_sum / mark_count ELSE 0 END) STORED,
+  CONSTRAINT film_stats_pk PRIMARY KEY (film_id),
+  CONSTRAINT film_stats_films_fk FOREIGN KEY (film_id) REFERENCES films(id)
+);
+CREATE INDEX IF NOT EXISTS film_stats_rate_likes_idx ON film_stats (rate DESC, likes_count DESC, film_id);
+COMMENT ON TABLE film_stats IS 'Счётчики лайков и оценок фильмов';
+COMMENT ON COLUMN film_stats.film_id IS 'Ссылка на идентификатор фильма';
+COMMENT ON COLUMN film_stats.likes_count IS 'Количество лайков';
+COMMENT ON COLUMN film_stats.mark_sum IS 'Сумма оценок';
+COMMENT ON COLUMN film_stats.mark_count IS 'Количество оценок';
+COMMENT ON COLUMN film_stats.rate IS 'Средняя оценка';
+
 CREATE TABLE IF NOT EXISTS friends
 (
   user_id integer NOT NULL,
@@ -124,6 +148,7 @@ CREATE TABLE IF NOT EXISTS reviews (
   film_id integer NOT NULL,
   content text NOT NULL,
   is_positive boolean,
+  useful integer NOT NULL DEFAULT 0,
   CONSTRAINT reviews_pk PRIMARY KEY (id),
   CONSTRAINT users_reviews_user_id_fk FOREIGN KEY (user_id) REFERENCES users (id),
   CONSTRAINT films_reviews_film_id_fk FOREIGN KEY (film_id) REFERENCES films (id)
@@ -134,6 +159,23 @@ COMMENT ON COLUMN reviews.user_id IS 'Идентификатор пользов
 COMMENT ON COLUMN reviews.film_id IS 'Идентификатор фильма, на который оставляют отзыв';
 COMMENT ON COLUMN reviews.content IS 'Описание отзыва';
 COMMENT ON COLUMN reviews.is_positive IS 'Признак положительного отзыва';
+COMMENT ON COLUMN reviews.useful IS 'Рейтинг полезности отзыва: сумма оценок пользователей';
+CREATE INDEX IF NOT EXISTS reviews_film_id_useful_idx ON reviews (film_id, useful DESC, id);
+CREATE INDEX IF NOT EXISTS reviews_useful_idx ON reviews (useful DESC, id);
+
+CREATE TABLE IF NOT EXISTS film_review_summary (
+  film_id integer NOT NULL,
+  useful integer NOT NULL,
+  positive_count integer NOT NULL DEFAULT 0,
+  negative_count integer NOT NULL DEFAULT 0,
+  CONSTRAINT film_review_summary_pk PRIMARY KEY (film_id, useful),
+  CONSTRAINT film_review_summary_films_fk FOREIGN KEY (film_id) REFERENCES films (id)
+);
+COMMENT ON TABLE film_review_summary IS 'Количество отзывов к фильму по рейтингу полезности';
+COMMENT ON COLUMN film_review_summary.film_id IS 'Идентификатор фильма';
+COMMENT ON COLUMN film_review_summary.useful IS 'Рейтинг полезности отзыва';
+COMMENT ON COLUMN film_review_summary.positive_count IS 'Количество положительных отзывов с этим рейтингом';
+COMMENT ON COLUMN film_review_summary.negative_count IS 'Количество отрицательных отзывов с этим рейтингом';
 
 CREATE TABLE IF NOT EXISTS users_reviews (
   review_id integer NOT NULL,
@@ -159,11 +201,31 @@ CREATE TABLE IF NOT EXISTS films_directors (
   director_id integer NOT NULL,
   CONSTRAINT films_directors_pk PRIMARY KEY (film_id, director_id),
   CONSTRAINT films_directors_films_film_id_fk FOREIGN KEY (film_id) REFERENCES films (id),
-  CONSTRAINT films_directors_directors_director_id_fk FOREIGN KEY (director_id) REFERENCES directors (id)
+  CONSTRAINT films_directors_directors_director_id_fk FOREIGN KEY (director_id) REFERENCES directors(id)
 );
 COMMENT ON TABLE films_directors IS 'Связь фильмов и режиссеров';
 COMMENT ON COLUMN films_directors.film_id IS 'Идентификатор фильма';
 COMMENT ON COLUMN films_directors.director_id IS 'Идентификатор режиссера';
+CREATE INDEX IF NOT EXISTS films_directors_director_id_idx ON films_directors (director_id, film_id);
+
+CREATE TABLE IF NOT EXISTS director_stats
+(
+  director_id integer NOT NULL,
+  films_count integer NOT NULL DEFAULT 0,
+  likes_count integer NOT NULL DEFAULT 0,
+  mark_sum double precision NOT NULL DEFAULT 0,
+  mark_count integer NOT NULL DEFAULT 0,
+  rate double precision GENERATED ALWAYS AS (CASE WHEN mark_count > 0 THEN mark_sum / mark_count ELSE 0 END) STORED,
+  CONSTRAINT director_stats_pk PRIMARY KEY (director_id),
+  CONSTRAINT director_stats_directors_fk FOREIGN KEY (director_id) REFERENCES directors(id)
+);
+COMMENT ON TABLE director_stats IS 'Счётчики фильмов, лайков и оценок режиссеров';
+COMMENT ON COLUMN director_stats.director_id IS 'Идентификатор режиссера';
+COMMENT ON COLUMN director_stats.films_count IS 'Количество фильмов';
+COMMENT ON COLUMN director_stats.likes_count IS 'Количество лайков фильмов';
+COMMENT ON COLUMN director_stats.mark_sum IS 'Сумма оценок фильмов';
+COMMENT ON COLUMN director_stats.mark_count IS 'Количество оценок фильмов';
+COMMENT ON COLUMN director_stats.rate IS 'Средняя оценка фильмов';
 
 CREATE TABLE IF NOT EXISTS feed (
   event_id integer DEFAULT nextval('seq_feed') NOT NULL,
@@ -175,6 +237,7 @@ CREATE TABLE IF NOT EXISTS feed (
   CONSTRAINT feed_pk PRIMARY KEY (event_id),
   CONSTRAINT feed_users_user_id_fk FOREIGN KEY (user_id) REFERENCES users (id)
 );
+CREATE INDEX IF NOT EXISTS feed_event_type_time_idx ON feed (event_type, time_field);
 COMMENT ON TABLE feed IS 'Лента событий';
 COMMENT ON COLUMN feed.event_id IS 'Идентификатор записи';
 COMMENT ON COLUMN feed.entity_id IS 'Идентификатор обработанной сущности';
@@ -183,6 +246,70 @@ COMMENT ON COLUMN feed.time_field IS 'Метка времени';
 COMMENT ON COLUMN feed.event_type IS 'Тип события';
 COMMENT ON COLUMN feed.operation_type IS 'Тип операции';
 
+CREATE TABLE IF NOT EXISTS like_journal_offsets (
+  journal text NOT NULL,
+  last_segment bigint NOT NULL,
+  CONSTRAINT like_journal_offsets_pk PRIMARY KEY (journal)
+);
+COMMENT ON TABLE like_journal_offsets IS 'Сегменты журналов отложенной записи лайков, записанные в БД';
+COMMENT ON COLUMN like_journal_offsets.journal IS 'Имя журнала';
+COMMENT ON COLUMN like_journal_offsets.last_segment IS 'Номер последнего записанного сегмента';
+
+CREATE TABLE IF NOT EXISTS db_generation (
+  generation text NOT NULL
+);
+INSERT INTO db_generation (generation)
+SELECT gen_random_uuid()::text
+ WHERE NOT EXISTS (SELECT 1 FROM db_generation);
+COMMENT ON TABLE db_generation IS 'Поколение БД, создаётся вместе со схемой';
+COMMENT ON COLUMN db_generation.generation IS 'Случайный идентификатор поколения';
+
+CREATE TABLE IF NOT EXISTS outbox (
+  id bigint DEFAULT nextval('seq_outbox') NOT NULL,
+  entity_type text NOT NULL,
+  entity_key text NOT NULL,
+  operation_type text NOT NULL,
+  payload jsonb NULL,
+  created_at timestamp NOT NULL,
+  CONSTRAINT outbox_pk PRIMARY KEY (id)
+);
+CREATE INDEX IF NOT EXISTS outbox_entity_idx ON outbox (entity_type, entity_key, id);
+COMMENT ON TABLE outbox IS 'Журнал изменений сущностей для внешних потребителей';
+COMMENT ON COLUMN outbox.id IS 'Идентификатор записи, задает порядок изменений';
+COMMENT ON COLUMN outbox.entity_type IS 'Тип сущности';
+COMMENT ON COLUMN outbox.entity_key IS 'Ключ сущности';
+COMMENT ON COLUMN outbox.operation_type IS 'Тип операции';
+COMMENT ON COLUMN outbox.payload IS 'Состояние сущности после изменения в JSON';
+COMMENT ON COLUMN outbox.created_at IS 'Метка времени';
+
+CREATE TABLE IF NOT EXISTS outbox_offsets (
+  consumer text NOT NULL,
+  last_event_id bigint NOT NULL,
+  CONSTRAINT outbox_offsets_pk PRIMARY KEY (consumer)
+);
+COMMENT ON TABLE outbox_offsets IS 'Позиции потребителей журнала изменений';
+COMMENT ON COLUMN outbox_offsets.consumer IS 'Имя потребителя';
+COMMENT ON COLUMN outbox_offsets.last_event_id IS 'Идентификатор последнего обработанного изменения';
+
+CREATE TABLE IF NOT EXISTS film_tombstones (
+  film_id integer NOT NULL,
+  change_version bigint NOT NULL,
+  CONSTRAINT film_tombstones_pk PRIMARY KEY (film_id)
+);
+CREATE INDEX IF NOT EXISTS film_tombstones_change_version_idx ON film_tombstones (change_version);
+COMMENT ON TABLE film_tombstones IS 'Удаленные фильмы для синхронизации каталога';
+COMMENT ON COLUMN film_tombstones.film_id IS 'Идентификатор удаленного фильма';
+COMMENT ON COLUMN film_tombstones.change_version IS 'Версия изменения каталога, в которой фильм удален';
+
+CREATE TABLE IF NOT EXISTS film_change_version (
+  version bigint NOT NULL
+);
+INSERT INTO film_change_version (version)
+SELECT 0
+ WHERE NOT EXISTS (SELECT 1 FROM film_change_version);
+COMMENT ON TABLE film_change_version IS 'Последняя выданная версия изменения каталога фильмов';
+COMMENT ON COLUMN film_change_version.version IS 'Версия изменения';
+
 -- Заполнение справочников
 WITH prepared_data AS
   (SELECT 1 AS id,
@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Настройки параллельного выполнения независимых подзапросов в рамках одного запроса
+ *
+ * @param enabled признак параллельного выполнения; при значении {@code false} подзапросы выполняются последовательно
+ * @param threads количество потоков общего исполнителя подзапросов
+ * @param queueCapacity размер очереди исполнителя; при переполнении подзапрос выполняется в вызывающем потоке
+ */
+@ConfigurationProperties(prefix = "filmorate.fan-out")
+public record FanOutProperties(@DefaultValue("true") boolean enabled,
+                               @DefaultValue("16") int threads,
+                               @DefaultValue("256") int queueCapacity) {
+}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.config;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Настройки счётчиков лайков фильмов
+ *
+ * @param repairInterval интервал между сверками счётчиков с лайками; нулевое значение отключает сверку
+ * @param repairBatchSize максимальное количество фильмов, счётчики которых пересчитываются в одной транзакции
+ */
+@ConfigurationProperties(prefix = "filmorate.films.stats")
+public record FilmStatsProperties(@DefaultValue("1h") Duration repairInterval,
+                                  @DefaultValue("100") int repairBatchSize) {
+}
@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.config;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Настройки HTTP-кэширования ответов
+ *
+ * @param referenceMaxAge срок, в течение которого клиент может не перепроверять ответы справочников жанров, рейтингов
+ *                        и режиссеров; нулевое значение требует перепроверки каждого ответа
+ * @param referenceMaxEntries количество ответов справочников, хранимых на сервере; нулевое значение отключает кэш
+ */
+@ConfigurationProperties(prefix = "filmorate.http-cache")
+public record HttpCacheProperties(@DefaultValue("60s") Duration referenceMaxAge,
+                                  @DefaultValue("1000") int referenceMaxEntries) {
+}
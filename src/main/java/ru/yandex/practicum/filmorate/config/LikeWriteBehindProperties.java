@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.config;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Настройки отложенной записи лайков
+ *
+ * @param enabled признак отложенной записи: лайки подтверждаются после записи в журнал, а в БД попадают пакетами
+ * @param flushInterval интервал между записями накопленных изменений в БД
+ * @param journalDirectory каталог журнала неподтверждённых в БД изменений
+ * @param fsync признак принудительного сброса журнала на диск перед подтверждением каждого изменения; изменения,
+ *              принятые одновременно, сбрасываются одной операцией
+ */
+@ConfigurationProperties(prefix = "filmorate.likes.write-behind")
+public record LikeWriteBehindProperties(@DefaultValue("false") boolean enabled,
+                                        @DefaultValue("200ms") Duration flushInterval,
+                                        @DefaultValue("./.db/likes-journal") Path journalDirectory,
+                                        @DefaultValue("true") boolean fsync) {
+}
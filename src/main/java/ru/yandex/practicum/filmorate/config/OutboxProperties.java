@@ -0,0 +1,26 @@
+package ru.yandex.practicum.filmorate.config;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Настройки журнала изменений
+ *
+ * @param relayInterval интервал между передачами новых изменений потребителям
+ * @param batchSize максимальное количество изменений, передаваемых потребителю за один вызов
+ * @param gapTimeout время, после которого пропуск в идентификаторах изменений считается откаченной транзакцией, а не
+ * ещё не зафиксированной; должно превышать длительность самой долгой транзакции
+ * @param compactInterval интервал между сжатиями журнала
+ * @param logEnabled признак записи изменений в файл
+ * @param logFile файл, в конец которого дописываются изменения по одному JSON на строку
+ */
+@ConfigurationProperties(prefix = "filmorate.outbox")
+public record OutboxProperties(@DefaultValue("1s") Duration relayInterval,
+                               @DefaultValue("500") int batchSize,
+                               @DefaultValue("10s") Duration gapTimeout,
+                               @DefaultValue("10m") Duration compactInterval,
+                               @DefaultValue("false") boolean logEnabled,
+                               @DefaultValue("./.db/changes.log") Path logFile) {
+}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.config;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Настройки предрассчитанных списков популярных фильмов
+ *
+ * @param topSize количество фильмов в списке каждой ячейки; запросы большего количества обслуживаются БД
+ * @param refreshInterval интервал между полными пересчётами списков; нулевое значение отключает плановый пересчёт
+ */
+@ConfigurationProperties(prefix = "filmorate.films.popular")
+public record PopularFilmsProperties(@DefaultValue("100") int topSize,
+                                     @DefaultValue("10m") Duration refreshInterval) {
+}
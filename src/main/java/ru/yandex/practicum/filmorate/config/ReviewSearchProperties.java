@@ -0,0 +1,18 @@
+package ru.yandex.practicum.filmorate.config;
+
+import java.nio.file.Path;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Настройки полнотекстового поиска по отзывам
+ *
+ * @param indexFile файл, в который индекс сохраняется при остановке и из которого читается при следующем запуске
+ * @param k1 параметр BM25, ограничивающий вклад частоты термина в документе
+ * @param b параметр BM25, задающий степень нормализации по длине документа
+ */
+@ConfigurationProperties(prefix = "filmorate.reviews.search")
+public record ReviewSearchProperties(@DefaultValue("./.db/reviews-index.seg") Path indexFile,
+                                     @DefaultValue("1.2") double k1,
+                                     @DefaultValue("0.75") double b) {
+}
@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Настройки объединения одинаковых одновременных запросов на чтение
+ *
+ * @param enabled признак объединения; при значении {@code false} каждый запрос выполняется отдельно
+ */
+@ConfigurationProperties(prefix = "filmorate.single-flight")
+public record SingleFlightProperties(@DefaultValue("true") boolean enabled) {
+}
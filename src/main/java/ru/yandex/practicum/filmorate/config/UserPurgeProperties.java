@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Настройки удаления пользователей
+ *
+ * @param asyncThreshold количество связей пользователя, начиная с которого удаление выполняется в фоновой очереди;
+ * значение 0 отключает фоновое удаление
+ * @param batchSize максимальное количество строк, удаляемых из одной таблицы связей за один запрос при фоновом
+ * удалении
+ */
+@ConfigurationProperties(prefix = "filmorate.users.purge")
+public record UserPurgeProperties(@DefaultValue("0") long asyncThreshold,
+                                  @DefaultValue("1000") int batchSize) {
+}
@@ -0,0 +1,105 @@
+package ru.yandex.practicum.filmorate.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.stereotype.Component;
+
+/**
+ * Обнаружение закрепления виртуальных потоков за несущими потоками.
+ * <p>
+ * Подписывается на событие JFR {@code jdk.VirtualThreadPinned} и для каждого закрепления дольше
+ * {@link VirtualThreadProperties#pinnedThreshold()} увеличивает счётчик {@code filmorate.virtual.pinned} и таймер
+ * {@code filmorate.virtual.pinned.duration}. Источник закрепления определяется по стеку: драйвер H2, пул соединений
+ * Hikari или прочий код.
+ */
+@Slf4j
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadPinningMonitor {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final Map<String, String> SOURCES_BY_PACKAGE = Map.of(
+            "org.h2.", "h2",
+            "com.zaxxer.hikari.", "hikari");
+    private static final String OTHER_SOURCE = "other";
+
+    private final VirtualThreadProperties properties;
+    private final Map<String, Counter> counters;
+    private final Map<String, Timer> timers;
+    private RecordingStream recordingStream;
+
+    public VirtualThreadPinningMonitor(VirtualThreadProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+
+        List<String> sources = Stream.concat(SOURCES_BY_PACKAGE.values().stream(), Stream.of(OTHER_SOURCE)).toList();
+        this.counters = sources.stream().collect(Collectors.toMap(Function.identity(), source ->
+                Counter.builder("filmorate.virtual.pinned")
+                        .description("Количество закреплений виртуальных потоков за несущими потоками")
+                        .tag("source", source)
+                        .register(meterRegistry)));
+        this.timers = sources.stream().collect(Collectors.toMap(Function.identity(), source ->
+                Timer.builder("filmorate.virtual.pinned.duration")
+                        .description("Длительность закреплений виртуальных потоков за несущими потоками")
+                        .tag("source", source)
+                        .register(meterRegistry)));
+    }
+
+    @PostConstruct
+    void start() {
+        recordingStream = new RecordingStream();
+        recordingStream.enable(PINNED_EVENT).withThreshold(properties.pinnedThreshold()).withStackTrace();
+        recordingStream.onEvent(PINNED_EVENT, this::onPinned);
+        recordingStream.startAsync();
+        log.info("Отслеживание закреплений виртуальных потоков длительностью от {} запущено",
+                properties.pinnedThreshold());
+    }
+
+    @PreDestroy
+    void stop() {
+        if (recordingStream != null) {
+            recordingStream.close();
+        }
+    }
+
+    private void onPinned(RecordedEvent event) {
+        List<RecordedFrame> frames = event.getStackTrace() == null ? List.of() : event.getStackTrace().getFrames();
+
+        String source = OTHER_SOURCE;
+        String culprit = frames.isEmpty() ? "неизвестно" : describe(frames.getFirst());
+        search:
+        for (RecordedFrame frame : frames) {
+            String typeName = frame.getMethod().getType().getName();
+            for (Map.Entry<String, String> entry : SOURCES_BY_PACKAGE.entrySet()) {
+                if (typeName.startsWith(entry.getKey())) {
+                    source = entry.getValue();
+                    culprit = describe(frame);
+                    break search;
+                }
+            }
+        }
+
+        counters.get(source).increment();
+        timers.get(source).record(event.getDuration());
+        log.warn("Виртуальный поток {} закреплён за несущим на {} мс в {}",
+                event.getThread() == null ? "?" : event.getThread().getJavaName(),
+                event.getDuration().toMillis(), culprit);
+    }
+
+    private static String describe(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+    }
+}
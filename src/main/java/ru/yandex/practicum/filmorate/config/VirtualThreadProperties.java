@@ -0,0 +1,20 @@
+package ru.yandex.practicum.filmorate.config;
+
+import java.time.Duration;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+/**
+ * Настройки работы на виртуальных потоках. Применяются только при {@code spring.threads.virtual.enabled=true}
+ *
+ * @param jdbcOffload признак выполнения JDBC-вызовов вне транзакций на отдельных платформенных потоках, чтобы
+ * блокировки {@code synchronized} внутри драйвера не закрепляли виртуальный поток за несущим
+ * @param jdbcThreads количество платформенных потоков для JDBC-вызовов; задаётся независимо от числа запросов и
+ * обычно совпадает с размером пула соединений
+ * @param pinnedThreshold минимальная длительность закрепления виртуального потока, попадающая в метрики и журнал
+ */
+@ConfigurationProperties(prefix = "filmorate.virtual-threads")
+public record VirtualThreadProperties(@DefaultValue("true") boolean jdbcOffload,
+                                      @DefaultValue("10") int jdbcThreads,
+                                      @DefaultValue("20ms") Duration pinnedThreshold) {
+}
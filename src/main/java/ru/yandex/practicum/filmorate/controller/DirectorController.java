@@ -14,7 +14,9 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.dto.director.DirectorAudienceDto;
 import ru.yandex.practicum.filmorate.dto.director.DirectorDto;
+import ru.yandex.practicum.filmorate.dto.director.DirectorStatsDto;
 import ru.yandex.practicum.filmorate.dto.director.NewDirectorRequest;
 import ru.yandex.practicum.filmorate.dto.director.UpdateDirectorRequest;
 import ru.yandex.practicum.filmorate.service.DirectorService;
@@ -70,6 +72,42 @@ public class DirectorController {
         return new ResponseEntity<>(result, HttpStatus.OK);
     }
 
+    /**
+     * Обработка GET-запроса для /directors/{id}/stats
+     *
+     * @param directorId идентификатор режиссера
+     * @return экземпляр класса {@link DirectorStatsDto}
+     */
+    @GetMapping("/{id}/stats")
+    public ResponseEntity<DirectorStatsDto> findStats(@PathVariable(name = "id") Long directorId) {
+        log.info("Запрос счётчиков режиссера на уровне контроллера");
+        log.debug("Передан id режиссера: {}", directorId);
+
+        DirectorStatsDto result = directorService.findStats(directorId);
+        log.debug("На уровень контроллера вернулись счётчики режиссера с id {}", directorId);
+
+        log.info("Возврат счётчиков режиссера на уровень клиента");
+        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
+
+    /**
+     * Обработка GET-запроса для /directors/{id}/audience
+     *
+     * @param directorId идентификатор режиссера
+     * @return экземпляр класса {@link DirectorAudienceDto}
+     */
+    @GetMapping("/{id}/audience")
+    public ResponseEntity<DirectorAudienceDto> findAudience(@PathVariable(name = "id") Long directorId) {
+        log.info("Запрос аудитории режиссера на уровне контроллера");
+        log.debug("Передан id режиссера: {}", directorId);
+
+        DirectorAudienceDto result = directorService.findAudience(directorId);
+        log.debug("На уровень контроллера вернулась аудитория режиссера с id {}", directorId);
+
+        log.info("Возврат аудитории режиссера на уровень клиента");
+        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
+
     /**
      * Обработка POST-запроса для /directors
      *
@@ -1,8 +1,12 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.ValidationException;
 import java.util.Collection;
+import java.util.List;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -14,10 +18,17 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.ServletWebRequest;
+import ru.yandex.practicum.filmorate.dal.film.FilmFacetIndex;
+import ru.yandex.practicum.filmorate.dto.film.FilmBrowseDto;
+import ru.yandex.practicum.filmorate.dto.film.FilmChangesDto;
 import ru.yandex.practicum.filmorate.dto.film.FilmDto;
 import ru.yandex.practicum.filmorate.dto.film.NewFilmRequest;
+import ru.yandex.practicum.filmorate.dto.film.RatingHistogramDto;
 import ru.yandex.practicum.filmorate.dto.film.UpdateFilmRequest;
+import ru.yandex.practicum.filmorate.dto.review.ReviewSummaryDto;
 import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.ReviewService;
 
 /**
  * Контроллер для обработки HTTP-запросов для /films
@@ -29,6 +40,7 @@ import ru.yandex.practicum.filmorate.service.FilmService;
 public class FilmController {
 
     private final FilmService filmService;
+    private final ReviewService reviewService;
 
     /**
      * Обработка GET-запроса на /films
@@ -73,34 +85,96 @@ public class FilmController {
     }
 
     /**
-     * Обработка GET-запроса для /films/{id}
+     * Обработка GET-запроса для /films/{id}. Если фильм не изменился с версии из If-None-Match, возвращает
+     * 304 без обращения к БД
      *
      * @param id идентификатор фильма
+     * @param request запрос для проверки If-None-Match
      * @return экземпляр класса {@link FilmDto}
      */
     @GetMapping("/{id}")
-    public ResponseEntity<FilmDto> findById(@PathVariable Long id) {
+    public ResponseEntity<FilmDto> findById(@PathVariable Long id, HttpServletRequest request) {
         log.info("Поиск фильма по id на уровне контроллера");
         log.debug("Передан id: {}", id);
 
+        // ETag берётся до чтения: изменение во время чтения даст новый ETag при следующей проверке
+        String eTag = filmService.findETag(id);
+        // Запрос проверяется без ответа, чтобы ETag не попал в ответ с ошибкой
+        if (new ServletWebRequest(request).checkNotModified(eTag)) {
+            log.info("Фильм с id {} не изменился, возврат 304 на уровень клиента", id);
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(eTag)
+                    .cacheControl(CacheControl.noCache())
+                    .build();
+        }
+
         FilmDto film = filmService.findById(id);
         log.debug("На уровень контроллера успешно вернулся фильм с id {}", film.getId());
 
         log.info("Возврат результата на уровень клиента");
-        return new ResponseEntity<>(film, HttpStatus.OK);
+        return ResponseEntity.status(HttpStatus.OK)
+                .eTag(eTag)
+                .cacheControl(CacheControl.noCache())
+                .body(film);
     }
 
     /**
-     * Обработка GET-запроса для /films/common?userId={userId}&friendId={friendId}
+     * Обработка GET-запроса для /films/{id}/reviews/summary
+     *
+     * @param id идентификатор фильма
+     * @return экземпляр класса {@link ReviewSummaryDto}
+     */
+    @GetMapping("/{id}/reviews/summary")
+    public ResponseEntity<ReviewSummaryDto> findReviewSummary(@PathVariable Long id) {
+        log.info("Запрос сводки отзывов к фильму на уровне контроллера");
+        log.debug("Передан id фильма: {}", id);
+
+        ReviewSummaryDto result = reviewService.findSummary(id);
+        log.debug("На уровень контроллера вернулась сводка отзывов к фильму с id {}", result.getFilmId());
+
+        log.info("Возврат сводки отзывов на уровень клиента");
+        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
+
+    /**
+     * Обработка GET-запроса для /films/{id}/ratings/histogram
+     *
+     * @param id идентификатор фильма
+     * @return экземпляр класса {@link RatingHistogramDto}
+     */
+    @GetMapping("/{id}/ratings/histogram")
+    public ResponseEntity<RatingHistogramDto> findRatingHistogram(@PathVariable Long id) {
+        log.info("Запрос гистограммы оценок фильма на уровне контроллера");
+        log.debug("Передан id фильма: {}", id);
+
+        RatingHistogramDto result = filmService.findRatingHistogram(id);
+        log.debug("На уровень контроллера вернулась гистограмма оценок фильма с id {}", result.getFilmId());
+
+        log.info("Возврат гистограммы оценок на уровень клиента");
+        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
+
+    /**
+     * Обработка GET-запроса для /films/common?userId={userId}&friendId={friendId} и
+     * /films/common?userIds={userId1},{userId2},...
      *
      * @return коллекция {@link FilmDto}
      */
     @GetMapping("/common")
-    public ResponseEntity<Collection<FilmDto>> findCommon(@RequestParam(name = "userId") Long userId,
-                                                          @RequestParam(name = "friendId") Long friendId) {
+    public ResponseEntity<Collection<FilmDto>> findCommon(
+            @RequestParam(name = "userId", required = false) Long userId,
+            @RequestParam(name = "friendId", required = false) Long friendId,
+            @RequestParam(name = "userIds", required = false) List<Long> userIds) {
         log.info("Поиск общих фильмов на уровне контроллера");
 
-        Collection<FilmDto> result = filmService.findCommon(userId, friendId);
+        if (userIds == null) {
+            if (userId == null || friendId == null) {
+                throw new ValidationException("Необходимо передать userIds либо пару userId и friendId");
+            }
+            userIds = List.of(userId, friendId);
+        }
+
+        Collection<FilmDto> result = filmService.findCommon(userIds);
         log.debug("На уровень контроллера вернулась коллекция общих фильмов размером {}", result.size());
 
         log.debug("Возвращение коллекции общих фильмов на уровень клиента");
@@ -129,6 +203,73 @@ public class FilmController {
         return new ResponseEntity<>(result, HttpStatus.OK);
     }
 
+    /**
+     * Обработка GET-запроса для /films/trending?window=[1h,24h,7d]&count={count}
+     *
+     * @return коллекция {@link FilmDto}
+     */
+    @GetMapping("/trending")
+    public ResponseEntity<Collection<FilmDto>> findTrending(
+            @RequestParam(name = "window", defaultValue = "24h") String window,
+            @RequestParam(name = "count", defaultValue = "10") Integer count) {
+        log.info("Поиск популярных в моменте фильмов на уровне контроллера");
+        log.debug("Передано окно {} и значение count = {}", window, count);
+
+        Collection<FilmDto> result = filmService.findTrending(window, count);
+        log.debug("На уровень контроллера вернулась коллекция популярных в моменте фильмов размером {}",
+                result.size());
+
+        log.info("Возвращение популярных в моменте фильмов на уровень клиента");
+        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
+
+    /**
+     * Обработка GET-запроса для /films/changes?sinceVersion={sinceVersion}&limit={limit}
+     *
+     * @return экземпляр класса {@link FilmChangesDto}
+     */
+    @GetMapping("/changes")
+    public ResponseEntity<FilmChangesDto> findChanges(
+            @RequestParam(name = "sinceVersion", defaultValue = "0") Long sinceVersion,
+            @RequestParam(name = "limit", defaultValue = "100") Integer limit) {
+        log.info("Поиск изменений каталога на уровне контроллера");
+        log.debug("Передана версия {} и значение limit = {}", sinceVersion, limit);
+
+        FilmChangesDto result = filmService.findChanges(sinceVersion, limit);
+        log.debug("На уровень контроллера вернулось {} изменений каталога", result.getChanges().size());
+
+        log.info("Возврат изменений каталога на уровень клиента");
+        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
+
+    /**
+     * Обработка GET-запроса для /films/browse?genreId={genreId}&mpaId={mpaId}&yearFrom={yearFrom}&yearTo={yearTo}
+     * &directorId={directorId}&sort=[id,year,rate]
+     *
+     * @return экземпляр класса {@link FilmBrowseDto}
+     */
+    @GetMapping("/browse")
+    public ResponseEntity<FilmBrowseDto> browse(
+            @RequestParam(name = "genreId", required = false) Long genreId,
+            @RequestParam(name = "mpaId", required = false) Long mpaId,
+            @RequestParam(name = "yearFrom", required = false) Integer yearFrom,
+            @RequestParam(name = "yearTo", required = false) Integer yearTo,
+            @RequestParam(name = "directorId", required = false) Long directorId,
+            @RequestParam(name = "sort", defaultValue = "id") String sort,
+            @RequestParam(name = "size", defaultValue = "100") Integer size,
+            @RequestParam(name = "from", defaultValue = "0") Integer from) {
+        log.info("Отбор фильмов по измерениям на уровне контроллера");
+        FilmFacetIndex.Filter filter = new FilmFacetIndex.Filter(genreId, mpaId, yearFrom, yearTo, directorId);
+        log.debug("Передан фильтр: {}", filter);
+        log.debug("Передан порядок сортировки: {}", sort);
+
+        FilmBrowseDto result = filmService.browse(filter, sort, size, from);
+        log.debug("На уровень контроллера вернулась страница из {} фильмов", result.getFilms().size());
+
+        log.info("Возврат отобранных фильмов на уровень клиента");
+        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
+
     /**
      * Обработка GET-запроса для /films/search?query=подстрока&by=director,title
      *
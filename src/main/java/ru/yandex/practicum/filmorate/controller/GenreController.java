@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.controller;
 
 import java.util.Collection;
+import java.util.List;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
@@ -15,6 +16,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import ru.yandex.practicum.filmorate.service.GenreService;
+import ru.yandex.practicum.filmorate.dto.genre.GenreAudienceDto;
 import ru.yandex.practicum.filmorate.dto.genre.NewGenreRequest;
 import ru.yandex.practicum.filmorate.dto.genre.GenreDto;
 import ru.yandex.practicum.filmorate.dto.genre.UpdateGenreRequest;
@@ -48,6 +50,42 @@ public class GenreController {
         return new ResponseEntity<>(result, HttpStatus.OK);
     }
 
+    /**
+     * Обработка GET-запроса к /genres/audience?ids={genreId1},{genreId2},...
+     *
+     * @param genreIds идентификаторы жанров
+     * @return экземпляр класса {@link GenreAudienceDto} с аудиторией объединения жанров
+     */
+    @GetMapping("/audience")
+    public ResponseEntity<GenreAudienceDto> findUnionAudience(@RequestParam(name = "ids") List<Long> genreIds) {
+        log.info("Запрос аудитории жанров на уровне контроллера");
+        log.debug("Переданы id жанров: {}", genreIds);
+
+        GenreAudienceDto result = genreService.findAudience(genreIds);
+        log.debug("На уровень контроллера вернулась аудитория жанров {}", result.getGenreIds());
+
+        log.info("Возврат аудитории жанров на уровень клиента");
+        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
+
+    /**
+     * Обработка GET-запроса к /genres/{id}/audience
+     *
+     * @param genreId идентификатор жанра
+     * @return экземпляр класса {@link GenreAudienceDto}
+     */
+    @GetMapping("/{id}/audience")
+    public ResponseEntity<GenreAudienceDto> findAudience(@PathVariable(name = "id") Long genreId) {
+        log.info("Запрос аудитории жанра на уровне контроллера");
+        log.debug("Передан id жанра: {}", genreId);
+
+        GenreAudienceDto result = genreService.findAudience(List.of(genreId));
+        log.debug("На уровень контроллера вернулась аудитория жанра с id {}", genreId);
+
+        log.info("Возврат аудитории жанра на уровень клиента");
+        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
+
     /**
      * Обработка GET-запроса к /genres/{id}
      *
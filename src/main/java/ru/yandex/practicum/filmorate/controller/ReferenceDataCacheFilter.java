@@ -0,0 +1,115 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+import ru.yandex.practicum.filmorate.config.HttpCacheProperties;
+import ru.yandex.practicum.filmorate.dal.EntityVersions;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+
+/**
+ * Кэширование ответов справочников жанров, рейтингов и режиссеров.
+ * <p>
+ * Ответы GET-запросов к /genres, /mpa, /directors и к их элементам по id получают ETag с общей версией справочника
+ * из {@link EntityVersions}. Запрос с совпадающим If-None-Match получает 304, а ответ, уже сформированный для той же
+ * версии и той же строки запроса, отдаётся из памяти без обращения к контроллеру. Любое изменение справочника меняет
+ * версию, и сохранённые ответы перестают совпадать. При заполнении кэша он очищается целиком.
+ */
+@Slf4j
+@Component
+public class ReferenceDataCacheFilter extends OncePerRequestFilter {
+
+    private static final Pattern REFERENCE_PATH = Pattern.compile("^/(genres|mpa|directors)(/\\d+)?$");
+    private static final Map<String, Class<?>> TYPES_BY_PATH = Map.of(
+            "genres", Genre.class,
+            "mpa", Mpa.class,
+            "directors", Director.class);
+
+    private final EntityVersions entityVersions;
+    private final int maxEntries;
+    private final String cacheControl;
+    private final Map<String, CachedResponse> responses = new ConcurrentHashMap<>();
+
+    public ReferenceDataCacheFilter(EntityVersions entityVersions, HttpCacheProperties properties) {
+        this.entityVersions = entityVersions;
+        this.maxEntries = properties.referenceMaxEntries();
+        // Заголовок одинаков для всех ответов, поэтому собирается один раз
+        this.cacheControl = CacheControl.maxAge(properties.referenceMaxAge()).cachePublic().getHeaderValue();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !HttpMethod.GET.matches(request.getMethod()) || findType(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        // Версия берётся до чтения: запись во время чтения сменит версию, и ответ не будет отдан повторно
+        String eTag = entityVersions.eTag(findType(request));
+        // Запрос проверяется без ответа, чтобы ETag не попал в ответ с ошибкой
+        if (new ServletWebRequest(request).checkNotModified(eTag)) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            response.setHeader(HttpHeaders.ETAG, eTag);
+            response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+            log.debug("Справочник по запросу {} не изменился, возврат 304", request.getRequestURI());
+            return;
+        }
+
+        String key = request.getQueryString() == null
+                ? request.getRequestURI()
+                : request.getRequestURI() + "?" + request.getQueryString();
+        CachedResponse cached = responses.get(key);
+        if (cached != null && cached.eTag().equals(eTag)) {
+            log.debug("Ответ на запрос {} взят из кэша", key);
+            response.setStatus(HttpStatus.OK.value());
+            response.setContentType(cached.contentType());
+            response.setHeader(HttpHeaders.ETAG, eTag);
+            response.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+            response.setContentLength(cached.body().length);
+            response.getOutputStream().write(cached.body());
+            return;
+        }
+
+        ContentCachingResponseWrapper responseWrapper = new ContentCachingResponseWrapper(response);
+        filterChain.doFilter(request, responseWrapper);
+        if (responseWrapper.getStatus() == HttpStatus.OK.value()) {
+            responseWrapper.setHeader(HttpHeaders.ETAG, eTag);
+            responseWrapper.setHeader(HttpHeaders.CACHE_CONTROL, cacheControl);
+            if (maxEntries > 0) {
+                if (responses.size() >= maxEntries) {
+                    log.debug("Кэш ответов справочников заполнен и очищен");
+                    responses.clear();
+                }
+                responses.put(key, new CachedResponse(eTag, responseWrapper.getContentType(),
+                        responseWrapper.getContentAsByteArray()));
+            }
+        }
+        responseWrapper.copyBodyToResponse();
+    }
+
+    private static Class<?> findType(HttpServletRequest request) {
+        Matcher matcher = REFERENCE_PATH.matcher(request.getRequestURI());
+        return matcher.matches() ? TYPES_BY_PATH.get(matcher.group(1)) : null;
+    }
+
+    private record CachedResponse(String eTag, String contentType, byte[] body) {
+    }
+}
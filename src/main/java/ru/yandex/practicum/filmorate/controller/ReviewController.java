@@ -3,6 +3,7 @@ package ru.yandex.practicum.filmorate.controller;
 import java.util.Collection;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -15,6 +16,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import ru.yandex.practicum.filmorate.dto.review.NewReviewRequest;
+import ru.yandex.practicum.filmorate.dto.review.ReviewCursor;
 import ru.yandex.practicum.filmorate.dto.review.ReviewDto;
 import ru.yandex.practicum.filmorate.dto.review.UpdateReviewRequest;
 import ru.yandex.practicum.filmorate.service.ReviewService;
@@ -28,6 +30,11 @@ import ru.yandex.practicum.filmorate.service.ReviewService;
 @RestController
 public class ReviewController {
 
+    /**
+     * Заголовок ответа с курсором следующей страницы отзывов
+     */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final ReviewService reviewService;
 
     /**
@@ -49,28 +56,58 @@ public class ReviewController {
     }
 
     /**
-     * Обработка GET-запроса для /reviews?count={count}&filmId={filmId}
+     * Обработка GET-запроса для /reviews?count={count}&filmId={filmId}&cursor={cursor}. Если страница заполнена
+     * полностью, курсор следующей страницы возвращается в заголовке {@value #NEXT_CURSOR_HEADER}
      *
      * @param count максимальное количество отзывов в коллекции
      * @param filmId идентификатор фильма
+     * @param cursor курсор предыдущей страницы
      * @return коллекция {@link ReviewDto}
      */
     @GetMapping
-    public ResponseEntity<Collection<ReviewDto>> findByFilmId(@RequestParam(name = "filmId", required = false) Long filmId,
-                                                              @RequestParam(name = "count", defaultValue = "10") Integer count) {
+    public ResponseEntity<Collection<ReviewDto>> findByFilmId(
+            @RequestParam(name = "filmId", required = false) Long filmId,
+            @RequestParam(name = "count", defaultValue = "10") Integer count,
+            @RequestParam(name = "cursor", required = false) String cursor) {
         log.info("Поиск отзывов по идентификатору фильма на уровне контроллера");
         log.debug("Передан максимальный размер коллекции: {}", count == null ? "null" : count);
         log.debug("Передан id фильма: {}", filmId == null ? "null" : filmId);
+        log.debug("Передан курсор: {}", cursor == null ? "null" : cursor);
 
-        Collection<ReviewDto> result;
-        if (filmId != null) {
-            result = reviewService.findByFilmId(filmId, count);
-        } else {
-            result = reviewService.findAll(count, 0);
-        }
+        Collection<ReviewDto> result = reviewService.findPage(filmId, count, cursor);
         log.debug("На уровень контроллера вернулась коллекция отзывов размером {}", result.size());
 
+        HttpHeaders headers = new HttpHeaders();
+        if (!result.isEmpty() && result.size() == count) {
+            ReviewDto last = result.stream().reduce((first, second) -> second).orElseThrow();
+            headers.set(NEXT_CURSOR_HEADER, ReviewCursor.after(last).toString());
+        }
+
         log.debug("Возврат результатов поиска отзывов по идентификатору фильма на уровень клиента");
+        return new ResponseEntity<>(result, headers, HttpStatus.OK);
+    }
+
+    /**
+     * Обработка GET-запроса для /reviews/search?q={query}&filmId={filmId}&count={count}
+     *
+     * @param query текст запроса
+     * @param filmId идентификатор фильма
+     * @param count максимальное количество отзывов в коллекции
+     * @return коллекция {@link ReviewDto} в порядке убывания релевантности
+     */
+    @GetMapping("/search")
+    public ResponseEntity<Collection<ReviewDto>> search(
+            @RequestParam(name = "q") String query,
+            @RequestParam(name = "filmId", required = false) Long filmId,
+            @RequestParam(name = "count", defaultValue = "10") Integer count) {
+        log.info("Полнотекстовый поиск отзывов на уровне контроллера");
+        log.debug("Передан запрос: {}", query);
+        log.debug("Передан id фильма: {}", filmId == null ? "null" : filmId);
+
+        Collection<ReviewDto> result = reviewService.search(query, filmId, count);
+        log.debug("На уровень контроллера вернулась коллекция найденных отзывов размером {}", result.size());
+
+        log.info("Возврат результатов поиска отзывов на уровень клиента");
         return new ResponseEntity<>(result, HttpStatus.OK);
     }
 
@@ -70,6 +70,31 @@ public class UserController {
         return new ResponseEntity<>(result, HttpStatus.OK);
     }
 
+    /**
+     * Обработка GET-запроса для /users/{id}/friends/suggestions?count={count}&byFilms={byFilms}
+     *
+     * @param id идентификатор пользователя
+     * @param count максимальный размер коллекции
+     * @param byFilms признак учёта общих лайков при ранжировании
+     * @return коллекция рекомендуемых друзей
+     */
+    @GetMapping("/{id}/friends/suggestions")
+    public ResponseEntity<Collection<UserDto>> findFriendSuggestions(
+            @PathVariable Long id,
+            @RequestParam(name = "count", defaultValue = "10") Integer count,
+            @RequestParam(name = "byFilms", defaultValue = "false") Boolean byFilms) {
+        log.info("Поиск рекомендаций друзей на уровне контроллера");
+        log.debug("Передан id пользователя: {}", id);
+        log.debug("Передан размер коллекции рекомендаций: {}", count);
+        log.debug("Передан признак учёта общих лайков: {}", byFilms);
+
+        Collection<UserDto> result = userService.findFriendSuggestions(id, count, byFilms);
+        log.debug("На уровень контроллера вернулась коллекция рекомендаций друзей размером {}", result.size());
+
+        log.info("Возврат рекомендаций друзей на уровень клиента");
+        return new ResponseEntity<>(result, HttpStatus.OK);
+    }
+
     /**
      * Обработка GET-запроса для /users/{id}/common/{otherId}
      *
@@ -215,7 +240,7 @@ public class UserController {
     }
 
     /**
-     * Обработка DELETE-запрос для /users/{id}
+     * Обработка DELETE-запрос для /users/{id}. Если удаление выполняется в фоне, возвращает 202
      *
      * @param id идентификатор пользователя
      */
@@ -224,10 +249,11 @@ public class UserController {
         log.info("Запрошено удаление пользователя на уровне контроллера");
         log.info("Передан id удаляемого пользователя: {}", id);
 
-        userService.deleteUser(id);
+        boolean isDeleted = userService.deleteUser(id);
 
         log.info("Возврат результата удаления пользователя на уровень клиента");
-        return new ResponseEntity<>(HttpStatus.OK);
+        // Удаление крупного аккаунта только принято: оно завершится в фоне
+        return new ResponseEntity<>(isDeleted ? HttpStatus.OK : HttpStatus.ACCEPTED);
     }
 
     /**
@@ -2,11 +2,17 @@ package ru.yandex.practicum.filmorate.dal;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
@@ -19,13 +25,59 @@ public class BaseDbStorage<T> {
 
     protected final NamedParameterJdbcTemplate jdbcTemplate;
     protected final RowMapper<T> mapper;
+    private JdbcOffloadExecutor jdbcExecutor;
+
+    @Autowired(required = false)
+    public void setJdbcExecutor(JdbcOffloadExecutor jdbcExecutor) {
+        this.jdbcExecutor = jdbcExecutor;
+    }
+
+    /**
+     * Метод выполняет JDBC-вызов. В режиме виртуальных потоков вызов вне транзакции переносится на платформенный
+     * поток {@link JdbcOffloadExecutor}
+     *
+     * @param call JDBC-вызов
+     * @return результат вызова
+     */
+    protected <R> R execute(Supplier<R> call) {
+        return jdbcExecutor == null ? call.get() : jdbcExecutor.call(call);
+    }
+
+    /**
+     * Метод выполняет JDBC-вызов без результата по правилам {@link #execute(Supplier)}
+     *
+     * @param call JDBC-вызов
+     */
+    protected void run(Runnable call) {
+        execute(() -> {
+            call.run();
+            return null;
+        });
+    }
+
+    /**
+     * Метод выполняет JDBC-вызов записи по правилам {@link #execute(Supplier)}. Нарушения ограничений БД
+     * преобразуются в {@link ru.yandex.practicum.filmorate.exception.NotFoundException} или
+     * {@link jakarta.validation.ValidationException} по имени ограничения, см. {@link ConstraintViolations}
+     *
+     * @param call JDBC-вызов
+     * @param params параметры запроса для текста исключения
+     * @return результат вызова
+     */
+    protected <R> R executeWrite(Supplier<R> call, MapSqlParameterSource params) {
+        try {
+            return execute(call);
+        } catch (DataIntegrityViolationException e) {
+            throw ConstraintViolations.translate(e, params).orElse(e);
+        }
+    }
 
     protected long insert(String query, MapSqlParameterSource params) {
         log.debug("Начало операции вставки данных с именованными параметрами");
 
         GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
 
-        jdbcTemplate.update(query, params, keyHolder);
+        executeWrite(() -> jdbcTemplate.update(query, params, keyHolder), params);
 
         Number id = keyHolder.getKey();
 
@@ -39,7 +91,7 @@ public class BaseDbStorage<T> {
         long insertedRecords;
 
         try {
-            insertedRecords = jdbcTemplate.update(query, params);
+            insertedRecords = executeWrite(() -> jdbcTemplate.update(query, params), params);
         } catch (DataAccessException ignored) {
             insertedRecords = 0;
         }
@@ -50,18 +102,45 @@ public class BaseDbStorage<T> {
 
     protected Collection<T> findMany(String query, MapSqlParameterSource params) {
         log.debug("Начало вызова поиска коллекции с именованными переменными");
-        Collection<T> result = jdbcTemplate.query(query, params, mapper);
+        Collection<T> result = execute(() -> jdbcTemplate.query(query, params, mapper));
 
         log.debug("Операция поиска коллекции с именованными параметрами завершена");
         return result;
     }
 
+    /**
+     * Метод возвращает результат запроса, разложенный по значению ключевой колонки, например по идентификатору
+     * фильма. Порядок строк внутри каждой группы совпадает с порядком строк в результате запроса
+     *
+     * @param query текст запроса
+     * @param params параметры запроса
+     * @param keyColumn имя ключевой колонки
+     * @return экземпляры по значениям ключевой колонки
+     */
+    protected Map<Long, List<T>> findGrouped(String query, MapSqlParameterSource params, String keyColumn) {
+        log.debug("Начало вызова поиска коллекций по ключу {} с именованными параметрами", keyColumn);
+
+        Map<Long, List<T>> result = execute(() -> jdbcTemplate.query(query, params,
+                (ResultSetExtractor<Map<Long, List<T>>>) rs -> {
+                    Map<Long, List<T>> groups = new HashMap<>();
+                    int rowNum = 0;
+                    while (rs.next()) {
+                        groups.computeIfAbsent(rs.getLong(keyColumn), key -> new ArrayList<>())
+                                .add(mapper.mapRow(rs, rowNum++));
+                    }
+                    return groups;
+                }));
+
+        log.debug("Операция поиска коллекций по ключу с именованными параметрами завершена");
+        return result;
+    }
+
     protected Optional<T> findOne(String query, MapSqlParameterSource params) {
         log.debug("Начало вызова поиск экземпляра с именованными переменными");
 
         T result;
         try {
-            result = jdbcTemplate.queryForObject(query, params, mapper);
+            result = execute(() -> jdbcTemplate.queryForObject(query, params, mapper));
         } catch (DataAccessException ignored) {
             result = null;
         }
@@ -74,18 +153,27 @@ public class BaseDbStorage<T> {
         }
     }
 
+    protected Collection<Long> findIds(String query, MapSqlParameterSource params) {
+        log.debug("Начало вызова поиска идентификаторов с именованными параметрами");
+
+        Collection<Long> result = execute(() -> jdbcTemplate.query(query, params, (rs, rowNum) -> rs.getLong("id")));
+
+        log.debug("Операция поиска идентификаторов с именованными параметрами завершена");
+        return result;
+    }
+
     protected boolean exists(String query, MapSqlParameterSource params) {
         log.debug("Начало операции проверки сущностей с именованными параметрами");
 
         Collection<Long> resultSet;
         try {
-            resultSet = jdbcTemplate.query(query, params, (ResultSetExtractor<Collection<Long>>) rs -> {
+            resultSet = execute(() -> jdbcTemplate.query(query, params, (ResultSetExtractor<Collection<Long>>) rs -> {
                 List<Long> result = new ArrayList<>();
                 while (rs.next()) {
                     result.add(rs.getLong("id"));
                 }
                 return result;
-            });
+            }));
         } catch (DataAccessException ignored) {
             resultSet = new ArrayList<>();
         }
@@ -97,16 +185,52 @@ public class BaseDbStorage<T> {
     protected long update(String query, MapSqlParameterSource params) {
         log.debug("Начало операции изменения с именованными параметрами");
 
-        long result = jdbcTemplate.update(query, params);
+        long result = executeWrite(() -> jdbcTemplate.update(query, params), params);
 
         log.debug("Операция изменения с именованными параметрами завершена");
         return result;
     }
 
+    /**
+     * Метод выполняет запрос слияния и сообщает, изменил ли он хотя бы одну строку. Если параллельная операция успела
+     * вставить ту же строку, слияние повторяется один раз и уже находит её
+     *
+     * @param query текст запроса слияния
+     * @param params параметры запроса
+     * @return {@code true}, если строка была вставлена или изменена
+     */
+    protected boolean upsert(String query, MapSqlParameterSource params) {
+        log.debug("Начало операции слияния с именованными параметрами");
+
+        long result;
+        try {
+            result = executeWrite(() -> jdbcTemplate.update(query, params), params);
+        } catch (DuplicateKeyException e) {
+            log.debug("Строка вставлена параллельной операцией, слияние будет повторено");
+            result = executeWrite(() -> jdbcTemplate.update(query, params), params);
+        }
+
+        log.debug("Операция слияния с именованными параметрами завершена");
+        return result > 0;
+    }
+
+    protected long batchUpdate(String query, MapSqlParameterSource[] batchParams) {
+        log.debug("Начало пакетной операции изменения с именованными параметрами");
+
+        long result = 0;
+        MapSqlParameterSource params = batchParams.length == 1 ? batchParams[0] : null;
+        for (int rows : executeWrite(() -> jdbcTemplate.batchUpdate(query, batchParams), params)) {
+            result += Math.max(rows, 0);
+        }
+
+        log.debug("Пакетная операция изменения с именованными параметрами завершена");
+        return result;
+    }
+
     protected long deleteOne(String query, MapSqlParameterSource params) {
         log.debug("Начало операции удаления с именованными параметрами");
 
-        long result = jdbcTemplate.update(query, params);
+        long result = execute(() -> jdbcTemplate.update(query, params));
 
         log.debug("Операция удаления с именованными параметрами завершена");
         return result;
@@ -115,7 +239,7 @@ public class BaseDbStorage<T> {
     protected long deleteMany(String query, MapSqlParameterSource params) {
         log.debug("Начало операции массового удаления с именованными параметрами");
 
-        long result = jdbcTemplate.update(query, params);
+        long result = execute(() -> jdbcTemplate.update(query, params));
 
         log.debug("Операция массового удаления с именованными параметрами завершена");
         return result;
@@ -0,0 +1,92 @@
+package ru.yandex.practicum.filmorate.dal;
+
+import jakarta.validation.ValidationException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+
+/**
+ * Преобразование нарушений ограничений БД в исключения прикладного уровня.
+ * <p>
+ * Операции записи не проверяют заранее существование связанных сущностей и уникальность полей, а полагаются на
+ * внешние ключи и уникальные ограничения схемы. Нарушенное ограничение определяется по имени в тексте ошибки драйвера:
+ * для внешнего ключа это имя ограничения, для уникального ограничения - имя его индекса с суффиксом
+ * {@code _INDEX_N}. Текст исключения строится из параметров запроса, в котором произошло нарушение.
+ */
+final class ConstraintViolations {
+
+    private static final Pattern IDENTIFIER = Pattern.compile("[A-Z][A-Z0-9_]*");
+    private static final String INDEX_SUFFIX = "_INDEX_";
+
+    private static final Map<String, Function<MapSqlParameterSource, RuntimeException>> EXCEPTIONS = Map.ofEntries(
+            Map.entry("USERS_UNIQUE_EMAIL", params -> new ValidationException(
+                    "Электронная почта " + value(params, "userEMail") + " уже используется")),
+            Map.entry("USERS_UNIQUE_LOGIN", params -> new ValidationException(
+                    "Логин " + value(params, "userLogin") + " уже используется")),
+            Map.entry("USERS_FILMS_USERS_FK", params -> userNotFound(params, "userId")),
+            Map.entry("USERS_FILMS_FILMS_FK", params -> filmNotFound(params)),
+            Map.entry("FRIENDS_USERS_USER_ID_FK", params -> userNotFound(params, "userId")),
+            Map.entry("FRIENDS_USERS_OTHER_ID_FK", params -> userNotFound(params, "friendId")),
+            Map.entry("USERS_REVIEWS_USER_ID_FK", params -> userNotFound(params, "userId")),
+            Map.entry("FILMS_REVIEWS_FILM_ID_FK", params -> filmNotFound(params)),
+            Map.entry("USERS_REVIEWS_REVIEWS_USER_ID_FK", params -> new NotFoundException(
+                    "Отзыв с id " + value(params, "reviewId") + " не найден в хранилище")),
+            Map.entry("USERS_REVIEWS_USERS_USER_ID_FK", params -> userNotFound(params, "userId")),
+            Map.entry("FILMS_GENRES_FILMS_FK", params -> filmNotFound(params)),
+            Map.entry("FILMS_GENRES_GENRES_FK", params -> new NotFoundException(
+                    "Жанр с id " + value(params, "genreId") + " не найден в хранилище")),
+            Map.entry("FILMS_DIRECTORS_FILMS_FILM_ID_FK", params -> filmNotFound(params)),
+            Map.entry("FILMS_DIRECTORS_DIRECTORS_DIRECTOR_ID_FK", params -> new NotFoundException(
+                    "Режиссер с id " + value(params, "directorId") + " не найден в хранилище")),
+            Map.entry("FILMS_RATINGS_FK", params -> new NotFoundException(
+                    "Рейтинг с id " + value(params, "ratingId") + " не найден в хранилище")),
+            Map.entry("FEED_USERS_USER_ID_FK", params -> userNotFound(params, "userId")));
+
+    private ConstraintViolations() {
+    }
+
+    /**
+     * Метод подбирает исключение прикладного уровня для нарушения ограничения
+     *
+     * @param e исключение драйвера, пришедшее из Spring JDBC
+     * @param params параметры запроса, вызвавшего нарушение; могут отсутствовать
+     * @return исключение прикладного уровня либо пустое значение, если ограничение не известно
+     */
+    static Optional<RuntimeException> translate(DataIntegrityViolationException e, MapSqlParameterSource params) {
+        String message = e.getMostSpecificCause().getMessage();
+        if (message == null) {
+            return Optional.empty();
+        }
+
+        Matcher matcher = IDENTIFIER.matcher(message);
+        while (matcher.find()) {
+            Function<MapSqlParameterSource, RuntimeException> factory = EXCEPTIONS.get(constraintName(matcher.group()));
+            if (factory != null) {
+                return Optional.of(factory.apply(params == null ? new MapSqlParameterSource() : params));
+            }
+        }
+        return Optional.empty();
+    }
+
+    private static String constraintName(String identifier) {
+        int suffix = identifier.lastIndexOf(INDEX_SUFFIX);
+        return suffix > 0 ? identifier.substring(0, suffix) : identifier;
+    }
+
+    private static NotFoundException userNotFound(MapSqlParameterSource params, String paramName) {
+        return new NotFoundException("Пользователь с id " + value(params, paramName) + " не найден в хранилище");
+    }
+
+    private static NotFoundException filmNotFound(MapSqlParameterSource params) {
+        return new NotFoundException("Фильм с id " + value(params, "filmId") + " не найден в хранилище");
+    }
+
+    private static Object value(MapSqlParameterSource params, String paramName) {
+        return params.hasValue(paramName) ? params.getValue(paramName) : "?";
+    }
+}
@@ -0,0 +1,43 @@
+package ru.yandex.practicum.filmorate.dal;
+
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Поколение БД.
+ * <p>
+ * Таблица DB_GENERATION получает случайный идентификатор при создании схемы и сохраняет его, пока БД не пересоздана.
+ * Файлы, которые приложение хранит вне БД, помечаются поколением: файл с другим поколением относится к прежней БД и
+ * не может считаться её продолжением.
+ */
+@Component
+public class DatabaseGeneration {
+
+    private static final String GET_GENERATION_QUERY = """
+            SELECT dg.GENERATION
+              FROM DB_GENERATION dg
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private volatile String generation;
+
+    public DatabaseGeneration(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Метод возвращает идентификатор поколения БД. Пока приложение работает, БД не пересоздаётся, поэтому значение
+     * читается один раз
+     *
+     * @return идентификатор поколения
+     */
+    public String get() {
+        String result = generation;
+        if (result == null) {
+            result = jdbcTemplate.queryForObject(GET_GENERATION_QUERY, new MapSqlParameterSource(), String.class);
+            generation = result;
+        }
+        return result;
+    }
+}
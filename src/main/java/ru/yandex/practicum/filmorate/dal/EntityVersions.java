@@ -0,0 +1,160 @@
+package ru.yandex.practicum.filmorate.dal;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dal.StorageChange.EntitiesDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.Entity;
+import ru.yandex.practicum.filmorate.dal.StorageChange.FilmDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.FilmDirectorChanged;
+import ru.yandex.practicum.filmorate.dal.StorageChange.FilmGenreChanged;
+import ru.yandex.practicum.filmorate.dal.StorageChange.FilmRatingRemoved;
+import ru.yandex.practicum.filmorate.dal.StorageChange.FilmSaved;
+import ru.yandex.practicum.filmorate.dal.StorageChange.LikeAccepted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.LikeChanged;
+import ru.yandex.practicum.filmorate.dal.StorageChange.LikesAdded;
+import ru.yandex.practicum.filmorate.dal.StorageChange.LikesRemoved;
+import ru.yandex.practicum.filmorate.dal.StorageChange.ReferenceSaved;
+import ru.yandex.practicum.filmorate.dal.StorageChange.StatsRefreshed;
+import ru.yandex.practicum.filmorate.dal.StorageChange.UserDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.UserLinksPurged;
+import ru.yandex.practicum.filmorate.dal.StorageChange.UserSaved;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.Mpa;
+
+/**
+ * Версии сущностей в памяти для сильных ETag.
+ * <p>
+ * Версии меняются по изменениям из {@link StorageChanges}: фильма - при записи самого фильма, его связей и лайков, а
+ * также данных пользователей, лайкнувших фильм; справочника - общая версия класса при любой записи в него. Все версии
+ * берутся из одного возрастающего счётчика, поэтому версия ответа, собранного из нескольких сущностей, - наибольшая из
+ * их версий - меняется при изменении любой из них. Версия меняется при записи и ещё раз после фиксации транзакции:
+ * чтение между записью и фиксацией могло увидеть прежние данные с новой версией. ETag включает метку запуска
+ * приложения, так как версии не переживают перезапуск.
+ */
+@Slf4j
+@Component
+public class EntityVersions implements StorageChangeListener {
+
+    private final String epoch = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<Key, Long> versions = new ConcurrentHashMap<>();
+    private final Map<Class<?>, Long> typeVersions = new ConcurrentHashMap<>();
+
+    @Override
+    public void onWrite(StorageChange change) {
+        Runnable action = actionOf(change);
+        if (action != null) {
+            action.run();
+        }
+    }
+
+    @Override
+    public void onCommit(StorageChange change, long writtenAt) {
+        Runnable action = actionOf(change);
+        if (action != null) {
+            action.run();
+        }
+    }
+
+    /**
+     * Метод возвращает ETag сущности
+     *
+     * @param type класс сущности
+     * @param id идентификатор сущности
+     * @param dependencies классы сущностей, входящих в ответ, любое изменение которых меняет ответ
+     * @return ETag в кавычках
+     */
+    public String eTag(Class<?> type, Long id, Class<?>... dependencies) {
+        long version = Math.max(versions.getOrDefault(new Key(type, id), 0L), typeVersions.getOrDefault(type, 0L));
+        for (Class<?> dependency : dependencies) {
+            version = Math.max(version, typeVersions.getOrDefault(dependency, 0L));
+        }
+        return "\"" + epoch + "-" + version + "\"";
+    }
+
+    /**
+     * Метод возвращает ETag набора всех сущностей класса
+     *
+     * @param type класс сущностей
+     * @return ETag в кавычках
+     */
+    public String eTag(Class<?> type) {
+        return "\"" + epoch + "-" + typeVersions.getOrDefault(type, 0L) + "\"";
+    }
+
+    /**
+     * Метод возвращает действие, меняющее версии по изменению
+     *
+     * @param change изменение
+     * @return действие либо {@code null}, если изменение ответов с ETag не касается
+     */
+    private Runnable actionOf(StorageChange change) {
+        return switch (change) {
+            case LikeChanged like -> () -> touch(Film.class, like.filmId());
+            case LikeAccepted like -> () -> touch(Film.class, like.filmId());
+            case LikesAdded likes -> () -> touchLiked(likes.likes());
+            case LikesRemoved likes -> () -> touchLiked(likes.likes());
+            case StatsRefreshed stats -> () -> touchFilms(stats.filmIds());
+            case FilmSaved saved -> () -> touch(Film.class, saved.film().getId());
+            case FilmGenreChanged genre -> () -> touch(Film.class, genre.filmId());
+            case FilmDirectorChanged director -> () -> touch(Film.class, director.filmId());
+            case FilmRatingRemoved rating -> () -> touch(Film.class, rating.filmId());
+            case FilmDeleted deleted -> () -> touch(Film.class, deleted.filmId());
+            // Имя пользователя входит в лайки фильмов, поэтому меняются версии только понравившихся ему фильмов
+            case UserSaved user -> () -> touchFilms(user.likedFilmIds());
+            case UserDeleted user -> () -> touchFilms(user.likedFilmIds());
+            case UserLinksPurged user -> () -> touchFilms(user.likedFilmIds());
+            case ReferenceSaved saved -> () -> touchAll(typeOf(saved.entity()));
+            case EntitiesDeleted deleted when typeOf(deleted.entity()) != null ->
+                    () -> touchAll(typeOf(deleted.entity()));
+            default -> null;
+        };
+    }
+
+    /**
+     * Метод возвращает класс сущностей, версии которых меняются при изменении сущностей вида. Удаление пользователей
+     * меняет лайки всех фильмов
+     *
+     * @param entity вид сущностей
+     * @return класс сущностей либо {@code null}, если сущности вида не входят в ответы с ETag
+     */
+    private static Class<?> typeOf(Entity entity) {
+        return switch (entity) {
+            case FILM, USER -> Film.class;
+            case GENRE -> Genre.class;
+            case DIRECTOR -> Director.class;
+            case RATING -> Mpa.class;
+            case REVIEW -> null;
+        };
+    }
+
+    private void touchLiked(Collection<Like> likes) {
+        likes.forEach(like -> touch(Film.class, like.getFilmId()));
+    }
+
+    private void touchFilms(Collection<Long> filmIds) {
+        filmIds.forEach(filmId -> touch(Film.class, filmId));
+    }
+
+    private void touch(Class<?> type, Long id) {
+        versions.put(new Key(type, id), sequence.incrementAndGet());
+    }
+
+    private void touchAll(Class<?> type) {
+        long version = sequence.incrementAndGet();
+        typeVersions.put(type, version);
+        // Версии отдельных сущностей, меньшие общей, больше не нужны
+        versions.entrySet().removeIf(entry -> entry.getKey().type() == type && entry.getValue() < version);
+        log.debug("Изменена общая версия {}", type.getSimpleName());
+    }
+
+    private record Key(Class<?> type, Long id) {
+    }
+}
@@ -0,0 +1,78 @@
+package ru.yandex.practicum.filmorate.dal;
+
+import jakarta.annotation.PreDestroy;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.config.VirtualThreadProperties;
+
+/**
+ * Исполнитель JDBC-вызовов {@link BaseDbStorage} для режима виртуальных потоков.
+ * <p>
+ * Драйвер H2 выполняет работу с файлом внутри блоков {@code synchronized}, из-за чего виртуальный поток, вызвавший
+ * JDBC, закрепляется за несущим потоком на всё время операции. Исполнитель переносит такие вызовы на фиксированный
+ * набор платформенных потоков, а виртуальный поток в это время ожидает результат без закрепления.
+ * <p>
+ * Вызовы внутри транзакции выполняются в текущем потоке, так как соединение транзакции привязано к нему.
+ */
+@Slf4j
+@Component
+@ConditionalOnThreading(Threading.VIRTUAL)
+@ConditionalOnProperty(prefix = "filmorate.virtual-threads", name = "jdbc-offload", matchIfMissing = true)
+public class JdbcOffloadExecutor {
+
+    private final ExecutorService executor;
+
+    public JdbcOffloadExecutor(VirtualThreadProperties properties) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(properties.jdbcThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "jdbc-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("JDBC-вызовы виртуальных потоков выполняются на {} платформенных потоках", properties.jdbcThreads());
+    }
+
+    /**
+     * Метод выполняет JDBC-вызов и возвращает его результат
+     *
+     * @param call JDBC-вызов
+     * @return результат вызова
+     */
+    public <R> R call(Supplier<R> call) {
+        if (!Thread.currentThread().isVirtual() || TransactionSynchronizationManager.isActualTransactionActive()) {
+            return call.get();
+        }
+
+        Future<R> future = executor.submit(call::get);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ожидание JDBC-вызова прервано", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdown();
+    }
+}
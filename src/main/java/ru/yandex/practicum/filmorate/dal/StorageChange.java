@@ -0,0 +1,214 @@
+package ru.yandex.practicum.filmorate.dal;
+
+import java.util.Collection;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.Review;
+
+/**
+ * Изменение данных, которое хранилища публикуют через {@link StorageChanges} для структур в памяти, повторяющих
+ * содержимое БД
+ */
+public sealed interface StorageChange {
+
+    /**
+     * Лайк записан в БД: добавлен, изменена оценка или удалён
+     *
+     * @param filmId идентификатор фильма
+     * @param userId идентификатор пользователя
+     * @param before лайк до изменения; {@code null}, если лайка не было
+     * @param after лайк после изменения; {@code null}, если лайк удалён
+     * @param timestamp время изменения в миллисекундах
+     */
+    record LikeChanged(Long filmId, Long userId, Like before, Like after, long timestamp) implements StorageChange {
+
+        /**
+         * Метод возвращает изменение количества лайков фильма
+         *
+         * @return -1, 0 или 1
+         */
+        public int likesDelta() {
+            return (after == null ? 0 : 1) - (before == null ? 0 : 1);
+        }
+
+        /**
+         * Метод возвращает изменение суммы оценок фильма
+         *
+         * @return разница оценок; отсутствующая оценка считается нулевой
+         */
+        public double markSumDelta() {
+            return markOf(after) - markOf(before);
+        }
+
+        /**
+         * Метод возвращает изменение количества оценок фильма
+         *
+         * @return -1, 0 или 1
+         */
+        public int markCountDelta() {
+            return (hasMark(after) ? 1 : 0) - (hasMark(before) ? 1 : 0);
+        }
+
+        private static double markOf(Like like) {
+            return hasMark(like) ? like.getMark() : 0;
+        }
+
+        private static boolean hasMark(Like like) {
+            return like != null && like.getMark() != null;
+        }
+    }
+
+    /**
+     * Изменение лайка принято для отложенной записи и попадёт в БД позже пакетом
+     *
+     * @param filmId идентификатор фильма
+     * @param userId идентификатор пользователя
+     * @param removed {@code true} для удаления лайка
+     * @param timestamp время изменения в миллисекундах
+     */
+    record LikeAccepted(Long filmId, Long userId, boolean removed, long timestamp) implements StorageChange {
+    }
+
+    /**
+     * Пакет лайков добавлен или изменён
+     *
+     * @param likes лайки
+     */
+    record LikesAdded(Collection<Like> likes) implements StorageChange {
+    }
+
+    /**
+     * Пакет лайков удалён
+     *
+     * @param likes удалённые лайки
+     */
+    record LikesRemoved(Collection<Like> likes) implements StorageChange {
+    }
+
+    /**
+     * Счётчики лайков фильмов пересчитаны по USERS_FILMS
+     *
+     * @param filmIds идентификаторы фильмов
+     */
+    record StatsRefreshed(Collection<Long> filmIds) implements StorageChange {
+    }
+
+    /**
+     * Фильм создан или изменён вместе с рейтингом, жанрами и режиссерами
+     *
+     * @param film фильм
+     * @param created {@code true} для нового фильма
+     */
+    record FilmSaved(Film film, boolean created) implements StorageChange {
+    }
+
+    /**
+     * Жанр добавлен фильму или удалён у него
+     *
+     * @param filmId идентификатор фильма
+     * @param genreId идентификатор жанра
+     * @param added {@code true} для добавления
+     */
+    record FilmGenreChanged(Long filmId, Long genreId, boolean added) implements StorageChange {
+    }
+
+    /**
+     * Режиссер добавлен фильму или удалён у него
+     *
+     * @param filmId идентификатор фильма
+     * @param directorId идентификатор режиссера
+     * @param added {@code true} для добавления
+     */
+    record FilmDirectorChanged(Long filmId, Long directorId, boolean added) implements StorageChange {
+    }
+
+    /**
+     * С фильма снят рейтинг
+     *
+     * @param filmId идентификатор фильма
+     */
+    record FilmRatingRemoved(Long filmId) implements StorageChange {
+    }
+
+    /**
+     * Фильм удалён вместе с лайками
+     *
+     * @param filmId идентификатор фильма
+     */
+    record FilmDeleted(Long filmId) implements StorageChange {
+    }
+
+    /**
+     * Данные пользователя изменены. Имя пользователя входит в лайки фильмов
+     *
+     * @param userId идентификатор пользователя
+     * @param likedFilmIds идентификаторы фильмов, которые пользователь лайкнул
+     */
+    record UserSaved(Long userId, Collection<Long> likedFilmIds) implements StorageChange {
+    }
+
+    /**
+     * Пользователь удалён вместе с лайками и событиями ленты
+     *
+     * @param userId идентификатор пользователя
+     * @param likedFilmIds идентификаторы фильмов, лайки которых удалены
+     */
+    record UserDeleted(Long userId, Collection<Long> likedFilmIds) implements StorageChange {
+    }
+
+    /**
+     * Порция лайков и событий ленты пользователя удалена при фоновом удалении. Сам пользователь удаляется последней
+     * порцией с публикацией {@link UserDeleted}
+     *
+     * @param userId идентификатор пользователя
+     * @param likedFilmIds идентификаторы фильмов, лайки которых удалены
+     */
+    record UserLinksPurged(Long userId, Collection<Long> likedFilmIds) implements StorageChange {
+    }
+
+    /**
+     * Отзыв создан или изменён
+     *
+     * @param review отзыв
+     */
+    record ReviewSaved(Review review) implements StorageChange {
+    }
+
+    /**
+     * Отзыв удалён
+     *
+     * @param reviewId идентификатор отзыва
+     */
+    record ReviewDeleted(Long reviewId) implements StorageChange {
+    }
+
+    /**
+     * Жанр, режиссер или рейтинг создан или изменён. Справочники входят в фильмы целиком
+     *
+     * @param entity вид сущности
+     * @param id идентификатор сущности
+     */
+    record ReferenceSaved(Entity entity, Long id) implements StorageChange {
+    }
+
+    /**
+     * Удалены все сущности вида или сущность, удаление которой каскадно меняет связи многих фильмов. Структуры,
+     * зависящие от таких сущностей, строятся заново
+     *
+     * @param entity вид сущностей
+     */
+    record EntitiesDeleted(Entity entity) implements StorageChange {
+    }
+
+    /**
+     * Вид сущностей
+     */
+    enum Entity {
+        FILM,
+        USER,
+        GENRE,
+        DIRECTOR,
+        RATING,
+        REVIEW
+    }
+}
@@ -0,0 +1,37 @@
+package ru.yandex.practicum.filmorate.dal;
+
+/**
+ * Подписчик на изменения данных, публикуемые хранилищами через {@link StorageChanges}.
+ * <p>
+ * Каждое изменение сначала передаётся в {@link #onWrite} сразу при записи, затем в {@link #onCommit} после фиксации
+ * записавшей его транзакции или в {@link #onRollback} после её отката. Вне транзакции {@link #onCommit} вызывается
+ * сразу после {@link #onWrite}.
+ */
+public interface StorageChangeListener {
+
+    /**
+     * Метод вызывается при записи изменения, внутри транзакции — до её фиксации. Изменения, применённые здесь, видит
+     * и записавшая их транзакция, но их нужно отменить при откате
+     *
+     * @param change изменение
+     */
+    default void onWrite(StorageChange change) {
+    }
+
+    /**
+     * Метод вызывается после фиксации изменения
+     *
+     * @param change изменение
+     * @param writtenAt значение {@link System#nanoTime()} при записи изменения. Построение из БД, начатое после записи,
+     *                  могло пройти до фиксации и не увидеть изменение
+     */
+    void onCommit(StorageChange change, long writtenAt);
+
+    /**
+     * Метод вызывается после отката транзакции, записавшей изменение
+     *
+     * @param change изменение
+     */
+    default void onRollback(StorageChange change) {
+    }
+}
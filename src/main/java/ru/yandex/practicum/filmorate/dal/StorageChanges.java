@@ -0,0 +1,101 @@
+package ru.yandex.practicum.filmorate.dal;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Единая точка публикации изменений данных для структур в памяти: индексов, счётчиков и оценок.
+ * <p>
+ * Хранилище публикует одно изменение на операцию, а каждая структура подписывается на нужные ей изменения,
+ * реализуя {@link StorageChangeListener}. Изменения транзакции копятся в одной синхронизации и после её завершения
+ * передаются подписчикам в порядке записи. Ошибка подписчика после завершения транзакции записывается в лог и не
+ * мешает остальным подписчикам.
+ */
+@Slf4j
+@Component
+public class StorageChanges {
+
+    private final List<StorageChangeListener> listeners;
+
+    public StorageChanges(List<StorageChangeListener> listeners) {
+        this.listeners = listeners;
+    }
+
+    /**
+     * Метод публикует изменение
+     *
+     * @param change изменение
+     */
+    public void publish(StorageChange change) {
+        long writtenAt = System.nanoTime();
+        listeners.forEach(listener -> listener.onWrite(change));
+
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            listeners.forEach(listener -> notifyQuietly(() -> listener.onCommit(change, writtenAt), change));
+            return;
+        }
+
+        Pending pending = (Pending) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            pending = new Pending();
+            TransactionSynchronizationManager.bindResource(this, pending);
+            TransactionSynchronizationManager.registerSynchronization(pending);
+        }
+        pending.changes.add(change);
+        pending.writtenAt.add(writtenAt);
+    }
+
+    /**
+     * Метод проверяет, публиковала ли текущая транзакция изменения
+     *
+     * @return {@code true}, если структуры в памяти ещё не отражают изменения текущей транзакции
+     */
+    public boolean isChangedInTransaction() {
+        return TransactionSynchronizationManager.hasResource(this);
+    }
+
+    private void notifyQuietly(Runnable notification, StorageChange change) {
+        try {
+            notification.run();
+        } catch (RuntimeException e) {
+            log.error("Не удалось применить изменение {}", change, e);
+        }
+    }
+
+    /**
+     * Изменения текущей транзакции
+     */
+    private final class Pending implements TransactionSynchronization {
+
+        private final List<StorageChange> changes = new ArrayList<>();
+        private final List<Long> writtenAt = new ArrayList<>();
+
+        @Override
+        public void suspend() {
+            TransactionSynchronizationManager.unbindResource(StorageChanges.this);
+        }
+
+        @Override
+        public void resume() {
+            TransactionSynchronizationManager.bindResource(StorageChanges.this, this);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(StorageChanges.this);
+            for (int i = 0; i < changes.size(); i++) {
+                StorageChange change = changes.get(i);
+                long changeWrittenAt = writtenAt.get(i);
+                listeners.forEach(listener -> notifyQuietly(status == STATUS_COMMITTED
+                        ? () -> listener.onCommit(change, changeWrittenAt)
+                        : () -> listener.onRollback(change), change));
+            }
+            log.debug("Подписчикам передано {} изменений {} транзакции", changes.size(),
+                    status == STATUS_COMMITTED ? "зафиксированной" : "откатившейся");
+        }
+    }
+}
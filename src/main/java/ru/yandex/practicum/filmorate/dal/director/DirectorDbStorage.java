@@ -2,6 +2,8 @@ package ru.yandex.practicum.filmorate.dal.director;
 
 import java.sql.Types;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,7 +12,14 @@ import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.dal.BaseDbStorage;
+import ru.yandex.practicum.filmorate.dal.StorageChange.EntitiesDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.Entity;
+import ru.yandex.practicum.filmorate.dal.StorageChange.ReferenceSaved;
+import ru.yandex.practicum.filmorate.dal.StorageChanges;
+import ru.yandex.practicum.filmorate.dal.film.FilmChangeVersions;
 import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.DirectorStats;
+import ru.yandex.practicum.filmorate.util.RequestIdentityMap;
 
 @Slf4j
 @Component
@@ -30,6 +39,24 @@ public class DirectorDbStorage extends BaseDbStorage<Director> implements Direct
              INNER JOIN DIRECTORS d ON fd.DIRECTOR_ID = d.ID
              WHERE fd.FILM_ID = :filmId
             """;
+    private static final String GET_DIRECTORS_BY_FILM_IDS_QUERY = """
+            SELECT fd.FILM_ID,
+                   d.ID,
+                   d.FULL_NAME
+              FROM FILMS_DIRECTORS fd
+             INNER JOIN DIRECTORS d ON fd.DIRECTOR_ID = d.ID
+             WHERE fd.FILM_ID IN (:filmIds)
+             ORDER BY fd.FILM_ID,
+                      d.ID
+            """;
+    private static final String GET_DIRECTOR_STATS_QUERY = """
+            SELECT ds.DIRECTOR_ID,
+                   ds.FILMS_COUNT,
+                   ds.LIKES_COUNT,
+                   ds.RATE
+              FROM DIRECTOR_STATS ds
+             WHERE ds.DIRECTOR_ID = :directorId
+            """;
     private static final String GET_DIRECTOR_BY_ID_QUERY = """
             SELECT d.ID,
             	   d.FULL_NAME
@@ -40,6 +67,10 @@ public class DirectorDbStorage extends BaseDbStorage<Director> implements Direct
             INSERT INTO DIRECTORS(FULL_NAME)
             VALUES (:directorName)
             """;
+    private static final String INSERT_DIRECTOR_STATS_QUERY = """
+            INSERT INTO DIRECTOR_STATS (DIRECTOR_ID)
+            VALUES (:directorId)
+            """;
     private static final String UPDATE_DIRECTOR_QUERY = """
             UPDATE DIRECTORS d
                SET d.FULL_NAME = :directorName
@@ -53,10 +84,17 @@ public class DirectorDbStorage extends BaseDbStorage<Director> implements Direct
             DELETE FROM DIRECTORS
             """;
 
+    private final StorageChanges storageChanges;
+    private final FilmChangeVersions filmChangeVersions;
+
     @Autowired
     public DirectorDbStorage(NamedParameterJdbcTemplate jdbcTemplate,
-                             RowMapper<Director> mapper) {
+                             RowMapper<Director> mapper,
+                             StorageChanges storageChanges,
+                             FilmChangeVersions filmChangeVersions) {
         super(jdbcTemplate, mapper);
+        this.storageChanges = storageChanges;
+        this.filmChangeVersions = filmChangeVersions;
     }
 
     @Override
@@ -91,6 +129,23 @@ public class DirectorDbStorage extends BaseDbStorage<Director> implements Direct
         return result;
     }
 
+    @Override
+    public Map<Long, List<Director>> findByFilmIds(Collection<Long> filmIds) {
+        log.debug("Запрос режиссеров {} фильмов на уровне хранилища", filmIds.size());
+        if (filmIds.isEmpty()) {
+            return Map.of();
+        }
+
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("filmIds", filmIds);
+
+        Map<Long, List<Director>> result = findGrouped(GET_DIRECTORS_BY_FILM_IDS_QUERY, parameterSource, "FILM_ID");
+        log.debug("Режиссеры найдены у {} фильмов", result.size());
+
+        log.debug("Возврат режиссеров фильмов на уровень сервиса");
+        return result;
+    }
+
     @Override
     public Optional<Director> findById(Long directorId) {
         log.debug("Запрос режиссер по id на уровне хранилища");
@@ -99,12 +154,32 @@ public class DirectorDbStorage extends BaseDbStorage<Director> implements Direct
         MapSqlParameterSource parameterSource = new MapSqlParameterSource()
                 .addValue("directorId", directorId, Types.BIGINT);
 
-        Optional<Director> result = findOne(GET_DIRECTOR_BY_ID_QUERY, parameterSource);
+        Optional<Director> result = RequestIdentityMap.find(Director.class, directorId,
+                () -> findOne(GET_DIRECTOR_BY_ID_QUERY, parameterSource));
 
         log.debug("Возврат результатов поиска режиссера на уровень сервиса");
         return result;
     }
 
+    @Override
+    public Optional<DirectorStats> findStats(Long directorId) {
+        log.debug("Запрос счётчиков режиссера с id {} на уровне хранилища", directorId);
+
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("directorId", directorId, Types.BIGINT);
+
+        Optional<DirectorStats> result = execute(() -> jdbcTemplate.query(GET_DIRECTOR_STATS_QUERY, parameterSource,
+                (rs, rowNum) -> DirectorStats.builder()
+                        .directorId(rs.getLong("DIRECTOR_ID"))
+                        .filmsCount(rs.getInt("FILMS_COUNT"))
+                        .likesCount(rs.getInt("LIKES_COUNT"))
+                        .rate(rs.getDouble("RATE"))
+                        .build())).stream().findFirst();
+
+        log.debug("Возврат счётчиков режиссера на уровень сервиса");
+        return result;
+    }
+
     @Override
     public Director createDirector(Director director) {
         log.debug("Запрос на создание режиссера на уровне хранилища");
@@ -121,8 +196,13 @@ public class DirectorDbStorage extends BaseDbStorage<Director> implements Direct
         }
 
         director.setId(id);
+        storageChanges.publish(new ReferenceSaved(Entity.DIRECTOR, id));
         log.debug("Значение id присвоено режиссеру");
 
+        insertWithOutReturnId(INSERT_DIRECTOR_STATS_QUERY, new MapSqlParameterSource()
+                .addValue("directorId", id, Types.BIGINT));
+        log.debug("Созданы счётчики режиссера");
+
         return director;
     }
 
@@ -135,7 +215,11 @@ public class DirectorDbStorage extends BaseDbStorage<Director> implements Direct
                 .addValue("directorName", newDirector.getName(), Types.NVARCHAR)
                 .addValue("directorId", newDirector.getId(), Types.BIGINT);
 
+        // Имя режиссера входит в фильмы, поэтому фильмы режиссера получают новые версии
+        filmChangeVersions.touchByDirector(newDirector.getId());
         long updatedRows = update(UPDATE_DIRECTOR_QUERY, parameterSource);
+        RequestIdentityMap.evict(Director.class, newDirector.getId());
+        storageChanges.publish(new ReferenceSaved(Entity.DIRECTOR, newDirector.getId()));
 
         if (updatedRows == 0) {
             throw new RuntimeException("Не удалось обновить фильм с id " + newDirector.getId());
@@ -154,7 +238,11 @@ public class DirectorDbStorage extends BaseDbStorage<Director> implements Direct
         MapSqlParameterSource parameterSource = new MapSqlParameterSource()
                 .addValue("directorId", directorId, Types.BIGINT);
 
+        filmChangeVersions.touchByDirector(directorId);
         long deletedRows = deleteOne(DELETE_DIRECTOR_BY_ID_QUERY, parameterSource);
+        RequestIdentityMap.evict(Director.class, directorId);
+        // Связи с фильмами удаляются каскадно, поэтому зависящие от режиссеров структуры строятся заново
+        storageChanges.publish(new EntitiesDeleted(Entity.DIRECTOR));
         log.debug("На уровне хранилища удалено {} запись(ей)", deletedRows);
         log.debug("Режиссер с id {} удален из хранилища", directorId);
 
@@ -167,7 +255,10 @@ public class DirectorDbStorage extends BaseDbStorage<Director> implements Direct
 
         MapSqlParameterSource parameterSource = new MapSqlParameterSource();
 
+        filmChangeVersions.touchAll();
         long deletedRows = deleteMany(DELETE_ALL_DIRECTORS_QUERY, parameterSource);
+        RequestIdentityMap.evictAll(Director.class);
+        storageChanges.publish(new EntitiesDeleted(Entity.DIRECTOR));
         log.debug("На уровне хранилища очищено {} запись(ей)", deletedRows);
 
         log.debug("Возврат результатов очистки на уровень сервиса");
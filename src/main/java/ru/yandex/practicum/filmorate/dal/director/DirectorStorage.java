@@ -1,8 +1,11 @@
 package ru.yandex.practicum.filmorate.dal.director;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.DirectorStats;
 
 /**
  * Интерфейс обработки сущностей {@link Director} на уровне хранилища
@@ -26,6 +29,14 @@ public interface DirectorStorage {
      */
     Collection<Director> findByFilmId(Long filmId);
 
+    /**
+     * Метод возвращает режиссеров нескольких фильмов одним запросом
+     *
+     * @param filmIds идентификаторы фильмов
+     * @return коллекции {@link Director} по идентификаторам фильмов; фильмы без режиссеров отсутствуют
+     */
+    Map<Long, List<Director>> findByFilmIds(Collection<Long> filmIds);
+
     /**
      * Метод возвращает экземпляр класса {@link Director} из хранилища на основе переданного идентификатора
      *
@@ -34,6 +45,15 @@ public interface DirectorStorage {
      */
     Optional<Director> findById(Long directorId);
 
+    /**
+     * Метод возвращает счётчики фильмов, лайков и оценок режиссера. Счётчики поддерживаются хранилищем фильмов при
+     * изменении связей фильмов с режиссерами и лайков
+     *
+     * @param directorId идентификатор режиссера
+     * @return экземпляр класса {@link DirectorStats} либо пустое значение, если режиссер не найден
+     */
+    Optional<DirectorStats> findStats(Long directorId);
+
     /**
      * Метод создает в хранилище переданный экземпляр класса {@link Director}
      *
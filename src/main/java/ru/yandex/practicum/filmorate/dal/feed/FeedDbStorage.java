@@ -56,12 +56,7 @@ public class FeedDbStorage extends BaseDbStorage<Feed> implements FeedStorage {
     public void addFeed(Feed feed) {
         log.debug("Запрос на добавление события на уровне хранилища");
 
-        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
-                .addValue("entityId", feed.getEntityId())
-                .addValue("userId", feed.getUserId())
-                .addValue("timestamp", feed.getTimestamp())
-                .addValue("eventType", feed.getEventType().toString())
-                .addValue("operationType", feed.getOperationType().toString());
+        MapSqlParameterSource parameterSource = mapToParameterSource(feed);
 
         boolean isInserted = insertWithOutReturnId(INSERT_FEED_QUERY, parameterSource);
         if (!isInserted) {
@@ -72,4 +67,42 @@ public class FeedDbStorage extends BaseDbStorage<Feed> implements FeedStorage {
 
         log.debug("Возврат результатов добавления на уровень хранилища");
     }
+
+    @Override
+    public void addFeeds(Collection<Feed> feeds) {
+        log.debug("Запрос на пакетное добавление событий на уровне хранилища");
+        log.debug("Передано событий для добавления: {}", feeds.size());
+
+        if (feeds.isEmpty()) {
+            log.debug("Пакет событий пуст, добавление не требуется");
+            return;
+        }
+
+        MapSqlParameterSource[] batchParams = feeds.stream()
+                .map(this::mapToParameterSource)
+                .toArray(MapSqlParameterSource[]::new);
+
+        long insertedRows = batchUpdate(INSERT_FEED_QUERY, batchParams);
+        if (insertedRows != feeds.size()) {
+            throw new RuntimeException("Не удалось добавить пакет событий в БД");
+        }
+        log.debug("Пакет из {} событий добавлен в БД", insertedRows);
+
+        log.debug("Возврат результатов пакетного добавления на уровень сервиса");
+    }
+
+    /**
+     * Метод составляет набор параметров для вставки события
+     *
+     * @param feed экземпляр класса {@link Feed}
+     * @return набор параметров
+     */
+    private MapSqlParameterSource mapToParameterSource(Feed feed) {
+        return new MapSqlParameterSource()
+                .addValue("entityId", feed.getEntityId())
+                .addValue("userId", feed.getUserId())
+                .addValue("timestamp", feed.getTimestamp())
+                .addValue("eventType", feed.getEventType().toString())
+                .addValue("operationType", feed.getOperationType().toString());
+    }
 }
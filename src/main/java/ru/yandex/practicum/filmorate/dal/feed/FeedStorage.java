@@ -22,4 +22,11 @@ public interface FeedStorage {
      * @param feed экземпляр класса {@link Feed}
      */
     void addFeed(Feed feed);
+
+    /**
+     * Метод добавляет коллекцию событий в ленты пользователей одним пакетом
+     *
+     * @param feeds коллекция экземпляров класса {@link Feed}
+     */
+    void addFeeds(Collection<Feed> feeds);
 }
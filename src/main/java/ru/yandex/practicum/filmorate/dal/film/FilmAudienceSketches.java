@@ -0,0 +1,283 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dal.StorageChange;
+import ru.yandex.practicum.filmorate.dal.StorageChange.EntitiesDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.Entity;
+import ru.yandex.practicum.filmorate.dal.StorageChange.FilmDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.FilmDirectorChanged;
+import ru.yandex.practicum.filmorate.dal.StorageChange.FilmGenreChanged;
+import ru.yandex.practicum.filmorate.dal.StorageChange.FilmSaved;
+import ru.yandex.practicum.filmorate.dal.StorageChange.LikeChanged;
+import ru.yandex.practicum.filmorate.dal.StorageChange.LikesAdded;
+import ru.yandex.practicum.filmorate.dal.StorageChange.LikesRemoved;
+import ru.yandex.practicum.filmorate.dal.StorageChange.UserDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.UserLinksPurged;
+import ru.yandex.practicum.filmorate.dal.StorageChangeListener;
+import ru.yandex.practicum.filmorate.dal.StorageChanges;
+import ru.yandex.practicum.filmorate.util.HyperLogLog;
+import ru.yandex.practicum.filmorate.util.TransactionCallbacks;
+
+/**
+ * Оценки аудитории жанров и режиссеров: сколько различных пользователей лайкнули хотя бы один фильм жанра или
+ * режиссера.
+ * <p>
+ * Для каждого жанра и режиссера хранится {@link HyperLogLog}, поэтому чтение не зависит от количества лайков, а оценки
+ * нескольких жанров объединяются без повторного подсчёта. Оценки строятся из USERS_FILMS при первом обращении и
+ * пополняются лайками после их фиксации: изменения приходят через {@link StorageChanges}. Вычесть пользователя из
+ * оценки нельзя, поэтому удаление лайков, изменение жанров и режиссеров фильмов и удаление сущностей помечают оценки
+ * устаревшими: до пересчёта в фоне оценки могут быть
+ * завышены. Пересчёт запускается не чаще раза в {@link #REBUILD_DELAY_MILLIS} мс, а чтения во время пересчёта его не
+ * ждут и получают прежние оценки.
+ */
+@Slf4j
+@Component
+public class FilmAudienceSketches implements StorageChangeListener {
+
+    private static final String GET_GENRE_AUDIENCE_QUERY = """
+            SELECT fg.GENRE_ID AS KEY_ID,
+                   uf.USER_ID
+              FROM USERS_FILMS uf
+             INNER JOIN FILMS_GENRES fg ON fg.FILM_ID = uf.FILM_ID
+            """;
+    private static final String GET_DIRECTOR_AUDIENCE_QUERY = """
+            SELECT fd.DIRECTOR_ID AS KEY_ID,
+                   uf.USER_ID
+              FROM USERS_FILMS uf
+             INNER JOIN FILMS_DIRECTORS fd ON fd.FILM_ID = uf.FILM_ID
+            """;
+    private static final String GET_FILM_KEYS_QUERY = """
+            SELECT TRUE AS IS_GENRE,
+                   fg.GENRE_ID AS KEY_ID
+              FROM FILMS_GENRES fg
+             WHERE fg.FILM_ID = :filmId
+             UNION ALL
+            SELECT FALSE AS IS_GENRE,
+                   fd.DIRECTOR_ID AS KEY_ID
+              FROM FILMS_DIRECTORS fd
+             WHERE fd.FILM_ID = :filmId
+            """;
+    // Изменения, пришедшие за это время, объединяются в один пересчёт
+    private static final long REBUILD_DELAY_MILLIS = 5_000;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+    private final Object lock = new Object();
+    private final Object rebuildLock = new Object();
+    // Поля ниже изменяются только под lock, оценки публикуются целиком и проверяются на наличие без блокировки
+    private volatile Sketches sketches;
+    private List<LikeEvent> addedDuringRebuild;
+
+    public FilmAudienceSketches(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "audience-sketches");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Метод возвращает оценку количества различных пользователей, лайкнувших хотя бы один фильм любого из жанров
+     *
+     * @param genreIds идентификаторы жанров
+     * @return оценка количества пользователей
+     */
+    public long estimateGenres(Collection<Long> genreIds) {
+        return estimate(genreIds, true);
+    }
+
+    /**
+     * Метод возвращает оценку количества различных пользователей, лайкнувших хотя бы один фильм режиссера
+     *
+     * @param directorId идентификатор режиссера
+     * @return оценка количества пользователей
+     */
+    public long estimateDirector(Long directorId) {
+        return estimate(List.of(directorId), false);
+    }
+
+    @Override
+    public void onCommit(StorageChange change, long writtenAt) {
+        switch (change) {
+            case LikeChanged like when like.before() == null && like.after() != null ->
+                    addLike(like.userId(), like.filmId());
+            case LikeChanged like when like.after() == null -> invalidate();
+            case LikesAdded added -> added.likes().forEach(like -> addLike(like.getUserId(), like.getFilmId()));
+            case LikesRemoved removed -> invalidate();
+            case FilmSaved saved when !saved.created() -> invalidate();
+            case FilmGenreChanged genre -> invalidate();
+            case FilmDirectorChanged director -> invalidate();
+            case FilmDeleted deleted -> invalidate();
+            case UserDeleted user -> invalidate();
+            case UserLinksPurged user -> invalidate();
+            case EntitiesDeleted deleted when deleted.entity() != Entity.RATING && deleted.entity() != Entity.REVIEW ->
+                    invalidate();
+            default -> { }
+        }
+    }
+
+    /**
+     * Метод добавляет пользователя в аудиторию жанров и режиссеров фильма. Вызывается после фиксации лайка
+     *
+     * @param userId идентификатор пользователя
+     * @param filmId идентификатор фильма
+     */
+    void addLike(Long userId, Long filmId) {
+        if (!isTracking()) {
+            // Оценки ещё не строились: лайк попадёт в них при построении
+            return;
+        }
+
+        List<Long> genreIds = new ArrayList<>();
+        List<Long> directorIds = new ArrayList<>();
+        jdbcTemplate.query(GET_FILM_KEYS_QUERY, new MapSqlParameterSource().addValue("filmId", filmId),
+                (RowCallbackHandler) rs -> (rs.getBoolean("IS_GENRE") ? genreIds : directorIds)
+                        .add(rs.getLong("KEY_ID")));
+        if (!genreIds.isEmpty() || !directorIds.isEmpty()) {
+            // Построение, начатое до фиксации, лайка не увидело. Добавление повторяется без вреда
+            apply(new LikeEvent(userId, genreIds, directorIds));
+        }
+    }
+
+    /**
+     * Метод строит оценки заново и подменяет ими прежние
+     */
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            synchronized (lock) {
+                addedDuringRebuild = new ArrayList<>();
+            }
+
+            Sketches next = new Sketches(new HashMap<>(), new HashMap<>());
+            try {
+                load(GET_GENRE_AUDIENCE_QUERY, next.byGenre());
+                load(GET_DIRECTOR_AUDIENCE_QUERY, next.byDirector());
+            } catch (RuntimeException e) {
+                synchronized (lock) {
+                    addedDuringRebuild = null;
+                }
+                throw e;
+            }
+
+            synchronized (lock) {
+                addedDuringRebuild.forEach(like -> like.applyTo(next));
+                addedDuringRebuild = null;
+                sketches = next;
+            }
+            log.debug("Оценки аудитории построены для {} жанров и {} режиссеров", next.byGenre().size(),
+                    next.byDirector().size());
+        }
+
+        // Построение внутри транзакции видит её незафиксированные лайки
+        TransactionCallbacks.onCompletion(() -> { }, this::invalidate);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private long estimate(Collection<Long> keys, boolean byGenre) {
+        Sketches current = sketches;
+        if (current == null) {
+            current = ensureLoaded();
+        }
+
+        // Блокировка защищает только от одновременного добавления лайка и не ждёт пересчёта
+        synchronized (lock) {
+            Map<Long, HyperLogLog> target = byGenre ? current.byGenre() : current.byDirector();
+            if (keys.size() == 1) {
+                HyperLogLog sketch = target.get(keys.iterator().next());
+                return sketch == null ? 0 : sketch.estimate();
+            }
+
+            HyperLogLog union = new HyperLogLog();
+            keys.stream().map(target::get).filter(sketch -> sketch != null).forEach(union::merge);
+            return union.estimate();
+        }
+    }
+
+    private void apply(LikeEvent like) {
+        synchronized (lock) {
+            if (sketches != null) {
+                like.applyTo(sketches);
+            }
+            if (addedDuringRebuild != null) {
+                addedDuringRebuild.add(like);
+            }
+        }
+    }
+
+    /**
+     * Метод помечает оценки устаревшими и запускает пересчёт в фоне, до его окончания читаются прежние оценки
+     */
+    private void invalidate() {
+        if (rebuildScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(() -> {
+                rebuildScheduled.set(false);
+                try {
+                    rebuild();
+                } catch (RuntimeException e) {
+                    log.error("Не удалось пересчитать оценки аудитории", e);
+                }
+            }, REBUILD_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private boolean isTracking() {
+        synchronized (lock) {
+            return sketches != null || addedDuringRebuild != null;
+        }
+    }
+
+    /**
+     * Метод строит оценки при первом обращении. Ожидание возможно только до первого построения
+     *
+     * @return построенные оценки
+     */
+    private Sketches ensureLoaded() {
+        synchronized (rebuildLock) {
+            if (sketches == null) {
+                rebuild();
+            }
+            return sketches;
+        }
+    }
+
+    private void load(String query, Map<Long, HyperLogLog> target) {
+        jdbcTemplate.query(query, new MapSqlParameterSource(), (RowCallbackHandler) rs ->
+                target.computeIfAbsent(rs.getLong("KEY_ID"), id -> new HyperLogLog()).add(rs.getLong("USER_ID")));
+    }
+
+    private record Sketches(Map<Long, HyperLogLog> byGenre, Map<Long, HyperLogLog> byDirector) {
+    }
+
+    /**
+     * Лайк пользователя с жанрами и режиссерами фильма на момент лайка
+     */
+    private record LikeEvent(Long userId, List<Long> genreIds, List<Long> directorIds) {
+
+        void applyTo(Sketches target) {
+            genreIds.forEach(genreId ->
+                    target.byGenre().computeIfAbsent(genreId, id -> new HyperLogLog()).add(userId));
+            directorIds.forEach(directorId ->
+                    target.byDirector().computeIfAbsent(directorId, id -> new HyperLogLog()).add(userId));
+        }
+    }
+}
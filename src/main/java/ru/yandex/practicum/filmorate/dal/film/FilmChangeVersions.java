@@ -0,0 +1,169 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import java.sql.Types;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.IntStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Версии изменений каталога фильмов для инкрементальной синхронизации клиентов.
+ * <p>
+ * Изменение фильма, его жанров или режиссеров записывает в FILMS.CHANGE_VERSION очередную версию, удаление фильма
+ * записывает её в FILM_TOMBSTONES. Версии выдаются счётчиком FILM_CHANGE_VERSION, строка которого остаётся
+ * заблокированной до конца транзакции. Поэтому изменения каталога фиксируются по одному и в порядке версий: клиент,
+ * получивший изменения до версии N, не пропустит изменение с меньшей версией, зафиксированное позже. Каждому фильму
+ * выдаётся своя версия, чтобы страница изменений не обрывалась посреди одной версии.
+ */
+@Slf4j
+@Component
+public class FilmChangeVersions {
+
+    private static final String ALLOCATE_VERSIONS_QUERY = """
+            SELECT VERSION
+              FROM FINAL TABLE (UPDATE FILM_CHANGE_VERSION
+                                   SET VERSION = VERSION + :count)
+            """;
+    private static final String UPDATE_FILM_VERSION_QUERY = """
+            UPDATE FILMS
+               SET CHANGE_VERSION = :version
+             WHERE ID = :filmId
+            """;
+    private static final String MERGE_TOMBSTONE_QUERY = """
+            MERGE INTO FILM_TOMBSTONES ft
+            USING (VALUES (CAST(:filmId AS INTEGER), CAST(:version AS BIGINT))) s(FILM_ID, CHANGE_VERSION)
+               ON ft.FILM_ID = s.FILM_ID
+             WHEN MATCHED THEN
+                  UPDATE SET CHANGE_VERSION = s.CHANGE_VERSION
+             WHEN NOT MATCHED THEN
+                  INSERT (FILM_ID, CHANGE_VERSION) VALUES (s.FILM_ID, s.CHANGE_VERSION)
+            """;
+    private static final String GET_FILM_IDS_BY_GENRE_QUERY = """
+            SELECT fg.FILM_ID
+              FROM FILMS_GENRES fg
+             WHERE fg.GENRE_ID = :genreId
+             ORDER BY fg.FILM_ID
+            """;
+    private static final String GET_FILM_IDS_BY_DIRECTOR_QUERY = """
+            SELECT fd.FILM_ID
+              FROM FILMS_DIRECTORS fd
+             WHERE fd.DIRECTOR_ID = :directorId
+             ORDER BY fd.FILM_ID
+            """;
+    private static final String GET_FILM_IDS_BY_RATING_QUERY = """
+            SELECT f.ID AS FILM_ID
+              FROM FILMS f
+             WHERE f.RATING_ID = :ratingId
+             ORDER BY f.ID
+            """;
+    private static final String GET_ALL_FILM_IDS_QUERY = """
+            SELECT f.ID AS FILM_ID
+              FROM FILMS f
+             ORDER BY f.ID
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public FilmChangeVersions(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Метод выдаёт фильмам новые версии изменения
+     *
+     * @param filmIds идентификаторы измененных фильмов
+     */
+    public void touch(Collection<Long> filmIds) {
+        stamp(UPDATE_FILM_VERSION_QUERY, filmIds);
+    }
+
+    /**
+     * Метод выдаёт новые версии фильмам жанра. Вызывается до изменения или удаления жанра, пока связи с фильмами
+     * ещё существуют
+     *
+     * @param genreId идентификатор жанра
+     */
+    public void touchByGenre(Long genreId) {
+        touch(findFilmIds(GET_FILM_IDS_BY_GENRE_QUERY, new MapSqlParameterSource("genreId", genreId)));
+    }
+
+    /**
+     * Метод выдаёт новые версии фильмам режиссера. Вызывается до изменения или удаления режиссера
+     *
+     * @param directorId идентификатор режиссера
+     */
+    public void touchByDirector(Long directorId) {
+        touch(findFilmIds(GET_FILM_IDS_BY_DIRECTOR_QUERY, new MapSqlParameterSource("directorId", directorId)));
+    }
+
+    /**
+     * Метод выдаёт новые версии фильмам с рейтингом. Вызывается до изменения или удаления рейтинга
+     *
+     * @param ratingId идентификатор рейтинга
+     */
+    public void touchByRating(Long ratingId) {
+        touch(findFilmIds(GET_FILM_IDS_BY_RATING_QUERY, new MapSqlParameterSource("ratingId", ratingId)));
+    }
+
+    /**
+     * Метод выдаёт новые версии всем фильмам
+     */
+    public void touchAll() {
+        touch(findFilmIds(GET_ALL_FILM_IDS_QUERY, new MapSqlParameterSource()));
+    }
+
+    /**
+     * Метод отмечает фильмы удаленными в новых версиях
+     *
+     * @param filmIds идентификаторы удаляемых фильмов
+     */
+    public void markDeleted(Collection<Long> filmIds) {
+        stamp(MERGE_TOMBSTONE_QUERY, filmIds);
+    }
+
+    /**
+     * Метод отмечает удаленными все фильмы. Вызывается до очистки хранилища фильмов
+     */
+    public void markAllDeleted() {
+        markDeleted(findFilmIds(GET_ALL_FILM_IDS_QUERY, new MapSqlParameterSource()));
+    }
+
+    private void stamp(String query, Collection<Long> filmIds) {
+        if (filmIds.isEmpty()) {
+            return;
+        }
+
+        long lastVersion = allocate(filmIds.size());
+        List<Long> ids = List.copyOf(filmIds);
+        long firstVersion = lastVersion - ids.size() + 1;
+        MapSqlParameterSource[] batchParams = IntStream.range(0, ids.size())
+                .mapToObj(i -> new MapSqlParameterSource()
+                        .addValue("filmId", ids.get(i), Types.BIGINT)
+                        .addValue("version", firstVersion + i, Types.BIGINT))
+                .toArray(MapSqlParameterSource[]::new);
+        jdbcTemplate.batchUpdate(query, batchParams);
+        log.debug("Фильмам выданы версии изменений с {} по {}", firstVersion, lastVersion);
+    }
+
+    /**
+     * Метод выделяет диапазон версий. Строка счётчика остаётся заблокированной до конца транзакции
+     *
+     * @param count количество версий
+     * @return последняя версия диапазона
+     */
+    private long allocate(int count) {
+        Long result = jdbcTemplate.queryForObject(ALLOCATE_VERSIONS_QUERY,
+                new MapSqlParameterSource("count", count), Long.class);
+        if (result == null) {
+            throw new IllegalStateException("Счётчик версий изменений каталога не инициализирован");
+        }
+        return result;
+    }
+
+    private List<Long> findFilmIds(String query, MapSqlParameterSource parameterSource) {
+        return jdbcTemplate.queryForList(query, parameterSource, Long.class);
+    }
+}
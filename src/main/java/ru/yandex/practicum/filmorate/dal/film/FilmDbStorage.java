@@ -3,19 +3,37 @@ package ru.yandex.practicum.filmorate.dal.film;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.dal.BaseDbStorage;
-import ru.yandex.practicum.filmorate.dal.director.DirectorStorage;
-import ru.yandex.practicum.filmorate.dal.genre.GenreStorage;
-import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.dal.StorageChange.EntitiesDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.Entity;
+import ru.yandex.practicum.filmorate.dal.StorageChange.FilmDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.FilmDirectorChanged;
+import ru.yandex.practicum.filmorate.dal.StorageChange.FilmGenreChanged;
+import ru.yandex.practicum.filmorate.dal.StorageChange.FilmRatingRemoved;
+import ru.yandex.practicum.filmorate.dal.StorageChange.FilmSaved;
+import ru.yandex.practicum.filmorate.dal.StorageChange.LikeChanged;
+import ru.yandex.practicum.filmorate.dal.StorageChange.LikesAdded;
+import ru.yandex.practicum.filmorate.dal.StorageChange.LikesRemoved;
+import ru.yandex.practicum.filmorate.dal.StorageChange.StatsRefreshed;
+import ru.yandex.practicum.filmorate.dal.StorageChanges;
 import ru.yandex.practicum.filmorate.model.Film;
-import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.FilmChange;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.RatingHistogram;
+import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.util.RequestIdentityMap;
 
 @Slf4j
 @Component
@@ -31,37 +49,29 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
                    f.RELEASE_DATE,
                    f.DURATION,
                    f.RATING_ID,
-                   r.FULL_NAME as rating_name
+                   r.FULL_NAME as rating_name,
+                   NVL(fs.RATE, 0) AS rate
               FROM FILMS f
               LEFT JOIN RATINGS r ON f.RATING_ID = r.ID
+              LEFT JOIN FILM_STATS fs ON fs.FILM_ID = f.ID
              ORDER BY f.ID
              LIMIT :size
             OFFSET :from
             """;
-    private static final String GET_COMMON_FILMS_QUERY = """
-            SELECT f.ID,
-                   f.FULL_NAME,
-                   f.DESCRIPTION,
-                   f.RELEASE_DATE,
-                   f.DURATION,
-                   f.RATING_ID,
-                   r.FULL_NAME AS rating_name
-              FROM USERS_FILMS uf
-             INNER JOIN FILMS f ON uf.FILM_ID = f.ID
-              LEFT JOIN RATINGS r ON f.RATING_ID = r.ID
-             WHERE  uf.USER_ID = :userId
-            INTERSECT
+    private static final String GET_FILMS_BY_IDS_QUERY = """
             SELECT f.ID,
                    f.FULL_NAME,
                    f.DESCRIPTION,
                    f.RELEASE_DATE,
                    f.DURATION,
                    f.RATING_ID,
-                   r.FULL_NAME AS rating_name
-              FROM USERS_FILMS uf
-             INNER JOIN FILMS f ON uf.FILM_ID = f.ID
+                   r.FULL_NAME AS rating_name,
+                   NVL(fs.RATE, 0) AS rate
+              FROM FILMS f
               LEFT JOIN RATINGS r ON f.RATING_ID = r.ID
-             WHERE uf.USER_ID = :friendId
+              LEFT JOIN FILM_STATS fs ON fs.FILM_ID = f.ID
+             WHERE f.ID IN (:filmIds)
+             ORDER BY f.ID
             """;
     private static final String GET_POPULAR_FILMS_QUERY = """
             SELECT f.ID,
@@ -71,17 +81,17 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
                    f.DURATION,
                    f.RATING_ID,
                    r.FULL_NAME AS rating_name,
-                   COUNT(uf.USER_ID) AS likes,
-                   NVL(AVG(uf.MARK), 0) AS rate
-              FROM FILMS f
-              LEFT JOIN USERS_FILMS uf ON f.ID = uf.FILM_ID
+                   fs.LIKES_COUNT AS likes,
+                   fs.RATE AS rate
+              FROM FILM_STATS fs
+             INNER JOIN FILMS f ON f.ID = fs.FILM_ID
               LEFT JOIN RATINGS r ON f.RATING_ID = r.ID
-              LEFT JOIN FILMS_GENRES fg ON f.ID = fg.FILM_ID
-             WHERE (fg.GENRE_ID = :genreId OR :genreId IS NULL)
+             WHERE (:genreId IS NULL OR EXISTS (SELECT 1
+                                                  FROM FILMS_GENRES fg
+                                                 WHERE fg.FILM_ID = f.ID
+                                                   AND fg.GENRE_ID = :genreId))
                AND (YEAR(f.RELEASE_DATE) = :year OR :year IS NULL)
-             GROUP BY f.ID,
-                      r.ID
-             ORDER BY rate DESC, likes DESC, f.ID ASC
+             ORDER BY fs.RATE DESC, fs.LIKES_COUNT DESC, fs.FILM_ID ASC
              LIMIT :count
             """;
     private static final String GET_FILMS_WITH_LIKE_QUERY = """
@@ -92,10 +102,11 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
                    f.DURATION,
                    f.RATING_ID,
                    r.FULL_NAME AS rating_name,
-                   NVL(COUNT(uf.USER_ID), 0) AS likes
+                   NVL(fs.LIKES_COUNT, 0) AS likes,
+                   NVL(fs.RATE, 0) AS rate
               FROM FILMS f
              INNER JOIN RATINGS r ON f.RATING_ID = r.ID
-              LEFT JOIN USERS_FILMS uf ON f.ID = uf.FILM_ID
+              LEFT JOIN FILM_STATS fs ON fs.FILM_ID = f.ID
               LEFT JOIN FILMS_DIRECTORS fd ON f.ID = fd.FILM_ID
               LEFT JOIN DIRECTORS d ON fd.DIRECTOR_ID = d.ID
             """;
@@ -106,10 +117,12 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
                    f.RELEASE_DATE,
                    f.DURATION,
                    f.RATING_ID,
-                   r.FULL_NAME as rating_name
+                   r.FULL_NAME as rating_name,
+                   NVL(fs.RATE, 0) AS rate
               FROM FILMS_GENRES fg
              INNER JOIN RATINGS r ON f.RATING_ID = r.ID
              INNER JOIN FILMS f ON fg.FILM_ID = f.ID
+              LEFT JOIN FILM_STATS fs ON fs.FILM_ID = f.ID
              WHERE fg.GENRE_ID = :genreId
              ORDER BY f.ID
             """;
@@ -120,10 +133,12 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
                    f.DURATION,
                    f.RELEASE_DATE,
                    f.RATING_ID,
-                   r.FULL_NAME AS rating_name
+                   r.FULL_NAME AS rating_name,
+                   NVL(fs.RATE, 0) AS rate
               FROM FILMS f
              INNER JOIN RATINGS r
                 ON f.RATING_ID = r.ID
+              LEFT JOIN FILM_STATS fs ON fs.FILM_ID = f.ID
              WHERE r.ID = :ratingId
             """;
     private static final String GET_FILMS_BY_DIRECTOR_ID = """
@@ -134,15 +149,20 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
                    f.DURATION,
                    f.RATING_ID,
                    r.FULL_NAME AS rating_name,
-                   AVG(uf.MARK) AS rate
-              FROM FILMS f
-             INNER JOIN FILMS_DIRECTORS fd ON f.ID = fd.FILM_ID
-             INNER JOIN DIRECTORS d ON d.ID = fd.DIRECTOR_ID
+                   NVL(fs.RATE, 0) AS rate
+              FROM FILMS_DIRECTORS fd
+             INNER JOIN FILMS f ON f.ID = fd.FILM_ID
               LEFT JOIN RATINGS r ON f.RATING_ID = r.ID
-              LEFT JOIN USERS_FILMS uf ON f.ID = uf.FILM_ID
-             WHERE d.ID = :directorId
-             GROUP BY f.ID,
-                      r.ID
+              LEFT JOIN FILM_STATS fs ON fs.FILM_ID = f.ID
+             WHERE fd.DIRECTOR_ID = :directorId
+            """;
+    private static final String GET_FILM_IDS_BY_RATE_QUERY = """
+            SELECT fs.FILM_ID AS id
+              FROM FILM_STATS fs
+             WHERE fs.FILM_ID IN (:filmIds)
+             ORDER BY fs.RATE DESC, fs.LIKES_COUNT DESC, fs.FILM_ID ASC
+             LIMIT :size
+            OFFSET :from
             """;
     private static final String GET_RECOMMENDED_FILMS_QUERY = """
             SELECT f.ID,
@@ -152,14 +172,14 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
                    f.DURATION,
                    f.RATING_ID,
                    r.FULL_NAME as rating_name,
-                   COUNT(uf4.USER_ID) AS likes,
-                   NVL(AVG(uf4.MARK), 0) AS rate
+                   fs.LIKES_COUNT AS likes,
+                   fs.RATE AS rate
               FROM USERS_FILMS uf1
               INNER JOIN USERS_FILMS uf2 ON uf1.FILM_ID = uf2.FILM_ID
               INNER JOIN USERS_FILMS uf3 ON uf2.USER_ID = uf3.USER_ID
               INNER JOIN FILMS f ON uf3.FILM_ID = f.ID
+              INNER JOIN FILM_STATS fs ON fs.FILM_ID = f.ID
                LEFT JOIN RATINGS r ON f.RATING_ID = r.ID
-               LEFT JOIN USERS_FILMS uf4 ON f.ID = uf4.FILM_ID
              WHERE uf1.USER_ID = :userId
                 --
                AND (((uf1.MARK >= :minNegativeRate AND uf1.MARK <= :maxNegativeRate) AND (uf2.MARK >= :minNegativeRate AND uf2.MARK <= :maxNegativeRate))
@@ -171,9 +191,10 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
                 OR  ((uf2.MARK > :maxNegativeRate AND uf2.MARK <= :maxPositiveRate) AND (uf3.MARK > :maxNegativeRate AND uf3.MARK <= :maxPositiveRate))
                 OR  (uf2.MARK IS NULL AND uf3.MARK IS NULL))
                AND uf3.FILM_ID NOT IN (SELECT uf.FILM_ID FROM USERS_FILMS uf WHERE uf.USER_ID = uf1.USER_ID)
+               AND (fs.RATE > :maxNegativeRate OR fs.MARK_COUNT = 0)
              GROUP BY f.ID,
-                      r.ID
-            HAVING (AVG(uf4.MARK) > :maxNegativeRate OR uf4.MARK IS NULL)
+                      r.ID,
+                      fs.FILM_ID
              ORDER BY rate DESC
             """;
     private static final String GET_FILM_BY_ID_QUERY = """
@@ -183,11 +204,35 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
                    f.RELEASE_DATE,
                    f.DURATION,
                    f.RATING_ID,
-                   r.FULL_NAME as rating_name
+                   r.FULL_NAME as rating_name,
+                   NVL(fs.RATE, 0) AS rate
               FROM FILMS f
               LEFT JOIN RATINGS r ON f.RATING_ID = r.ID
+              LEFT JOIN FILM_STATS fs ON fs.FILM_ID = f.ID
              WHERE f.ID = :filmId
             """;
+    private static final String GET_CHANGES_QUERY = """
+            SELECT c.FILM_ID,
+                   c.CHANGE_VERSION,
+                   c.DELETED
+              FROM ((SELECT f.ID AS FILM_ID,
+                            f.CHANGE_VERSION,
+                            FALSE AS DELETED
+                       FROM FILMS f
+                      WHERE f.CHANGE_VERSION > :sinceVersion
+                      ORDER BY f.CHANGE_VERSION
+                      LIMIT :limit)
+                    UNION ALL
+                    (SELECT ft.FILM_ID,
+                            ft.CHANGE_VERSION,
+                            TRUE AS DELETED
+                       FROM FILM_TOMBSTONES ft
+                      WHERE ft.CHANGE_VERSION > :sinceVersion
+                      ORDER BY ft.CHANGE_VERSION
+                      LIMIT :limit)) c
+             ORDER BY c.CHANGE_VERSION
+             LIMIT :limit
+            """;
     private static final String INSERT_FILM_QUERY = """
             INSERT INTO FILMS(FULL_NAME, DESCRIPTION, RELEASE_DATE, DURATION, RATING_ID)
             VALUES (:filmName, :filmDescription, :filmReleaseDate, :filmDuration, :ratingId)
@@ -201,35 +246,130 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
                    RATING_ID = :ratingId
              WHERE ID = :filmId
             """;
-    private static final String GET_LIKE_ID_QUERY = """
-            SELECT 1 AS ID
+    private static final String MERGE_LIKE_QUERY = """
+            MERGE INTO USERS_FILMS uf
+            USING (VALUES (CAST(:filmId AS INTEGER), CAST(:userId AS INTEGER), CAST(:mark AS REAL)))
+                  s(FILM_ID, USER_ID, MARK)
+               ON uf.FILM_ID = s.FILM_ID
+              AND uf.USER_ID = s.USER_ID
+             WHEN MATCHED AND uf.MARK IS DISTINCT FROM s.MARK THEN
+                  UPDATE SET MARK = s.MARK
+             WHEN NOT MATCHED THEN
+                  INSERT (FILM_ID, USER_ID, MARK) VALUES (s.FILM_ID, s.USER_ID, s.MARK)
+            """;
+    private static final String MERGE_GENRE_TO_FILM_QUERY = """
+            MERGE INTO FILMS_GENRES fg
+            USING (VALUES (CAST(:filmId AS INTEGER), CAST(:genreId AS INTEGER))) s(FILM_ID, GENRE_ID)
+               ON fg.FILM_ID = s.FILM_ID
+              AND fg.GENRE_ID = s.GENRE_ID
+             WHEN NOT MATCHED THEN
+                  INSERT (FILM_ID, GENRE_ID) VALUES (s.FILM_ID, s.GENRE_ID)
+            """;
+    private static final String MERGE_DIRECTOR_TO_FILM_QUERY = """
+            MERGE INTO FILMS_DIRECTORS fd
+            USING (VALUES (CAST(:filmId AS INTEGER), CAST(:directorId AS INTEGER))) s(FILM_ID, DIRECTOR_ID)
+               ON fd.FILM_ID = s.FILM_ID
+              AND fd.DIRECTOR_ID = s.DIRECTOR_ID
+             WHEN NOT MATCHED THEN
+                  INSERT (FILM_ID, DIRECTOR_ID) VALUES (s.FILM_ID, s.DIRECTOR_ID)
+            """;
+    private static final String INSERT_FILM_STATS_QUERY = """
+            INSERT INTO FILM_STATS (FILM_ID)
+            VALUES (:filmId)
+            """;
+    private static final String LOCK_FILM_STATS_QUERY = """
+            SELECT fs.FILM_ID AS id
+              FROM FILM_STATS fs
+             WHERE fs.FILM_ID IN (:filmIds)
+             ORDER BY fs.FILM_ID
+               FOR UPDATE
+            """;
+    private static final String GET_LIKE_QUERY = """
+            SELECT uf.FILM_ID,
+                   uf.USER_ID,
+                   uf.MARK
               FROM USERS_FILMS uf
              WHERE uf.FILM_ID = :filmId
                AND uf.USER_ID = :userId
             """;
-    private static final String GET_GENRE_AND_FILM_LINK_QUERY = """
-            SELECT 1 AS ID
-              FROM FILMS_GENRES fg
-             WHERE fg.FILM_ID = :filmId
-               AND fg.GENRE_ID = :genreId
+    private static final String UPDATE_FILM_STATS_QUERY = """
+            UPDATE FILM_STATS
+               SET LIKES_COUNT = LIKES_COUNT + :likesDelta,
+                   MARK_SUM = MARK_SUM + :markSumDelta,
+                   MARK_COUNT = MARK_COUNT + :markCountDelta
+             WHERE FILM_ID = :filmId
             """;
-    private static final String GET_DIRECTOR_AND_FILM_LINK_QUERY = """
-            SELECT 1 AS ID
-              FROM FILMS_DIRECTORS fd
-             WHERE fd.FILM_ID = :filmId
-               AND fd.DIRECTOR_ID = :directorId
+    private static final String REFRESH_FILM_STATS_QUERY = """
+            MERGE INTO FILM_STATS fs
+            USING (SELECT f.ID AS FILM_ID,
+                          COUNT(uf.USER_ID) AS LIKES_COUNT,
+                          NVL(SUM(uf.MARK), 0) AS MARK_SUM,
+                          COUNT(uf.MARK) AS MARK_COUNT
+                     FROM FILMS f
+                     LEFT JOIN USERS_FILMS uf ON uf.FILM_ID = f.ID
+                    WHERE f.ID IN (:filmIds)
+                    GROUP BY f.ID) s
+               ON fs.FILM_ID = s.FILM_ID
+             WHEN MATCHED AND (fs.LIKES_COUNT <> s.LIKES_COUNT
+                           OR fs.MARK_SUM <> s.MARK_SUM
+                           OR fs.MARK_COUNT <> s.MARK_COUNT) THEN
+                  UPDATE SET LIKES_COUNT = s.LIKES_COUNT,
+                             MARK_SUM = s.MARK_SUM,
+                             MARK_COUNT = s.MARK_COUNT
+             WHEN NOT MATCHED THEN
+                  INSERT (FILM_ID, LIKES_COUNT, MARK_SUM, MARK_COUNT)
+                  VALUES (s.FILM_ID, s.LIKES_COUNT, s.MARK_SUM, s.MARK_COUNT)
             """;
-    private static final String INSERT_LIKE_QUERY = """
-            INSERT INTO USERS_FILMS (FILM_ID, USER_ID, MARK)
-            VALUES (:filmId, :userId, :mark)
+    private static final String UPDATE_DIRECTOR_STATS_QUERY = """
+            UPDATE DIRECTOR_STATS ds
+               SET LIKES_COUNT = ds.LIKES_COUNT + :likesDelta,
+                   MARK_SUM = ds.MARK_SUM + :markSumDelta,
+                   MARK_COUNT = ds.MARK_COUNT + :markCountDelta
+             WHERE ds.DIRECTOR_ID IN (SELECT fd.DIRECTOR_ID
+                                        FROM FILMS_DIRECTORS fd
+                                       WHERE fd.FILM_ID = :filmId)
             """;
-    private static final String INSERT_GENRE_TO_FILM_QUERY = """
-            INSERT INTO FILMS_GENRES (FILM_ID, GENRE_ID)
-            VALUES (:filmId, :genreId)
+    private static final String APPLY_FILMS_TO_DIRECTOR_STATS_TEMPLATE = """
+            MERGE INTO DIRECTOR_STATS ds
+            USING (SELECT fd.DIRECTOR_ID,
+                          COUNT(*) AS FILMS_COUNT,
+                          NVL(SUM(fs.LIKES_COUNT), 0) AS LIKES_COUNT,
+                          NVL(SUM(fs.MARK_SUM), 0) AS MARK_SUM,
+                          NVL(SUM(fs.MARK_COUNT), 0) AS MARK_COUNT
+                     FROM FILMS_DIRECTORS fd
+                     LEFT JOIN FILM_STATS fs ON fs.FILM_ID = fd.FILM_ID
+                    WHERE %s
+                    GROUP BY fd.DIRECTOR_ID
+                    ORDER BY fd.DIRECTOR_ID) s
+               ON ds.DIRECTOR_ID = s.DIRECTOR_ID
+             WHEN MATCHED THEN
+                  UPDATE SET FILMS_COUNT = ds.FILMS_COUNT + :sign * s.FILMS_COUNT,
+                             LIKES_COUNT = ds.LIKES_COUNT + :sign * s.LIKES_COUNT,
+                             MARK_SUM = ds.MARK_SUM + :sign * s.MARK_SUM,
+                             MARK_COUNT = ds.MARK_COUNT + :sign * s.MARK_COUNT
             """;
-    private static final String INSERT_DIRECTOR_TO_FILM_QUERY = """
-            INSERT INTO FILMS_DIRECTORS(FILM_ID, DIRECTOR_ID)
-            VALUES (:filmId, :directorId)
+    private static final String APPLY_FILMS_TO_DIRECTOR_STATS_QUERY =
+            APPLY_FILMS_TO_DIRECTOR_STATS_TEMPLATE.formatted("fd.FILM_ID IN (:filmIds)");
+    private static final String APPLY_FILM_TO_DIRECTOR_STATS_QUERY =
+            APPLY_FILMS_TO_DIRECTOR_STATS_TEMPLATE.formatted("fd.FILM_ID = :filmId AND fd.DIRECTOR_ID = :directorId");
+    private static final String RESET_DIRECTOR_STATS_QUERY = """
+            UPDATE DIRECTOR_STATS
+               SET FILMS_COUNT = 0,
+                   LIKES_COUNT = 0,
+                   MARK_SUM = 0,
+                   MARK_COUNT = 0
+            """;
+    private static final String FIND_STALE_FILM_STATS_QUERY = """
+            SELECT f.ID AS id
+              FROM FILMS f
+              LEFT JOIN FILM_STATS fs ON fs.FILM_ID = f.ID
+              LEFT JOIN USERS_FILMS uf ON uf.FILM_ID = f.ID
+             GROUP BY f.ID,
+                      fs.FILM_ID
+            HAVING fs.FILM_ID IS NULL
+                OR MAX(fs.LIKES_COUNT) <> COUNT(uf.USER_ID)
+                OR MAX(fs.MARK_SUM) <> NVL(SUM(uf.MARK), 0)
+                OR MAX(fs.MARK_COUNT) <> COUNT(uf.MARK)
             """;
     private static final String DELETE_LIKE_QUERY = """
             DELETE FROM USERS_FILMS
@@ -246,6 +386,14 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
              WHERE fg.FILM_ID = :filmId
                AND fg.DIRECTOR_ID = :directorId
             """;
+    private static final String DELETE_GENRES_ON_FILM_QUERY = """
+            DELETE FROM FILMS_GENRES fg
+             WHERE fg.FILM_ID = :filmId
+            """;
+    private static final String DELETE_DIRECTORS_ON_FILM_QUERY = """
+            DELETE FROM FILMS_DIRECTORS fd
+             WHERE fd.FILM_ID = :filmId
+            """;
     private static final String REMOVE_RATING_FROM_FILM_QUERY = """
             UPDATE FILMS
                SET RATING_ID = null
@@ -258,16 +406,38 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
     private static final String DELETE_ALL_FILMS_QUERY = """
             DELETE FROM FILMS
             """;
+    private static final String GET_FLUSHED_LIKE_SEGMENT_QUERY = """
+            SELECT ljo.LAST_SEGMENT
+              FROM LIKE_JOURNAL_OFFSETS ljo
+             WHERE ljo.JOURNAL = :journal
+            """;
+    private static final String MERGE_FLUSHED_LIKE_SEGMENT_QUERY = """
+            MERGE INTO LIKE_JOURNAL_OFFSETS ljo
+            USING (VALUES (CAST(:journal AS CHARACTER VARYING), CAST(:segment AS BIGINT))) s(JOURNAL, LAST_SEGMENT)
+               ON ljo.JOURNAL = s.JOURNAL
+             WHEN MATCHED THEN
+                  UPDATE SET LAST_SEGMENT = s.LAST_SEGMENT
+             WHEN NOT MATCHED THEN
+                  INSERT (JOURNAL, LAST_SEGMENT) VALUES (s.JOURNAL, s.LAST_SEGMENT)
+            """;
 
-    private final GenreStorage genreStorage;
-    private final DirectorStorage directorStorage;
+    private final FilmLikesIndex filmLikesIndex;
+    private final PopularFilmsCube popularFilmsCube;
+    private final FilmRatingHistogram filmRatingHistogram;
+    private final StorageChanges storageChanges;
+    private final FilmChangeVersions filmChangeVersions;
 
     @Autowired
     public FilmDbStorage(NamedParameterJdbcTemplate jdbcTemplate, FilmRowMapper filmRowMapper,
-                         GenreStorage genreStorage, DirectorStorage directorStorage) {
+                         FilmLikesIndex filmLikesIndex, PopularFilmsCube popularFilmsCube,
+                         FilmRatingHistogram filmRatingHistogram, StorageChanges storageChanges,
+                         FilmChangeVersions filmChangeVersions) {
         super(jdbcTemplate, filmRowMapper);
-        this.genreStorage = genreStorage;
-        this.directorStorage = directorStorage;
+        this.filmLikesIndex = filmLikesIndex;
+        this.popularFilmsCube = popularFilmsCube;
+        this.filmRatingHistogram = filmRatingHistogram;
+        this.storageChanges = storageChanges;
+        this.filmChangeVersions = filmChangeVersions;
     }
 
     @Override
@@ -290,23 +460,94 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
     }
 
     @Override
-    public Collection<Film> findCommon(Long userId, Long friendId) {
+    public Collection<Film> findCommon(Collection<Long> userIds) {
         log.debug("Запрос общих фильмов на уровне хранилища");
-        log.debug("Идентификатор первого пользователя: {}", userId);
-        log.debug("Идентификатора второго пользователя: {}", friendId);
+        log.debug("Идентификаторы пользователей: {}", userIds);
 
-        // Составляем набор параметров
-        MapSqlParameterSource parameterSource = new MapSqlParameterSource().addValue("userId", userId)
-                .addValue("friendId", friendId);
+        // Пересекаем множества лайков пользователей в индексе
+        List<Long> filmIds = filmLikesIndex.findCommon(userIds);
+        log.debug("В индексе лайков найдено {} общих фильмов", filmIds.size());
 
-        // Получаем коллекцию общих фильмов
-        Collection<Film> result = findMany(GET_COMMON_FILMS_QUERY, parameterSource);
+        // Загружаем найденные фильмы одним запросом
+        Collection<Film> result = findByIds(filmIds);
         log.debug("Получено коллекцию общих фильмов размером {}", result.size());
 
         // Возвращаем результат
         return result;
     }
 
+    @Override
+    public Collection<Film> findByIds(Collection<Long> filmIds) {
+        log.debug("Запрос фильмов по коллекции идентификаторов размером {}", filmIds.size());
+
+        if (filmIds.isEmpty()) {
+            return List.of();
+        }
+
+        // Составляем набор параметров
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource().addValue("filmIds", filmIds);
+
+        // Возвращаем результат
+        return findMany(GET_FILMS_BY_IDS_QUERY, parameterSource);
+    }
+
+    @Override
+    public Collection<Long> findIdsByRate(Collection<Long> filmIds, Integer size, Integer from) {
+        log.debug("Упорядочивание {} фильмов по средней оценке", filmIds.size());
+
+        if (filmIds.isEmpty()) {
+            return List.of();
+        }
+
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("filmIds", filmIds)
+                .addValue("size", size, Types.INTEGER)
+                .addValue("from", from, Types.INTEGER);
+
+        Collection<Long> result = findIds(GET_FILM_IDS_BY_RATE_QUERY, parameterSource);
+        log.debug("Получена страница из {} фильмов", result.size());
+
+        return result;
+    }
+
+    @Override
+    public RatingHistogram findRatingHistogram(Long filmId) {
+        log.debug("Запрос гистограммы оценок фильма с id {}", filmId);
+
+        int[] counts = filmRatingHistogram.find(filmId);
+        Map<Integer, Integer> markCounts = new LinkedHashMap<>();
+        for (int mark = 1; mark <= FilmRatingHistogram.MAX_MARK; mark++) {
+            markCounts.put(mark, counts[mark]);
+        }
+
+        log.debug("Возврат гистограммы оценок на уровень сервиса");
+        return RatingHistogram.builder()
+                .filmId(filmId)
+                .unratedCount(counts[0])
+                .markCounts(markCounts)
+                .build();
+    }
+
+    @Override
+    public List<FilmChange> findChanges(Long sinceVersion, Integer limit) {
+        log.debug("Запрос изменений каталога после версии {}", sinceVersion);
+
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("sinceVersion", sinceVersion, Types.BIGINT)
+                .addValue("limit", limit, Types.INTEGER);
+
+        List<FilmChange> result = execute(() -> jdbcTemplate.query(GET_CHANGES_QUERY, parameterSource,
+                (rs, rowNum) -> FilmChange.builder()
+                        .filmId(rs.getLong("FILM_ID"))
+                        .version(rs.getLong("CHANGE_VERSION"))
+                        .deleted(rs.getBoolean("DELETED"))
+                        .build()));
+        log.debug("Найдено {} изменений каталога", result.size());
+
+        log.debug("Возврат изменений каталога на уровень сервиса");
+        return result;
+    }
+
     @Override
     public Collection<Film> findPopular(Integer count, Long genreId, Integer year) {
         log.debug("Запрос топ фильмов на уровне хранилища");
@@ -314,6 +555,18 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
         log.debug("Идентификатор жанра: {}", genreId == null ? "null" : genreId);
         log.debug("Год релиза: {}", year == null ? "null" : year);
 
+        // Изменения текущей транзакции попадут в предрассчитанные списки только после её фиксации
+        Optional<List<Long>> filmIds = storageChanges.isChangedInTransaction() ? Optional.empty()
+                : popularFilmsCube.findTop(genreId, year, count);
+        if (filmIds.isPresent()) {
+            Map<Long, Film> films = findByIds(filmIds.get()).stream()
+                    .collect(Collectors.toMap(Film::getId, Function.identity()));
+            // Фильм мог удалиться после построения списков
+            List<Film> result = filmIds.get().stream().map(films::get).filter(Objects::nonNull).toList();
+            log.debug("Из предрассчитанных списков получена коллекция размером {}", result.size());
+            return result;
+        }
+
         // Составляем набор параметров
         MapSqlParameterSource parameterSource = new MapSqlParameterSource()
                 .addValue("genreId", genreId, Types.BIGINT)
@@ -367,7 +620,7 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
 
         // Добавляем группировку
         stringBuilder.append(
-                "\n GROUP BY f.ID, r.ID");
+                "\n GROUP BY f.ID, r.ID, fs.FILM_ID");
 
         // Заканчиваем строку запроса сортировкой
         stringBuilder.append("\n ORDER BY likes DESC");
@@ -430,7 +683,9 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
         MapSqlParameterSource parameterSource = new MapSqlParameterSource()
                 .addValue("directorId", directorId);
 
-        Collection<Film> result = findMany(GET_FILMS_BY_DIRECTOR_ID + "\n ORDER BY " + orderBy, parameterSource);
+        // Фильмы режиссера выбираются по индексу связей, идентификатор фильма делает порядок однозначным
+        Collection<Film> result = findMany(GET_FILMS_BY_DIRECTOR_ID + "\n ORDER BY " + orderBy + ", f.ID",
+                parameterSource);
         log.debug("Получена коллекция фильмов по режиссеру размером {}", result.size());
 
         log.debug("Возврат результатов поиска по режиссеру на уровень сервиса");
@@ -463,7 +718,8 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
         MapSqlParameterSource parameterSource = new MapSqlParameterSource()
                 .addValue("filmId", filmId);
 
-        Optional<Film> searchResult = findOne(GET_FILM_BY_ID_QUERY, parameterSource);
+        Optional<Film> searchResult = RequestIdentityMap.find(Film.class, filmId,
+                () -> findOne(GET_FILM_BY_ID_QUERY, parameterSource));
         if (searchResult.isPresent()) {
             Film result = searchResult.get();
 
@@ -497,9 +753,16 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
         }
 
         film.setId(id);
+        RequestIdentityMap.evict(Film.class, id);
         log.debug("Значение id присвоено фильму");
 
+        insertWithOutReturnId(INSERT_FILM_STATS_QUERY, new MapSqlParameterSource()
+                .addValue("filmId", id, Types.BIGINT));
+        log.debug("Созданы счётчики лайков фильма");
+
         propagateModel(film);
+        filmChangeVersions.touch(List.of(id));
+        storageChanges.publish(new FilmSaved(film, true));
 
         log.debug("Возврат результатов создания на уровень сервиса");
         return film;
@@ -520,6 +783,7 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
                 .addValue("filmId", newFilm.getId());
 
         long updatedRows = update(UPDATE_FILM_QUERY, parameterSource);
+        RequestIdentityMap.evict(Film.class, newFilm.getId());
 
         if (updatedRows == 0) {
             throw new RuntimeException("Не удалось обновить фильм с id " + newFilm.getId());
@@ -528,12 +792,31 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
         }
 
         propagateModel(newFilm);
+        filmChangeVersions.touch(List.of(newFilm.getId()));
+        storageChanges.publish(new FilmSaved(newFilm, false));
 
         log.debug("Возврат результатов изменения на уровень сервиса");
     }
 
     @Override
-    public void addLike(Long filmId, Long userId, Double mark) {
+    public Optional<Like> findLike(Long filmId, Long userId) {
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("filmId", filmId, Types.BIGINT)
+                .addValue("userId", userId, Types.BIGINT);
+
+        return execute(() -> jdbcTemplate.query(GET_LIKE_QUERY, parameterSource, (rs, rowNum) -> {
+            double mark = rs.getDouble("MARK");
+            Double nullableMark = rs.wasNull() ? null : mark;
+            return Like.builder()
+                    .filmId(rs.getLong("FILM_ID"))
+                    .userId(rs.getLong("USER_ID"))
+                    .mark(nullableMark)
+                    .build();
+        })).stream().findFirst();
+    }
+
+    @Override
+    public boolean addLike(Long filmId, Long userId, Double mark) {
         log.debug("Добавление лайка на уровне хранилища");
         log.debug("Идентификатор фильма: {}", filmId);
         log.debug("Идентификатор пользователя: {}", userId);
@@ -542,30 +825,32 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
         // Составляем набор параметров
         MapSqlParameterSource parameterSource = new MapSqlParameterSource()
                 .addValue("filmId", filmId, Types.BIGINT)
-                .addValue("userId", userId, Types.BIGINT);
-
-        if (!exists(GET_LIKE_ID_QUERY, parameterSource)) {
-            log.debug("Лайк будет добавлен в БД");
-
-            parameterSource.addValue("mark", mark, Types.REAL);
-
-            boolean isInserted = insertWithOutReturnId(INSERT_LIKE_QUERY, parameterSource);
-            if (!isInserted) {
-                throw new RuntimeException(
-                        "Не удалось сохранить оценку " + mark + " от пользователя с id " + userId + " фильму с id "
-                                + filmId);
-            } else {
-                log.debug("Фильму с id {} добавлен лайк от пользователя с id {}", filmId, userId);
-            }
+                .addValue("userId", userId, Types.BIGINT)
+                .addValue("mark", mark, Types.REAL);
+
+        // Блокируем счётчики фильма, чтобы прежняя оценка не изменилась до пересчёта
+        lockStats(List.of(filmId));
+        Like before = findLike(filmId, userId).orElse(null);
+
+        // Вставляем лайк или обновляем оценку одним запросом
+        boolean isChanged = upsert(MERGE_LIKE_QUERY, parameterSource);
+        if (isChanged) {
+            RequestIdentityMap.evict(Film.class, filmId);
+            Like after = Like.builder().filmId(filmId).userId(userId).mark(mark).build();
+            LikeChanged change = new LikeChanged(filmId, userId, before, after, System.currentTimeMillis());
+            updateStats(change);
+            storageChanges.publish(change);
+            log.debug("Фильму с id {} добавлен лайк от пользователя с id {}", filmId, userId);
         } else {
-            log.debug("Лайк не будет добавлен в БД, т.к. уже существует");
+            log.debug("Лайк не изменён, т.к. уже существует с той же оценкой");
         }
 
         log.debug("Возврат результата добавления лайка на уровень сервиса");
+        return isChanged;
     }
 
     @Override
-    public void removeLike(Long filmId, Long userId) {
+    public boolean removeLike(Long filmId, Long userId) {
         log.debug("Удаление лайка на уровне хранилища");
         log.debug("Идентификатор  фильма: {}", filmId);
         log.debug("Идентификатор  пользователя: {}", userId);
@@ -575,30 +860,120 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
                 .addValue("filmId", filmId)
                 .addValue("userId", userId);
 
-        if (exists(GET_LIKE_ID_QUERY, parameterSource)) {
-            log.debug("Лайк будет удалён из БД");
-
-            parameterSource = new MapSqlParameterSource()
-                    .addValue("filmId", filmId)
-                    .addValue("userId", userId);
-
-            long deletedRows = deleteOne(DELETE_LIKE_QUERY, parameterSource);
-
-            if (deletedRows == 0) {
-                throw new RuntimeException(
-                        "Не удалось удалить лайк от пользователя с id " + userId + " с фильма с id " + filmId);
-            }
+        lockStats(List.of(filmId));
+        Optional<Like> before = findLike(filmId, userId);
 
+        boolean isDeleted = before.isPresent() && deleteOne(DELETE_LIKE_QUERY, parameterSource) > 0;
+        if (isDeleted) {
+            RequestIdentityMap.evict(Film.class, filmId);
+            LikeChanged change = new LikeChanged(filmId, userId, before.get(), null, System.currentTimeMillis());
+            updateStats(change);
+            storageChanges.publish(change);
             log.debug("Лайк от пользователя с id {} снят с фильма с id {}", userId, filmId);
         } else {
-            log.debug("Лайк не будет удалён из БД, так как не существует");
+            log.debug("Лайк не удалён из БД, так как не существует");
         }
 
         log.debug("Возврат результата удаления лайка на уровень сервиса");
+        return isDeleted;
+    }
+
+    @Override
+    public void addLikes(Collection<Like> likes) {
+        log.debug("Пакетное добавление лайков на уровне хранилища");
+        if (likes.isEmpty()) {
+            return;
+        }
+
+        MapSqlParameterSource[] batchParams = likes.stream()
+                .map(like -> new MapSqlParameterSource()
+                        .addValue("filmId", like.getFilmId(), Types.BIGINT)
+                        .addValue("userId", like.getUserId(), Types.BIGINT)
+                        .addValue("mark", like.getMark(), Types.REAL))
+                .toArray(MapSqlParameterSource[]::new);
+        Collection<Long> filmIds = likes.stream().map(Like::getFilmId).distinct().toList();
+        lockStats(filmIds);
+        long changedRows = batchUpdate(MERGE_LIKE_QUERY, batchParams);
+        refreshStats(filmIds);
+        storageChanges.publish(new LikesAdded(likes));
+
+        log.debug("Добавлено или изменено лайков: {}", changedRows);
+    }
+
+    @Override
+    public void removeLikes(Collection<Like> likes) {
+        log.debug("Пакетное удаление лайков на уровне хранилища");
+        if (likes.isEmpty()) {
+            return;
+        }
+
+        MapSqlParameterSource[] batchParams = likes.stream()
+                .map(like -> new MapSqlParameterSource()
+                        .addValue("filmId", like.getFilmId(), Types.BIGINT)
+                        .addValue("userId", like.getUserId(), Types.BIGINT))
+                .toArray(MapSqlParameterSource[]::new);
+        Collection<Long> filmIds = likes.stream().map(Like::getFilmId).distinct().toList();
+        lockStats(filmIds);
+        long deletedRows = batchUpdate(DELETE_LIKE_QUERY, batchParams);
+        refreshStats(filmIds);
+        storageChanges.publish(new LikesRemoved(likes));
+
+        log.debug("Удалено лайков: {}", deletedRows);
+    }
+
+    @Override
+    public long findFlushedLikeSegment(String journal) {
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("journal", journal);
+
+        List<Long> result = execute(() -> jdbcTemplate.queryForList(GET_FLUSHED_LIKE_SEGMENT_QUERY, parameterSource,
+                Long.class));
+        return result.isEmpty() ? 0 : result.getFirst();
     }
 
     @Override
-    public void addGenre(Long filmId, Long genreId) {
+    public void saveFlushedLikeSegment(String journal, long segment) {
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("journal", journal)
+                .addValue("segment", segment, Types.BIGINT);
+
+        upsert(MERGE_FLUSHED_LIKE_SEGMENT_QUERY, parameterSource);
+        log.debug("Сегменты журнала лайков {} записаны в БД до {}", journal, segment);
+    }
+
+    @Override
+    public Collection<Long> findStaleStats() {
+        log.debug("Поиск фильмов с расходящимися счётчиками лайков");
+
+        Collection<Long> result = findIds(FIND_STALE_FILM_STATS_QUERY, new MapSqlParameterSource());
+        log.debug("Найдено фильмов с расходящимися счётчиками: {}", result.size());
+
+        return result;
+    }
+
+    @Override
+    public long refreshStats(Collection<Long> filmIds) {
+        log.debug("Пересчёт счётчиков лайков {} фильмов", filmIds.size());
+        if (filmIds.isEmpty()) {
+            return 0;
+        }
+
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("filmIds", filmIds);
+
+        lockStats(filmIds);
+        applyToDirectorStats(APPLY_FILMS_TO_DIRECTOR_STATS_QUERY, parameterSource, -1);
+        long refreshedRows = update(REFRESH_FILM_STATS_QUERY, parameterSource);
+        filmIds.forEach(filmId -> RequestIdentityMap.evict(Film.class, filmId));
+        applyToDirectorStats(APPLY_FILMS_TO_DIRECTOR_STATS_QUERY, parameterSource, 1);
+        storageChanges.publish(new StatsRefreshed(filmIds));
+        log.debug("Пересчитано счётчиков: {}", refreshedRows);
+
+        return refreshedRows;
+    }
+
+    @Override
+    public boolean addGenre(Long filmId, Long genreId) {
         log.debug("Добавление жанра фильму на уровне хранилища");
         log.debug("Переданный идентификатор фильма: {}", filmId);
         log.debug("Переданный идентификатор жанра: {}", genreId);
@@ -607,24 +982,22 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
         MapSqlParameterSource parameterSource = new MapSqlParameterSource().addValue("filmId", filmId)
                 .addValue("genreId", genreId);
 
-        if (!exists(GET_GENRE_AND_FILM_LINK_QUERY, parameterSource)) {
-            log.debug("Жанр будет добавлен фильму");
-
-            boolean isInserted = insertWithOutReturnId(INSERT_GENRE_TO_FILM_QUERY, parameterSource);
-            if (!isInserted) {
-                throw new RuntimeException("Не удалось добавить жанр с id " + genreId + " фильму с id " + filmId);
-            } else {
-                log.debug("Фильму с id {} добавлен жанр с id {}", filmId, genreId);
-            }
+        boolean isInserted = upsert(MERGE_GENRE_TO_FILM_QUERY, parameterSource);
+        if (isInserted) {
+            RequestIdentityMap.evict(Film.class, filmId);
+            filmChangeVersions.touch(List.of(filmId));
+            storageChanges.publish(new FilmGenreChanged(filmId, genreId, true));
+            log.debug("Фильму с id {} добавлен жанр с id {}", filmId, genreId);
         } else {
-            log.debug("Жанр не будет добавлен фильму, т.к. уже существует");
+            log.debug("Жанр не добавлен фильму, т.к. уже существует");
         }
 
         log.debug("Возврат результатов добавления жанра на уровень сервиса");
+        return isInserted;
     }
 
     @Override
-    public void addDirector(Long filmId, Long directorId) {
+    public boolean addDirector(Long filmId, Long directorId) {
         log.debug("Добавление режиссера фильму на уровне хранилища");
         log.debug("Передан идентификатор фильма: {}", filmId == null ? "null" : filmId);
         log.debug("Передан идентификатор режиссера: {}", directorId == null ? "null" : directorId);
@@ -633,25 +1006,25 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
                 .addValue("filmId", filmId, Types.BIGINT)
                 .addValue("directorId", directorId, Types.BIGINT);
 
-        if (!exists(GET_DIRECTOR_AND_FILM_LINK_QUERY, parameterSource)) {
-            log.debug("Режиссер будет добавлен фильму");
-
-            boolean isInserted = insertWithOutReturnId(INSERT_DIRECTOR_TO_FILM_QUERY, parameterSource);
-            if (!isInserted) {
-                throw new RuntimeException(
-                        "Не удалось добавить режиссера с id " + directorId + " фильму с id " + filmId);
-            } else {
-                log.debug("Фильму с id {} добавлен режиссер с id {}", filmId, directorId);
-            }
+        // Счётчики фильма не должны измениться, пока они добавляются к счётчикам режиссера
+        lockStats(List.of(filmId));
+        boolean isInserted = upsert(MERGE_DIRECTOR_TO_FILM_QUERY, parameterSource);
+        if (isInserted) {
+            applyToDirectorStats(APPLY_FILM_TO_DIRECTOR_STATS_QUERY, parameterSource, 1);
+            RequestIdentityMap.evict(Film.class, filmId);
+            filmChangeVersions.touch(List.of(filmId));
+            storageChanges.publish(new FilmDirectorChanged(filmId, directorId, true));
+            log.debug("Фильму с id {} добавлен режиссер с id {}", filmId, directorId);
         } else {
-            log.debug("Режиссер не будет добавлен фильму т.к. уже существует");
+            log.debug("Режиссер не добавлен фильму т.к. уже существует");
         }
 
         log.debug("Возврат результатов добавления режиссера на уровень сервиса");
+        return isInserted;
     }
 
     @Override
-    public void removeGenre(Long filmId, Long genreId) {
+    public boolean removeGenre(Long filmId, Long genreId) {
         log.debug("Удаление жанра из фильма на уровне хранилища");
         log.debug("Переданный идентификатор изменяемого фильма: {}", filmId);
         log.debug("Переданный идентификатор удаляемого жанра: {}", genreId);
@@ -660,22 +1033,22 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
                 .addValue("filmId", filmId)
                 .addValue("genreId", genreId);
 
-        if (exists(GET_GENRE_AND_FILM_LINK_QUERY, parameterSource)) {
-            long deletedRows = deleteOne(DELETE_GENRE_ON_FILM_QUERY, parameterSource);
-            if (deletedRows == 0) {
-                throw new RuntimeException(
-                        "Не удалось удалить связь жанра с id " + genreId + "и фильма с id " + filmId);
-            }
+        boolean isDeleted = deleteOne(DELETE_GENRE_ON_FILM_QUERY, parameterSource) > 0;
+        if (isDeleted) {
+            RequestIdentityMap.evict(Film.class, filmId);
+            filmChangeVersions.touch(List.of(filmId));
+            storageChanges.publish(new FilmGenreChanged(filmId, genreId, false));
             log.debug("Фильм с id {} больше не принадлежит жанру с id {}", filmId, genreId);
         } else {
-            log.debug("Жанр не будет удалён из фильма, т.к. отсутствует в БД");
+            log.debug("Жанр не удалён из фильма, т.к. отсутствует в БД");
         }
 
         log.debug("Возврат результата удаления жанра на уровень сервиса");
+        return isDeleted;
     }
 
     @Override
-    public void removeDirector(Long filmId, Long directorId) {
+    public boolean removeDirector(Long filmId, Long directorId) {
         log.debug("Удаление режиссера из фильма на уровне хранилища");
         log.debug("Передан id  фильма: {}", filmId);
         log.debug("Передан id  режиссера: {}", directorId);
@@ -684,22 +1057,20 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
                 .addValue("filmId", filmId, Types.BIGINT)
                 .addValue("directorId", directorId, Types.BIGINT);
 
-        if (exists(GET_DIRECTOR_AND_FILM_LINK_QUERY, parameterSource)) {
-            log.debug("Режиссер будет удален из фильма");
-
-            long deletedRows = deleteOne(DELETE_DIRECTOR_ON_FILM_QUERY, parameterSource);
-
-            if (deletedRows == 0) {
-                throw new RuntimeException(
-                        "Не удалось удалить связь режиссера с id " + directorId + " и фильма с id " + filmId);
-            } else {
-                log.debug("Режиссер с id {} больше не принадлежит фильму с id {}", directorId, filmId);
-            }
+        lockStats(List.of(filmId));
+        applyToDirectorStats(APPLY_FILM_TO_DIRECTOR_STATS_QUERY, parameterSource, -1);
+        boolean isDeleted = deleteOne(DELETE_DIRECTOR_ON_FILM_QUERY, parameterSource) > 0;
+        if (isDeleted) {
+            RequestIdentityMap.evict(Film.class, filmId);
+            filmChangeVersions.touch(List.of(filmId));
+            storageChanges.publish(new FilmDirectorChanged(filmId, directorId, false));
+            log.debug("Режиссер с id {} больше не принадлежит фильму с id {}", directorId, filmId);
         } else {
-            log.debug("Режиссер не будет удален из фильма, т.к. отсутствует в БД");
+            log.debug("Режиссер не удален из фильма, т.к. отсутствует в БД");
         }
 
         log.debug("Возврат результатов удаления связи с режиссером на уровне сервиса");
+        return isDeleted;
     }
 
     @Override
@@ -711,12 +1082,15 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
                 .addValue("filmId", filmId);
 
         long updatedRows = update(REMOVE_RATING_FROM_FILM_QUERY, parameterSource);
+        RequestIdentityMap.evict(Film.class, filmId);
 
         if (updatedRows == 0) {
             throw new RuntimeException("Не удалось очистить рейтинг у фильма с id " + filmId);
         } else {
             log.debug("На уровне хранилища обновлено {} запись(ей) ", updatedRows);
         }
+        filmChangeVersions.touch(List.of(filmId));
+        storageChanges.publish(new FilmRatingRemoved(filmId));
         log.debug("С фильма с id {} снят рейтинг", filmId);
 
         log.debug("Возврат результатов удаления рейтинга на уровень сервиса");
@@ -728,9 +1102,19 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
         log.debug("Передан id фильма: {}", filmId);
 
         MapSqlParameterSource parameterSource = new MapSqlParameterSource()
-                .addValue("filmId", filmId);
+                .addValue("filmId", filmId)
+                .addValue("filmIds", List.of(filmId));
 
+        lockStats(List.of(filmId));
+        applyToDirectorStats(APPLY_FILMS_TO_DIRECTOR_STATS_QUERY, parameterSource, -1);
         long deletedRows = deleteOne(DELETE_FILM_BY_ID_QUERY, parameterSource);
+        // Отзывы фильма удаляются каскадно
+        RequestIdentityMap.evict(Film.class, filmId);
+        RequestIdentityMap.evictAll(Review.class);
+        if (deletedRows > 0) {
+            filmChangeVersions.markDeleted(List.of(filmId));
+        }
+        storageChanges.publish(new FilmDeleted(filmId));
         log.debug("На уровне хранилища удалено {} запись(ей)", deletedRows);
         log.debug("Фильм с id {} удален из хранилища", filmId);
 
@@ -743,12 +1127,56 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
 
         MapSqlParameterSource parameterSource = new MapSqlParameterSource();
 
+        filmChangeVersions.markAllDeleted();
         long deletedRows = deleteMany(DELETE_ALL_FILMS_QUERY, parameterSource);
+        RequestIdentityMap.evictAll(Film.class);
+        RequestIdentityMap.evictAll(Review.class);
+        update(RESET_DIRECTOR_STATS_QUERY, parameterSource);
+        storageChanges.publish(new EntitiesDeleted(Entity.FILM));
         log.debug("На уровне хранилища удалено {} записей(ь)", deletedRows);
 
         log.debug("Возврат результатов очистки на уровень сервиса");
     }
 
+    /**
+     * Метод блокирует строки счётчиков фильмов до конца транзакции. Строки блокируются в порядке идентификаторов,
+     * чтобы параллельные пакетные изменения не блокировали друг друга взаимно
+     *
+     * @param filmIds идентификаторы фильмов
+     */
+    private void lockStats(Collection<Long> filmIds) {
+        findIds(LOCK_FILM_STATS_QUERY, new MapSqlParameterSource().addValue("filmIds", filmIds));
+    }
+
+    /**
+     * Метод изменяет счётчики фильма и его режиссеров на разницу между прежним и новым состоянием лайка
+     *
+     * @param change изменение лайка
+     */
+    private void updateStats(LikeChanged change) {
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("filmId", change.filmId(), Types.BIGINT)
+                .addValue("likesDelta", change.likesDelta(), Types.INTEGER)
+                .addValue("markSumDelta", change.markSumDelta(), Types.DOUBLE)
+                .addValue("markCountDelta", change.markCountDelta(), Types.INTEGER);
+
+        update(UPDATE_FILM_STATS_QUERY, parameterSource);
+        update(UPDATE_DIRECTOR_STATS_QUERY, parameterSource);
+    }
+
+    /**
+     * Метод добавляет счётчики фильмов к счётчикам их режиссеров или вычитает их оттуда. Вокруг изменения счётчиков
+     * фильмов или связей с режиссерами вызывается под блокировкой счётчиков фильмов: до изменения с -1, после с 1
+     *
+     * @param query запрос слияния счётчиков режиссеров по выборке связей фильмов с режиссерами
+     * @param parameterSource параметры выборки связей
+     * @param sign 1 для добавления, -1 для вычитания
+     */
+    private void applyToDirectorStats(String query, MapSqlParameterSource parameterSource, int sign) {
+        update(query, new MapSqlParameterSource(parameterSource.getValues())
+                .addValue("sign", sign, Types.INTEGER));
+    }
+
     /**
      * Метод распространяет коллекции переданного фильма по структурам БД
      *
@@ -767,74 +1195,58 @@ public class FilmDbStorage extends BaseDbStorage<Film> implements FilmStorage {
     }
 
     /**
-     * Метод распространяет коллекцию жанров по структурам БД
+     * Метод распространяет коллекцию жанров по структурам БД: прежние связи удаляются одним запросом, новые
+     * добавляются одним пакетом
      *
      * @param film экземпляр класса {@link Film}
      */
     private void propagateGenres(Film film) {
-        if (!film.getGenres().isEmpty()) {
-            log.debug("Найдена коллекция жанров");
-            clearGenres(film);
-
-            log.debug("Добавление нового списка жанров");
-            for (Long genreId : film.getGenres()) {
-                addGenre(film.getId(), genreId);
-            }
-            log.debug("Добавление списка жанров завершено");
-        } else {
-            log.debug("Передана пустая коллекция жанров. Будет произведена очистка связей на уровне БД");
-            clearGenres(film);
-        }
-    }
+        log.debug("Замена связей фильма с жанрами");
 
-    private void propagateDirectors(Film film) {
-        if (!film.getDirectors().isEmpty()) {
-            log.debug("Найдена коллекция режиссеров");
-            clearDirectors(film);
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("filmId", film.getId(), Types.BIGINT);
+        long deletedRows = deleteMany(DELETE_GENRES_ON_FILM_QUERY, parameterSource);
+        log.debug("Удалено связей с жанрами: {}", deletedRows);
 
-            log.debug("Добавление нового списка режиссеров");
-            for (Long directorId : film.getDirectors()) {
-                addDirector(film.getId(), directorId);
-            }
-            log.debug("Добавление списка режиссеров завершено");
-        } else {
-            log.debug("Передана пустая коллекция режиссеров. Будет произведена очистка связей на уровне БД");
-            clearDirectors(film);
+        if (!film.getGenres().isEmpty()) {
+            MapSqlParameterSource[] batchParams = film.getGenres().stream()
+                    .map(genreId -> new MapSqlParameterSource()
+                            .addValue("filmId", film.getId(), Types.BIGINT)
+                            .addValue("genreId", genreId, Types.BIGINT))
+                    .toArray(MapSqlParameterSource[]::new);
+            long insertedRows = batchUpdate(MERGE_GENRE_TO_FILM_QUERY, batchParams);
+            log.debug("Добавлено связей с жанрами: {}", insertedRows);
         }
     }
 
     /**
-     * Метод очищает коллекцию жанров фильма в БД
+     * Метод распространяет коллекцию режиссеров по структурам БД: прежние связи удаляются одним запросом, новые
+     * добавляются одним пакетом
      *
      * @param film экземпляр класса {@link Film}
      */
-    private void clearGenres(Film film) {
-        log.debug("Очистка имеющихся жанров");
-
-        Collection<Long> genreIds = genreStorage.findByFilmId(film.getId()).stream().map(Genre::getId).toList();
-
-        if (!genreIds.isEmpty()) {
-            log.debug("В БД найдены связи, подлежащие удалению");
-            for (Long genreId : genreIds) {
-                removeGenre(film.getId(), genreId);
-            }
-        }
-        log.debug("Очистка завершена");
-    }
-
-    private void clearDirectors(Film film) {
-        log.debug("Очистка имеющихся режиссеров");
+    private void propagateDirectors(Film film) {
+        log.debug("Замена связей фильма с режиссерами");
 
-        Collection<Long> directorIds = directorStorage.findByFilmId(film.getId()).stream().map(Director::getId)
-                .toList();
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("filmId", film.getId(), Types.BIGINT)
+                .addValue("filmIds", List.of(film.getId()));
+        // Счётчики фильма вычитаются у прежних режиссеров и добавляются новым
+        lockStats(List.of(film.getId()));
+        applyToDirectorStats(APPLY_FILMS_TO_DIRECTOR_STATS_QUERY, parameterSource, -1);
+        long deletedRows = deleteMany(DELETE_DIRECTORS_ON_FILM_QUERY, parameterSource);
+        log.debug("Удалено связей с режиссерами: {}", deletedRows);
 
-        if (!directorIds.isEmpty()) {
-            log.debug("В БД найдены связи с режиссерами, подлежащие удалению");
-            for (Long directorId : directorIds) {
-                removeDirector(film.getId(), directorId);
-            }
+        if (!film.getDirectors().isEmpty()) {
+            MapSqlParameterSource[] batchParams = film.getDirectors().stream()
+                    .map(directorId -> new MapSqlParameterSource()
+                            .addValue("filmId", film.getId(), Types.BIGINT)
+                            .addValue("directorId", directorId, Types.BIGINT))
+                    .toArray(MapSqlParameterSource[]::new);
+            long insertedRows = batchUpdate(MERGE_DIRECTOR_TO_FILM_QUERY, batchParams);
+            log.debug("Добавлено связей с режиссерами: {}", insertedRows);
         }
-        log.debug("Очистка коллекции режиссеров завершена");
+        applyToDirectorStats(APPLY_FILMS_TO_DIRECTOR_STATS_QUERY, parameterSource, 1);
     }
 
     /**
@@ -0,0 +1,364 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.UnaryOperator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dal.StorageChange;
+import ru.yandex.practicum.filmorate.dal.StorageChange.EntitiesDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.Entity;
+import ru.yandex.practicum.filmorate.dal.StorageChange.FilmDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.FilmDirectorChanged;
+import ru.yandex.practicum.filmorate.dal.StorageChange.FilmGenreChanged;
+import ru.yandex.practicum.filmorate.dal.StorageChange.FilmRatingRemoved;
+import ru.yandex.practicum.filmorate.dal.StorageChange.FilmSaved;
+import ru.yandex.practicum.filmorate.dal.StorageChangeListener;
+import ru.yandex.practicum.filmorate.dal.StorageChanges;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmFacets;
+import ru.yandex.practicum.filmorate.util.RoaringBitmap;
+
+/**
+ * Индекс фильмов в памяти для фасетного поиска: для каждого жанра, рейтинга, года выпуска и режиссера хранится сжатое
+ * битовое множество идентификаторов фильмов.
+ * <p>
+ * Фильтр вычисляется пересечением множеств выбранных значений, а количество фильмов по каждому значению измерения —
+ * мощностью пересечения его множества с фильтром по остальным измерениям. Так счётчики показывают, сколько фильмов
+ * останется при выборе другого значения того же измерения.
+ * <p>
+ * Индекс строится из FILMS, FILMS_GENRES и FILMS_DIRECTORS при первом обращении и поддерживается в актуальном
+ * состоянии изменениями фильмов и их связей, которые хранилища публикуют через {@link StorageChanges}. Как и в
+ * {@link FilmLikesIndex}, изменения внутри транзакции применяются сразу и повторно после её фиксации, а откат
+ * транзакции сбрасывает индекс целиком.
+ */
+@Slf4j
+@Component
+public class FilmFacetIndex implements StorageChangeListener {
+
+    private static final String GET_ALL_FILMS_QUERY = """
+            SELECT f.ID,
+                   YEAR(f.RELEASE_DATE) AS RELEASE_YEAR,
+                   f.RATING_ID
+              FROM FILMS f
+            """;
+    private static final String GET_ALL_FILM_GENRES_QUERY = """
+            SELECT fg.FILM_ID,
+                   fg.GENRE_ID
+              FROM FILMS_GENRES fg
+            """;
+    private static final String GET_ALL_FILM_DIRECTORS_QUERY = """
+            SELECT fd.FILM_ID,
+                   fd.DIRECTOR_ID
+              FROM FILMS_DIRECTORS fd
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final Map<Integer, Entry> entries = new HashMap<>();
+    private final Map<Long, RoaringBitmap> byGenre = new HashMap<>();
+    private final Map<Long, RoaringBitmap> byMpa = new HashMap<>();
+    private final Map<Long, RoaringBitmap> byYear = new HashMap<>();
+    private final Map<Long, RoaringBitmap> byDirector = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private RoaringBitmap films = new RoaringBitmap();
+    private volatile boolean loaded;
+
+    public FilmFacetIndex(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Метод отбирает фильмы по фильтру и считает фильмы по значениям каждого измерения
+     *
+     * @param filter фильтр; пустые поля не ограничивают выборку
+     * @param byYear {@code true}, чтобы упорядочить фильмы по году выпуска, иначе они упорядочены по идентификатору
+     * @return отобранные фильмы и счётчики по измерениям
+     */
+    public Selection select(Filter filter, boolean byYear) {
+        ensureLoaded();
+
+        lock.readLock().lock();
+        try {
+            RoaringBitmap genre = filter.genreId() == null ? null : bitmapOf(byGenre, filter.genreId());
+            RoaringBitmap mpa = filter.mpaId() == null ? null : bitmapOf(byMpa, filter.mpaId());
+            RoaringBitmap year = filter.yearFrom() == null && filter.yearTo() == null ? null
+                    : yearRange(filter.yearFrom(), filter.yearTo());
+            RoaringBitmap director = filter.directorId() == null ? null : bitmapOf(byDirector, filter.directorId());
+
+            RoaringBitmap matched = intersect(genre, mpa, year, director);
+            FilmFacets facets = FilmFacets.builder()
+                    .total(matched.cardinality())
+                    .genres(count(byGenre, intersect(mpa, year, director)))
+                    .mpa(count(byMpa, intersect(genre, year, director)))
+                    .years(count(this.byYear, intersect(genre, mpa, director)))
+                    .directors(count(byDirector, intersect(genre, mpa, year)))
+                    .build();
+
+            List<Long> filmIds = new ArrayList<>((int) matched.cardinality());
+            matched.forEach(filmId -> filmIds.add((long) filmId));
+            if (byYear) {
+                filmIds.sort(Comparator.comparing((Long filmId) -> entries.get(Math.toIntExact(filmId)).year(),
+                        Comparator.nullsLast(Comparator.naturalOrder())));
+            }
+
+            log.debug("По фильтру {} отобрано {} фильмов", filter, filmIds.size());
+            return new Selection(filmIds, facets);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void onWrite(StorageChange change) {
+        Runnable action = actionOf(change);
+        if (action != null) {
+            applyNow(action);
+        }
+    }
+
+    @Override
+    public void onCommit(StorageChange change, long writtenAt) {
+        // Построение, случившееся до фиксации, изменения ещё не видело, поэтому оно применяется повторно
+        onWrite(change);
+    }
+
+    @Override
+    public void onRollback(StorageChange change) {
+        if (actionOf(change) != null) {
+            reset();
+        }
+    }
+
+    /**
+     * Метод возвращает действие, отражающее изменение в индексе. Действие выполняется под блокировкой записи
+     *
+     * @param change изменение
+     * @return действие либо {@code null}, если изменение индекса не касается
+     */
+    private Runnable actionOf(StorageChange change) {
+        return switch (change) {
+            case FilmSaved saved -> {
+                Film film = saved.film();
+                Entry entry = new Entry(film.getReleaseDate() == null ? null : (long) film.getReleaseDate().getYear(),
+                        film.getMpa() == null ? null : film.getMpa().getId(), Set.copyOf(film.getGenres()),
+                        Set.copyOf(film.getDirectors()));
+                yield () -> replace(film.getId(), entry);
+            }
+            case FilmDeleted deleted -> () -> replace(deleted.filmId(), null);
+            case FilmGenreChanged genre -> () -> change(genre.filmId(), entry -> entry.withGenres(genre.added()
+                    ? with(entry.genreIds(), genre.genreId()) : without(entry.genreIds(), genre.genreId())));
+            case FilmDirectorChanged director -> () -> change(director.filmId(), entry -> entry.withDirectors(
+                    director.added() ? with(entry.directorIds(), director.directorId())
+                            : without(entry.directorIds(), director.directorId())));
+            case FilmRatingRemoved rating -> () -> change(rating.filmId(),
+                    entry -> new Entry(entry.year(), null, entry.genreIds(), entry.directorIds()));
+            case EntitiesDeleted deleted when deleted.entity() != Entity.USER && deleted.entity() != Entity.REVIEW ->
+                    this::reset;
+            default -> null;
+        };
+    }
+
+    private void applyNow(Runnable change) {
+        lock.writeLock().lock();
+        try {
+            // До построения индекса изменения не применяются: построение прочитает их из БД
+            if (loaded) {
+                change.run();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void reset() {
+        lock.writeLock().lock();
+        try {
+            clear();
+            loaded = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("Фасетный индекс фильмов сброшен");
+    }
+
+    private void clear() {
+        entries.clear();
+        films = new RoaringBitmap();
+        byGenre.clear();
+        byMpa.clear();
+        byYear.clear();
+        byDirector.clear();
+    }
+
+    private void change(Long filmId, UnaryOperator<Entry> change) {
+        Entry entry = entries.get(Math.toIntExact(filmId));
+        if (entry != null) {
+            replace(filmId, change.apply(entry));
+        }
+    }
+
+    private void replace(Long filmId, Entry entry) {
+        int id = Math.toIntExact(filmId);
+        Entry previous = entries.remove(id);
+        if (previous != null) {
+            films.remove(id);
+            index(previous, id, false);
+        }
+        if (entry != null) {
+            entries.put(id, entry);
+            films.add(id);
+            index(entry, id, true);
+        }
+    }
+
+    private void index(Entry entry, int filmId, boolean add) {
+        update(byYear, entry.year(), filmId, add);
+        update(byMpa, entry.mpaId(), filmId, add);
+        entry.genreIds().forEach(genreId -> update(byGenre, genreId, filmId, add));
+        entry.directorIds().forEach(directorId -> update(byDirector, directorId, filmId, add));
+    }
+
+    private static void update(Map<Long, RoaringBitmap> bitmaps, Long key, int filmId, boolean add) {
+        if (key == null) {
+            return;
+        }
+        if (add) {
+            bitmaps.computeIfAbsent(key, k -> new RoaringBitmap()).add(filmId);
+        } else {
+            RoaringBitmap bitmap = bitmaps.get(key);
+            if (bitmap != null && bitmap.remove(filmId) && bitmap.isEmpty()) {
+                bitmaps.remove(key);
+            }
+        }
+    }
+
+    private RoaringBitmap yearRange(Integer yearFrom, Integer yearTo) {
+        RoaringBitmap result = new RoaringBitmap();
+        for (Map.Entry<Long, RoaringBitmap> year : byYear.entrySet()) {
+            if ((yearFrom == null || year.getKey() >= yearFrom) && (yearTo == null || year.getKey() <= yearTo)) {
+                result = result.or(year.getValue());
+            }
+        }
+        return result;
+    }
+
+    private RoaringBitmap intersect(RoaringBitmap... filters) {
+        RoaringBitmap result = films;
+        for (RoaringBitmap filter : filters) {
+            if (filter != null) {
+                result = result.and(filter);
+            }
+        }
+        return result;
+    }
+
+    private static SortedMap<Long, Long> count(Map<Long, RoaringBitmap> bitmaps, RoaringBitmap filter) {
+        SortedMap<Long, Long> result = new TreeMap<>();
+        bitmaps.forEach((key, bitmap) -> {
+            long count = filter.andCardinality(bitmap);
+            if (count > 0) {
+                result.put(key, count);
+            }
+        });
+        return result;
+    }
+
+    private static RoaringBitmap bitmapOf(Map<Long, RoaringBitmap> bitmaps, Long key) {
+        return bitmaps.getOrDefault(key, new RoaringBitmap());
+    }
+
+    private static Set<Long> with(Set<Long> ids, Long id) {
+        Set<Long> result = new HashSet<>(ids);
+        result.add(id);
+        return Set.copyOf(result);
+    }
+
+    private static Set<Long> without(Set<Long> ids, Long id) {
+        Set<Long> result = new HashSet<>(ids);
+        result.remove(id);
+        return Set.copyOf(result);
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                log.debug("Построение фасетного индекса фильмов");
+                Map<Integer, Entry> loadedEntries = new HashMap<>();
+                Map<Integer, Set<Long>> genres = new HashMap<>();
+                Map<Integer, Set<Long>> directors = new HashMap<>();
+                MapSqlParameterSource parameterSource = new MapSqlParameterSource();
+                jdbcTemplate.query(GET_ALL_FILMS_QUERY, parameterSource, (RowCallbackHandler) rs -> {
+                    long year = rs.getLong("RELEASE_YEAR");
+                    Long nullableYear = rs.wasNull() ? null : year;
+                    long mpaId = rs.getLong("RATING_ID");
+                    Long nullableMpaId = rs.wasNull() ? null : mpaId;
+                    loadedEntries.put(Math.toIntExact(rs.getLong("ID")),
+                            new Entry(nullableYear, nullableMpaId, Set.of(), Set.of()));
+                });
+                jdbcTemplate.query(GET_ALL_FILM_GENRES_QUERY, parameterSource, (RowCallbackHandler) rs ->
+                        genres.computeIfAbsent(Math.toIntExact(rs.getLong("FILM_ID")), id -> new HashSet<>())
+                                .add(rs.getLong("GENRE_ID")));
+                jdbcTemplate.query(GET_ALL_FILM_DIRECTORS_QUERY, parameterSource, (RowCallbackHandler) rs ->
+                        directors.computeIfAbsent(Math.toIntExact(rs.getLong("FILM_ID")), id -> new HashSet<>())
+                                .add(rs.getLong("DIRECTOR_ID")));
+
+                loadedEntries.forEach((filmId, entry) -> replace((long) filmId, entry
+                        .withGenres(Set.copyOf(genres.getOrDefault(filmId, Set.of())))
+                        .withDirectors(Set.copyOf(directors.getOrDefault(filmId, Set.of())))));
+                loaded = true;
+                log.debug("Фасетный индекс построен для {} фильмов", entries.size());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Фильтр фасетного поиска
+     *
+     * @param genreId идентификатор жанра
+     * @param mpaId идентификатор рейтинга
+     * @param yearFrom минимальный год выпуска включительно
+     * @param yearTo максимальный год выпуска включительно
+     * @param directorId идентификатор режиссера
+     */
+    public record Filter(Long genreId, Long mpaId, Integer yearFrom, Integer yearTo, Long directorId) {
+    }
+
+    /**
+     * Результат фасетного поиска
+     *
+     * @param filmIds идентификаторы отобранных фильмов
+     * @param facets счётчики фильмов по значениям измерений
+     */
+    public record Selection(List<Long> filmIds, FilmFacets facets) {
+    }
+
+    private record Entry(Long year, Long mpaId, Set<Long> genreIds, Set<Long> directorIds) {
+
+        Entry withGenres(Set<Long> genreIds) {
+            return new Entry(year, mpaId, genreIds, directorIds);
+        }
+
+        Entry withDirectors(Set<Long> directorIds) {
+            return new Entry(year, mpaId, genreIds, directorIds);
+        }
+    }
+}
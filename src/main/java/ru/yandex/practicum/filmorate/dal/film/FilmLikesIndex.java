@@ -0,0 +1,205 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dal.StorageChange;
+import ru.yandex.practicum.filmorate.dal.StorageChange.EntitiesDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.Entity;
+import ru.yandex.practicum.filmorate.dal.StorageChange.LikeAccepted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.LikeChanged;
+import ru.yandex.practicum.filmorate.dal.StorageChange.LikesAdded;
+import ru.yandex.practicum.filmorate.dal.StorageChange.LikesRemoved;
+import ru.yandex.practicum.filmorate.dal.StorageChange.UserDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChangeListener;
+import ru.yandex.practicum.filmorate.dal.StorageChanges;
+import ru.yandex.practicum.filmorate.util.RoaringBitmap;
+
+/**
+ * Индекс лайков в памяти: для каждого пользователя хранится сжатое битовое множество идентификаторов понравившихся
+ * ему фильмов.
+ * <p>
+ * Индекс строится из USERS_FILMS при первом обращении и поддерживается в актуальном состоянии изменениями лайков,
+ * которые хранилища публикуют через {@link StorageChanges}. Построение выполняется под блокировкой записи, поэтому
+ * изменения, пришедшие во время построения, дожидаются его окончания и не теряются.
+ * <p>
+ * Изменения внутри транзакции применяются сразу и повторно после её фиксации, так как построение, случившееся до
+ * фиксации, их ещё не увидит. Откат транзакции сбрасывает индекс целиком.
+ * Идентификаторы удалённых фильмов из индекса не вычищаются: они отбрасываются при загрузке фильмов из БД.
+ */
+@Slf4j
+@Component
+public class FilmLikesIndex implements StorageChangeListener {
+
+    private static final String GET_ALL_LIKES_QUERY = """
+            SELECT uf.USER_ID,
+                   uf.FILM_ID
+              FROM USERS_FILMS uf
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final Map<Long, RoaringBitmap> likesByUser = new ConcurrentHashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean loaded;
+
+    public FilmLikesIndex(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Метод возвращает идентификаторы фильмов, понравившихся всем переданным пользователям, в порядке возрастания
+     *
+     * @param userIds идентификаторы пользователей
+     * @return идентификаторы общих фильмов
+     */
+    public List<Long> findCommon(Collection<Long> userIds) {
+        ensureLoaded();
+
+        List<RoaringBitmap> bitmaps = new ArrayList<>(userIds.size());
+        lock.readLock().lock();
+        try {
+            for (Long userId : userIds) {
+                RoaringBitmap bitmap = likesByUser.get(userId);
+                if (bitmap == null) {
+                    log.debug("У пользователя с id {} нет лайков, пересечение пусто", userId);
+                    return List.of();
+                }
+                synchronized (bitmap) {
+                    bitmaps.add(bitmap.copy());
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        RoaringBitmap common = RoaringBitmap.and(bitmaps);
+        List<Long> result = new ArrayList<>((int) common.cardinality());
+        common.forEach(filmId -> result.add((long) filmId));
+
+        log.debug("Пересечение лайков {} пользователей содержит {} фильмов", userIds.size(), result.size());
+        return result;
+    }
+
+    @Override
+    public void onWrite(StorageChange change) {
+        Runnable action = actionOf(change);
+        if (action != null) {
+            action.run();
+        }
+    }
+
+    @Override
+    public void onCommit(StorageChange change, long writtenAt) {
+        // Построение, случившееся до фиксации, изменения ещё не видело, поэтому оно применяется повторно
+        onWrite(change);
+    }
+
+    @Override
+    public void onRollback(StorageChange change) {
+        if (actionOf(change) != null) {
+            reset();
+        }
+    }
+
+    /**
+     * Метод возвращает действие, отражающее изменение в индексе
+     *
+     * @param change изменение
+     * @return действие либо {@code null}, если изменение индекса не касается
+     */
+    private Runnable actionOf(StorageChange change) {
+        return switch (change) {
+            case LikeChanged like when like.after() == null -> () -> applyRemove(like.userId(), like.filmId());
+            case LikeChanged like -> () -> applyAdd(like.userId(), like.filmId());
+            case LikeAccepted like when like.removed() -> () -> applyRemove(like.userId(), like.filmId());
+            case LikeAccepted like -> () -> applyAdd(like.userId(), like.filmId());
+            case LikesAdded added -> () -> added.likes().forEach(like -> applyAdd(like.getUserId(), like.getFilmId()));
+            case LikesRemoved removed ->
+                    () -> removed.likes().forEach(like -> applyRemove(like.getUserId(), like.getFilmId()));
+            case UserDeleted user -> () -> applyRemoveUser(user.userId());
+            case EntitiesDeleted deleted when deleted.entity() == Entity.FILM || deleted.entity() == Entity.USER ->
+                    this::reset;
+            default -> null;
+        };
+    }
+
+    private void reset() {
+        lock.writeLock().lock();
+        try {
+            likesByUser.clear();
+            loaded = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("Индекс лайков сброшен");
+    }
+
+    private void applyAdd(Long userId, Long filmId) {
+        lock.readLock().lock();
+        try {
+            // До построения индекса изменения не применяются: построение прочитает их из БД
+            if (!loaded) {
+                return;
+            }
+
+            RoaringBitmap bitmap = likesByUser.computeIfAbsent(userId, id -> new RoaringBitmap());
+            synchronized (bitmap) {
+                bitmap.add(Math.toIntExact(filmId));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void applyRemove(Long userId, Long filmId) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap bitmap = likesByUser.get(userId);
+            if (bitmap != null) {
+                synchronized (bitmap) {
+                    bitmap.remove(Math.toIntExact(filmId));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void applyRemoveUser(Long userId) {
+        lock.readLock().lock();
+        try {
+            likesByUser.remove(userId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                log.debug("Построение индекса лайков");
+                jdbcTemplate.query(GET_ALL_LIKES_QUERY, new MapSqlParameterSource(), (RowCallbackHandler) rs ->
+                        likesByUser.computeIfAbsent(rs.getLong("USER_ID"), id -> new RoaringBitmap())
+                                .add(Math.toIntExact(rs.getLong("FILM_ID"))));
+                loaded = true;
+                log.debug("Индекс лайков построен для {} пользователей", likesByUser.size());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
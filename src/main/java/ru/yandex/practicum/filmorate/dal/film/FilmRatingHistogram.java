@@ -0,0 +1,287 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dal.StorageChange;
+import ru.yandex.practicum.filmorate.dal.StorageChange.EntitiesDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.Entity;
+import ru.yandex.practicum.filmorate.dal.StorageChange.FilmDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.LikeChanged;
+import ru.yandex.practicum.filmorate.dal.StorageChange.StatsRefreshed;
+import ru.yandex.practicum.filmorate.dal.StorageChange.UserDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.UserLinksPurged;
+import ru.yandex.practicum.filmorate.dal.StorageChangeListener;
+import ru.yandex.practicum.filmorate.dal.StorageChanges;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.util.LongIntHashMap;
+
+/**
+ * Гистограммы оценок фильмов в памяти.
+ * <p>
+ * Каждому фильму выделяется слот из {@value #WIDTH} счётчиков в общем массиве: нулевой счётчик хранит количество
+ * лайков без оценки, остальные - количество оценок от 1 до {@value #MAX_MARK}. Дробная оценка попадает в счётчик
+ * ближайшего целого.
+ * <p>
+ * Гистограммы строятся одним проходом по USERS_FILMS при первом обращении и поддерживаются изменениями лайков,
+ * которые хранилища публикуют через {@link StorageChanges}. Изменения внутри транзакции применяются сразу. Откат
+ * транзакции сбрасывает гистограммы, как и построение, начатое после записи изменения и до фиксации: такое построение
+ * изменения не видело.
+ */
+@Slf4j
+@Component
+public class FilmRatingHistogram implements StorageChangeListener {
+
+    public static final int MAX_MARK = 10;
+    private static final int WIDTH = MAX_MARK + 1;
+    private static final int INITIAL_SLOTS = 16;
+    private static final int NO_SLOT = -1;
+
+    private static final String GET_ALL_MARKS_QUERY = """
+            SELECT uf.FILM_ID,
+                   uf.MARK
+              FROM USERS_FILMS uf
+            """;
+    private static final String GET_FILMS_MARKS_QUERY = """
+            SELECT uf.FILM_ID,
+                   uf.MARK
+              FROM USERS_FILMS uf
+             WHERE uf.FILM_ID IN (:filmIds)
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // Поля ниже изменяются только под блокировкой записи
+    private LongIntHashMap slots = new LongIntHashMap();
+    private int[] counts = new int[INITIAL_SLOTS * WIDTH];
+    private int[] freeSlots = new int[INITIAL_SLOTS];
+    private int freeCount;
+    private int nextSlot;
+    private long loadStartedAt;
+    private volatile boolean loaded;
+
+    public FilmRatingHistogram(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Метод возвращает гистограмму оценок фильма
+     *
+     * @param filmId идентификатор фильма
+     * @return массив из {@value #WIDTH} счётчиков: количество лайков без оценки и количество оценок от 1 до
+     *         {@value #MAX_MARK}
+     */
+    public int[] find(Long filmId) {
+        ensureLoaded();
+
+        lock.readLock().lock();
+        try {
+            int slot = slots.get(filmId, NO_SLOT);
+            return slot == NO_SLOT ? new int[WIDTH] : Arrays.copyOfRange(counts, slot * WIDTH, (slot + 1) * WIDTH);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void onWrite(StorageChange change) {
+        Runnable action = actionOf(change);
+        if (action != null) {
+            action.run();
+        }
+    }
+
+    @Override
+    public void onCommit(StorageChange change, long writtenAt) {
+        if (actionOf(change) != null) {
+            resetIfLoadedAfter(writtenAt);
+        }
+    }
+
+    @Override
+    public void onRollback(StorageChange change) {
+        if (actionOf(change) != null) {
+            reset();
+        }
+    }
+
+    /**
+     * Метод переносит в гистограмму изменение лайка
+     *
+     * @param filmId идентификатор фильма
+     * @param before лайк до изменения; {@code null}, если лайка не было
+     * @param after лайк после изменения; {@code null}, если лайк удалён
+     */
+    private void update(Long filmId, Like before, Like after) {
+        lock.writeLock().lock();
+        try {
+            // До построения изменения не применяются: построение прочитает их из БД
+            if (loaded) {
+                int offset = slotOf(filmId) * WIDTH;
+                if (before != null) {
+                    counts[offset + binOf(before.getMark())]--;
+                }
+                if (after != null) {
+                    counts[offset + binOf(after.getMark())]++;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Метод перечитывает гистограммы фильмов из БД. Слоты фильмов без лайков освобождаются
+     *
+     * @param filmIds идентификаторы фильмов
+     */
+    private void reload(Collection<Long> filmIds) {
+        if (filmIds.isEmpty() || !loaded) {
+            return;
+        }
+
+        LongIntHashMap marks = new LongIntHashMap();
+        jdbcTemplate.query(GET_FILMS_MARKS_QUERY, new MapSqlParameterSource().addValue("filmIds", filmIds),
+                (RowCallbackHandler) rs -> {
+                    double mark = rs.getDouble("MARK");
+                    marks.increment(rs.getLong("FILM_ID") * WIDTH + binOf(rs.wasNull() ? null : mark), 1);
+                });
+
+        lock.writeLock().lock();
+        try {
+            if (loaded) {
+                filmIds.forEach(this::releaseSlot);
+                marks.forEach((key, value) -> counts[slotOf(key / WIDTH) * WIDTH + (int) (key % WIDTH)] = value);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("Перечитаны гистограммы оценок {} фильмов", filmIds.size());
+    }
+
+    /**
+     * Метод возвращает номер счётчика для оценки
+     *
+     * @param mark оценка; {@code null} для лайка без оценки
+     * @return номер счётчика
+     */
+    public static int binOf(Double mark) {
+        return mark == null ? 0 : Math.clamp(Math.round(mark), 1, MAX_MARK);
+    }
+
+    /**
+     * Метод возвращает действие, переносящее изменение в гистограммы
+     *
+     * @param change изменение
+     * @return действие либо {@code null}, если изменение гистограмм не касается
+     */
+    private Runnable actionOf(StorageChange change) {
+        return switch (change) {
+            case LikeChanged like -> () -> update(like.filmId(), like.before(), like.after());
+            case StatsRefreshed refreshed -> () -> reload(refreshed.filmIds());
+            case UserDeleted user -> () -> reload(user.likedFilmIds());
+            case UserLinksPurged user -> () -> reload(user.likedFilmIds());
+            case FilmDeleted deleted -> () -> reload(List.of(deleted.filmId()));
+            case EntitiesDeleted deleted when deleted.entity() == Entity.FILM || deleted.entity() == Entity.USER ->
+                    this::reset;
+            default -> null;
+        };
+    }
+
+    /**
+     * Метод сбрасывает гистограммы, если их построение началось после записи изменения: такое построение прошло до
+     * фиксации и изменения не видело
+     *
+     * @param writtenAt значение {@link System#nanoTime()} при записи изменения
+     */
+    private void resetIfLoadedAfter(long writtenAt) {
+        boolean stale;
+        lock.readLock().lock();
+        try {
+            stale = loaded && loadStartedAt - writtenAt > 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (stale) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        lock.writeLock().lock();
+        try {
+            clear();
+            loaded = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("Гистограммы оценок сброшены");
+    }
+
+    private void clear() {
+        slots = new LongIntHashMap();
+        counts = new int[INITIAL_SLOTS * WIDTH];
+        freeSlots = new int[INITIAL_SLOTS];
+        freeCount = 0;
+        nextSlot = 0;
+    }
+
+    private int slotOf(long filmId) {
+        int slot = slots.get(filmId, NO_SLOT);
+        if (slot != NO_SLOT) {
+            return slot;
+        }
+
+        slot = freeCount > 0 ? freeSlots[--freeCount] : nextSlot++;
+        if ((slot + 1) * WIDTH > counts.length) {
+            counts = Arrays.copyOf(counts, counts.length * 2);
+        }
+        slots.put(filmId, slot);
+        return slot;
+    }
+
+    private void releaseSlot(long filmId) {
+        int slot = slots.get(filmId, NO_SLOT);
+        if (slot == NO_SLOT) {
+            return;
+        }
+
+        slots.remove(filmId);
+        Arrays.fill(counts, slot * WIDTH, (slot + 1) * WIDTH, 0);
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                log.debug("Построение гистограмм оценок");
+                loadStartedAt = System.nanoTime();
+                clear();
+                jdbcTemplate.query(GET_ALL_MARKS_QUERY, new MapSqlParameterSource(), (RowCallbackHandler) rs -> {
+                    long filmId = rs.getLong("FILM_ID");
+                    double mark = rs.getDouble("MARK");
+                    counts[slotOf(filmId) * WIDTH + binOf(rs.wasNull() ? null : mark)]++;
+                });
+                loaded = true;
+                log.debug("Гистограммы оценок построены для {} фильмов", slots.size());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
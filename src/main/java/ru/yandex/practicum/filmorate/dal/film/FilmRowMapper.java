@@ -20,6 +20,7 @@ public class FilmRowMapper implements RowMapper<Film> {
                 .description(rs.getString("DESCRIPTION"))
                 .releaseDate(rs.getDate("RELEASE_DATE").toLocalDate())
                 .duration(rs.getInt("DURATION"))
+                .rate(rs.getDouble("rate"))
                 .build();
 
         long ratingId = rs.getLong("RATING_ID");
@@ -0,0 +1,87 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.config.FilmStatsProperties;
+
+/**
+ * Сверка счётчиков лайков фильмов с самими лайками.
+ * <p>
+ * Счётчики меняются в одной транзакции с лайками, поэтому расходиться они могут только после правки данных в обход
+ * приложения или прерванного фонового удаления пользователя. Сверка находит такие фильмы одним запросом и
+ * пересчитывает их счётчики порциями, каждая порция в своей транзакции под блокировкой строк счётчиков.
+ */
+@Slf4j
+@Component
+public class FilmStatsRepairJob {
+
+    private final FilmStorage filmStorage;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final ScheduledExecutorService scheduler;
+
+    public FilmStatsRepairJob(FilmStorage filmStorage, TransactionTemplate transactionTemplate,
+                              FilmStatsProperties properties) {
+        this.filmStorage = filmStorage;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = properties.repairBatchSize();
+
+        long intervalMillis = properties.repairInterval().toMillis();
+        if (intervalMillis > 0) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "film-stats-repair");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::repairQuietly, intervalMillis, intervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    /**
+     * Метод пересчитывает разошедшиеся счётчики лайков
+     *
+     * @return количество исправленных счётчиков
+     */
+    public long repair() {
+        List<Long> filmIds = new ArrayList<>(filmStorage.findStaleStats());
+        if (filmIds.isEmpty()) {
+            log.debug("Счётчики лайков фильмов совпадают с лайками");
+            return 0;
+        }
+
+        long repaired = 0;
+        for (int from = 0; from < filmIds.size(); from += batchSize) {
+            List<Long> batch = filmIds.subList(from, Math.min(from + batchSize, filmIds.size()));
+            Long refreshed = transactionTemplate.execute(status -> filmStorage.refreshStats(batch));
+            repaired += refreshed == null ? 0 : refreshed;
+        }
+
+        log.warn("Исправлены счётчики лайков {} фильмов", repaired);
+        return repaired;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void repairQuietly() {
+        try {
+            repair();
+        } catch (RuntimeException e) {
+            log.error("Не удалось сверить счётчики лайков фильмов", e);
+        }
+    }
+}
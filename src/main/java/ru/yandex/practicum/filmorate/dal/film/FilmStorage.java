@@ -1,10 +1,14 @@
 package ru.yandex.practicum.filmorate.dal.film;
 
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmChange;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.RatingHistogram;
 
 /**
  * Интерфейс обработки сущностей {@link Film} на уровне хранилища
@@ -23,13 +27,49 @@ public interface FilmStorage {
 
 
     /**
-     * Метод возвращает коллекцию общих для двух пользователей фильмов
+     * Метод возвращает коллекцию фильмов, понравившихся всем переданным пользователям
      *
-     * @param userId идентификатор первого пользователя
-     * @param friendId идентификатор второго пользователя
-     * @return коллекция {@link Film}
+     * @param userIds идентификаторы пользователей
+     * @return коллекция {@link Film}, упорядоченная по идентификатору
      */
-    Collection<Film> findCommon(Long userId, Long friendId);
+    Collection<Film> findCommon(Collection<Long> userIds);
+
+    /**
+     * Метод возвращает коллекцию фильмов по их идентификаторам одним запросом
+     *
+     * @param filmIds идентификаторы фильмов
+     * @return коллекция найденных {@link Film}, упорядоченная по идентификатору
+     */
+    Collection<Film> findByIds(Collection<Long> filmIds);
+
+    /**
+     * Метод упорядочивает фильмы по средней оценке и количеству лайков, как популярные фильмы, и возвращает страницу
+     * их идентификаторов
+     *
+     * @param filmIds идентификаторы фильмов
+     * @param size размер страницы
+     * @param from номер стартового элемента
+     * @return идентификаторы фильмов страницы в порядке убывания оценки
+     */
+    Collection<Long> findIdsByRate(Collection<Long> filmIds, Integer size, Integer from);
+
+    /**
+     * Метод возвращает гистограмму оценок фильма. Гистограмма хранится в памяти и меняется вместе с лайками
+     *
+     * @param filmId идентификатор фильма
+     * @return экземпляр {@link RatingHistogram}
+     */
+    RatingHistogram findRatingHistogram(Long filmId);
+
+    /**
+     * Метод возвращает измененные и удаленные фильмы с версией изменения больше переданной. Каждый фильм
+     * возвращается один раз с версией последнего изменения
+     *
+     * @param sinceVersion версия, изменения после которой нужны
+     * @param limit максимальное количество изменений
+     * @return список {@link FilmChange} по возрастанию версии
+     */
+    List<FilmChange> findChanges(Long sinceVersion, Integer limit);
 
     /**
      * Метод возвращает коллекцию популярных фильмов
@@ -107,52 +147,113 @@ public interface FilmStorage {
     void updateFilm(Film newFilm);
 
     /**
-     * Метод добавляет лайк фильму
+     * Метод возвращает лайк пользователя фильму
+     *
+     * @param filmId идентификатор фильма
+     * @param userId идентификатор пользователя
+     * @return лайк либо пустое значение, если его нет
+     */
+    Optional<Like> findLike(Long filmId, Long userId);
+
+    /**
+     * Метод добавляет лайк фильму или обновляет оценку уже поставленного лайка
      *
      * @param filmId идентификатор фильма
      * @param userId идентификатор пользователя
+     * @return {@code true}, если лайк добавлен или изменена оценка
      */
-    void addLike(Long filmId, Long userId, Double mark);
+    boolean addLike(Long filmId, Long userId, Double mark);
 
     /**
      * Метод удаляет лайк с фильма
      *
      * @param filmId идентификатор фильма
      * @param userId идентификатор пользователя
+     * @return {@code true}, если лайк был удалён
+     */
+    boolean removeLike(Long filmId, Long userId);
+
+    /**
+     * Метод добавляет лайки или обновляет оценки одним пакетом
+     *
+     * @param likes коллекция лайков
+     */
+    void addLikes(Collection<Like> likes);
+
+    /**
+     * Метод удаляет лайки одним пакетом
+     *
+     * @param likes коллекция лайков; оценка не используется
+     */
+    void removeLikes(Collection<Like> likes);
+
+    /**
+     * Метод возвращает номер последнего сегмента журнала лайков, изменения которого записаны в БД
+     *
+     * @param journal имя журнала
+     * @return номер сегмента; 0, если записей не было
+     */
+    long findFlushedLikeSegment(String journal);
+
+    /**
+     * Метод сохраняет номер последнего сегмента журнала лайков, изменения которого записаны в БД. Вызывается в
+     * транзакции записи изменений
+     *
+     * @param journal имя журнала
+     * @param segment номер сегмента
+     */
+    void saveFlushedLikeSegment(String journal, long segment);
+
+    /**
+     * Метод возвращает идентификаторы фильмов, счётчики лайков которых расходятся с самими лайками
+     *
+     * @return коллекция идентификаторов фильмов
+     */
+    Collection<Long> findStaleStats();
+
+    /**
+     * Метод пересчитывает счётчики лайков фильмов по самим лайкам
+     *
+     * @param filmIds идентификаторы фильмов
+     * @return количество исправленных счётчиков
      */
-    void removeLike(Long filmId, Long userId);
+    long refreshStats(Collection<Long> filmIds);
 
     /**
      * Метод добавляет жанр фильму
      *
      * @param filmId идентификатор фильма
      * @param genreId идентификатор жанра
+     * @return {@code true}, если жанр был добавлен
      */
-    void addGenre(Long filmId, Long genreId);
+    boolean addGenre(Long filmId, Long genreId);
 
     /**
      * Метод добавляет режиссера фильму
      *
      * @param filmId идентификатор фильма
      * @param directorId идентификатор режиссера
+     * @return {@code true}, если режиссер был добавлен
      */
-    void addDirector(Long filmId, Long directorId);
+    boolean addDirector(Long filmId, Long directorId);
 
     /**
      * Метод удаляет жанр из фильма
      *
      * @param filmId идентификатор фильма
      * @param genreId идентификатор жанра
+     * @return {@code true}, если жанр был удалён
      */
-    void removeGenre(Long filmId, Long genreId);
+    boolean removeGenre(Long filmId, Long genreId);
 
     /**
      * Метод удаляет режиссера из фильма
      *
      * @param filmId идентификатор фильма
      * @param directorId идентификатор режиссера
+     * @return {@code true}, если режиссер был удалён
      */
-    void removeDirector(Long filmId, Long directorId);
+    boolean removeDirector(Long filmId, Long directorId);
 
     /**
      * Метод удаляет с фильма переданный рейтинг
@@ -0,0 +1,342 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dal.StorageChange;
+import ru.yandex.practicum.filmorate.dal.StorageChange.EntitiesDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.Entity;
+import ru.yandex.practicum.filmorate.dal.StorageChange.FilmDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.LikeAccepted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.LikeChanged;
+import ru.yandex.practicum.filmorate.dal.StorageChange.UserDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.UserLinksPurged;
+import ru.yandex.practicum.filmorate.dal.StorageChangeListener;
+import ru.yandex.practicum.filmorate.dal.StorageChanges;
+import ru.yandex.practicum.filmorate.model.enums.EventTypes;
+import ru.yandex.practicum.filmorate.model.enums.OperationTypes;
+import ru.yandex.practicum.filmorate.model.enums.TrendingWindow;
+
+/**
+ * Счётчики лайков фильмов в скользящих окнах для популярных в моменте фильмов.
+ * <p>
+ * Для каждого фильма и каждого {@link TrendingWindow} хранится кольцевой буфер количества лайков по интервалам окна:
+ * добавление лайка увеличивает счётчик текущего интервала, удаление уменьшает. Вес интервала убывает
+ * экспоненциально с его возрастом, период полураспада равен четверти окна, поэтому свежие лайки весят больше
+ * прошлых, а вышедшие за окно не учитываются вовсе.
+ * <p>
+ * Счётчики повторяют события LIKE ленты: при первом чтении они строятся из FEED за самое длинное окно, затем
+ * пополняются изменениями лайков, которые хранилища публикуют через {@link StorageChanges} до записи события в ленту,
+ * поэтому построение в той же транзакции не учитывает событие дважды. Пока счётчики не построены, изменения не
+ * учитываются: их учтёт построение из ленты. Удаление фильма удаляет и его счётчики. Откат транзакции сбрасывает
+ * счётчики, как и построение, начатое после записи изменения и до фиксации, и они строятся заново.
+ */
+@Slf4j
+@Component
+public class FilmTrendingIndex implements StorageChangeListener {
+
+    private static final String GET_LIKE_EVENTS_QUERY = """
+            SELECT fe.ENTITY_ID,
+                   fe.TIME_FIELD,
+                   fe.OPERATION_TYPE
+              FROM FEED fe
+             INNER JOIN FILMS f ON f.ID = fe.ENTITY_ID
+             WHERE fe.EVENT_TYPE = :eventType
+               AND fe.TIME_FIELD >= :since
+            """;
+    private static final TrendingWindow LONGEST_WINDOW = TrendingWindow.WEEK;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final Map<Long, FilmCounters> counters = new ConcurrentHashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean loaded;
+    // Значение System.nanoTime() в начале последнего построения, изменяется под блокировкой записи
+    private long loadStartedAt;
+
+    public FilmTrendingIndex(NamedParameterJdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Метод возвращает идентификаторы фильмов с наибольшим взвешенным количеством лайков в окне
+     *
+     * @param window окно
+     * @param count количество фильмов
+     * @return идентификаторы фильмов по убыванию веса, при равном весе по возрастанию идентификатора
+     */
+    public List<Long> findTop(TrendingWindow window, int count) {
+        ensureLoaded();
+
+        long now = System.currentTimeMillis();
+        Comparator<Map.Entry<Long, Double>> ranking = Map.Entry.<Long, Double>comparingByValue()
+                .thenComparing(Map.Entry.<Long, Double>comparingByKey().reversed());
+        PriorityQueue<Map.Entry<Long, Double>> top = new PriorityQueue<>(ranking);
+        List<Long> expired = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            counters.forEach((filmId, filmCounters) -> {
+                double score;
+                synchronized (filmCounters) {
+                    if (filmCounters.isExpired(now)) {
+                        expired.add(filmId);
+                        return;
+                    }
+                    score = filmCounters.score(window, now);
+                }
+                if (score > 0) {
+                    top.add(Map.entry(filmId, score));
+                    if (top.size() > count) {
+                        top.poll();
+                    }
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+        evict(expired, now);
+
+        List<Long> result = new ArrayList<>(top.size());
+        while (!top.isEmpty()) {
+            result.add(top.poll().getKey());
+        }
+        log.debug("В окне {} найдено {} фильмов с лайками", window, result.size());
+        return result.reversed();
+    }
+
+    @Override
+    public void onWrite(StorageChange change) {
+        Runnable action = actionOf(change);
+        if (action != null) {
+            action.run();
+        }
+    }
+
+    @Override
+    public void onCommit(StorageChange change, long writtenAt) {
+        if (actionOf(change) != null) {
+            resetIfLoadedAfter(writtenAt);
+        }
+    }
+
+    @Override
+    public void onRollback(StorageChange change) {
+        if (actionOf(change) != null) {
+            reset();
+        }
+    }
+
+    /**
+     * Метод возвращает действие, переносящее изменение в счётчики
+     *
+     * @param change изменение
+     * @return действие либо {@code null}, если изменение счётчиков не касается
+     */
+    private Runnable actionOf(StorageChange change) {
+        return switch (change) {
+            case LikeChanged like -> () -> applyLike(like.filmId(), like.timestamp(),
+                    like.after() == null ? OperationTypes.REMOVE : OperationTypes.ADD);
+            case LikeAccepted like -> () -> applyLike(like.filmId(), like.timestamp(),
+                    like.removed() ? OperationTypes.REMOVE : OperationTypes.ADD);
+            case FilmDeleted deleted -> () -> applyRemove(deleted.filmId());
+            // Лайки пользователя уходят из ленты, поэтому счётчики строятся заново
+            case UserDeleted user -> this::reset;
+            case UserLinksPurged user -> this::reset;
+            case EntitiesDeleted deleted when deleted.entity() == Entity.FILM || deleted.entity() == Entity.USER ->
+                    this::reset;
+            default -> null;
+        };
+    }
+
+    /**
+     * Метод учитывает изменение лайка фильма. Пока счётчики не построены, изменение не учитывается: его учтёт
+     * построение из ленты
+     *
+     * @param filmId идентификатор фильма
+     * @param timestamp время изменения в миллисекундах
+     * @param operation добавление или удаление лайка
+     */
+    private void applyLike(Long filmId, long timestamp, OperationTypes operation) {
+        lock.readLock().lock();
+        try {
+            if (!loaded) {
+                return;
+            }
+            FilmCounters filmCounters = counters.computeIfAbsent(filmId, id -> new FilmCounters());
+            synchronized (filmCounters) {
+                filmCounters.add(timestamp, deltaOf(operation));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Метод сбрасывает счётчики, если их построение началось после записи изменения: такое построение прошло до
+     * фиксации и события в ленте не видело
+     *
+     * @param writtenAt значение {@link System#nanoTime()} при записи изменения
+     */
+    private void resetIfLoadedAfter(long writtenAt) {
+        boolean stale;
+        lock.readLock().lock();
+        try {
+            stale = loaded && loadStartedAt - writtenAt > 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (stale) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        lock.writeLock().lock();
+        try {
+            counters.clear();
+            loaded = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("Счётчики лайков в скользящих окнах сброшены");
+    }
+
+    private void applyRemove(Long filmId) {
+        lock.readLock().lock();
+        try {
+            counters.remove(filmId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void evict(List<Long> filmIds, long now) {
+        if (filmIds.isEmpty()) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            // Пока ждали блокировку, фильм мог получить новый лайк
+            filmIds.forEach(filmId -> counters.computeIfPresent(filmId,
+                    (id, filmCounters) -> filmCounters.isExpired(now) ? null : filmCounters));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("Удалены счётчики {} фильмов без лайков за последние {}", filmIds.size(), LONGEST_WINDOW);
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                log.debug("Построение счётчиков лайков в скользящих окнах");
+                loadStartedAt = System.nanoTime();
+                long since = System.currentTimeMillis() - LONGEST_WINDOW.getLength().toMillis();
+                MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                        .addValue("eventType", EventTypes.LIKE.name())
+                        .addValue("since", new Timestamp(since));
+                jdbcTemplate.query(GET_LIKE_EVENTS_QUERY, parameterSource, (RowCallbackHandler) rs ->
+                        counters.computeIfAbsent(rs.getLong("ENTITY_ID"), id -> new FilmCounters())
+                                .add(rs.getTimestamp("TIME_FIELD").getTime(),
+                                        deltaOf(OperationTypes.valueOf(rs.getString("OPERATION_TYPE")))));
+                loaded = true;
+                log.debug("Счётчики лайков в скользящих окнах построены для {} фильмов", counters.size());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static int deltaOf(OperationTypes operation) {
+        return operation == OperationTypes.REMOVE ? -1 : 1;
+    }
+
+    /**
+     * Счётчики фильма по всем окнам. Не потокобезопасны, доступ синхронизируется на экземпляре
+     */
+    private static final class FilmCounters {
+
+        private final Map<TrendingWindow, Ring> rings = new EnumMap<>(TrendingWindow.class);
+        private long lastTimestamp;
+
+        FilmCounters() {
+            for (TrendingWindow window : TrendingWindow.values()) {
+                rings.put(window, new Ring(window));
+            }
+        }
+
+        void add(long timestamp, int delta) {
+            rings.values().forEach(ring -> ring.add(timestamp, delta));
+            lastTimestamp = Math.max(lastTimestamp, timestamp);
+        }
+
+        double score(TrendingWindow window, long now) {
+            return rings.get(window).score(now);
+        }
+
+        boolean isExpired(long now) {
+            return now - lastTimestamp >= LONGEST_WINDOW.getLength().toMillis();
+        }
+    }
+
+    /**
+     * Кольцевой буфер счётчиков по интервалам окна. Ячейка хранит номер интервала, к которому относится её
+     * счётчик, поэтому устаревшие ячейки обнуляются при повторном использовании, а не по таймеру
+     */
+    private static final class Ring {
+
+        private final long bucketMillis;
+        private final double halfLifeBuckets;
+        private final long[] buckets;
+        private final int[] counts;
+
+        Ring(TrendingWindow window) {
+            this.bucketMillis = window.getBucket().toMillis();
+            this.halfLifeBuckets = window.getBuckets() / 4.0;
+            this.buckets = new long[window.getBuckets()];
+            this.counts = new int[window.getBuckets()];
+        }
+
+        void add(long timestamp, int delta) {
+            long bucket = timestamp / bucketMillis;
+            int slot = (int) Math.floorMod(bucket, (long) buckets.length);
+            if (buckets[slot] > bucket) {
+                // Ячейку уже занял более поздний интервал: событие старше окна
+                return;
+            }
+            if (buckets[slot] < bucket) {
+                buckets[slot] = bucket;
+                counts[slot] = 0;
+            }
+            counts[slot] += delta;
+        }
+
+        double score(long now) {
+            long current = now / bucketMillis;
+            double result = 0;
+            for (int slot = 0; slot < buckets.length; slot++) {
+                long age = current - buckets[slot];
+                if (counts[slot] != 0 && age >= 0 && age < buckets.length) {
+                    result += counts[slot] * Math.pow(0.5, age / halfLifeBuckets);
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Журнал изменений лайков, ещё не записанных в БД.
+ * <p>
+ * Журнал состоит из сегментов {@code likes-N.log}, в которые строки только дописываются. При записи накопленных
+ * изменений в БД текущий сегмент закрывается и открывается следующий, а после успешной записи закрытые сегменты
+ * удаляются. Сегменты, оставшиеся после аварийной остановки, читаются при следующем запуске, кроме уже записанных в
+ * БД. Каталог помечается файлом {@code generation} с поколением БД: если БД пересоздана, сегменты прежней БД
+ * удаляются без воспроизведения. Строки сбрасываются на диск отдельным вызовом {@link #sync()}, чтобы один сброс
+ * подтверждал несколько строк. Вызовы {@link #append} и {@link #rotate} должны выполняться под общей блокировкой,
+ * {@link #sync()} может выполняться одновременно с {@link #append}, но не с {@link #rotate}.
+ */
+@Slf4j
+class LikeJournal implements Closeable {
+
+    private static final String SEGMENT_PREFIX = "likes-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String GENERATION_FILE = "generation";
+
+    private final Path directory;
+    private final boolean fsync;
+    private FileChannel channel;
+    private long segment;
+
+    /**
+     * Открывает журнал в каталоге. Сегменты, уже записанные в БД или относящиеся к другому поколению БД, удаляются.
+     * Новые строки дописываются в сегмент, следующий за последним существующим и за последним записанным в БД
+     *
+     * @param directory каталог журнала
+     * @param fsync признак сброса строк на диск методом {@link #sync()}
+     * @param generation поколение БД
+     * @param flushedSegment номер последнего сегмента, записанного в БД
+     * @throws IOException при ошибке работы с файлами
+     */
+    LikeJournal(Path directory, boolean fsync, String generation, long flushedSegment) throws IOException {
+        this.directory = directory;
+        this.fsync = fsync;
+
+        Files.createDirectories(directory);
+        Path generationFile = directory.resolve(GENERATION_FILE);
+        if (Files.exists(generationFile) && !Files.readString(generationFile).equals(generation)) {
+            log.warn("Журнал лайков {} относится к другому поколению БД, его сегменты не воспроизводятся", directory);
+            deleteUpTo(Long.MAX_VALUE);
+        } else {
+            deleteUpTo(flushedSegment);
+        }
+        Files.writeString(generationFile, generation);
+        List<Path> existing = segments();
+        this.segment = Math.max(existing.isEmpty() ? 0 : segmentNumber(existing.getLast()), flushedSegment) + 1;
+        this.channel = open(segment);
+    }
+
+    /**
+     * Метод возвращает строки всех сегментов, кроме текущего, в порядке записи
+     *
+     * @return строки журнала
+     * @throws IOException при ошибке чтения
+     */
+    List<String> readClosedSegments() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (Path path : segments()) {
+            if (segmentNumber(path) < segment) {
+                lines.addAll(Files.readAllLines(path, StandardCharsets.UTF_8));
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Метод дописывает строку в текущий сегмент без сброса на диск
+     *
+     * @param line строка без перевода строки
+     * @throws IOException при ошибке записи
+     */
+    void append(String line) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Метод сбрасывает на диск все дописанные в текущий сегмент строки, если сброс включен
+     *
+     * @throws IOException при ошибке записи
+     */
+    void sync() throws IOException {
+        if (fsync) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Метод сбрасывает текущий сегмент на диск, закрывает его и открывает следующий
+     *
+     * @return номер закрытого сегмента
+     * @throws IOException при ошибке работы с файлами
+     */
+    long rotate() throws IOException {
+        sync();
+        channel.close();
+        long closed = segment;
+        segment++;
+        channel = open(segment);
+        return closed;
+    }
+
+    /**
+     * Метод удаляет сегменты с номерами не больше переданного
+     *
+     * @param lastSegment номер последнего удаляемого сегмента
+     * @throws IOException при ошибке удаления
+     */
+    void deleteUpTo(long lastSegment) throws IOException {
+        for (Path path : segments()) {
+            if (segmentNumber(path) <= lastSegment) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private FileChannel open(long number) throws IOException {
+        Path path = directory.resolve(SEGMENT_PREFIX + number + SEGMENT_SUFFIX);
+        log.debug("Открыт сегмент журнала лайков {}", path);
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private List<Path> segments() throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(path -> {
+                        String name = path.getFileName().toString();
+                        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+                    })
+                    .sorted(Comparator.comparingLong(LikeJournal::segmentNumber))
+                    .toList();
+        }
+    }
+
+    private static long segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
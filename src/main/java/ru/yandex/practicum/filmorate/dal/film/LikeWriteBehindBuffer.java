@@ -0,0 +1,467 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.config.LikeWriteBehindProperties;
+import ru.yandex.practicum.filmorate.dal.DatabaseGeneration;
+import ru.yandex.practicum.filmorate.dal.StorageChange.LikeAccepted;
+import ru.yandex.practicum.filmorate.dal.StorageChanges;
+import ru.yandex.practicum.filmorate.dal.feed.FeedStorage;
+import ru.yandex.practicum.filmorate.dal.outbox.OutboxStorage;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.ChangeEvent;
+import ru.yandex.practicum.filmorate.model.Feed;
+import ru.yandex.practicum.filmorate.model.Like;
+import ru.yandex.practicum.filmorate.model.enums.ChangeEntityTypes;
+import ru.yandex.practicum.filmorate.model.enums.EventTypes;
+import ru.yandex.practicum.filmorate.model.enums.OperationTypes;
+
+/**
+ * Отложенная запись лайков.
+ * <p>
+ * Изменение лайка подтверждается после записи в {@link LikeJournal} и сразу публикуется через {@link StorageChanges}
+ * и попадает в набор ожидающих изменений, который учитывается при чтении лайков фильма. Раз в
+ * {@link LikeWriteBehindProperties#flushInterval()} ожидающие изменения записываются в БД одной транзакцией: лайки
+ * пакетом слияний и удалений, события ленты и журнала изменений пакетами вставок. Для одной пары "пользователь —
+ * фильм" в БД и журнал изменений попадает только последнее изменение, события ленты записываются все. Изменение,
+ * не меняющее ни наличия лайка, ни оценки с учётом ожидающих изменений, не принимается.
+ * <p>
+ * Строка журнала дописывается под общей блокировкой, а сброс на диск выполняется вне её: поток, дождавшийся сброса,
+ * подтверждает все строки, дописанные к его началу, и остальные потоки сброс не повторяют. Номер последнего сегмента
+ * журнала сохраняется в БД в той же транзакции, что и изменения, поэтому сегменты, записанные в БД перед аварийной
+ * остановкой, при запуске не воспроизводятся повторно. Схема БД создаётся без удаления существующих таблиц, поэтому
+ * номер сохраняется между запусками; журнал, оставшийся от пересозданной БД, отбрасывается по её поколению
+ * {@link DatabaseGeneration}.
+ * <p>
+ * Если пакет нарушает ограничения БД, например фильм успел удалиться, изменения записываются по одному в той же
+ * транзакции, а недопустимые отбрасываются откатом к точке сохранения. При других ошибках изменения возвращаются в
+ * набор ожидающих и записываются при следующей попытке, а журнал сохраняется до успешной записи.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "filmorate.likes.write-behind", name = "enabled", havingValue = "true")
+public class LikeWriteBehindBuffer {
+
+    private final FilmStorage filmStorage;
+    private final FeedStorage feedStorage;
+    private final OutboxStorage outboxStorage;
+    private final StorageChanges storageChanges;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate savepointTemplate;
+    private final String journalName;
+    private final boolean fsync;
+    private final LikeJournal journal;
+    private final ScheduledExecutorService scheduler;
+
+    // Порядок захвата: flushLock, syncLock, lock
+    private final Object lock = new Object();
+    private final Object syncLock = new Object();
+    private final Object flushLock = new Object();
+    private Map<LikeKey, LikeChange> pending = new LinkedHashMap<>();
+    private Map<LikeKey, LikeChange> inFlight = Map.of();
+    private List<LikeChange> events = new ArrayList<>();
+    // Количество дописанных строк и записанных пакетов изменяется под lock, сброшенных на диск строк — под syncLock
+    private long appended;
+    private long synced;
+    private long flushes;
+
+    public LikeWriteBehindBuffer(FilmStorage filmStorage, FeedStorage feedStorage, OutboxStorage outboxStorage,
+                                 StorageChanges storageChanges, TransactionTemplate transactionTemplate,
+                                 DatabaseGeneration databaseGeneration, LikeWriteBehindProperties properties)
+            throws IOException {
+        this.filmStorage = filmStorage;
+        this.feedStorage = feedStorage;
+        this.outboxStorage = outboxStorage;
+        this.storageChanges = storageChanges;
+        this.transactionTemplate = transactionTemplate;
+        this.savepointTemplate = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        this.savepointTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+        this.journalName = properties.journalDirectory().toAbsolutePath().normalize().toString();
+        this.fsync = properties.fsync();
+        this.journal = new LikeJournal(properties.journalDirectory(), fsync, databaseGeneration.get(),
+                filmStorage.findFlushedLikeSegment(journalName));
+
+        // Восстанавливаем изменения, не записанные в БД до остановки
+        int restored = 0;
+        for (String line : journal.readClosedSegments()) {
+            LikeChange change = LikeChange.parse(line);
+            if (change != null) {
+                pending.put(change.key(), change);
+                events.add(change);
+                restored++;
+            }
+        }
+        if (restored > 0) {
+            log.info("Из журнала восстановлено {} изменений лайков", restored);
+        }
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "like-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = properties.flushInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        log.info("Отложенная запись лайков включена, интервал записи {}", properties.flushInterval());
+    }
+
+    /**
+     * Метод принимает добавление лайка или изменение оценки
+     *
+     * @param filmId идентификатор фильма
+     * @param userId идентификатор пользователя
+     * @param mark оценка фильма
+     * @return {@code true}, если лайк добавлен или изменена оценка
+     */
+    public boolean addLike(Long filmId, Long userId, Double mark) {
+        LikeChange change = new LikeChange(filmId, userId, mark, false, System.currentTimeMillis());
+        if (!accept(change)) {
+            return false;
+        }
+        storageChanges.publish(new LikeAccepted(filmId, userId, false, change.timestamp()));
+        return true;
+    }
+
+    /**
+     * Метод принимает удаление лайка
+     *
+     * @param filmId идентификатор фильма
+     * @param userId идентификатор пользователя
+     * @return {@code true}, если лайк был поставлен
+     */
+    public boolean removeLike(Long filmId, Long userId) {
+        LikeChange change = new LikeChange(filmId, userId, null, true, System.currentTimeMillis());
+        if (!accept(change)) {
+            return false;
+        }
+        storageChanges.publish(new LikeAccepted(filmId, userId, true, change.timestamp()));
+        return true;
+    }
+
+    /**
+     * Метод возвращает ещё не записанные в БД изменения лайков фильма
+     *
+     * @param filmId идентификатор фильма
+     * @return изменения по идентификаторам пользователей
+     */
+    public Map<Long, LikeChange> findPending(Long filmId) {
+        Map<Long, LikeChange> result = new HashMap<>();
+        synchronized (lock) {
+            for (Map<LikeKey, LikeChange> changes : List.of(inFlight, pending)) {
+                for (LikeChange change : changes.values()) {
+                    if (change.filmId().equals(filmId)) {
+                        result.put(change.userId(), change);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Метод записывает накопленные изменения в БД
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            Map<LikeKey, LikeChange> batch;
+            List<LikeChange> batchEvents;
+            long lastSegment;
+            // Сегмент закрывается со сбросом на диск, поэтому ожидающие сброса потоки получают его результат
+            synchronized (syncLock) {
+                synchronized (lock) {
+                    if (pending.isEmpty() && events.isEmpty()) {
+                        return;
+                    }
+                    batch = pending;
+                    batchEvents = events;
+                    pending = new LinkedHashMap<>();
+                    events = new ArrayList<>();
+                    inFlight = batch;
+                    lastSegment = rotateJournal();
+                    synced = appended;
+                }
+            }
+
+            try {
+                write(batch, batchEvents, lastSegment);
+            } catch (RuntimeException e) {
+                synchronized (lock) {
+                    // Более поздние изменения тех же пар остаются в силе
+                    batch.putAll(pending);
+                    pending = batch;
+                    batchEvents.addAll(events);
+                    events = batchEvents;
+                    inFlight = Map.of();
+                }
+                throw e;
+            }
+
+            synchronized (lock) {
+                inFlight = Map.of();
+                flushes++;
+            }
+            try {
+                journal.deleteUpTo(lastSegment);
+            } catch (IOException e) {
+                log.warn("Не удалось удалить записанные в БД сегменты журнала лайков", e);
+            }
+            log.debug("В БД записано {} изменений лайков и {} событий", batch.size(), batchEvents.size());
+        }
+    }
+
+    @PreDestroy
+    void shutdown() throws IOException {
+        scheduler.shutdown();
+        try {
+            flush();
+        } finally {
+            journal.close();
+        }
+    }
+
+    /**
+     * Метод принимает изменение, если оно отличается от последнего известного состояния лайка: ожидающего изменения
+     * либо, если его нет, лайка в БД
+     *
+     * @param change изменение лайка
+     * @return {@code true}, если изменение принято
+     */
+    private boolean accept(LikeChange change) {
+        Optional<Like> stored = Optional.empty();
+        long storedAt = -1;
+        long position;
+        while (true) {
+            synchronized (lock) {
+                LikeChange last = pending.getOrDefault(change.key(), inFlight.get(change.key()));
+                // Лайк из БД годится, только если после его чтения ни один пакет не был записан
+                if (last != null || storedAt == flushes) {
+                    if (!change.differsFrom(last != null ? last.toStoredLike() : stored)) {
+                        return false;
+                    }
+                    position = append(change);
+                    break;
+                }
+                storedAt = flushes;
+            }
+            stored = filmStorage.findLike(change.filmId(), change.userId());
+        }
+        if (fsync) {
+            syncUpTo(position);
+        }
+        return true;
+    }
+
+    /**
+     * Метод дописывает изменение в журнал и в набор ожидающих. Вызывается под lock
+     *
+     * @param change изменение лайка
+     * @return номер строки журнала
+     */
+    private long append(LikeChange change) {
+        try {
+            journal.append(change.format());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать изменение лайка в журнал", e);
+        }
+        pending.put(change.key(), change);
+        events.add(change);
+        return ++appended;
+    }
+
+    /**
+     * Метод дожидается сброса на диск строки журнала с переданным номером. Один сброс подтверждает все строки,
+     * дописанные к его началу
+     *
+     * @param position номер строки журнала
+     */
+    private void syncUpTo(long position) {
+        synchronized (syncLock) {
+            if (synced >= position) {
+                return;
+            }
+            long target;
+            synchronized (lock) {
+                target = appended;
+            }
+            try {
+                journal.sync();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось сбросить журнал лайков на диск", e);
+            }
+            synced = target;
+        }
+    }
+
+    private long rotateJournal() {
+        try {
+            return journal.rotate();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось переключить сегмент журнала лайков", e);
+        }
+    }
+
+    private void write(Map<LikeKey, LikeChange> batch, List<LikeChange> batchEvents, long lastSegment) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                List<Like> added = new ArrayList<>();
+                List<Like> removed = new ArrayList<>();
+                for (LikeChange change : batch.values()) {
+                    (change.removed() ? removed : added).add(change.toLike());
+                }
+                filmStorage.addLikes(added);
+                filmStorage.removeLikes(removed);
+                feedStorage.addFeeds(batchEvents.stream().map(LikeChange::toFeed).toList());
+                outboxStorage.addEvents(batch.values().stream().map(LikeChange::toChangeEvent).toList());
+                filmStorage.saveFlushedLikeSegment(journalName, lastSegment);
+            });
+        } catch (NotFoundException | DataIntegrityViolationException e) {
+            log.warn("Пакет изменений лайков нарушает ограничения БД, изменения будут записаны по одному: {}",
+                    e.getMessage());
+            transactionTemplate.executeWithoutResult(status -> {
+                writeOneByOne(batch, batchEvents);
+                filmStorage.saveFlushedLikeSegment(journalName, lastSegment);
+            });
+        }
+    }
+
+    private void writeOneByOne(Map<LikeKey, LikeChange> batch, List<LikeChange> batchEvents) {
+        for (LikeChange change : batch.values()) {
+            try {
+                // Каждое изменение под своей точкой сохранения: недопустимое откатывается, не затрагивая остальные
+                savepointTemplate.executeWithoutResult(status -> {
+                    if (change.removed()) {
+                        filmStorage.removeLike(change.filmId(), change.userId());
+                    } else {
+                        filmStorage.addLike(change.filmId(), change.userId(), change.mark());
+                    }
+                    outboxStorage.addEvent(change.toChangeEvent());
+                });
+            } catch (NotFoundException | DataIntegrityViolationException e) {
+                log.warn("Изменение лайка фильма с id {} от пользователя с id {} отброшено: {}", change.filmId(),
+                        change.userId(), e.getMessage());
+            }
+        }
+        for (LikeChange event : batchEvents) {
+            try {
+                savepointTemplate.executeWithoutResult(status -> feedStorage.addFeed(event.toFeed()));
+            } catch (NotFoundException | DataIntegrityViolationException e) {
+                log.warn("Событие лайка пользователя с id {} отброшено: {}", event.userId(), e.getMessage());
+            }
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Не удалось записать изменения лайков в БД, запись будет повторена", e);
+        }
+    }
+
+    private record LikeKey(Long filmId, Long userId) {
+    }
+
+    /**
+     * Изменение лайка
+     *
+     * @param filmId идентификатор фильма
+     * @param userId идентификатор пользователя
+     * @param mark оценка фильма; для удаления не используется
+     * @param removed признак удаления лайка
+     * @param timestamp время изменения в миллисекундах
+     */
+    public record LikeChange(Long filmId, Long userId, Double mark, boolean removed, long timestamp) {
+
+        private static final String FIELD_SEPARATOR = " ";
+        private static final String ADDED = "A";
+        private static final String REMOVED = "R";
+        private static final String NO_MARK = "-";
+
+        LikeKey key() {
+            return new LikeKey(filmId, userId);
+        }
+
+        Optional<Like> toStoredLike() {
+            return removed ? Optional.empty() : Optional.of(toLike());
+        }
+
+        boolean differsFrom(Optional<Like> current) {
+            if (removed) {
+                return current.isPresent();
+            }
+            // Оценка хранится в БД с одинарной точностью
+            return current.map(like -> !Objects.equals(toReal(like.getMark()), toReal(mark))).orElse(true);
+        }
+
+        private static Float toReal(Double value) {
+            return value == null ? null : value.floatValue();
+        }
+
+        Like toLike() {
+            return Like.builder()
+                    .filmId(filmId)
+                    .userId(userId)
+                    .mark(mark)
+                    .build();
+        }
+
+        Feed toFeed() {
+            return Feed.builder()
+                    .entityId(filmId)
+                    .userId(userId)
+                    .timestamp(new Timestamp(timestamp))
+                    .eventType(EventTypes.LIKE)
+                    .operationType(removed ? OperationTypes.REMOVE : OperationTypes.ADD)
+                    .build();
+        }
+
+        ChangeEvent toChangeEvent() {
+            return ChangeEvent.builder()
+                    .entityType(ChangeEntityTypes.LIKE)
+                    .entityKey(ChangeEvent.keyOf(filmId, userId))
+                    .operationType(removed ? OperationTypes.REMOVE : OperationTypes.ADD)
+                    .payload(removed ? null : toLike())
+                    .timestamp(new Timestamp(timestamp))
+                    .build();
+        }
+
+        String format() {
+            return String.join(FIELD_SEPARATOR, removed ? REMOVED : ADDED, filmId.toString(), userId.toString(),
+                    mark == null ? NO_MARK : mark.toString(), Long.toString(timestamp));
+        }
+
+        static LikeChange parse(String line) {
+            String[] fields = line.split(FIELD_SEPARATOR);
+            try {
+                if (fields.length != 5 || !(ADDED.equals(fields[0]) || REMOVED.equals(fields[0]))) {
+                    throw new IllegalArgumentException("неверное количество полей или тип изменения");
+                }
+                return new LikeChange(Long.parseLong(fields[1]), Long.parseLong(fields[2]),
+                        NO_MARK.equals(fields[3]) ? null : Double.parseDouble(fields[3]), REMOVED.equals(fields[0]),
+                        Long.parseLong(fields[4]));
+            } catch (IllegalArgumentException e) {
+                // Последняя строка могла остаться недописанной при аварийной остановке
+                log.warn("Строка журнала лайков пропущена: '{}' ({})", line, e.getMessage());
+                return null;
+            }
+        }
+    }
+}
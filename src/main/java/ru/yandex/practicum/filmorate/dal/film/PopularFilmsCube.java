@@ -0,0 +1,516 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.config.PopularFilmsProperties;
+import ru.yandex.practicum.filmorate.dal.StorageChange;
+import ru.yandex.practicum.filmorate.dal.StorageChange.EntitiesDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.Entity;
+import ru.yandex.practicum.filmorate.dal.StorageChange.FilmDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.FilmGenreChanged;
+import ru.yandex.practicum.filmorate.dal.StorageChange.FilmSaved;
+import ru.yandex.practicum.filmorate.dal.StorageChange.LikeChanged;
+import ru.yandex.practicum.filmorate.dal.StorageChange.StatsRefreshed;
+import ru.yandex.practicum.filmorate.dal.StorageChange.UserDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.UserLinksPurged;
+import ru.yandex.practicum.filmorate.dal.StorageChangeListener;
+import ru.yandex.practicum.filmorate.dal.StorageChanges;
+import ru.yandex.practicum.filmorate.util.TransactionCallbacks;
+
+/**
+ * Предрассчитанные списки популярных фильмов для всех сочетаний жанра и года выпуска.
+ * <p>
+ * Для каждой ячейки (жанр, год), (жанр, *), (*, год) и (*, *) хранится массив идентификаторов первых
+ * {@link PopularFilmsProperties#topSize()} фильмов в порядке запроса популярных фильмов: по средней оценке, количеству
+ * лайков и идентификатору. Запрос популярных фильмов, не превышающий размер массива, сводится к срезу массива.
+ * <p>
+ * Фоновая задача полностью пересчитывает массивы по FILM_STATS, FILMS и FILMS_GENRES и атомарно подменяет их вместе с
+ * номером версии. Между пересчётами изменения счётчиков, жанров и года выпуска фильма, опубликованные через
+ * {@link StorageChanges}, после фиксации транзакции переносятся только в ячейки этого фильма. Изменение счётчиков
+ * одного фильма переносится приращением, уже посчитанным при записи, без повторного чтения FILM_STATS; фильмы,
+ * изменённые во время пересчёта, после него перечитываются. Если фильм выбывает из заполненного массива, следующий за
+ * ним фильм неизвестен: такая ячейка помечается устаревшей и до пересчёта обслуживается запросом к БД. Транзакция,
+ * опубликовавшая изменения, до своего завершения тоже читает популярные фильмы из БД, чтобы видеть свои изменения.
+ */
+@Slf4j
+@Component
+public class PopularFilmsCube implements StorageChangeListener {
+
+    private static final String GET_ALL_FILMS_QUERY = """
+            SELECT f.ID,
+                   YEAR(f.RELEASE_DATE) AS RELEASE_YEAR,
+                   fs.LIKES_COUNT,
+                   fs.MARK_SUM,
+                   fs.MARK_COUNT
+              FROM FILMS f
+             INNER JOIN FILM_STATS fs ON fs.FILM_ID = f.ID
+            """;
+    private static final String GET_ALL_FILM_GENRES_QUERY = """
+            SELECT fg.FILM_ID,
+                   fg.GENRE_ID
+              FROM FILMS_GENRES fg
+            """;
+    private static final String GET_FILMS_QUERY = GET_ALL_FILMS_QUERY + """
+             WHERE f.ID IN (:filmIds)
+            """;
+    private static final String GET_FILM_GENRES_QUERY = GET_ALL_FILM_GENRES_QUERY + """
+             WHERE fg.FILM_ID IN (:filmIds)
+            """;
+    private static final String GET_FILM_STATS_QUERY = """
+            SELECT fs.FILM_ID AS ID,
+                   fs.LIKES_COUNT,
+                   fs.MARK_SUM,
+                   fs.MARK_COUNT
+              FROM FILM_STATS fs
+             WHERE fs.FILM_ID IN (:filmIds)
+            """;
+    private static final int[] NO_FILMS = new int[0];
+    private static final Comparator<FilmEntry> BY_POPULARITY = Comparator.comparingDouble(FilmEntry::rate)
+            .thenComparingLong(FilmEntry::likes)
+            .reversed();
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final int topSize;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final AtomicLong versions = new AtomicLong();
+    private final AtomicBoolean rebuildScheduled = new AtomicBoolean();
+    private final Object lock = new Object();
+    private final Object rebuildLock = new Object();
+    // Фильмы, изменённые во время пересчёта: пересчёт мог прочитать данные до изменений
+    private Set<Integer> changedDuringRebuild;
+
+    public PopularFilmsCube(NamedParameterJdbcTemplate jdbcTemplate, PopularFilmsProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.topSize = properties.topSize();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "popular-films-cube");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long intervalMillis = properties.refreshInterval().toMillis();
+        if (intervalMillis > 0) {
+            scheduler.scheduleWithFixedDelay(this::rebuildQuietly, 0, intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            scheduleRebuild();
+        }
+    }
+
+    /**
+     * Метод возвращает идентификаторы популярных фильмов из предрассчитанного списка ячейки
+     *
+     * @param genreId идентификатор жанра; {@code null} для всех жанров
+     * @param year год выпуска; {@code null} для всех лет
+     * @param count количество фильмов
+     * @return идентификаторы фильмов по убыванию популярности либо пустое значение, если список ячейки не построен,
+     *         устарел или короче запрошенного
+     */
+    public Optional<List<Long>> findTop(Long genreId, Integer year, int count) {
+        Snapshot current = snapshot.get();
+        if (current == null || count > topSize) {
+            return Optional.empty();
+        }
+
+        Cell cell = new Cell(genreId, year);
+        int[] films = current.cells().getOrDefault(cell, NO_FILMS);
+        if (current.staleCells().contains(cell)) {
+            return Optional.empty();
+        }
+
+        log.debug("Популярные фильмы ячейки {} взяты из версии {}", cell, current.version());
+        return Optional.of(Arrays.stream(films, 0, Math.min(count, films.length))
+                .mapToObj(filmId -> (long) filmId)
+                .toList());
+    }
+
+    @Override
+    public void onWrite(StorageChange change) {
+        if (isInvalidating(change)) {
+            reset();
+        }
+    }
+
+    @Override
+    public void onCommit(StorageChange change, long writtenAt) {
+        switch (change) {
+            case LikeChanged like -> addStats(like.filmId(), like.likesDelta(), like.markSumDelta(),
+                    like.markCountDelta());
+            case StatsRefreshed refreshed -> updateStats(refreshed.filmIds());
+            case UserDeleted user -> updateStats(user.likedFilmIds());
+            case UserLinksPurged user -> updateStats(user.likedFilmIds());
+            case FilmSaved saved -> reload(List.of(saved.film().getId()));
+            case FilmGenreChanged genre -> reload(List.of(genre.filmId()));
+            case FilmDeleted deleted -> reload(List.of(deleted.filmId()));
+            // Пересчёт, начатый до фиксации, не увидел изменений транзакции
+            case EntitiesDeleted deleted when isInvalidating(deleted) -> reset();
+            default -> { }
+        }
+    }
+
+    @Override
+    public void onRollback(StorageChange change) {
+        if (isInvalidating(change)) {
+            reset();
+        }
+    }
+
+    /**
+     * Метод переносит в списки новые счётчики лайков фильмов, перечитывая их из БД
+     *
+     * @param filmIds идентификаторы фильмов
+     */
+    private void updateStats(Collection<Long> filmIds) {
+        if (filmIds.isEmpty()) {
+            return;
+        }
+
+        Map<Integer, UnaryOperator<FilmEntry>> changes = new HashMap<>();
+        jdbcTemplate.query(GET_FILM_STATS_QUERY, new MapSqlParameterSource().addValue("filmIds", filmIds),
+                (RowCallbackHandler) rs -> {
+                    long likes = rs.getLong("LIKES_COUNT");
+                    double markSum = rs.getDouble("MARK_SUM");
+                    long markCount = rs.getLong("MARK_COUNT");
+                    changes.put(Math.toIntExact(rs.getLong("ID")),
+                            entry -> entry == null ? null : entry.withStats(likes, markSum, markCount));
+                });
+        apply(changes);
+    }
+
+    /**
+     * Метод переносит в списки изменение счётчиков фильма, уже применённое к FILM_STATS
+     *
+     * @param filmId идентификатор фильма
+     * @param likesDelta изменение количества лайков
+     * @param markSumDelta изменение суммы оценок
+     * @param markCountDelta изменение количества оценок
+     */
+    private void addStats(Long filmId, int likesDelta, double markSumDelta, int markCountDelta) {
+        apply(Map.of(Math.toIntExact(filmId), entry -> entry == null ? null
+                : entry.withStats(entry.likes() + likesDelta, entry.markSum() + markSumDelta,
+                        entry.markCount() + markCountDelta)));
+    }
+
+    /**
+     * Метод перечитывает фильмы целиком: год выпуска, жанры и счётчики. Отсутствующие в БД фильмы удаляются из списков
+     *
+     * @param filmIds идентификаторы фильмов
+     */
+    private void reload(Collection<Long> filmIds) {
+        if (filmIds.isEmpty()) {
+            return;
+        }
+
+        Map<Integer, FilmEntry> entries = load(GET_FILMS_QUERY, GET_FILM_GENRES_QUERY,
+                new MapSqlParameterSource().addValue("filmIds", filmIds));
+        Map<Integer, UnaryOperator<FilmEntry>> changes = new HashMap<>();
+        for (Long filmId : filmIds) {
+            FilmEntry entry = entries.get(Math.toIntExact(filmId));
+            changes.put(Math.toIntExact(filmId), previous -> entry);
+        }
+        apply(changes);
+    }
+
+    /**
+     * Метод полностью пересчитывает списки и подменяет ими прежние
+     */
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            synchronized (lock) {
+                changedDuringRebuild = new HashSet<>();
+            }
+
+            Snapshot next;
+            try {
+                Map<Integer, FilmEntry> films = load(GET_ALL_FILMS_QUERY, GET_ALL_FILM_GENRES_QUERY,
+                        new MapSqlParameterSource());
+                Comparator<Integer> ranking = ranking(films);
+                Map<Cell, List<Integer>> members = films.entrySet().parallelStream()
+                        .flatMap(film -> cellsOf(film.getValue()).stream().map(cell -> Map.entry(cell, film.getKey())))
+                        .collect(Collectors.groupingByConcurrent(Map.Entry::getKey,
+                                Collectors.mapping(Map.Entry::getValue, Collectors.toList())));
+                Map<Cell, int[]> cells = members.entrySet().parallelStream()
+                        .collect(Collectors.toConcurrentMap(Map.Entry::getKey, cell -> cell.getValue().stream()
+                                .sorted(ranking)
+                                .limit(topSize)
+                                .mapToInt(Integer::intValue)
+                                .toArray()));
+                next = new Snapshot(versions.incrementAndGet(), films, cells, ConcurrentHashMap.newKeySet());
+            } catch (RuntimeException e) {
+                synchronized (lock) {
+                    changedDuringRebuild = null;
+                }
+                throw e;
+            }
+
+            Set<Integer> changed;
+            synchronized (lock) {
+                changed = changedDuringRebuild;
+                changedDuringRebuild = null;
+                snapshot.set(next);
+            }
+            log.debug("Списки популярных фильмов пересчитаны: версия {}, фильмов {}, ячеек {}", next.version(),
+                    next.films().size(), next.cells().size());
+            // Приращение, пришедшее во время пересчёта, могло уже войти в прочитанные данные, поэтому фильмы
+            // перечитываются, а не получают приращение повторно
+            reload(changed.stream().map(Integer::longValue).toList());
+        }
+
+        // Пересчёт внутри транзакции видит её незафиксированные данные
+        TransactionCallbacks.onCompletion(() -> { }, this::reset);
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private void apply(Map<Integer, UnaryOperator<FilmEntry>> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        synchronized (lock) {
+            Snapshot current = snapshot.get();
+            if (current != null) {
+                changes.forEach((filmId, change) -> place(current, filmId, change));
+            }
+            if (changedDuringRebuild != null) {
+                changedDuringRebuild.addAll(changes.keySet());
+            }
+        }
+    }
+
+    /**
+     * Метод переносит изменение фильма в ячейки, где фильм был или должен оказаться
+     *
+     * @param target списки
+     * @param filmId идентификатор фильма
+     * @param change изменение фильма; результат {@code null} означает, что фильма больше нет
+     */
+    private void place(Snapshot target, Integer filmId, UnaryOperator<FilmEntry> change) {
+        FilmEntry previous = target.films().get(filmId);
+        FilmEntry entry = change.apply(previous);
+        if (entry == null) {
+            target.films().remove(filmId);
+        } else {
+            target.films().put(filmId, entry);
+        }
+
+        Set<Cell> cells = new LinkedHashSet<>(cellsOf(previous));
+        List<Cell> entryCells = cellsOf(entry);
+        cells.addAll(entryCells);
+        Comparator<Integer> ranking = ranking(target.films());
+        for (Cell cell : cells) {
+            if (target.staleCells().contains(cell)) {
+                continue;
+            }
+
+            int[] films = target.cells().getOrDefault(cell, NO_FILMS);
+            int index = indexOf(films, filmId);
+            boolean full = films.length >= topSize;
+            int[] rest = index < 0 ? films : remove(films, index);
+            if (!entryCells.contains(cell)) {
+                if (index >= 0 && full) {
+                    markStale(target, cell);
+                } else if (index >= 0) {
+                    target.cells().put(cell, rest);
+                }
+                continue;
+            }
+
+            int position = position(rest, filmId, ranking);
+            if (position >= topSize) {
+                continue;
+            }
+            if (index >= 0 && full && position == rest.length && BY_POPULARITY.compare(entry, previous) > 0) {
+                // Фильм опустился в конец заполненного списка: его мог обойти фильм за пределами списка
+                markStale(target, cell);
+                continue;
+            }
+            int[] updated = insert(rest, position, filmId);
+            target.cells().put(cell, updated.length > topSize ? Arrays.copyOf(updated, topSize) : updated);
+        }
+    }
+
+    private void reset() {
+        snapshot.set(null);
+        scheduleRebuild();
+        log.debug("Списки популярных фильмов сброшены");
+    }
+
+    private void markStale(Snapshot target, Cell cell) {
+        target.staleCells().add(cell);
+        target.cells().remove(cell);
+        log.debug("Список популярных фильмов ячейки {} устарел до пересчёта", cell);
+        scheduleRebuild();
+    }
+
+    /**
+     * Метод проверяет, сбрасывает ли изменение списки целиком
+     *
+     * @param change изменение
+     * @return {@code true} для удаления всех фильмов или пользователей и удаления жанров
+     */
+    private static boolean isInvalidating(StorageChange change) {
+        return change instanceof EntitiesDeleted deleted && (deleted.entity() == Entity.FILM
+                || deleted.entity() == Entity.USER || deleted.entity() == Entity.GENRE);
+    }
+
+    private void scheduleRebuild() {
+        if (rebuildScheduled.compareAndSet(false, true)) {
+            scheduler.execute(() -> {
+                rebuildScheduled.set(false);
+                rebuildQuietly();
+            });
+        }
+    }
+
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            log.error("Не удалось пересчитать списки популярных фильмов", e);
+        }
+    }
+
+    private Map<Integer, FilmEntry> load(String filmsQuery, String genresQuery, MapSqlParameterSource parameterSource) {
+        Map<Integer, FilmEntry> result = new HashMap<>();
+        jdbcTemplate.query(filmsQuery, parameterSource, (RowCallbackHandler) rs -> {
+            int year = rs.getInt("RELEASE_YEAR");
+            Integer nullableYear = rs.wasNull() ? null : year;
+            result.put(Math.toIntExact(rs.getLong("ID")), new FilmEntry(nullableYear, new ArrayList<>(),
+                    rs.getLong("LIKES_COUNT"), rs.getDouble("MARK_SUM"), rs.getLong("MARK_COUNT")));
+        });
+        jdbcTemplate.query(genresQuery, parameterSource, (RowCallbackHandler) rs -> {
+            FilmEntry entry = result.get(Math.toIntExact(rs.getLong("FILM_ID")));
+            if (entry != null) {
+                entry.genreIds().add(rs.getLong("GENRE_ID"));
+            }
+        });
+        return result;
+    }
+
+    private static List<Cell> cellsOf(FilmEntry entry) {
+        if (entry == null) {
+            return List.of();
+        }
+
+        List<Cell> result = new ArrayList<>();
+        result.add(new Cell(null, null));
+        if (entry.year() != null) {
+            result.add(new Cell(null, entry.year()));
+        }
+        for (Long genreId : entry.genreIds()) {
+            result.add(new Cell(genreId, null));
+            if (entry.year() != null) {
+                result.add(new Cell(genreId, entry.year()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Порядок запроса популярных фильмов: по убыванию средней оценки и количества лайков, затем по идентификатору
+     */
+    private static Comparator<Integer> ranking(Map<Integer, FilmEntry> films) {
+        return Comparator.comparing((Integer filmId) -> films.get(filmId), BY_POPULARITY)
+                .thenComparing(Comparator.naturalOrder());
+    }
+
+    private static int position(int[] films, Integer filmId, Comparator<Integer> ranking) {
+        int low = 0;
+        int high = films.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ranking.compare(films[middle], filmId) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static int indexOf(int[] films, int filmId) {
+        for (int i = 0; i < films.length; i++) {
+            if (films[i] == filmId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int[] remove(int[] films, int index) {
+        int[] result = new int[films.length - 1];
+        System.arraycopy(films, 0, result, 0, index);
+        System.arraycopy(films, index + 1, result, index, films.length - index - 1);
+        return result;
+    }
+
+    private static int[] insert(int[] films, int position, int filmId) {
+        int[] result = new int[films.length + 1];
+        System.arraycopy(films, 0, result, 0, position);
+        result[position] = filmId;
+        System.arraycopy(films, position, result, position + 1, films.length - position);
+        return result;
+    }
+
+    /**
+     * Ячейка куба
+     *
+     * @param genreId идентификатор жанра; {@code null} для всех жанров
+     * @param year год выпуска; {@code null} для всех лет
+     */
+    private record Cell(Long genreId, Integer year) {
+    }
+
+    private record FilmEntry(Integer year, List<Long> genreIds, long likes, double markSum, long markCount) {
+
+        FilmEntry withStats(long likes, double markSum, long markCount) {
+            return new FilmEntry(year, genreIds, likes, markSum, markCount);
+        }
+
+        /**
+         * Средняя оценка, вычисляемая так же, как столбец FILM_STATS.RATE
+         */
+        double rate() {
+            return markCount > 0 ? markSum / markCount : 0;
+        }
+    }
+
+    /**
+     * Версия списков
+     *
+     * @param version номер полного пересчёта
+     * @param films фильмы с годом выпуска, жанрами и счётчиками
+     * @param cells идентификаторы популярных фильмов по ячейкам
+     * @param staleCells ячейки, списки которых устарели до следующего пересчёта
+     */
+    private record Snapshot(long version, Map<Integer, FilmEntry> films, Map<Cell, int[]> cells,
+                            Set<Cell> staleCells) {
+    }
+}
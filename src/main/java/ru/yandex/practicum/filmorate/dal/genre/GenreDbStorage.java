@@ -2,6 +2,8 @@ package ru.yandex.practicum.filmorate.dal.genre;
 
 import java.sql.Types;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -9,7 +11,13 @@ import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.dal.BaseDbStorage;
+import ru.yandex.practicum.filmorate.dal.StorageChange.EntitiesDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.Entity;
+import ru.yandex.practicum.filmorate.dal.StorageChange.ReferenceSaved;
+import ru.yandex.practicum.filmorate.dal.StorageChanges;
+import ru.yandex.practicum.filmorate.dal.film.FilmChangeVersions;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.util.RequestIdentityMap;
 
 @Slf4j
 @Component
@@ -31,6 +39,16 @@ public class GenreDbStorage extends BaseDbStorage<Genre> implements GenreStorage
              WHERE fg.FILM_ID = :filmId
              ORDER BY g.ID
             """;
+    private static final String GET_GENRES_BY_FILM_IDS_QUERY = """
+            SELECT fg.FILM_ID,
+                   g.ID,
+                   g.FULL_NAME
+              FROM FILMS_GENRES fg
+             INNER JOIN GENRES g on fg.GENRE_ID = g.ID
+             WHERE fg.FILM_ID IN (:filmIds)
+             ORDER BY fg.FILM_ID,
+                      g.ID
+            """;
     private static final String GET_GENRE_BY_ID_QUERY = """
             SELECT g.ID,
                    g.FULL_NAME
@@ -66,9 +84,15 @@ public class GenreDbStorage extends BaseDbStorage<Genre> implements GenreStorage
             DELETE FROM GENRES
             """;
 
+    private final StorageChanges storageChanges;
+    private final FilmChangeVersions filmChangeVersions;
+
     @Autowired
-    public GenreDbStorage(NamedParameterJdbcTemplate jdbcTemplate, GenreRowMapper genreRowMapper) {
+    public GenreDbStorage(NamedParameterJdbcTemplate jdbcTemplate, GenreRowMapper genreRowMapper,
+                          StorageChanges storageChanges, FilmChangeVersions filmChangeVersions) {
         super(jdbcTemplate, genreRowMapper);
+        this.storageChanges = storageChanges;
+        this.filmChangeVersions = filmChangeVersions;
     }
 
     @Override
@@ -105,6 +129,23 @@ public class GenreDbStorage extends BaseDbStorage<Genre> implements GenreStorage
         return result;
     }
 
+    @Override
+    public Map<Long, List<Genre>> findByFilmIds(Collection<Long> filmIds) {
+        log.debug("Запрос жанров {} фильмов на уровне хранилища", filmIds.size());
+        if (filmIds.isEmpty()) {
+            return Map.of();
+        }
+
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("filmIds", filmIds);
+
+        Map<Long, List<Genre>> result = findGrouped(GET_GENRES_BY_FILM_IDS_QUERY, parameterSource, "FILM_ID");
+        log.debug("Жанры найдены у {} фильмов", result.size());
+
+        log.debug("Возврат жанров фильмов на уровень сервиса");
+        return result;
+    }
+
     @Override
     public Optional<Genre> findById(Long genreId) {
         log.debug("Поиск жанра по id на уровне хранилища");
@@ -114,7 +155,8 @@ public class GenreDbStorage extends BaseDbStorage<Genre> implements GenreStorage
         MapSqlParameterSource parameterSource = new MapSqlParameterSource()
                 .addValue("genreId", genreId);
 
-        Optional<Genre> result = findOne(GET_GENRE_BY_ID_QUERY, parameterSource);
+        Optional<Genre> result = RequestIdentityMap.find(Genre.class, genreId,
+                () -> findOne(GET_GENRE_BY_ID_QUERY, parameterSource));
 
         log.debug("Возврат результата поиска на уровень сервиса");
         return result;
@@ -136,6 +178,7 @@ public class GenreDbStorage extends BaseDbStorage<Genre> implements GenreStorage
         }
 
         genre.setId(id);
+        storageChanges.publish(new ReferenceSaved(Entity.GENRE, id));
         log.debug("Значение присвоено id присвоено жанру");
 
         log.debug("Возврат результатов создания на уровень сервиса");
@@ -150,7 +193,11 @@ public class GenreDbStorage extends BaseDbStorage<Genre> implements GenreStorage
                 .addValue("genreName", newGenre.getName())
                 .addValue("genreId", newGenre.getId());
 
+        // Название жанра входит в фильмы, поэтому фильмы жанра получают новые версии
+        filmChangeVersions.touchByGenre(newGenre.getId());
         long updatedRows = update(UPDATE_GENRE_QUERY, parameterSource);
+        RequestIdentityMap.evict(Genre.class, newGenre.getId());
+        storageChanges.publish(new ReferenceSaved(Entity.GENRE, newGenre.getId()));
 
         if (updatedRows == 0) {
             throw new RuntimeException("Не удалось обновить жанр с id " + newGenre.getId());
@@ -169,11 +216,15 @@ public class GenreDbStorage extends BaseDbStorage<Genre> implements GenreStorage
         MapSqlParameterSource parameterSource = new MapSqlParameterSource()
                 .addValue("genreId", genreId);
 
+        filmChangeVersions.touchByGenre(genreId);
         long deletedRows = deleteOne(DELETE_GENRE_BY_ID_QUERY, parameterSource);
+        RequestIdentityMap.evict(Genre.class, genreId);
 
         if (deletedRows == 0) {
             throw new RuntimeException("Не удалось удалить жанр с id " + genreId);
         }
+        // Связи с фильмами удаляются каскадно, поэтому зависящие от жанров структуры строятся заново
+        storageChanges.publish(new EntitiesDeleted(Entity.GENRE));
 
         log.debug("Жанр с id {} удален из хранилища", genreId);
 
@@ -186,7 +237,10 @@ public class GenreDbStorage extends BaseDbStorage<Genre> implements GenreStorage
 
         MapSqlParameterSource parameterSource = new MapSqlParameterSource();
 
+        filmChangeVersions.touchAll();
         long deletedRows = deleteMany(DELETE_ALL_GENRES_QUERY, parameterSource);
+        RequestIdentityMap.evictAll(Genre.class);
+        storageChanges.publish(new EntitiesDeleted(Entity.GENRE));
         log.debug("На уровне хранилища удалено {} запись(ей)", deletedRows);
 
         log.debug("Возврат результатов очистки на уровень сервиса");
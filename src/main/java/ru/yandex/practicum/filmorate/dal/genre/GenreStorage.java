@@ -1,6 +1,8 @@
 package ru.yandex.practicum.filmorate.dal.genre;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.model.Genre;
@@ -26,6 +28,14 @@ public interface GenreStorage {
      */
     Collection<Genre> findByFilmId(Long filmId);
 
+    /**
+     * Метод возвращает жанры нескольких фильмов одним запросом
+     *
+     * @param filmIds идентификаторы фильмов
+     * @return коллекции связанных жанров по идентификаторам фильмов; фильмы без жанров отсутствуют
+     */
+    Map<Long, List<Genre>> findByFilmIds(Collection<Long> filmIds);
+
     /**
      * Метод возвращает экземпляр класса {@link Genre} из хранилища на основе переданного идентификатора
      *
@@ -8,7 +8,14 @@ import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.dal.BaseDbStorage;
+import ru.yandex.practicum.filmorate.dal.StorageChange.EntitiesDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.Entity;
+import ru.yandex.practicum.filmorate.dal.StorageChange.ReferenceSaved;
+import ru.yandex.practicum.filmorate.dal.StorageChanges;
+import ru.yandex.practicum.filmorate.dal.film.FilmChangeVersions;
+import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.util.RequestIdentityMap;
 
 @Slf4j
 @Component
@@ -56,9 +63,15 @@ public class MpaDbStorage extends BaseDbStorage<Mpa> implements MpaStorage {
              WHERE UPPER(r.FULL_NAME) = :ratingName
             """;
 
+    private final StorageChanges storageChanges;
+    private final FilmChangeVersions filmChangeVersions;
+
     @Autowired
-    public MpaDbStorage(NamedParameterJdbcTemplate jdbcTemplate, MpaRowMapper mapper) {
+    public MpaDbStorage(NamedParameterJdbcTemplate jdbcTemplate, MpaRowMapper mapper, StorageChanges storageChanges,
+                        FilmChangeVersions filmChangeVersions) {
         super(jdbcTemplate, mapper);
+        this.storageChanges = storageChanges;
+        this.filmChangeVersions = filmChangeVersions;
     }
 
     @Override
@@ -88,7 +101,8 @@ public class MpaDbStorage extends BaseDbStorage<Mpa> implements MpaStorage {
         MapSqlParameterSource parameterSource = new MapSqlParameterSource()
                 .addValue("ratingId", ratingId);
 
-        Optional<Mpa> result = findOne(GET_RATING_BY_ID_QUERY, parameterSource);
+        Optional<Mpa> result = RequestIdentityMap.find(Mpa.class, ratingId,
+                () -> findOne(GET_RATING_BY_ID_QUERY, parameterSource));
 
         log.debug("Возврат результата поиска на уровень сервиса");
         return result;
@@ -109,6 +123,7 @@ public class MpaDbStorage extends BaseDbStorage<Mpa> implements MpaStorage {
         }
 
         rating.setId(id);
+        storageChanges.publish(new ReferenceSaved(Entity.RATING, id));
         log.debug("Значение присвоено id присвоено рейтингу");
 
         log.debug("Возврат результатов создания на уровень сервиса");
@@ -123,7 +138,13 @@ public class MpaDbStorage extends BaseDbStorage<Mpa> implements MpaStorage {
                 .addValue("ratingName", newRating.getName())
                 .addValue("ratingId", newRating.getId());
 
+        // Название рейтинга входит в фильмы, поэтому фильмы с рейтингом получают новые версии
+        filmChangeVersions.touchByRating(newRating.getId());
         long updatedRows = update(UPDATE_RATING_QUERY, parameterSource);
+        RequestIdentityMap.evict(Mpa.class, newRating.getId());
+        storageChanges.publish(new ReferenceSaved(Entity.RATING, newRating.getId()));
+        // Название рейтинга входит в загруженные фильмы
+        RequestIdentityMap.evictAll(Film.class);
         log.debug("На уровне хранилища обновлено {} запись(ей)", updatedRows);
 
         log.debug("Возврат результатов изменения на уровень сервиса");
@@ -138,11 +159,16 @@ public class MpaDbStorage extends BaseDbStorage<Mpa> implements MpaStorage {
         MapSqlParameterSource parameterSource = new MapSqlParameterSource()
                 .addValue("ratingId", ratingId);
 
+        filmChangeVersions.touchByRating(ratingId);
         long deletedRows = deleteOne(DELETE_RATING_BY_ID_QUERY, parameterSource);
+        RequestIdentityMap.evict(Mpa.class, ratingId);
+        RequestIdentityMap.evictAll(Film.class);
 
         if (deletedRows == 0) {
             throw new RuntimeException("Не удалось удалить рейтинг с id " + ratingId);
         }
+        // Рейтинг фильмов сбрасывается каскадно, поэтому зависящие от рейтингов структуры строятся заново
+        storageChanges.publish(new EntitiesDeleted(Entity.RATING));
 
         log.debug("Жанр с id {} удален из хранилища", ratingId);
 
@@ -155,7 +181,11 @@ public class MpaDbStorage extends BaseDbStorage<Mpa> implements MpaStorage {
 
         MapSqlParameterSource parameterSource = new MapSqlParameterSource();
 
+        filmChangeVersions.touchAll();
         deleteMany(DELETE_ALL_RATINGS_QUERY, parameterSource);
+        RequestIdentityMap.evictAll(Mpa.class);
+        RequestIdentityMap.evictAll(Film.class);
+        storageChanges.publish(new EntitiesDeleted(Entity.RATING));
 
         log.debug("Возврат результатов очистки на уровень сервиса");
     }
@@ -0,0 +1,180 @@
+package ru.yandex.practicum.filmorate.dal.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.UncheckedIOException;
+import java.sql.Types;
+import java.util.Collection;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.dal.BaseDbStorage;
+import ru.yandex.practicum.filmorate.model.ChangeEvent;
+
+@Slf4j
+@Component
+public class OutboxDbStorage extends BaseDbStorage<ChangeEvent> implements OutboxStorage {
+
+    private static final String GET_EVENTS_AFTER_QUERY = """
+            SELECT o.ID,
+                   o.ENTITY_TYPE,
+                   o.ENTITY_KEY,
+                   o.OPERATION_TYPE,
+                   o.PAYLOAD,
+                   o.CREATED_AT
+              FROM OUTBOX o
+             WHERE o.ID > :afterId
+             ORDER BY o.ID
+             LIMIT :limit
+            """;
+    private static final String GET_LAST_ID_QUERY = """
+            SELECT NVL(MAX(o.ID), 0)
+              FROM OUTBOX o
+            """;
+    private static final String GET_OFFSET_QUERY = """
+            SELECT oo.LAST_EVENT_ID
+              FROM OUTBOX_OFFSETS oo
+             WHERE oo.CONSUMER = :consumer
+            """;
+    private static final String INSERT_EVENT_QUERY = """
+            INSERT INTO OUTBOX (ENTITY_TYPE, ENTITY_KEY, OPERATION_TYPE, PAYLOAD, CREATED_AT)
+            VALUES (:entityType, :entityKey, :operationType, :payload, :timestamp)
+            """;
+    private static final String MERGE_OFFSET_QUERY = """
+            MERGE INTO OUTBOX_OFFSETS oo
+            USING (VALUES (CAST(:consumer AS CHARACTER VARYING), CAST(:lastEventId AS BIGINT)))
+                  s(CONSUMER, LAST_EVENT_ID)
+               ON oo.CONSUMER = s.CONSUMER
+             WHEN MATCHED THEN
+                  UPDATE SET LAST_EVENT_ID = s.LAST_EVENT_ID
+             WHEN NOT MATCHED THEN
+                  INSERT (CONSUMER, LAST_EVENT_ID) VALUES (s.CONSUMER, s.LAST_EVENT_ID)
+            """;
+    private static final String DELETE_SUPERSEDED_EVENTS_QUERY = """
+            DELETE FROM OUTBOX o
+             WHERE o.ID <= :upToId
+               AND EXISTS (SELECT 1
+                             FROM OUTBOX n
+                            WHERE n.ENTITY_TYPE = o.ENTITY_TYPE
+                              AND n.ENTITY_KEY IN (o.ENTITY_KEY, :allKeys)
+                              AND n.ID > o.ID
+                              AND n.ID <= :upToId)
+            """;
+
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public OutboxDbStorage(NamedParameterJdbcTemplate jdbcTemplate,
+                           RowMapper<ChangeEvent> mapper,
+                           ObjectMapper objectMapper) {
+        super(jdbcTemplate, mapper);
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void addEvent(ChangeEvent event) {
+        log.debug("Запрос на добавление изменения в журнал на уровне хранилища");
+
+        boolean isInserted = insertWithOutReturnId(INSERT_EVENT_QUERY, mapToParameterSource(event));
+        if (!isInserted) {
+            throw new RuntimeException("Не удалось добавить изменение в журнал");
+        }
+
+        log.debug("Изменение {} {} сущности {} добавлено в журнал", event.getOperationType(), event.getEntityType(),
+                event.getEntityKey());
+    }
+
+    @Override
+    public void addEvents(Collection<ChangeEvent> events) {
+        log.debug("Запрос на пакетное добавление изменений в журнал на уровне хранилища");
+
+        if (events.isEmpty()) {
+            log.debug("Пакет изменений пуст, добавление не требуется");
+            return;
+        }
+
+        MapSqlParameterSource[] batchParams = events.stream()
+                .map(this::mapToParameterSource)
+                .toArray(MapSqlParameterSource[]::new);
+
+        long insertedRows = batchUpdate(INSERT_EVENT_QUERY, batchParams);
+        if (insertedRows != events.size()) {
+            throw new RuntimeException("Не удалось добавить пакет изменений в журнал");
+        }
+        log.debug("Пакет из {} изменений добавлен в журнал", insertedRows);
+    }
+
+    @Override
+    public List<ChangeEvent> findAfter(long afterId, int limit) {
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("afterId", afterId, Types.BIGINT)
+                .addValue("limit", limit, Types.INTEGER);
+
+        List<ChangeEvent> result = List.copyOf(findMany(GET_EVENTS_AFTER_QUERY, parameterSource));
+        log.debug("После изменения с id {} найдено {} изменений", afterId, result.size());
+        return result;
+    }
+
+    @Override
+    public long findLastId() {
+        Long result = execute(() -> jdbcTemplate.queryForObject(GET_LAST_ID_QUERY, new MapSqlParameterSource(),
+                Long.class));
+        return result == null ? 0 : result;
+    }
+
+    @Override
+    public long findOffset(String consumer) {
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("consumer", consumer);
+
+        List<Long> result = execute(() -> jdbcTemplate.queryForList(GET_OFFSET_QUERY, parameterSource, Long.class));
+        return result.isEmpty() ? 0 : result.getFirst();
+    }
+
+    @Override
+    public void saveOffset(String consumer, long lastEventId) {
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("consumer", consumer)
+                .addValue("lastEventId", lastEventId, Types.BIGINT);
+
+        upsert(MERGE_OFFSET_QUERY, parameterSource);
+        log.debug("Позиция потребителя {} сохранена: {}", consumer, lastEventId);
+    }
+
+    @Override
+    public long compact(long upToId) {
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("upToId", upToId, Types.BIGINT)
+                .addValue("allKeys", ChangeEvent.ALL_KEYS);
+
+        long result = deleteMany(DELETE_SUPERSEDED_EVENTS_QUERY, parameterSource);
+        log.debug("Из журнала изменений удалено {} замещенных изменений до id {}", result, upToId);
+        return result;
+    }
+
+    /**
+     * Метод составляет набор параметров для вставки изменения. Состояние сущности сохраняется в JSON
+     *
+     * @param event экземпляр класса {@link ChangeEvent}
+     * @return набор параметров
+     */
+    private MapSqlParameterSource mapToParameterSource(ChangeEvent event) {
+        String payload;
+        try {
+            payload = event.getPayload() == null ? null : objectMapper.writeValueAsString(event.getPayload());
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("Не удалось преобразовать сущность в JSON", e);
+        }
+
+        return new MapSqlParameterSource()
+                .addValue("entityType", event.getEntityType().toString())
+                .addValue("entityKey", event.getEntityKey())
+                .addValue("operationType", event.getOperationType().toString())
+                .addValue("payload", payload)
+                .addValue("timestamp", event.getTimestamp());
+    }
+}
@@ -0,0 +1,36 @@
+package ru.yandex.practicum.filmorate.dal.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.ChangeEvent;
+import ru.yandex.practicum.filmorate.model.enums.ChangeEntityTypes;
+import ru.yandex.practicum.filmorate.model.enums.OperationTypes;
+
+@Component
+@RequiredArgsConstructor
+public class OutboxRowMapper implements RowMapper<ChangeEvent> {
+
+    private final ObjectMapper objectMapper;
+
+    @Override
+    public ChangeEvent mapRow(ResultSet rs, int rowNum) throws SQLException {
+        String payload = rs.getString("payload");
+        try {
+            return ChangeEvent.builder()
+                    .id(rs.getLong("id"))
+                    .entityType(ChangeEntityTypes.valueOf(rs.getString("entity_type")))
+                    .entityKey(rs.getString("entity_key"))
+                    .operationType(OperationTypes.valueOf(rs.getString("operation_type")))
+                    .payload(payload == null ? null : objectMapper.readTree(payload))
+                    .timestamp(rs.getTimestamp("created_at"))
+                    .build();
+        } catch (JsonProcessingException e) {
+            throw new SQLException("Некорректное состояние сущности в изменении с id " + rs.getLong("id"), e);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package ru.yandex.practicum.filmorate.dal.outbox;
+
+import java.util.Collection;
+import java.util.List;
+import ru.yandex.practicum.filmorate.model.ChangeEvent;
+
+/**
+ * Интерфейс обработки сущностей {@link ChangeEvent}
+ */
+public interface OutboxStorage {
+
+    /**
+     * Метод добавляет изменение в журнал. Вызывается в транзакции изменения сущности
+     *
+     * @param event экземпляр класса {@link ChangeEvent}
+     */
+    void addEvent(ChangeEvent event);
+
+    /**
+     * Метод добавляет изменения в журнал пакетом
+     *
+     * @param events коллекция {@link ChangeEvent}
+     */
+    void addEvents(Collection<ChangeEvent> events);
+
+    /**
+     * Метод возвращает изменения с идентификатором больше переданного по возрастанию идентификатора
+     *
+     * @param afterId идентификатор последнего обработанного изменения
+     * @param limit максимальное количество изменений
+     * @return список {@link ChangeEvent}
+     */
+    List<ChangeEvent> findAfter(long afterId, int limit);
+
+    /**
+     * Метод возвращает идентификатор последнего изменения в журнале
+     *
+     * @return идентификатор изменения; 0, если журнал пуст
+     */
+    long findLastId();
+
+    /**
+     * Метод возвращает позицию потребителя
+     *
+     * @param consumer имя потребителя
+     * @return идентификатор последнего обработанного потребителем изменения; 0, если потребитель новый
+     */
+    long findOffset(String consumer);
+
+    /**
+     * Метод сохраняет позицию потребителя
+     *
+     * @param consumer имя потребителя
+     * @param lastEventId идентификатор последнего обработанного потребителем изменения
+     */
+    void saveOffset(String consumer, long lastEventId);
+
+    /**
+     * Метод удаляет изменения, замещенные более поздним изменением той же сущности или изменением всех сущностей типа.
+     * Рассматриваются только изменения с идентификатором не больше переданного
+     *
+     * @param upToId идентификатор изменения, до которого включительно выполняется сжатие
+     * @return количество удаленных изменений
+     */
+    long compact(long upToId);
+}
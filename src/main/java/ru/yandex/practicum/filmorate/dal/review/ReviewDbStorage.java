@@ -2,15 +2,24 @@ package ru.yandex.practicum.filmorate.dal.review;
 
 import java.sql.Types;
 import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Component;
 import ru.yandex.practicum.filmorate.dal.BaseDbStorage;
+import ru.yandex.practicum.filmorate.dal.StorageChange.EntitiesDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.Entity;
+import ru.yandex.practicum.filmorate.dal.StorageChange.ReviewDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.ReviewSaved;
+import ru.yandex.practicum.filmorate.dal.StorageChanges;
 import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.model.ReviewSummary;
+import ru.yandex.practicum.filmorate.util.RequestIdentityMap;
 
 @Slf4j
 @Component
@@ -22,51 +31,79 @@ public class ReviewDbStorage extends BaseDbStorage<Review> implements ReviewStor
                    r.FILM_ID,
                    r.CONTENT,
                    r.IS_POSITIVE,
-                   NVL(SUM(ur.USEFUL), 0) AS useful
+                   r.USEFUL
               FROM REVIEWS r
-              LEFT JOIN USERS_REVIEWS ur ON r.ID = ur.REVIEW_ID
-             GROUP BY r.ID,
-                      r.USER_ID,
-                      r.FILM_ID,
-                      r.CONTENT,
-                      r.IS_POSITIVE
-             ORDER BY useful DESC, r.ID ASC
+             ORDER BY r.USEFUL DESC, r.ID ASC
              LIMIT :size
             OFFSET :from
             """;
+    private static final String GET_REVIEWS_AFTER_QUERY = """
+            SELECT r.ID,
+                   r.USER_ID,
+                   r.FILM_ID,
+                   r.CONTENT,
+                   r.IS_POSITIVE,
+                   r.USEFUL
+              FROM REVIEWS r
+             WHERE r.USEFUL < :useful
+                OR (r.USEFUL = :useful AND r.ID > :reviewId)
+             ORDER BY r.USEFUL DESC, r.ID ASC
+             LIMIT :size
+            """;
     private static final String GET_ALL_REVIEWS_BY_FILM_ID_QUERY = """
             SELECT r.ID,
                    r.USER_ID,
                    r.FILM_ID,
                    r.CONTENT,
                    r.IS_POSITIVE,
-                   NVL(SUM(ur.USEFUL), 0) AS useful
+                   r.USEFUL
+              FROM REVIEWS r
+             WHERE r.FILM_ID = :filmId
+             ORDER BY r.USEFUL DESC, r.ID ASC
+             LIMIT :count
+            """;
+    private static final String GET_REVIEWS_BY_FILM_ID_AFTER_QUERY = """
+            SELECT r.ID,
+                   r.USER_ID,
+                   r.FILM_ID,
+                   r.CONTENT,
+                   r.IS_POSITIVE,
+                   r.USEFUL
               FROM REVIEWS r
-              LEFT JOIN USERS_REVIEWS ur ON r.ID = ur.REVIEW_ID
              WHERE r.FILM_ID = :filmId
-             GROUP BY r.ID,
-                      r.USER_ID,
-                      r.FILM_ID,
-                      r.CONTENT,
-                      r.IS_POSITIVE
-             ORDER BY useful DESC, r.ID ASC
+               AND (r.USEFUL < :useful
+                    OR (r.USEFUL = :useful AND r.ID > :reviewId))
+             ORDER BY r.USEFUL DESC, r.ID ASC
              LIMIT :count
             """;
+    private static final String GET_REVIEW_SUMMARY_QUERY = """
+            SELECT s.USEFUL,
+                   s.POSITIVE_COUNT,
+                   s.NEGATIVE_COUNT
+              FROM FILM_REVIEW_SUMMARY s
+             WHERE s.FILM_ID = :filmId
+               AND s.POSITIVE_COUNT + s.NEGATIVE_COUNT > 0
+             ORDER BY s.USEFUL DESC
+            """;
+    private static final String GET_REVIEWS_BY_IDS_QUERY = """
+            SELECT r.ID,
+                   r.USER_ID,
+                   r.FILM_ID,
+                   r.CONTENT,
+                   r.IS_POSITIVE,
+                   r.USEFUL
+              FROM REVIEWS r
+             WHERE r.ID IN (:reviewIds)
+            """;
     private static final String GET_REVIEW_BY_ID_QUERY = """
             SELECT r.ID,
                    r.USER_ID,
                    r.FILM_ID,
                    r.CONTENT,
                    r.IS_POSITIVE,
-                   NVL(SUM(ur.USEFUL), 0) AS useful
+                   r.USEFUL
               FROM REVIEWS r
-              LEFT JOIN USERS_REVIEWS ur ON r.ID = ur.REVIEW_ID
              WHERE r.ID = :reviewId
-             GROUP BY r.ID,
-                      r.USER_ID,
-                      r.FILM_ID,
-                      r.CONTENT,
-                      r.IS_POSITIVE
             """;
     private static final String INSERT_REVIEW_QUERY = """
             INSERT INTO REVIEWS(USER_ID, FILM_ID, CONTENT, IS_POSITIVE)
@@ -78,9 +115,47 @@ public class ReviewDbStorage extends BaseDbStorage<Review> implements ReviewStor
                    IS_POSITIVE = :isPositive
              WHERE ID = :reviewId
             """;
-    private static final String INSERT_REVIEW_LIKE_QUERY = """
-            INSERT INTO USERS_REVIEWS (USER_ID, REVIEW_ID, USEFUL)
-            VALUES (:userId, :reviewId, :useful)
+    private static final String LOCK_REVIEW_QUERY = """
+            SELECT r.ID AS id
+              FROM REVIEWS r
+             WHERE r.ID = :reviewId
+               FOR UPDATE
+            """;
+    private static final String APPLY_REVIEW_USEFUL_QUERY = """
+            UPDATE REVIEWS r
+               SET USEFUL = r.USEFUL + :useful - NVL((SELECT ur.USEFUL
+                                                       FROM USERS_REVIEWS ur
+                                                      WHERE ur.REVIEW_ID = r.ID
+                                                        AND ur.USER_ID = :userId), 0)
+             WHERE r.ID = :reviewId
+            """;
+    private static final String APPLY_REVIEW_SUMMARY_QUERY = """
+            MERGE INTO FILM_REVIEW_SUMMARY s
+            USING (SELECT r.FILM_ID,
+                          r.USEFUL,
+                          CASE WHEN r.IS_POSITIVE THEN 1 ELSE 0 END AS POSITIVE_COUNT,
+                          CASE WHEN r.IS_POSITIVE THEN 0 ELSE 1 END AS NEGATIVE_COUNT
+                     FROM REVIEWS r
+                    WHERE r.ID = :reviewId) d
+               ON s.FILM_ID = d.FILM_ID
+              AND s.USEFUL = d.USEFUL
+             WHEN MATCHED THEN
+                  UPDATE SET POSITIVE_COUNT = s.POSITIVE_COUNT + :sign * d.POSITIVE_COUNT,
+                             NEGATIVE_COUNT = s.NEGATIVE_COUNT + :sign * d.NEGATIVE_COUNT
+             WHEN NOT MATCHED THEN
+                  INSERT (FILM_ID, USEFUL, POSITIVE_COUNT, NEGATIVE_COUNT)
+                  VALUES (d.FILM_ID, d.USEFUL, :sign * d.POSITIVE_COUNT, :sign * d.NEGATIVE_COUNT)
+            """;
+    private static final String MERGE_REVIEW_USEFUL_QUERY = """
+            MERGE INTO USERS_REVIEWS ur
+            USING (VALUES (CAST(:reviewId AS INTEGER), CAST(:userId AS INTEGER), CAST(:useful AS INTEGER)))
+                  s(REVIEW_ID, USER_ID, USEFUL)
+               ON ur.REVIEW_ID = s.REVIEW_ID
+              AND ur.USER_ID = s.USER_ID
+             WHEN MATCHED AND ur.USEFUL <> s.USEFUL THEN
+                  UPDATE SET USEFUL = s.USEFUL
+             WHEN NOT MATCHED THEN
+                  INSERT (REVIEW_ID, USER_ID, USEFUL) VALUES (s.REVIEW_ID, s.USER_ID, s.USEFUL)
             """;
     private static final String DELETE_REVIEW_LIKE_QUERY = """
             DELETE FROM USERS_REVIEWS
@@ -94,11 +169,18 @@ public class ReviewDbStorage extends BaseDbStorage<Review> implements ReviewStor
     private static final String DELETE_ALL_REVIEWS_QUERY = """
             DELETE FROM REVIEWS
             """;
+    private static final String DELETE_ALL_REVIEW_SUMMARIES_QUERY = """
+            DELETE FROM FILM_REVIEW_SUMMARY
+            """;
+
+    private final StorageChanges storageChanges;
 
     @Autowired
     public ReviewDbStorage(NamedParameterJdbcTemplate jdbcTemplate,
-                           RowMapper<Review> mapper) {
+                           RowMapper<Review> mapper,
+                           StorageChanges storageChanges) {
         super(jdbcTemplate, mapper);
+        this.storageChanges = storageChanges;
     }
 
     @Override
@@ -118,6 +200,24 @@ public class ReviewDbStorage extends BaseDbStorage<Review> implements ReviewStor
         return result;
     }
 
+    @Override
+    public Collection<Review> findAllAfter(Integer size, Integer useful, Long reviewId) {
+        log.debug("Запрос страницы отзывов после отзыва с id {} и полезностью {} на уровне хранилища", reviewId,
+                useful);
+        log.debug("Размер страницы: {}", size);
+
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("size", size, Types.BIGINT)
+                .addValue("useful", useful, Types.INTEGER)
+                .addValue("reviewId", reviewId, Types.BIGINT);
+
+        Collection<Review> result = findMany(GET_REVIEWS_AFTER_QUERY, parameterSource);
+        log.debug("Получена страница отзывов размером {}", result.size());
+
+        log.debug("Возврат страницы отзывов на уровень сервиса");
+        return result;
+    }
+
     @Override
     public Collection<Review> findByFilmId(Long filmId, Integer count) {
         log.debug("Запрос всех отзывов по идентификатору фильма на уровне хранилища");
@@ -135,6 +235,68 @@ public class ReviewDbStorage extends BaseDbStorage<Review> implements ReviewStor
         return result;
     }
 
+    @Override
+    public Collection<Review> findByFilmIdAfter(Long filmId, Integer count, Integer useful, Long reviewId) {
+        log.debug("Запрос страницы отзывов к фильму после отзыва с id {} и полезностью {} на уровне хранилища",
+                reviewId, useful);
+        log.debug("Идентификатор фильма: {}", filmId);
+        log.debug("Размер страницы: {}", count);
+
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("filmId", filmId, Types.BIGINT)
+                .addValue("count", count, Types.BIGINT)
+                .addValue("useful", useful, Types.INTEGER)
+                .addValue("reviewId", reviewId, Types.BIGINT);
+
+        Collection<Review> result = findMany(GET_REVIEWS_BY_FILM_ID_AFTER_QUERY, parameterSource);
+        log.debug("Получена страница отзывов к фильму размером {}", result.size());
+
+        log.debug("Возврат страницы отзывов к фильму на уровень сервиса");
+        return result;
+    }
+
+    @Override
+    public ReviewSummary findSummary(Long filmId) {
+        log.debug("Запрос сводки отзывов к фильму с id {} на уровне хранилища", filmId);
+
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("filmId", filmId, Types.BIGINT);
+
+        ReviewSummary result = execute(() -> jdbcTemplate.query(GET_REVIEW_SUMMARY_QUERY, parameterSource,
+                (ResultSetExtractor<ReviewSummary>) rs -> {
+                    ReviewSummary summary = ReviewSummary.builder()
+                            .filmId(filmId)
+                            .build();
+                    while (rs.next()) {
+                        int positiveCount = rs.getInt("POSITIVE_COUNT");
+                        int negativeCount = rs.getInt("NEGATIVE_COUNT");
+                        summary.setPositiveCount(summary.getPositiveCount() + positiveCount);
+                        summary.setNegativeCount(summary.getNegativeCount() + negativeCount);
+                        summary.getUsefulDistribution().put(rs.getInt("USEFUL"), positiveCount + negativeCount);
+                    }
+                    return summary;
+                }));
+        log.debug("Сводка отзывов к фильму с id {}: {} положительных, {} отрицательных", filmId,
+                result.getPositiveCount(), result.getNegativeCount());
+
+        log.debug("Возврат сводки отзывов на уровень сервиса");
+        return result;
+    }
+
+    @Override
+    public Collection<Review> findByIds(Collection<Long> reviewIds) {
+        log.debug("Запрос отзывов по коллекции идентификаторов размером {}", reviewIds.size());
+
+        if (reviewIds.isEmpty()) {
+            return List.of();
+        }
+
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("reviewIds", reviewIds);
+
+        return findMany(GET_REVIEWS_BY_IDS_QUERY, parameterSource);
+    }
+
     @Override
     public Optional<Review> findById(Long reviewId) {
         log.debug("Запрос экземпляра по идентификатору на уровне хранилища");
@@ -143,7 +305,8 @@ public class ReviewDbStorage extends BaseDbStorage<Review> implements ReviewStor
         MapSqlParameterSource parameterSource = new MapSqlParameterSource()
                 .addValue("reviewId", reviewId, Types.BIGINT);
 
-        Optional<Review> result = findOne(GET_REVIEW_BY_ID_QUERY, parameterSource);
+        Optional<Review> result = RequestIdentityMap.find(Review.class, reviewId,
+                () -> findOne(GET_REVIEW_BY_ID_QUERY, parameterSource));
 
         if (result.isPresent()) {
             log.debug("Возврат результата поиска на уровень сервиса");
@@ -173,6 +336,9 @@ public class ReviewDbStorage extends BaseDbStorage<Review> implements ReviewStor
         }
 
         review.setId(id);
+        RequestIdentityMap.evict(Review.class, id);
+        applyReviewSummary(id, 1);
+        storageChanges.publish(new ReviewSaved(review));
 
         log.debug("Возврат результатов создания на уровень сервиса");
         return review;
@@ -188,72 +354,81 @@ public class ReviewDbStorage extends BaseDbStorage<Review> implements ReviewStor
                 .addValue("isPositive", newReview.isPositive(), Types.BOOLEAN)
                 .addValue("reviewId", newReview.getId(), Types.BIGINT);
 
+        // Признак отзыва меняется в сводке фильма: вклад отзыва убираем до изменения и возвращаем после
+        findIds(LOCK_REVIEW_QUERY, parameterSource);
+        applyReviewSummary(newReview.getId(), -1);
         long updatedRows = update(UPDATE_REVIEW_QUERY, parameterSource);
+        RequestIdentityMap.evict(Review.class, newReview.getId());
+        applyReviewSummary(newReview.getId(), 1);
 
         if (updatedRows == 0) {
             throw new RuntimeException("Не удалось обновить отзыв с id " + newReview.getId());
         } else {
             log.debug("На уровне хранилища обновлено {} запись(ей)", updatedRows);
         }
+        storageChanges.publish(new ReviewSaved(newReview));
 
         log.debug("Возврат результатов обновления на уровень сервиса");
     }
 
     @Override
-    public void addReviewLike(Long reviewId, Long userId) {
+    public boolean addReviewLike(Long reviewId, Long userId) {
         log.debug("Добавление лайка отзыву на уровне хранилища");
         log.debug("Передан id отзыва: {}", reviewId);
         log.debug("Передан id пользователя: {}", userId);
 
-        removeReviewUseful(reviewId, userId);
-        if (addReviewUseful(reviewId, userId, 1)) {
+        // Ставим оценку или меняем противоположную одним запросом
+        boolean isChanged = mergeReviewUseful(reviewId, userId, 1);
+        if (isChanged) {
             log.debug("Добавление лайка отзыву с id {} от пользователя с id {} успешно произведено", reviewId, userId);
         } else {
-            throw new RuntimeException(
-                    "Не удалось добавить лайк отзыву с id " + reviewId + " от пользователя с id " + userId);
+            log.debug("Лайк не добавлен отзыву, т.к. уже существует");
         }
 
         log.debug("Возврат результата добавления лайка отзыву на уровень сервиса");
+        return isChanged;
     }
 
     @Override
-    public void removeReviewLike(Long reviewId, Long userId) {
+    public boolean removeReviewLike(Long reviewId, Long userId) {
         log.debug("Удаление лайка с отзыва на уровне хранилища");
         log.debug("Передан id  отзыва: {}", reviewId);
         log.debug("Передан id  пользователя: {}", userId);
 
-        removeReviewUseful(reviewId, userId);
+        boolean isDeleted = removeReviewUseful(reviewId, userId);
 
         log.debug("Возврат результата удаления лайка отзыву на уровень сервиса");
+        return isDeleted;
     }
 
     @Override
-    public void addReviewDislike(Long reviewId, Long userId) {
+    public boolean addReviewDislike(Long reviewId, Long userId) {
         log.debug("Добавление дизлайка отзыву на уровне хранилища");
         log.debug("Передан  id отзыва: {}", reviewId);
         log.debug("Передан  id пользователя: {}", userId);
 
-        removeReviewUseful(reviewId, userId);
-
-        if (addReviewUseful(reviewId, userId, -1)) {
+        // Ставим оценку или меняем противоположную одним запросом
+        boolean isChanged = mergeReviewUseful(reviewId, userId, -1);
+        if (isChanged) {
             log.debug("Добавление дизлайка отзыву с id {} от пользователя с id {} успешно произведено", reviewId, userId);
         } else {
-            throw new RuntimeException(
-                    "Не удалось добавить дизлайк отзыву с id " + reviewId + " от пользователя с id " + userId);
+            log.debug("Дизлайк не добавлен отзыву, т.к. уже существует");
         }
 
         log.debug("Возврат результата добавления дизлайка отзыву на уровень сервиса");
+        return isChanged;
     }
 
     @Override
-    public void removeReviewDislike(Long reviewId, Long userId) {
+    public boolean removeReviewDislike(Long reviewId, Long userId) {
         log.debug("Удаление дизлайка с отзыва на уровне хранилища");
         log.debug("Передан  id  отзыва: {}", reviewId);
         log.debug("Передан  id  пользователя: {}", userId);
 
-        removeReviewUseful(reviewId, userId);
+        boolean isDeleted = removeReviewUseful(reviewId, userId);
 
         log.debug("Возврат результата удаления дизлайка отзыву на уровень сервиса");
+        return isDeleted;
     }
 
     @Override
@@ -264,13 +439,17 @@ public class ReviewDbStorage extends BaseDbStorage<Review> implements ReviewStor
         MapSqlParameterSource parameterSource = new MapSqlParameterSource()
                 .addValue("reviewId", reviewId, Types.BIGINT);
 
+        findIds(LOCK_REVIEW_QUERY, parameterSource);
+        applyReviewSummary(reviewId, -1);
         long deletedRows = deleteOne(DELETE_REVIEW_BY_ID_QUERY, parameterSource);
+        RequestIdentityMap.evict(Review.class, reviewId);
 
         if (deletedRows == 0) {
             throw new RuntimeException("Не удалось удалить отзыв с id " + reviewId);
         } else {
             log.debug("Отзыв с id {} удален из хранилища", reviewId);
         }
+        storageChanges.publish(new ReviewDeleted(reviewId));
 
         log.debug("Возврат результатов удаления отзыва на уровень сервиса");
     }
@@ -282,25 +461,64 @@ public class ReviewDbStorage extends BaseDbStorage<Review> implements ReviewStor
         MapSqlParameterSource parameterSource = new MapSqlParameterSource();
 
         long deletedRows = deleteMany(DELETE_ALL_REVIEWS_QUERY, parameterSource);
+        RequestIdentityMap.evictAll(Review.class);
+        deleteMany(DELETE_ALL_REVIEW_SUMMARIES_QUERY, parameterSource);
+        storageChanges.publish(new EntitiesDeleted(Entity.REVIEW));
         log.debug("На уровне хранилища удалено {} запись(ей)", deletedRows);
 
         log.debug("Возврат результатов очистки на уровень сервиса");
     }
 
-    private void removeReviewUseful(Long reviewId, Long userId) {
+    private boolean removeReviewUseful(Long reviewId, Long userId) {
         MapSqlParameterSource parameterSource = new MapSqlParameterSource()
                 .addValue("reviewId", reviewId, Types.BIGINT)
-                .addValue("userId", userId, Types.BIGINT);
+                .addValue("userId", userId, Types.BIGINT)
+                .addValue("useful", 0, Types.INTEGER);
 
-        deleteOne(DELETE_REVIEW_LIKE_QUERY, parameterSource);
+        applyReviewUseful(parameterSource);
+        RequestIdentityMap.evict(Review.class, reviewId);
+        return deleteOne(DELETE_REVIEW_LIKE_QUERY, parameterSource) > 0;
     }
 
-    private boolean addReviewUseful(Long reviewId, Long userId, Integer useful) {
+    private boolean mergeReviewUseful(Long reviewId, Long userId, Integer useful) {
         MapSqlParameterSource parameterSource = new MapSqlParameterSource()
                 .addValue("reviewId", reviewId, Types.BIGINT)
                 .addValue("userId", userId, Types.BIGINT)
-                .addValue("useful", useful);
+                .addValue("useful", useful, Types.INTEGER);
+
+        applyReviewUseful(parameterSource);
+        RequestIdentityMap.evict(Review.class, reviewId);
+        return upsert(MERGE_REVIEW_USEFUL_QUERY, parameterSource);
+    }
+
+    /**
+     * Метод переносит в рейтинг полезности отзыва разницу между новой и прежней оценкой пользователя. Выполняется до
+     * записи самой оценки: строка отзыва блокируется до конца транзакции, поэтому прежняя оценка не меняется
+     * параллельно, а рейтинг и оценки фиксируются вместе. Отзыв при этом переходит в сводке фильма к новому рейтингу
+     *
+     * @param parameterSource параметры с идентификаторами отзыва и пользователя и новой оценкой (0 при удалении)
+     */
+    private void applyReviewUseful(MapSqlParameterSource parameterSource) {
+        Long reviewId = (Long) parameterSource.getValue("reviewId");
+
+        findIds(LOCK_REVIEW_QUERY, parameterSource);
+        applyReviewSummary(reviewId, -1);
+        update(APPLY_REVIEW_USEFUL_QUERY, parameterSource);
+        applyReviewSummary(reviewId, 1);
+    }
+
+    /**
+     * Метод добавляет отзыв в сводку фильма или убирает его оттуда по текущим признаку и рейтингу полезности отзыва.
+     * Вызывается под блокировкой строки отзыва, кроме только что созданного отзыва
+     *
+     * @param reviewId идентификатор отзыва
+     * @param sign 1 для добавления, -1 для удаления
+     */
+    private void applyReviewSummary(Long reviewId, int sign) {
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("reviewId", reviewId, Types.BIGINT)
+                .addValue("sign", sign, Types.INTEGER);
 
-        return insertWithOutReturnId(INSERT_REVIEW_LIKE_QUERY, parameterSource);
+        upsert(APPLY_REVIEW_SUMMARY_QUERY, parameterSource);
     }
 }
@@ -0,0 +1,438 @@
+package ru.yandex.practicum.filmorate.dal.review;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.config.ReviewSearchProperties;
+import ru.yandex.practicum.filmorate.dal.DatabaseGeneration;
+import ru.yandex.practicum.filmorate.dal.StorageChange;
+import ru.yandex.practicum.filmorate.dal.StorageChange.EntitiesDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.Entity;
+import ru.yandex.practicum.filmorate.dal.StorageChange.ReviewDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.ReviewSaved;
+import ru.yandex.practicum.filmorate.dal.StorageChangeListener;
+import ru.yandex.practicum.filmorate.dal.StorageChanges;
+import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.util.LongIntHashMap;
+
+/**
+ * Полнотекстовый индекс отзывов в памяти: для каждого термина хранится список идентификаторов отзывов с частотой
+ * термина в тексте, для каждого отзыва — фильм, длина текста и его термины. Результаты поиска ранжируются по BM25.
+ * <p>
+ * Текст разбивается на термины по всем символам, кроме букв и цифр, и приводится к нижнему регистру, буква "ё"
+ * заменяется на "е".
+ * <p>
+ * Индекс строится при первом обращении и поддерживается в актуальном состоянии изменениями отзывов, которые
+ * {@link ReviewDbStorage} публикует через {@link StorageChanges}, по правилам
+ * {@link ru.yandex.practicum.filmorate.dal.film.FilmLikesIndex}: изменения применяются сразу и повторно после
+ * фиксации, откат сбрасывает индекс. Отзывы, удалённые вместе с пользователем или фильмом, из индекса сразу не
+ * вычищаются: они отбрасываются при загрузке найденных отзывов из БД и тогда же удаляются из индекса.
+ * <p>
+ * При остановке индекс сохраняется в файл {@link ReviewSearchProperties#indexFile()} вместе с поколением БД,
+ * количеством отзывов и наибольшим идентификатором отзыва. Файл читается при запуске, до того как приложение начнёт
+ * менять отзывы, если эти значения совпадают с БД, и сразу удаляется: после аварийной остановки файла нет, и индекс
+ * строится из БД при первом обращении.
+ */
+@Slf4j
+@Component
+public class ReviewSearchIndex implements StorageChangeListener {
+
+    private static final String GET_ALL_REVIEWS_QUERY = """
+            SELECT r.ID,
+                   r.FILM_ID,
+                   r.CONTENT
+              FROM REVIEWS r
+            """;
+    private static final String GET_REVIEWS_WATERMARK_QUERY = """
+            SELECT COUNT(*) AS REVIEWS_COUNT,
+                   NVL(MAX(r.ID), 0) AS MAX_ID
+              FROM REVIEWS r
+            """;
+    private static final Pattern TERM_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final int SEGMENT_MAGIC = 0x52455649;
+    private static final int SEGMENT_VERSION = 2;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final DatabaseGeneration databaseGeneration;
+    private final ReviewSearchProperties properties;
+    private final Map<String, LongIntHashMap> postings = new HashMap<>();
+    private final Map<Long, Document> documents = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private long totalLength;
+    private volatile boolean loaded;
+
+    public ReviewSearchIndex(NamedParameterJdbcTemplate jdbcTemplate, DatabaseGeneration databaseGeneration,
+                             ReviewSearchProperties properties) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.databaseGeneration = databaseGeneration;
+        this.properties = properties;
+    }
+
+    /**
+     * Метод возвращает идентификаторы отзывов, содержащих хотя бы один термин запроса, в порядке убывания оценки
+     * BM25, а при равной оценке в порядке возрастания идентификатора
+     *
+     * @param query текст запроса
+     * @param filmId идентификатор фильма; если не указан, поиск выполняется по отзывам ко всем фильмам
+     * @param limit максимальное количество идентификаторов
+     * @return идентификаторы найденных отзывов
+     */
+    public List<Long> search(String query, Long filmId, int limit) {
+        List<String> terms = tokenize(query).stream().distinct().toList();
+        if (terms.isEmpty()) {
+            return List.of();
+        }
+        ensureLoaded();
+
+        Map<Long, Double> scores = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            int documentsCount = documents.size();
+            double averageLength = documentsCount == 0 ? 0 : (double) totalLength / documentsCount;
+            for (String term : terms) {
+                LongIntHashMap posting = postings.get(term);
+                if (posting == null) {
+                    continue;
+                }
+
+                double idf = Math.log(1 + (documentsCount - posting.size() + 0.5) / (posting.size() + 0.5));
+                posting.forEach((reviewId, frequency) -> {
+                    Document document = documents.get(reviewId);
+                    if (filmId != null && document.filmId() != filmId) {
+                        return;
+                    }
+                    double norm = properties.k1() * (1 - properties.b()
+                            + properties.b() * document.length() / averageLength);
+                    scores.merge(reviewId, idf * frequency * (properties.k1() + 1) / (frequency + norm), Double::sum);
+                });
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Long> result = scores.entrySet().stream()
+                .sorted(Map.Entry.<Long, Double>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .toList();
+        log.debug("По запросу из {} терминов найдено {} отзывов, возвращается {}", terms.size(), scores.size(),
+                result.size());
+        return result;
+    }
+
+    /**
+     * Метод убирает из индекса отзыв, которого уже нет в БД: отзывы удаляются каскадно вместе с фильмом без
+     * публикации изменения
+     *
+     * @param reviewId идентификатор отзыва
+     */
+    public void evict(Long reviewId) {
+        applyRemove(reviewId);
+    }
+
+    @Override
+    public void onWrite(StorageChange change) {
+        Runnable action = actionOf(change);
+        if (action != null) {
+            action.run();
+        }
+    }
+
+    @Override
+    public void onCommit(StorageChange change, long writtenAt) {
+        // Построение, случившееся до фиксации, изменения ещё не видело, поэтому оно применяется повторно
+        onWrite(change);
+    }
+
+    @Override
+    public void onRollback(StorageChange change) {
+        if (actionOf(change) != null) {
+            reset();
+        }
+    }
+
+    /**
+     * Метод возвращает действие, отражающее изменение в индексе
+     *
+     * @param change изменение
+     * @return действие либо {@code null}, если изменение индекса не касается
+     */
+    private Runnable actionOf(StorageChange change) {
+        return switch (change) {
+            case ReviewSaved saved -> {
+                Review review = saved.review();
+                Document document = Document.of(review.getFilmId(), review.getContent());
+                yield () -> applyPut(review.getId(), document);
+            }
+            case ReviewDeleted deleted -> () -> applyRemove(deleted.reviewId());
+            case EntitiesDeleted deleted when deleted.entity() == Entity.REVIEW || deleted.entity() == Entity.USER ->
+                    this::reset;
+            default -> null;
+        };
+    }
+
+    /**
+     * Метод разбивает текст на термины
+     *
+     * @param text текст
+     * @return термины в порядке следования
+     */
+    static List<String> tokenize(String text) {
+        if (text == null) {
+            return List.of();
+        }
+
+        List<String> terms = new ArrayList<>();
+        for (String term : TERM_SEPARATOR.split(text.toLowerCase(Locale.ROOT).replace('ё', 'е'))) {
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    @PostConstruct
+    void loadSavedSegment() {
+        // Сохранённый файл сверяется с БД по количеству и наибольшему идентификатору отзывов, а правку текста отзыва
+        // такая сверка не заметит. Поэтому файл читается до того, как приложение начнёт принимать запросы
+        if (Files.exists(properties.indexFile())) {
+            ensureLoaded();
+        }
+    }
+
+    @PreDestroy
+    void saveSegment() {
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                return;
+            }
+
+            Path file = properties.indexFile();
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                Watermark watermark = readWatermark();
+                out.writeInt(SEGMENT_MAGIC);
+                out.writeInt(SEGMENT_VERSION);
+                out.writeUTF(watermark.generation());
+                out.writeLong(watermark.reviewsCount());
+                out.writeLong(watermark.maxId());
+                out.writeInt(documents.size());
+                for (Map.Entry<Long, Document> entry : documents.entrySet()) {
+                    out.writeLong(entry.getKey());
+                    entry.getValue().write(out);
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Индекс поиска по отзывам сохранён в {}: {} отзывов", file, documents.size());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Не удалось сохранить индекс поиска по отзывам, при следующем запуске он будет построен из БД", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void reset() {
+        lock.writeLock().lock();
+        try {
+            postings.clear();
+            documents.clear();
+            totalLength = 0;
+            loaded = false;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.debug("Индекс поиска по отзывам сброшен");
+    }
+
+    private void applyPut(Long reviewId, Document document) {
+        lock.writeLock().lock();
+        try {
+            // До построения индекса изменения не применяются: построение прочитает их из БД
+            if (loaded) {
+                index(reviewId, document);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void applyRemove(Long reviewId) {
+        lock.writeLock().lock();
+        try {
+            unindex(reviewId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void index(long reviewId, Document document) {
+        unindex(reviewId);
+        documents.put(reviewId, document);
+        totalLength += document.length();
+        for (int i = 0; i < document.terms().length; i++) {
+            postings.computeIfAbsent(document.terms()[i], term -> new LongIntHashMap())
+                    .put(reviewId, document.frequencies()[i]);
+        }
+    }
+
+    private void unindex(long reviewId) {
+        Document document = documents.remove(reviewId);
+        if (document == null) {
+            return;
+        }
+
+        totalLength -= document.length();
+        for (String term : document.terms()) {
+            LongIntHashMap posting = postings.get(term);
+            if (posting != null && posting.remove(reviewId) && posting.isEmpty()) {
+                postings.remove(term);
+            }
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                if (!loadSegment()) {
+                    log.debug("Построение индекса поиска по отзывам из БД");
+                    jdbcTemplate.query(GET_ALL_REVIEWS_QUERY, new MapSqlParameterSource(), (RowCallbackHandler) rs ->
+                            index(rs.getLong("ID"), Document.of(rs.getLong("FILM_ID"), rs.getString("CONTENT"))));
+                }
+                loaded = true;
+                log.debug("Индекс поиска по отзывам построен: {} отзывов, {} терминов", documents.size(),
+                        postings.size());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean loadSegment() {
+        Path file = properties.indexFile();
+        if (!Files.exists(file)) {
+            return false;
+        }
+
+        try {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+                if (in.readInt() != SEGMENT_MAGIC || in.readInt() != SEGMENT_VERSION) {
+                    log.warn("Файл {} не является индексом поиска по отзывам этой версии", file);
+                    return false;
+                }
+                Watermark saved = new Watermark(in.readUTF(), in.readLong(), in.readLong());
+                Watermark current = readWatermark();
+                if (!saved.equals(current)) {
+                    log.info("Сохранённый индекс поиска по отзывам устарел ({} в файле, {} в БД)", saved, current);
+                    return false;
+                }
+
+                int documentsCount = in.readInt();
+                for (int i = 0; i < documentsCount; i++) {
+                    index(in.readLong(), Document.read(in));
+                }
+            }
+            log.info("Индекс поиска по отзывам прочитан из {}: {} отзывов", file, documents.size());
+            return true;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Не удалось прочитать индекс поиска по отзывам из {}, он будет построен из БД", file, e);
+            postings.clear();
+            documents.clear();
+            totalLength = 0;
+            return false;
+        } finally {
+            // Файл соответствует БД только до первого изменения, поэтому используется один раз
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                log.warn("Не удалось удалить прочитанный индекс поиска по отзывам {}", file, e);
+            }
+        }
+    }
+
+    private Watermark readWatermark() {
+        return jdbcTemplate.queryForObject(GET_REVIEWS_WATERMARK_QUERY, new MapSqlParameterSource(),
+                (rs, rowNum) -> new Watermark(databaseGeneration.get(), rs.getLong("REVIEWS_COUNT"),
+                        rs.getLong("MAX_ID")));
+    }
+
+    /**
+     * Состояние таблицы отзывов, с которым сверяется сохранённый индекс
+     *
+     * @param generation поколение БД
+     * @param reviewsCount количество отзывов
+     * @param maxId наибольший идентификатор отзыва
+     */
+    private record Watermark(String generation, long reviewsCount, long maxId) {
+    }
+
+    /**
+     * Проиндексированный отзыв
+     *
+     * @param filmId идентификатор фильма
+     * @param length количество терминов в тексте
+     * @param terms различные термины текста
+     * @param frequencies частоты терминов в том же порядке
+     */
+    private record Document(long filmId, int length, String[] terms, int[] frequencies) {
+
+        static Document of(long filmId, String content) {
+            List<String> tokens = tokenize(content);
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            tokens.forEach(term -> counts.merge(term, 1, Integer::sum));
+            return new Document(filmId, tokens.size(), counts.keySet().toArray(String[]::new),
+                    counts.values().stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        static Document read(DataInputStream in) throws IOException {
+            long filmId = in.readLong();
+            int length = in.readInt();
+            String[] terms = new String[in.readInt()];
+            int[] frequencies = new int[terms.length];
+            for (int i = 0; i < terms.length; i++) {
+                terms[i] = in.readUTF();
+                frequencies[i] = in.readInt();
+            }
+            return new Document(filmId, length, terms, frequencies);
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeLong(filmId);
+            out.writeInt(length);
+            out.writeInt(terms.length);
+            for (int i = 0; i < terms.length; i++) {
+                out.writeUTF(terms[i]);
+                out.writeInt(frequencies[i]);
+            }
+        }
+    }
+}
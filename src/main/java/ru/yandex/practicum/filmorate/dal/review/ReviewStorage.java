@@ -4,6 +4,7 @@ import java.util.Collection;
 import java.util.Optional;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.model.ReviewSummary;
 
 /**
  * Интерфейс обработки сущностей {@link Review} на уровне хранилища
@@ -20,6 +21,17 @@ public interface ReviewStorage {
      */
     Collection<Review> findAll(Integer size, Integer from);
 
+    /**
+     * Метод возвращает отзывы, следующие в порядке убывания полезности за отзывом с переданными рейтингом и
+     * идентификатором
+     *
+     * @param size максимальный размер возвращаемой коллекции
+     * @param useful рейтинг полезности последнего отзыва предыдущей страницы
+     * @param reviewId идентификатор последнего отзыва предыдущей страницы
+     * @return коллекция {@link Review}
+     */
+    Collection<Review> findAllAfter(Integer size, Integer useful, Long reviewId);
+
     /**
      * Метод возвращает коллекцию отзывов к фильму
      *
@@ -29,6 +41,35 @@ public interface ReviewStorage {
      */
     Collection<Review> findByFilmId(Long filmId, Integer count);
 
+    /**
+     * Метод возвращает отзывы к фильму, следующие в порядке убывания полезности за отзывом с переданными рейтингом и
+     * идентификатором
+     *
+     * @param filmId идентификатор фильма
+     * @param count размер результирующей коллекции
+     * @param useful рейтинг полезности последнего отзыва предыдущей страницы
+     * @param reviewId идентификатор последнего отзыва предыдущей страницы
+     * @return коллекция {@link Review}
+     */
+    Collection<Review> findByFilmIdAfter(Long filmId, Integer count, Integer useful, Long reviewId);
+
+    /**
+     * Метод возвращает сводку отзывов к фильму. Сводка хранится готовой и меняется вместе с отзывами и их оценками
+     *
+     * @param filmId идентификатор фильма
+     * @return экземпляр {@link ReviewSummary}
+     */
+    ReviewSummary findSummary(Long filmId);
+
+    /**
+     * Метод возвращает отзывы по коллекции идентификаторов. Порядок отзывов не гарантируется, отсутствующие
+     * идентификаторы пропускаются
+     *
+     * @param reviewIds идентификаторы отзывов
+     * @return коллекция {@link Review}
+     */
+    Collection<Review> findByIds(Collection<Long> reviewIds);
+
     /**
      * Метод возвращает экземпляр сущности {@link Review} по переданному идентификатору
      *
@@ -56,8 +97,9 @@ public interface ReviewStorage {
      * Метод добавляет лайк отзыву от пользователя
      * @param reviewId идентификатор отзыва
      * @param userId идентификатор пользователя
+     * @return {@code true}, если лайк поставлен или заменил дизлайк
      */
-    void addReviewLike(Long reviewId, Long userId);
+    boolean addReviewLike(Long reviewId, Long userId);
 
 
     /**
@@ -65,24 +107,27 @@ public interface ReviewStorage {
      *
      * @param reviewId идентификатор отзыва
      * @param userId идентификатор пользователя
+     * @return {@code true}, если оценка была удалена
      */
-    void removeReviewLike(Long reviewId, Long userId);
+    boolean removeReviewLike(Long reviewId, Long userId);
 
     /**
      * Метод добавляет дизлайк отзыву от пользователя
      *
      * @param reviewId идентификатор отзыва
      * @param userId идентификатор пользователя
+     * @return {@code true}, если дизлайк поставлен или заменил лайк
      */
-    void addReviewDislike(Long reviewId, Long userId);
+    boolean addReviewDislike(Long reviewId, Long userId);
 
     /**
      * Метод удаляет дизлайк отзыва от пользователя
      *
      * @param reviewId идентификатор отзыва
      * @param userId идентификатор пользователя
+     * @return {@code true}, если оценка была удалена
      */
-    void removeReviewDislike(Long reviewId, Long userId);
+    boolean removeReviewDislike(Long reviewId, Long userId);
 
     /**
      * Метод удаляет отзыв по идентификатору
@@ -2,14 +2,29 @@ package ru.yandex.practicum.filmorate.dal.user;
 
 import java.sql.Types;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.LongConsumer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.dal.BaseDbStorage;
+import ru.yandex.practicum.filmorate.dal.StorageChange.EntitiesDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.Entity;
+import ru.yandex.practicum.filmorate.dal.StorageChange.UserDeleted;
+import ru.yandex.practicum.filmorate.dal.StorageChange.UserLinksPurged;
+import ru.yandex.practicum.filmorate.dal.StorageChange.UserSaved;
+import ru.yandex.practicum.filmorate.dal.StorageChanges;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Review;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.util.LongIntHashMap;
+import ru.yandex.practicum.filmorate.util.RequestIdentityMap;
 
 @Slf4j
 @Component
@@ -71,6 +86,61 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
              WHERE uf.FILM_ID = :filmId
              ORDER BY u.ID
             """;
+    private static final String GET_ALL_USERS_BY_FILM_IDS_QUERY = """
+            SELECT uf.FILM_ID,
+                   u.ID,
+                   u.EMAIL,
+                   u.LOGIN,
+                   u.FULL_NAME,
+                   u.BIRTHDAY,
+                   uf.MARK
+              FROM USERS_FILMS uf
+             INNER JOIN USERS u ON uf.USER_ID = u.ID
+             WHERE uf.FILM_ID IN (:filmIds)
+             ORDER BY uf.FILM_ID,
+                      u.ID
+            """;
+    private static final String GET_FOLLOWER_IDS_QUERY = """
+            SELECT f.USER_ID AS ID
+              FROM FRIENDS f
+             WHERE f.OTHER_ID = :userId
+            """;
+    private static final String GET_FRIENDS_OF_FRIENDS_QUERY = """
+            SELECT f.OTHER_ID AS ID
+              FROM (SELECT own.OTHER_ID AS FRIEND_ID
+                      FROM FRIENDS own
+                     WHERE own.USER_ID = :userId
+                     ORDER BY own.OTHER_ID
+                     LIMIT :firstCircleLimit) fc
+             INNER JOIN FRIENDS f ON f.USER_ID = fc.FRIEND_ID
+             WHERE f.OTHER_ID <> :userId
+               AND NOT EXISTS (SELECT 1
+                                 FROM FRIENDS own
+                                WHERE own.USER_ID = :userId
+                                  AND own.OTHER_ID = f.OTHER_ID)
+             ORDER BY f.USER_ID,
+                      f.OTHER_ID
+             LIMIT :limit
+            """;
+    private static final String GET_COMMON_LIKES_COUNT_QUERY = """
+            SELECT other.USER_ID AS ID,
+                   COUNT(*) AS CNT
+              FROM USERS_FILMS own
+             INNER JOIN USERS_FILMS other ON own.FILM_ID = other.FILM_ID
+             WHERE own.USER_ID = :userId
+               AND other.USER_ID IN (:otherIds)
+             GROUP BY other.USER_ID
+            """;
+    private static final String GET_USERS_BY_IDS_QUERY = """
+            SELECT u.ID,
+                   u.EMAIL,
+                   u.LOGIN,
+                   u.FULL_NAME,
+                   u.BIRTHDAY,
+                   0 as MARK
+              FROM USERS u
+             WHERE u.ID IN (:userIds)
+            """;
     private static final String GET_USER_BY_ID_QUERY = """
             SELECT u.ID,
                    u.EMAIL,
@@ -93,20 +163,215 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
                    BIRTHDAY = :userBirthday
              WHERE ID = :userId
             """;
-    private static final String GET_FRIENDSHIP_ID_QUERY = """
-            SELECT 1 AS ID
-              FROM FRIENDS f
+    private static final String MERGE_FRIENDSHIP_QUERY = """
+            MERGE INTO FRIENDS f
+            USING (VALUES (CAST(:userId AS INTEGER), CAST(:friendId AS INTEGER))) s(USER_ID, OTHER_ID)
+               ON f.USER_ID = s.USER_ID
+              AND f.OTHER_ID = s.OTHER_ID
+             WHEN NOT MATCHED THEN
+                  INSERT (USER_ID, OTHER_ID) VALUES (s.USER_ID, s.OTHER_ID)
+            """;
+    private static final String DELETE_LINK_BETWEEN_USERS_QUERY = """
+            DELETE FROM FRIENDS f
              WHERE f.USER_ID = :userId
                AND f.OTHER_ID = :friendId
             """;
-    private static final String INSERT_FRIENDSHIP_QUERY = """
-            INSERT INTO FRIENDS (USER_ID, OTHER_ID)
-            VALUES (:userId, :friendId)
+    private static final String DELETE_USER_REVIEW_MARKS_QUERY = """
+            DELETE FROM USERS_REVIEWS ur
+             WHERE ur.USER_ID = :userId
+                OR ur.REVIEW_ID IN (SELECT r.ID
+                                      FROM REVIEWS r
+                                     WHERE r.USER_ID = :userId)
             """;
-    private static final String DELETE_LINK_BETWEEN_USERS_QUERY = """
+    private static final String DELETE_USER_REVIEWS_QUERY = """
+            DELETE FROM REVIEWS r
+             WHERE r.USER_ID = :userId
+            """;
+    private static final String DELETE_USER_LIKES_QUERY = """
+            DELETE FROM USERS_FILMS uf
+             WHERE uf.USER_ID = :userId
+            """;
+    private static final String DELETE_USER_FRIENDSHIPS_QUERY = """
             DELETE FROM FRIENDS f
              WHERE f.USER_ID = :userId
-               AND f.OTHER_ID = :friendId
+                OR f.OTHER_ID = :userId
+            """;
+    private static final String DELETE_USER_FEED_QUERY = """
+            DELETE FROM FEED f
+             WHERE f.USER_ID = :userId
+            """;
+    private static final String USER_MARKED_REVIEWS_BATCH_SUBQUERY = """
+            SELECT m.REVIEW_ID
+              FROM USERS_REVIEWS m
+             WHERE m.USER_ID = :userId
+             ORDER BY m.REVIEW_ID
+             FETCH FIRST :batchSize ROWS ONLY
+            """;
+    private static final String USER_REVIEWS_BATCH_SUBQUERY = """
+            SELECT o.ID
+              FROM REVIEWS o
+             WHERE o.USER_ID = :userId
+             ORDER BY o.ID
+             FETCH FIRST :batchSize ROWS ONLY
+            """;
+    private static final String USER_MARKED_REVIEWS_SUBQUERY = """
+            SELECT m.REVIEW_ID
+              FROM USERS_REVIEWS m
+             WHERE m.USER_ID = :userId
+            """;
+    private static final String USER_REVIEWS_SUBQUERY = """
+            SELECT o.ID
+              FROM REVIEWS o
+             WHERE o.USER_ID = :userId
+            """;
+    private static final String APPLY_REVIEWS_TO_SUMMARY_TEMPLATE = """
+            MERGE INTO FILM_REVIEW_SUMMARY s
+            USING (SELECT r.FILM_ID,
+                          r.USEFUL,
+                          SUM(CASE WHEN r.IS_POSITIVE THEN 1 ELSE 0 END) AS POSITIVE_COUNT,
+                          SUM(CASE WHEN r.IS_POSITIVE THEN 0 ELSE 1 END) AS NEGATIVE_COUNT
+                     FROM REVIEWS r
+                    WHERE r.ID IN (%s)
+                    GROUP BY r.FILM_ID, r.USEFUL) d
+               ON s.FILM_ID = d.FILM_ID
+              AND s.USEFUL = d.USEFUL
+             WHEN MATCHED THEN
+                  UPDATE SET POSITIVE_COUNT = s.POSITIVE_COUNT + :sign * d.POSITIVE_COUNT,
+                             NEGATIVE_COUNT = s.NEGATIVE_COUNT + :sign * d.NEGATIVE_COUNT
+             WHEN NOT MATCHED THEN
+                  INSERT (FILM_ID, USEFUL, POSITIVE_COUNT, NEGATIVE_COUNT)
+                  VALUES (d.FILM_ID, d.USEFUL, :sign * d.POSITIVE_COUNT, :sign * d.NEGATIVE_COUNT)
+            """;
+    private static final String APPLY_USER_MARKED_REVIEWS_TO_SUMMARY_QUERY =
+            APPLY_REVIEWS_TO_SUMMARY_TEMPLATE.formatted(USER_MARKED_REVIEWS_SUBQUERY);
+    private static final String APPLY_USER_MARKED_REVIEWS_BATCH_TO_SUMMARY_QUERY =
+            APPLY_REVIEWS_TO_SUMMARY_TEMPLATE.formatted(USER_MARKED_REVIEWS_BATCH_SUBQUERY);
+    private static final String APPLY_USER_REVIEWS_TO_SUMMARY_QUERY =
+            APPLY_REVIEWS_TO_SUMMARY_TEMPLATE.formatted(USER_REVIEWS_SUBQUERY);
+    private static final String APPLY_USER_REVIEWS_BATCH_TO_SUMMARY_QUERY =
+            APPLY_REVIEWS_TO_SUMMARY_TEMPLATE.formatted(USER_REVIEWS_BATCH_SUBQUERY);
+    private static final String SUBTRACT_MARKS_FROM_REVIEWS_TEMPLATE = """
+            UPDATE REVIEWS r
+               SET USEFUL = r.USEFUL - (SELECT ur.USEFUL
+                                          FROM USERS_REVIEWS ur
+                                         WHERE ur.REVIEW_ID = r.ID
+                                           AND ur.USER_ID = :userId)
+             WHERE r.ID IN (%s)
+            """;
+    private static final String SUBTRACT_USER_MARKS_FROM_REVIEWS_QUERY =
+            SUBTRACT_MARKS_FROM_REVIEWS_TEMPLATE.formatted(USER_MARKED_REVIEWS_SUBQUERY);
+    private static final String SUBTRACT_USER_MARKS_BATCH_FROM_REVIEWS_QUERY =
+            SUBTRACT_MARKS_FROM_REVIEWS_TEMPLATE.formatted(USER_MARKED_REVIEWS_BATCH_SUBQUERY);
+    private static final String PURGE_USER_MARKS_QUERY = """
+            DELETE FROM USERS_REVIEWS ur
+             WHERE ur.USER_ID = :userId
+               AND ur.REVIEW_ID IN (%s)
+            """.formatted(USER_MARKED_REVIEWS_BATCH_SUBQUERY);
+    private static final String PURGE_USER_REVIEW_MARKS_QUERY = """
+            DELETE FROM USERS_REVIEWS ur
+             WHERE ur.REVIEW_ID IN (SELECT r.ID
+                                      FROM REVIEWS r
+                                     WHERE r.USER_ID = :userId)
+             FETCH FIRST :batchSize ROWS ONLY
+            """;
+    private static final String PURGE_USER_REVIEWS_QUERY = DELETE_USER_REVIEWS_QUERY + """
+               AND r.ID IN (%s)
+            """.formatted(USER_REVIEWS_BATCH_SUBQUERY);
+    private static final String USER_LIKED_FILMS_SUBQUERY = """
+            SELECT l.FILM_ID
+              FROM USERS_FILMS l
+             WHERE l.USER_ID = :userId
+            """;
+    private static final String USER_LIKED_FILMS_BATCH_SUBQUERY = USER_LIKED_FILMS_SUBQUERY + """
+             ORDER BY l.FILM_ID
+             FETCH FIRST :batchSize ROWS ONLY
+            """;
+    private static final String GET_USER_LIKED_FILM_IDS_QUERY = """
+            SELECT l.FILM_ID AS id
+              FROM USERS_FILMS l
+             WHERE l.USER_ID = :userId
+            """;
+    private static final String LOCK_STATS_TEMPLATE = """
+            SELECT fs.FILM_ID AS id
+              FROM FILM_STATS fs
+             WHERE fs.FILM_ID IN (%s)
+             ORDER BY fs.FILM_ID
+               FOR UPDATE
+            """;
+    private static final String LOCK_USER_LIKED_FILM_STATS_QUERY =
+            LOCK_STATS_TEMPLATE.formatted(USER_LIKED_FILMS_SUBQUERY);
+    private static final String LOCK_USER_LIKED_FILM_STATS_BATCH_QUERY =
+            LOCK_STATS_TEMPLATE.formatted(USER_LIKED_FILMS_BATCH_SUBQUERY);
+    private static final String SUBTRACT_LIKES_FROM_STATS_TEMPLATE = """
+            UPDATE FILM_STATS fs
+               SET LIKES_COUNT = fs.LIKES_COUNT - 1,
+                   MARK_SUM = fs.MARK_SUM - NVL((SELECT uf.MARK
+                                                  FROM USERS_FILMS uf
+                                                 WHERE uf.FILM_ID = fs.FILM_ID
+                                                   AND uf.USER_ID = :userId), 0),
+                   MARK_COUNT = fs.MARK_COUNT - (SELECT COUNT(uf.MARK)
+                                                   FROM USERS_FILMS uf
+                                                  WHERE uf.FILM_ID = fs.FILM_ID
+                                                    AND uf.USER_ID = :userId)
+             WHERE fs.FILM_ID IN (%s)
+            """;
+    private static final String SUBTRACT_USER_LIKES_FROM_STATS_QUERY =
+            SUBTRACT_LIKES_FROM_STATS_TEMPLATE.formatted(USER_LIKED_FILMS_SUBQUERY);
+    private static final String SUBTRACT_USER_LIKES_BATCH_FROM_STATS_QUERY =
+            SUBTRACT_LIKES_FROM_STATS_TEMPLATE.formatted(USER_LIKED_FILMS_BATCH_SUBQUERY);
+    private static final String APPLY_FILMS_TO_DIRECTOR_STATS_TEMPLATE = """
+            MERGE INTO DIRECTOR_STATS ds
+            USING (SELECT fd.DIRECTOR_ID,
+                          COUNT(*) AS FILMS_COUNT,
+                          NVL(SUM(fs.LIKES_COUNT), 0) AS LIKES_COUNT,
+                          NVL(SUM(fs.MARK_SUM), 0) AS MARK_SUM,
+                          NVL(SUM(fs.MARK_COUNT), 0) AS MARK_COUNT
+                     FROM FILMS_DIRECTORS fd
+                     LEFT JOIN FILM_STATS fs ON fs.FILM_ID = fd.FILM_ID
+                    WHERE fd.FILM_ID IN (%s)
+                    GROUP BY fd.DIRECTOR_ID
+                    ORDER BY fd.DIRECTOR_ID) s
+               ON ds.DIRECTOR_ID = s.DIRECTOR_ID
+             WHEN MATCHED THEN
+                  UPDATE SET FILMS_COUNT = ds.FILMS_COUNT + :sign * s.FILMS_COUNT,
+                             LIKES_COUNT = ds.LIKES_COUNT + :sign * s.LIKES_COUNT,
+                             MARK_SUM = ds.MARK_SUM + :sign * s.MARK_SUM,
+                             MARK_COUNT = ds.MARK_COUNT + :sign * s.MARK_COUNT
+            """;
+    private static final String APPLY_USER_LIKED_FILMS_TO_DIRECTOR_STATS_QUERY =
+            APPLY_FILMS_TO_DIRECTOR_STATS_TEMPLATE.formatted(USER_LIKED_FILMS_SUBQUERY);
+    private static final String APPLY_USER_LIKED_FILMS_BATCH_TO_DIRECTOR_STATS_QUERY =
+            APPLY_FILMS_TO_DIRECTOR_STATS_TEMPLATE.formatted(USER_LIKED_FILMS_BATCH_SUBQUERY);
+    private static final String PURGE_USER_LIKES_QUERY = DELETE_USER_LIKES_QUERY + """
+               AND uf.FILM_ID IN (%s)
+            """.formatted(USER_LIKED_FILMS_BATCH_SUBQUERY);
+    private static final String RESET_FILM_STATS_QUERY = """
+            UPDATE FILM_STATS
+               SET LIKES_COUNT = 0,
+                   MARK_SUM = 0,
+                   MARK_COUNT = 0
+            """;
+    private static final String RESET_DIRECTOR_STATS_QUERY = """
+            UPDATE DIRECTOR_STATS
+               SET LIKES_COUNT = 0,
+                   MARK_SUM = 0,
+                   MARK_COUNT = 0
+            """;
+    private static final String RESET_REVIEW_SUMMARY_QUERY = """
+            DELETE FROM FILM_REVIEW_SUMMARY
+            """;
+    private static final String PURGE_USER_FRIENDSHIPS_QUERY = DELETE_USER_FRIENDSHIPS_QUERY + """
+             FETCH FIRST :batchSize ROWS ONLY
+            """;
+    private static final String PURGE_USER_FEED_QUERY = DELETE_USER_FEED_QUERY + """
+             FETCH FIRST :batchSize ROWS ONLY
+            """;
+    private static final String COUNT_USER_LINKS_QUERY = """
+            SELECT (SELECT COUNT(*) FROM FRIENDS f WHERE f.USER_ID = :userId OR f.OTHER_ID = :userId)
+                 + (SELECT COUNT(*) FROM USERS_FILMS uf WHERE uf.USER_ID = :userId)
+                 + (SELECT COUNT(*) FROM REVIEWS r WHERE r.USER_ID = :userId)
+                 + (SELECT COUNT(*) FROM USERS_REVIEWS ur WHERE ur.USER_ID = :userId)
+                 + (SELECT COUNT(*) FROM FEED fd WHERE fd.USER_ID = :userId) AS LINKS
             """;
     private static final String DELETE_USER_QUERY = """
             DELETE FROM USERS
@@ -115,32 +380,14 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
     private static final String DELETE_ALL_FILMS = """
             DELETE FROM USERS
             """;
-    private static final String GET_EMAIL_BEFORE_UPDATE_QUERY = """
-            SELECT u.ID
-              FROM USERS u
-             WHERE UPPER(u.EMAIL) = :userEMail
-               AND u.ID != :userId
-            """;
-    private static final String GET_EMAIL_BEFORE_INSERT_QUERY = """
-            SELECT u.ID
-              FROM USERS u
-             WHERE UPPER(u.EMAIL) = :userEMail
-            """;
-    private static final String GET_LOGIN_BEFORE_UPDATE_QUERY = """
-            SELECT u.ID
-              FROM USERS u
-             WHERE UPPER(u.LOGIN) = :userLogin
-               AND u.ID != :userId
-            """;
-    private static final String GET_LOGIN_BEFORE_INSERT_QUERY = """
-            SELECT u.ID
-              FROM USERS u
-             WHERE UPPER(u.LOGIN) = :userLogin
-            """;
+
+    private final StorageChanges storageChanges;
 
     @Autowired
-    public UserDbStorage(NamedParameterJdbcTemplate jdbcTemplate, UserRowMapper userRowMapper) {
+    public UserDbStorage(NamedParameterJdbcTemplate jdbcTemplate, UserRowMapper userRowMapper,
+                         StorageChanges storageChanges) {
         super(jdbcTemplate, userRowMapper);
+        this.storageChanges = storageChanges;
     }
 
     @Override
@@ -178,6 +425,23 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
         return result;
     }
 
+    @Override
+    public Map<Long, List<User>> findByFilmIds(Collection<Long> filmIds) {
+        log.debug("Запрос лайков {} фильмов на уровне хранилища", filmIds.size());
+        if (filmIds.isEmpty()) {
+            return Map.of();
+        }
+
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("filmIds", filmIds);
+
+        Map<Long, List<User>> result = findGrouped(GET_ALL_USERS_BY_FILM_IDS_QUERY, parameterSource, "FILM_ID");
+        log.debug("Лайки найдены у {} фильмов", result.size());
+
+        log.debug("Возврат лайков фильмов на уровень сервиса");
+        return result;
+    }
+
     @Override
     public Collection<User> findFriends(Long userId) {
         log.debug("Запрос друзей на уровне хранилища");
@@ -213,6 +477,75 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
         return result;
     }
 
+    @Override
+    public Collection<Long> findFollowerIds(Long userId) {
+        log.debug("Запрос идентификаторов пользователей, добавивших пользователя в друзья");
+        log.debug("Идентификатор пользователя: {}", userId);
+
+        // Составляем набор параметров
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("userId", userId, Types.BIGINT);
+
+        Collection<Long> result = findIds(GET_FOLLOWER_IDS_QUERY, parameterSource);
+        log.debug("Получена коллекция идентификаторов подписчиков размером {}", result.size());
+
+        log.debug("Возврат идентификаторов подписчиков на уровень сервиса");
+        return result;
+    }
+
+    @Override
+    public void forEachFriendOfFriends(Long userId, Integer firstCircleLimit, Integer limit, LongConsumer consumer) {
+        log.debug("Обход друзей второго круга на уровне хранилища");
+        log.debug("Идентификатор пользователя для обхода друзей второго круга: {}", userId);
+
+        // Составляем набор параметров
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("userId", userId, Types.BIGINT)
+                .addValue("firstCircleLimit", firstCircleLimit, Types.INTEGER)
+                .addValue("limit", limit, Types.INTEGER);
+
+        // Передаём идентификаторы обработчику по мере чтения без промежуточной коллекции
+        run(() -> jdbcTemplate.query(GET_FRIENDS_OF_FRIENDS_QUERY, parameterSource,
+                (RowCallbackHandler) rs -> consumer.accept(rs.getLong("ID"))));
+
+        log.debug("Обход друзей второго круга завершён");
+    }
+
+    @Override
+    public LongIntHashMap countCommonLikes(Long userId, Collection<Long> otherIds) {
+        log.debug("Подсчёт общих лайков на уровне хранилища");
+        log.debug("Идентификатор пользователя для подсчёта общих лайков: {}", userId);
+
+        // Составляем набор параметров
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("userId", userId, Types.BIGINT)
+                .addValue("otherIds", otherIds);
+
+        LongIntHashMap result = new LongIntHashMap(otherIds.size());
+        run(() -> jdbcTemplate.query(GET_COMMON_LIKES_COUNT_QUERY, parameterSource,
+                (RowCallbackHandler) rs -> result.put(rs.getLong("ID"), rs.getInt("CNT"))));
+        log.debug("Общие лайки найдены у {} пользователей", result.size());
+
+        log.debug("Возврат количества общих лайков на уровень сервиса");
+        return result;
+    }
+
+    @Override
+    public Collection<User> findByIds(Collection<Long> userIds) {
+        log.debug("Поиск пользователей по набору идентификаторов на уровне хранилища");
+        log.debug("Количество переданных идентификаторов: {}", userIds.size());
+
+        // Составляем набор параметров
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("userIds", userIds);
+
+        Collection<User> result = findMany(GET_USERS_BY_IDS_QUERY, parameterSource);
+        log.debug("По набору идентификаторов найдено {} пользователей", result.size());
+
+        log.debug("Возврат найденных пользователей на уровень сервиса");
+        return result;
+    }
+
     @Override
     public Optional<User> findById(Long userId) {
         log.debug("Поиск пользователя по id на уровне хранилища");
@@ -222,7 +555,8 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
         MapSqlParameterSource parameterSource = new MapSqlParameterSource()
                 .addValue("userId", userId, Types.BIGINT);
 
-        Optional<User> result = findOne(GET_USER_BY_ID_QUERY, parameterSource);
+        Optional<User> result = RequestIdentityMap.find(User.class, userId,
+                () -> findOne(GET_USER_BY_ID_QUERY, parameterSource));
 
         log.debug("Возврат результата поиска на уровень сервиса");
         return result;
@@ -246,6 +580,7 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
         }
 
         user.setId(id);
+        RequestIdentityMap.evict(User.class, id);
         log.debug("Значение присвоено id присвоено пользователю");
 
         log.debug("Возврат результатов создания на уровень сервиса");
@@ -264,6 +599,8 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
                 .addValue("userId", newUser.getId(), Types.BIGINT);
 
         long updatedRows = update(UPDATE_USER_QUERY, parameterSource);
+        RequestIdentityMap.evict(User.class, newUser.getId());
+        storageChanges.publish(new UserSaved(newUser.getId(), findIds(GET_USER_LIKED_FILM_IDS_QUERY, parameterSource)));
         log.debug("На уровне хранилища обновлено {} запись(ей)", updatedRows);
 
         propagateModel(newUser);
@@ -273,7 +610,7 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
     }
 
     @Override
-    public void addFriend(Long userId, Long friendId) {
+    public boolean addFriend(Long userId, Long friendId) {
         log.debug("Добавление друга на уровне хранилища");
         log.debug("Идентификатор основного пользователя: {}", userId);
         log.debug("Идентификатор друга: {}", friendId);
@@ -282,29 +619,22 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
                 .addValue("userId", userId, Types.BIGINT)
                 .addValue("friendId", friendId, Types.BIGINT);
 
-        // Если ранее дружбы не было
-        if (!exists(GET_FRIENDSHIP_ID_QUERY, parameterSource)) {
-            log.debug("Дружба будет добавлена в БД");
-
-            // Создаём её
-            boolean isInserted = insertWithOutReturnId(INSERT_FRIENDSHIP_QUERY, parameterSource);
-            if (!isInserted) {
-                throw new RuntimeException(
-                        "Не удалось добавить пользователю с id " + userId + "  друга с id "
-                                + friendId);
-            } else {
-                log.debug("Пользователю с id {} добавлен друг с id {}", userId,
-                        friendId);
-            }
+        // Создаём дружбу, если её ещё нет
+        boolean isInserted = upsert(MERGE_FRIENDSHIP_QUERY, parameterSource);
+        RequestIdentityMap.evict(User.class, userId);
+        RequestIdentityMap.evict(User.class, friendId);
+        if (isInserted) {
+            log.debug("Пользователю с id {} добавлен друг с id {}", userId, friendId);
         } else {
-            log.debug("Дружба не будет добавлена в БД, т.к. уже существует");
+            log.debug("Дружба не добавлена в БД, т.к. уже существует");
         }
 
         log.debug("Возврат результата добавления дружбы на уровень сервиса");
+        return isInserted;
     }
 
     @Override
-    public void removeFriend(Long userId, Long friendId) {
+    public boolean removeFriend(Long userId, Long friendId) {
         log.debug("Удаление друга на уровне хранилища");
         log.debug("Идентификатор  основного пользователя: {}", userId);
         log.debug("Идентификатор  друга: {}", friendId);
@@ -313,26 +643,21 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
                 .addValue("userId", userId, Types.BIGINT)
                 .addValue("friendId", friendId, Types.BIGINT);
 
-        //Если дружба есть
-        if (exists(GET_FRIENDSHIP_ID_QUERY, parameterSource)) {
-            log.debug("Дружба будет удалена из БД");
-
-            long deletedRows = deleteOne(DELETE_LINK_BETWEEN_USERS_QUERY, parameterSource);
-
-            if (deletedRows == 0) {
-                throw new RuntimeException(
-                        "Не удалось удалить дружбу между пользователем с id " + userId + " и пользователем с id "
-                                + friendId);
-            }
+        boolean isDeleted = deleteOne(DELETE_LINK_BETWEEN_USERS_QUERY, parameterSource) > 0;
+        RequestIdentityMap.evict(User.class, userId);
+        RequestIdentityMap.evict(User.class, friendId);
+        if (isDeleted) {
             log.debug("Дружба между пользователем с id {} и пользователем с id {} прекращена", userId, friendId);
         } else {
-            log.debug("Дружба не будет удалена, т.к. не найдена в БД");
+            log.debug("Дружба не удалена, т.к. не найдена в БД");
         }
 
         log.debug("Возврат результатов удаления дружбы на уровень сервиса");
+        return isDeleted;
     }
 
     @Override
+    @Transactional
     public void deleteUser(Long userId) {
         log.debug("Удаление пользователя на уровне хранилища");
         log.debug("Передан id пользователя: {}", userId);
@@ -340,64 +665,131 @@ public class UserDbStorage extends BaseDbStorage<User> implements UserStorage {
         MapSqlParameterSource parameterSource = new MapSqlParameterSource()
                 .addValue("userId", userId, Types.BIGINT);
 
+        // Удаляем связи пользователя по одному запросу на таблицу, рейтинги чужих отзывов уменьшаем заранее
+        applyReviewsToSummary(APPLY_USER_MARKED_REVIEWS_TO_SUMMARY_QUERY, parameterSource, -1);
+        update(SUBTRACT_USER_MARKS_FROM_REVIEWS_QUERY, parameterSource);
+        applyReviewsToSummary(APPLY_USER_MARKED_REVIEWS_TO_SUMMARY_QUERY, parameterSource, 1);
+        long deletedLinks = deleteMany(DELETE_USER_REVIEW_MARKS_QUERY, parameterSource);
+        applyReviewsToSummary(APPLY_USER_REVIEWS_TO_SUMMARY_QUERY, parameterSource, -1);
+        deletedLinks += deleteMany(DELETE_USER_REVIEWS_QUERY, parameterSource);
+        // Счётчики лайков фильмов и их режиссеров уменьшаем до удаления самих лайков. Строки счётчиков фильмов
+        // блокируются в порядке идентификаторов, как и при записи лайка, поэтому лайк удаляемого пользователя не
+        // попадёт между ними
+        Collection<Long> likedFilmIds = findIds(LOCK_USER_LIKED_FILM_STATS_QUERY, parameterSource);
+        applyFilmsToDirectorStats(APPLY_USER_LIKED_FILMS_TO_DIRECTOR_STATS_QUERY, parameterSource, -1);
+        update(SUBTRACT_USER_LIKES_FROM_STATS_QUERY, parameterSource);
+        applyFilmsToDirectorStats(APPLY_USER_LIKED_FILMS_TO_DIRECTOR_STATS_QUERY, parameterSource, 1);
+        deletedLinks += deleteMany(DELETE_USER_LIKES_QUERY, parameterSource);
+        deletedLinks += deleteMany(DELETE_USER_FRIENDSHIPS_QUERY, parameterSource);
+        deletedLinks += deleteMany(DELETE_USER_FEED_QUERY, parameterSource);
+        log.debug("Удалено {} связей пользователя с id {}", deletedLinks, userId);
+
         long deletedRows = deleteOne(DELETE_USER_QUERY, parameterSource);
+        // Вместе с пользователем меняются рейтинги фильмов и отзывов, которые он оценивал
+        RequestIdentityMap.evict(User.class, userId);
+        RequestIdentityMap.evictAll(Film.class);
+        RequestIdentityMap.evictAll(Review.class);
 
         if (deletedRows == 0) {
             throw new RuntimeException("Не удалось удалить пользователя с id " + userId);
         }
+        storageChanges.publish(new UserDeleted(userId, likedFilmIds));
         log.debug("Пользователь с id {} удален из хранилища", userId);
 
         log.debug("Возврат результатов удаления на уровень сервиса");
     }
 
     @Override
-    public void clearUsers() {
-        log.debug("Очистка хранилища пользователей");
+    public Long countLinks(Long userId) {
+        log.debug("Подсчёт связей пользователя на уровне хранилища");
+        log.debug("Идентификатор пользователя для подсчёта связей: {}", userId);
 
-        MapSqlParameterSource parameterSource = new MapSqlParameterSource();
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("userId", userId, Types.BIGINT);
 
-        long deletedRows = deleteMany(DELETE_ALL_FILMS, parameterSource);
-        log.debug("На уровне хранилища очищено {} запись(ей)", deletedRows);
+        Long result = execute(() -> jdbcTemplate.queryForObject(COUNT_USER_LINKS_QUERY, parameterSource, Long.class));
+        log.debug("У пользователя с id {} найдено {} связей", userId, result);
 
-        log.debug("Возврат результатов очистки на уровень сервиса");
+        log.debug("Возврат количества связей на уровень сервиса");
+        return result == null ? 0L : result;
     }
 
     @Override
-    public Boolean isMailAlreadyUsed(User user) {
-        log.debug("Проверка на использование адреса {} другими пользователями", user.getEmail());
-
-        if (user.getId() == null) {
-            MapSqlParameterSource parameterSource = new MapSqlParameterSource()
-                    .addValue("userEMail", user.getEmail().toUpperCase(), Types.VARCHAR);
-
-            return exists(GET_EMAIL_BEFORE_INSERT_QUERY, parameterSource);
-        } else {
-            MapSqlParameterSource parameterSource = new MapSqlParameterSource()
-                    .addValue("userEMail", user.getEmail().toUpperCase(), Types.VARCHAR)
-                    .addValue("userId", user.getId(), Types.BIGINT);
+    public long purgeLinks(Long userId, Integer batchSize) {
+        log.debug("Удаление порции связей пользователя на уровне хранилища");
+        log.debug("Идентификатор пользователя для удаления связей: {}", userId);
+        log.debug("Размер порции: {}", batchSize);
 
-            return exists(GET_EMAIL_BEFORE_UPDATE_QUERY, parameterSource);
-        }
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource()
+                .addValue("userId", userId, Types.BIGINT)
+                .addValue("batchSize", batchSize, Types.INTEGER);
+
+        applyReviewsToSummary(APPLY_USER_MARKED_REVIEWS_BATCH_TO_SUMMARY_QUERY, parameterSource, -1);
+        update(SUBTRACT_USER_MARKS_BATCH_FROM_REVIEWS_QUERY, parameterSource);
+        applyReviewsToSummary(APPLY_USER_MARKED_REVIEWS_BATCH_TO_SUMMARY_QUERY, parameterSource, 1);
+        long deletedRows = deleteMany(PURGE_USER_MARKS_QUERY, parameterSource);
+        deletedRows += deleteMany(PURGE_USER_REVIEW_MARKS_QUERY, parameterSource);
+        applyReviewsToSummary(APPLY_USER_REVIEWS_BATCH_TO_SUMMARY_QUERY, parameterSource, -1);
+        deletedRows += deleteMany(PURGE_USER_REVIEWS_QUERY, parameterSource);
+        Collection<Long> likedFilmIds = findIds(LOCK_USER_LIKED_FILM_STATS_BATCH_QUERY, parameterSource);
+        applyFilmsToDirectorStats(APPLY_USER_LIKED_FILMS_BATCH_TO_DIRECTOR_STATS_QUERY, parameterSource, -1);
+        update(SUBTRACT_USER_LIKES_BATCH_FROM_STATS_QUERY, parameterSource);
+        applyFilmsToDirectorStats(APPLY_USER_LIKED_FILMS_BATCH_TO_DIRECTOR_STATS_QUERY, parameterSource, 1);
+        deletedRows += deleteMany(PURGE_USER_LIKES_QUERY, parameterSource);
+        deletedRows += deleteMany(PURGE_USER_FRIENDSHIPS_QUERY, parameterSource);
+        deletedRows += deleteMany(PURGE_USER_FEED_QUERY, parameterSource);
+        storageChanges.publish(new UserLinksPurged(userId, likedFilmIds));
+        RequestIdentityMap.evictAll(Film.class);
+        RequestIdentityMap.evictAll(Review.class);
+        log.debug("Удалено {} связей пользователя с id {}", deletedRows, userId);
+
+        log.debug("Возврат результатов удаления связей на уровень сервиса");
+        return deletedRows;
     }
 
     @Override
-    public Boolean isLoginAlreadyUsed(User user) {
-        log.debug("Проверка на использование логина {} другими пользователями", user.getLogin());
+    public void clearUsers() {
+        log.debug("Очистка хранилища пользователей");
 
-        if (user.getId() == null) {
-            MapSqlParameterSource parameterSource = new MapSqlParameterSource()
-                    .addValue("userLogin", user.getLogin().toUpperCase(), Types.VARCHAR);
+        MapSqlParameterSource parameterSource = new MapSqlParameterSource();
 
-            // Проверяем использование почты всеми пользователями
-            return exists(GET_LOGIN_BEFORE_INSERT_QUERY, parameterSource);
-        } else {
-            MapSqlParameterSource parameterSource = new MapSqlParameterSource()
-                    .addValue("userLogin", user.getLogin().toUpperCase(), Types.VARCHAR)
-                    .addValue("userId", user.getId(), Types.BIGINT);
+        long deletedRows = deleteMany(DELETE_ALL_FILMS, parameterSource);
+        RequestIdentityMap.evictAll(User.class);
+        RequestIdentityMap.evictAll(Film.class);
+        RequestIdentityMap.evictAll(Review.class);
+        update(RESET_FILM_STATS_QUERY, parameterSource);
+        update(RESET_DIRECTOR_STATS_QUERY, parameterSource);
+        deleteMany(RESET_REVIEW_SUMMARY_QUERY, parameterSource);
+        storageChanges.publish(new EntitiesDeleted(Entity.USER));
+        log.debug("На уровне хранилища очищено {} запись(ей)", deletedRows);
 
-            // Проверяем использование почты другими пользователями
-            return exists(GET_LOGIN_BEFORE_UPDATE_QUERY, parameterSource);
-        }
+        log.debug("Возврат результатов очистки на уровень сервиса");
+    }
+
+    /**
+     * Метод добавляет отзывы в сводки фильмов или убирает их оттуда по текущим признакам и рейтингам полезности.
+     * Вокруг изменения рейтингов вызывается дважды: до него с -1 и после него с 1
+     *
+     * @param query запрос слияния сводки по выборке отзывов
+     * @param parameterSource параметры выборки отзывов
+     * @param sign 1 для добавления, -1 для удаления
+     */
+    private void applyReviewsToSummary(String query, MapSqlParameterSource parameterSource, int sign) {
+        upsert(query, new MapSqlParameterSource(parameterSource.getValues())
+                .addValue("sign", sign, Types.INTEGER));
+    }
+
+    /**
+     * Метод добавляет счётчики фильмов к счётчикам их режиссеров или вычитает их оттуда. Вокруг изменения счётчиков
+     * фильмов вызывается дважды: до него с -1 и после него с 1
+     *
+     * @param query запрос слияния счётчиков режиссеров по выборке фильмов
+     * @param parameterSource параметры выборки фильмов
+     * @param sign 1 для добавления, -1 для вычитания
+     */
+    private void applyFilmsToDirectorStats(String query, MapSqlParameterSource parameterSource, int sign) {
+        update(query, new MapSqlParameterSource(parameterSource.getValues())
+                .addValue("sign", sign, Types.INTEGER));
     }
 
     /**
@@ -1,9 +1,13 @@
 package ru.yandex.practicum.filmorate.dal.user;
 
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.LongConsumer;
 import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.util.LongIntHashMap;
 
 /**
  * Интерфейс обработки сущностей {@link User} на уровне хранилища
@@ -28,6 +32,14 @@ public interface UserStorage {
      */
     Collection<User> findByFilmId(Long filmId);
 
+    /**
+     * Метод возвращает пользователей, которым понравились фильмы, одним запросом для нескольких фильмов
+     *
+     * @param filmIds идентификаторы фильмов
+     * @return коллекции {@link User} с оценками по идентификаторам фильмов; фильмы без лайков отсутствуют
+     */
+    Map<Long, List<User>> findByFilmIds(Collection<Long> filmIds);
+
     /**
      * Метод возвращает коллекцию друзей пользователя
      *
@@ -45,6 +57,44 @@ public interface UserStorage {
      */
     Collection<User> findCommonFriends(Long userId, Long friendId);
 
+    /**
+     * Метод возвращает идентификаторы пользователей, у которых переданный пользователь находится в друзьях
+     *
+     * @param userId идентификатор пользователя
+     * @return коллекция идентификаторов пользователей
+     */
+    Collection<Long> findFollowerIds(Long userId);
+
+    /**
+     * Метод передаёт обработчику идентификаторы друзей друзей пользователя, кроме него самого и его друзей.
+     * Идентификатор передаётся столько раз, у скольких друзей пользователя он находится в друзьях. Друзья и их связи
+     * просматриваются по возрастанию идентификаторов, поэтому при срабатывании ограничений результат воспроизводим
+     *
+     * @param userId идентификатор пользователя
+     * @param firstCircleLimit максимальное количество просматриваемых друзей пользователя
+     * @param limit максимальное количество просматриваемых связей дружбы второго круга
+     * @param consumer обработчик идентификаторов второго круга
+     */
+    void forEachFriendOfFriends(Long userId, Integer firstCircleLimit, Integer limit, LongConsumer consumer);
+
+    /**
+     * Метод подсчитывает количество фильмов, понравившихся одновременно пользователю и каждому из переданных
+     * пользователей
+     *
+     * @param userId идентификатор пользователя
+     * @param otherIds идентификаторы пользователей для сравнения
+     * @return количество общих лайков по идентификатору пользователя для сравнения
+     */
+    LongIntHashMap countCommonLikes(Long userId, Collection<Long> otherIds);
+
+    /**
+     * Метод возвращает коллекцию {@link User} по переданным идентификаторам
+     *
+     * @param userIds идентификаторы пользователей
+     * @return коллекция найденных {@link User}
+     */
+    Collection<User> findByIds(Collection<Long> userIds);
+
     /**
      * Метод возвращает экземпляр класса {@link User} из хранилища на основе переданного идентификатора
      *
@@ -74,42 +124,47 @@ public interface UserStorage {
      *
      * @param userId идентификатор пользователя
      * @param friendId идентификатор друга
+     * @return {@code true}, если дружба была добавлена
      */
-    void addFriend(Long userId, Long friendId);
+    boolean addFriend(Long userId, Long friendId);
 
     /**
      * Метод удаляет друга из коллекции пользователя
      *
      * @param userId идентификатор пользователя
      * @param friendId идентификатор друга
+     * @return {@code true}, если дружба была удалена
      */
-    void removeFriend(Long userId, Long friendId);
+    boolean removeFriend(Long userId, Long friendId);
 
     /**
-     * Метод удаляет экземпляр класса {@link User}, найденный в хранилище по id
+     * Метод удаляет экземпляр класса {@link User}, найденный в хранилище по id, вместе со всеми его связями: дружбой,
+     * лайками, отзывами, оценками отзывов и событиями. Удаление выполняется в одной транзакции
      *
      * @param userId идентификатор пользователя
      */
     void deleteUser(Long userId);
 
     /**
-     * Метод очищает хранилище пользователей
+     * Метод возвращает суммарное количество связей пользователя: дружбы, лайков, отзывов, оценок отзывов и событий
+     *
+     * @param userId идентификатор пользователя
+     * @return количество связей
      */
-    void clearUsers();
+    Long countLinks(Long userId);
 
     /**
-     * Метод проверяет использование почтового адреса другими пользователями
+     * Метод удаляет порцию связей пользователя из каждой таблицы связей. Сам пользователь не удаляется. Счётчики,
+     * зависящие от удаляемых связей, уменьшаются теми же запросами, поэтому метод вызывается в транзакции
      *
-     * @param user экземпляр класса {@link User}
-     * @return результат проверки
+     * @param userId идентификатор пользователя
+     * @param batchSize максимальное количество строк, удаляемых из одной таблицы
+     * @return количество удалённых строк
      */
-    Boolean isMailAlreadyUsed(User user);
+    long purgeLinks(Long userId, Integer batchSize);
 
     /**
-     * Метод проверяет использование логина другими пользователями
-     *
-     * @param user экземпляр класса {@link User}
-     * @return результат проверки
+     * Метод очищает хранилище пользователей
      */
-    Boolean isLoginAlreadyUsed(User user);
+    void clearUsers();
 }
@@ -0,0 +1,12 @@
+package ru.yandex.practicum.filmorate.dto.director;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Builder
+@Data
+public class DirectorAudienceDto {
+
+    private Long directorId;
+    private Long audienceCount;
+}
@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.dto.director;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Builder
+@Data
+public class DirectorStatsDto {
+
+    private Long directorId;
+    private Integer filmsCount;
+    private Integer likesCount;
+    private Double rate;
+}
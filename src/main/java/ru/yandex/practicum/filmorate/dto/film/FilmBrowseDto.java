@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.dto.film;
+
+import java.util.Collection;
+import lombok.Builder;
+import lombok.Data;
+
+@Builder
+@Data
+public class FilmBrowseDto {
+
+    private Collection<FilmDto> films;
+    private FilmFacetsDto facets;
+}
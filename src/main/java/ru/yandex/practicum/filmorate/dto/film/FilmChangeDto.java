@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.dto.film;
+
+import lombok.Builder;
+import lombok.Data;
+
+@Builder
+@Data
+public class FilmChangeDto {
+
+    private Long filmId;
+    private Long version;
+    private Boolean deleted;
+    private FilmDto film;
+}
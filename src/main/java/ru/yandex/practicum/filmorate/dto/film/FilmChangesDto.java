@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.dto.film;
+
+import java.util.List;
+import lombok.Builder;
+import lombok.Data;
+
+@Builder
+@Data
+public class FilmChangesDto {
+
+    private List<FilmChangeDto> changes;
+    private String epoch;
+    private Long version;
+    private Boolean hasMore;
+}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.dto.film;
+
+import java.util.Map;
+import lombok.Builder;
+import lombok.Data;
+
+@Builder
+@Data
+public class FilmFacetsDto {
+
+    private Long total;
+    private Map<Long, Long> genres;
+    private Map<Long, Long> mpa;
+    private Map<Long, Long> years;
+    private Map<Long, Long> directors;
+}
@@ -0,0 +1,14 @@
+package ru.yandex.practicum.filmorate.dto.film;
+
+import java.util.Map;
+import lombok.Builder;
+import lombok.Data;
+
+@Builder
+@Data
+public class RatingHistogramDto {
+
+    private Long filmId;
+    private Integer unratedCount;
+    private Map<Integer, Integer> markCounts;
+}
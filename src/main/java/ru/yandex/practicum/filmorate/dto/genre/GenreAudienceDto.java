@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.dto.genre;
+
+import java.util.Collection;
+import lombok.Builder;
+import lombok.Data;
+
+@Builder
+@Data
+public class GenreAudienceDto {
+
+    private Collection<Long> genreIds;
+    private Long audienceCount;
+}
@@ -0,0 +1,48 @@
+package ru.yandex.practicum.filmorate.dto.review;
+
+import jakarta.validation.ValidationException;
+
+/**
+ * Курсор страницы отзывов: рейтинг полезности и идентификатор последнего отзыва предыдущей страницы. Передаётся
+ * клиенту строкой вида {@code <useful>:<reviewId>}
+ *
+ * @param useful рейтинг полезности отзыва
+ * @param reviewId идентификатор отзыва
+ */
+public record ReviewCursor(Integer useful, Long reviewId) {
+
+    private static final String SEPARATOR = ":";
+
+    /**
+     * Метод возвращает курсор, указывающий на переданный отзыв
+     *
+     * @param review последний отзыв страницы
+     * @return курсор следующей страницы
+     */
+    public static ReviewCursor after(ReviewDto review) {
+        return new ReviewCursor(review.getUseful(), review.getReviewId());
+    }
+
+    /**
+     * Метод разбирает курсор из строкового представления
+     *
+     * @param value строковое представление курсора
+     * @return курсор
+     */
+    public static ReviewCursor parse(String value) {
+        String[] parts = value.split(SEPARATOR);
+        try {
+            if (parts.length != 2) {
+                throw new NumberFormatException();
+            }
+            return new ReviewCursor(Integer.parseInt(parts[0]), Long.parseLong(parts[1]));
+        } catch (NumberFormatException e) {
+            throw new ValidationException("Некорректный курсор страницы отзывов: " + value);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return useful + SEPARATOR + reviewId;
+    }
+}
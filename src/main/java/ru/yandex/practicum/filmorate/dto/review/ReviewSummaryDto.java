@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.dto.review;
+
+import java.util.Map;
+import lombok.Builder;
+import lombok.Data;
+
+@Builder
+@Data
+public class ReviewSummaryDto {
+
+    private Long filmId;
+    private Integer positiveCount;
+    private Integer negativeCount;
+    private Map<Integer, Integer> usefulDistribution;
+}
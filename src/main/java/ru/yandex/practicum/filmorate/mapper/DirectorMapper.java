@@ -3,9 +3,11 @@ package ru.yandex.practicum.filmorate.mapper;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 import ru.yandex.practicum.filmorate.dto.director.DirectorDto;
+import ru.yandex.practicum.filmorate.dto.director.DirectorStatsDto;
 import ru.yandex.practicum.filmorate.dto.director.NewDirectorRequest;
 import ru.yandex.practicum.filmorate.dto.director.UpdateDirectorRequest;
 import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.DirectorStats;
 
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public final class DirectorMapper {
@@ -23,6 +25,15 @@ public final class DirectorMapper {
                 .build();
     }
 
+    public static DirectorStatsDto mapToDirectorStatsDto(DirectorStats stats) {
+        return DirectorStatsDto.builder()
+                .directorId(stats.getDirectorId())
+                .filmsCount(stats.getFilmsCount())
+                .likesCount(stats.getLikesCount())
+                .rate(stats.getRate())
+                .build();
+    }
+
     public static Director updateDirectorFields(Director director, UpdateDirectorRequest request) {
         if (request.hasId()) {
             director.setId(request.getId());
@@ -7,14 +7,20 @@ import java.util.Set;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 import ru.yandex.practicum.filmorate.dto.director.DirectorDto;
+import ru.yandex.practicum.filmorate.dto.film.FilmChangeDto;
 import ru.yandex.practicum.filmorate.dto.film.FilmDto;
+import ru.yandex.practicum.filmorate.dto.film.FilmFacetsDto;
 import ru.yandex.practicum.filmorate.dto.film.NewFilmRequest;
+import ru.yandex.practicum.filmorate.dto.film.RatingHistogramDto;
 import ru.yandex.practicum.filmorate.dto.film.UpdateFilmRequest;
 import ru.yandex.practicum.filmorate.dto.genre.GenreDto;
 import ru.yandex.practicum.filmorate.dto.user.UserDto;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmChange;
+import ru.yandex.practicum.filmorate.model.FilmFacets;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.RatingHistogram;
 import ru.yandex.practicum.filmorate.model.User;
 
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
@@ -82,6 +88,7 @@ public final class FilmMapper {
                 .description(film.getDescription().trim())
                 .duration(film.getDuration())
                 .releaseDate(film.getReleaseDate())
+                .rate(film.getRate())
                 .build();
 
         if (film.getMpa() != null) {
@@ -91,6 +98,33 @@ public final class FilmMapper {
         return dto;
     }
 
+    public static FilmFacetsDto mapToFilmFacetsDto(FilmFacets facets) {
+        return FilmFacetsDto.builder()
+                .total(facets.getTotal())
+                .genres(facets.getGenres())
+                .mpa(facets.getMpa())
+                .years(facets.getYears())
+                .directors(facets.getDirectors())
+                .build();
+    }
+
+    public static RatingHistogramDto mapToRatingHistogramDto(RatingHistogram histogram) {
+        return RatingHistogramDto.builder()
+                .filmId(histogram.getFilmId())
+                .unratedCount(histogram.getUnratedCount())
+                .markCounts(histogram.getMarkCounts())
+                .build();
+    }
+
+    public static FilmChangeDto mapToFilmChangeDto(FilmChange change, FilmDto film) {
+        return FilmChangeDto.builder()
+                .filmId(change.getFilmId())
+                .version(change.getVersion())
+                .deleted(change.isDeleted())
+                .film(change.isDeleted() ? null : film)
+                .build();
+    }
+
     public static NewFilmRequest mapToNewFilmRequest(Film film) {
         NewFilmRequest request = NewFilmRequest.builder()
                 .name(film.getName().trim())
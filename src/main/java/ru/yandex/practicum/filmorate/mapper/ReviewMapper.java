@@ -4,8 +4,10 @@ import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 import ru.yandex.practicum.filmorate.dto.review.NewReviewRequest;
 import ru.yandex.practicum.filmorate.dto.review.ReviewDto;
+import ru.yandex.practicum.filmorate.dto.review.ReviewSummaryDto;
 import ru.yandex.practicum.filmorate.dto.review.UpdateReviewRequest;
 import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.model.ReviewSummary;
 
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public final class ReviewMapper {
@@ -31,6 +33,15 @@ public final class ReviewMapper {
                 .build();
     }
 
+    public static ReviewSummaryDto mapToReviewSummaryDto(ReviewSummary summary) {
+        return ReviewSummaryDto.builder()
+                .filmId(summary.getFilmId())
+                .positiveCount(summary.getPositiveCount())
+                .negativeCount(summary.getNegativeCount())
+                .usefulDistribution(summary.getUsefulDistribution())
+                .build();
+    }
+
     public static Review updateReviewFields(Review review, UpdateReviewRequest request) {
         if (request.hasId()) {
             review.setId(request.getReviewId());
@@ -0,0 +1,91 @@
+package ru.yandex.practicum.filmorate.model;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import ru.yandex.practicum.filmorate.model.enums.ChangeEntityTypes;
+import ru.yandex.practicum.filmorate.model.enums.OperationTypes;
+
+/**
+ * Изменение сущности в журнале изменений
+ */
+@AllArgsConstructor
+@Builder
+@Data
+@EqualsAndHashCode(of = "id")
+@NoArgsConstructor
+public class ChangeEvent {
+
+    /**
+     * Ключ изменения, затрагивающего все сущности типа, например очистки хранилища
+     */
+    public static final String ALL_KEYS = "*";
+
+    private static final String KEY_SEPARATOR = ":";
+
+    /**
+     * Идентификатор изменения. Изменения передаются потребителям по возрастанию идентификатора
+     */
+    private Long id;
+
+    /**
+     * Тип сущности
+     */
+    private ChangeEntityTypes entityType;
+
+    /**
+     * Ключ сущности: идентификатор либо идентификаторы связанных сущностей через двоеточие
+     */
+    private String entityKey;
+
+    /**
+     * Тип операции
+     */
+    private OperationTypes operationType;
+
+    /**
+     * Состояние сущности после изменения; {@code null} для удаления. При чтении из хранилища - дерево JSON
+     */
+    private Object payload;
+
+    /**
+     * Метка времени
+     */
+    private Timestamp timestamp;
+
+    /**
+     * Метод создает изменение сущности с текущей меткой времени
+     *
+     * @param entityType тип сущности
+     * @param entityKey ключ сущности
+     * @param operationType тип операции
+     * @param payload состояние сущности после изменения; {@code null} для удаления
+     * @return экземпляр класса {@link ChangeEvent}
+     */
+    public static ChangeEvent of(ChangeEntityTypes entityType, String entityKey, OperationTypes operationType,
+                                 Object payload) {
+        return ChangeEvent.builder()
+                .entityType(entityType)
+                .entityKey(entityKey)
+                .operationType(operationType)
+                .payload(payload)
+                .timestamp(Timestamp.from(Instant.now()))
+                .build();
+    }
+
+    /**
+     * Метод составляет ключ сущности из идентификаторов
+     *
+     * @param ids идентификаторы сущности или связанных сущностей
+     * @return ключ сущности
+     */
+    public static String keyOf(Object... ids) {
+        return Arrays.stream(ids).map(String::valueOf).collect(Collectors.joining(KEY_SEPARATOR));
+    }
+}
@@ -0,0 +1,36 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor
+@Builder
+@Data
+@NoArgsConstructor
+public class DirectorStats {
+
+    /**
+     * Идентификатор режиссера
+     */
+    private Long directorId;
+
+    /**
+     * Количество фильмов режиссера
+     */
+    @Builder.Default
+    private Integer filmsCount = 0;
+
+    /**
+     * Количество лайков фильмов режиссера
+     */
+    @Builder.Default
+    private Integer likesCount = 0;
+
+    /**
+     * Средняя оценка фильмов режиссера по всем оценкам
+     */
+    @Builder.Default
+    private Double rate = 0.0;
+}
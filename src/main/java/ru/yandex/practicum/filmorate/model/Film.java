@@ -70,6 +70,11 @@ public class Film {
      */
     private Mpa mpa;
 
+    /**
+     * Средняя оценка по счётчикам лайков
+     */
+    private Double rate;
+
     /**
      * Метод обновляет коллекцию идентификаторов жанров фильма
      *
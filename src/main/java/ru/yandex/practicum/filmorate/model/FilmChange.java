@@ -0,0 +1,28 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor
+@Builder
+@Data
+@NoArgsConstructor
+public class FilmChange {
+
+    /**
+     * Идентификатор фильма
+     */
+    private Long filmId;
+
+    /**
+     * Версия последнего изменения фильма
+     */
+    private Long version;
+
+    /**
+     * Признак удаления фильма
+     */
+    private boolean deleted;
+}
@@ -0,0 +1,45 @@
+package ru.yandex.practicum.filmorate.model;
+
+import java.util.Map;
+import java.util.TreeMap;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor
+@Builder
+@Data
+@NoArgsConstructor
+public class FilmFacets {
+
+    /**
+     * Количество фильмов, удовлетворяющих фильтру
+     */
+    @Builder.Default
+    private Long total = 0L;
+
+    /**
+     * Количество фильмов по идентификаторам жанров при фильтре по остальным измерениям
+     */
+    @Builder.Default
+    private Map<Long, Long> genres = new TreeMap<>();
+
+    /**
+     * Количество фильмов по идентификаторам рейтингов при фильтре по остальным измерениям
+     */
+    @Builder.Default
+    private Map<Long, Long> mpa = new TreeMap<>();
+
+    /**
+     * Количество фильмов по годам выпуска при фильтре по остальным измерениям
+     */
+    @Builder.Default
+    private Map<Long, Long> years = new TreeMap<>();
+
+    /**
+     * Количество фильмов по идентификаторам режиссеров при фильтре по остальным измерениям
+     */
+    @Builder.Default
+    private Map<Long, Long> directors = new TreeMap<>();
+}
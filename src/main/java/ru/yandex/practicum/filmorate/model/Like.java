@@ -0,0 +1,31 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Лайк пользователя фильму
+ */
+@AllArgsConstructor
+@Builder
+@Data
+@NoArgsConstructor
+public class Like {
+
+    /**
+     * Идентификатор фильма
+     */
+    private Long filmId;
+
+    /**
+     * Идентификатор пользователя
+     */
+    private Long userId;
+
+    /**
+     * Оценка фильма
+     */
+    private Double mark;
+}
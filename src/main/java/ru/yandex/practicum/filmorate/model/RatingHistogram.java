@@ -0,0 +1,32 @@
+package ru.yandex.practicum.filmorate.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor
+@Builder
+@Data
+@NoArgsConstructor
+public class RatingHistogram {
+
+    /**
+     * Идентификатор фильма
+     */
+    private Long filmId;
+
+    /**
+     * Количество лайков без оценки
+     */
+    @Builder.Default
+    private Integer unratedCount = 0;
+
+    /**
+     * Количество оценок по значению оценки в порядке возрастания
+     */
+    @Builder.Default
+    private Map<Integer, Integer> markCounts = new LinkedHashMap<>();
+}
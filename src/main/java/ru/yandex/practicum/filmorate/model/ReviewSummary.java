@@ -0,0 +1,38 @@
+package ru.yandex.practicum.filmorate.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor
+@Builder
+@Data
+@NoArgsConstructor
+public class ReviewSummary {
+
+    /**
+     * Идентификатор фильма
+     */
+    private Long filmId;
+
+    /**
+     * Количество положительных отзывов
+     */
+    @Builder.Default
+    private Integer positiveCount = 0;
+
+    /**
+     * Количество отрицательных отзывов
+     */
+    @Builder.Default
+    private Integer negativeCount = 0;
+
+    /**
+     * Количество отзывов по рейтингу полезности в порядке убывания рейтинга
+     */
+    @Builder.Default
+    private Map<Integer, Integer> usefulDistribution = new LinkedHashMap<>();
+}
@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.model.enums;
+
+/**
+ * Тип сущности в журнале изменений
+ */
+public enum ChangeEntityTypes {
+    FILM,
+    USER,
+    LIKE,
+    FRIEND,
+    REVIEW,
+    REVIEW_MARK
+}
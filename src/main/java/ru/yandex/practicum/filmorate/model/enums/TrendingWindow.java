@@ -0,0 +1,52 @@
+package ru.yandex.practicum.filmorate.model.enums;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Окно, за которое считаются лайки популярных в моменте фильмов. Окно делится на интервалы одинаковой длины, лайки
+ * считаются по интервалам
+ */
+public enum TrendingWindow {
+    HOUR("1h", Duration.ofHours(1), Duration.ofMinutes(1)),
+    DAY("24h", Duration.ofDays(1), Duration.ofMinutes(15)),
+    WEEK("7d", Duration.ofDays(7), Duration.ofHours(1));
+
+    private final String value;
+    private final Duration length;
+    private final Duration bucket;
+
+    TrendingWindow(String value, Duration length, Duration bucket) {
+        this.value = value;
+        this.length = length;
+        this.bucket = bucket;
+    }
+
+    /**
+     * Метод возвращает окно по его обозначению в запросе
+     *
+     * @param value обозначение окна: 1h, 24h или 7d
+     * @return окно либо пустое значение, если обозначение неизвестно
+     */
+    public static Optional<TrendingWindow> fromValue(String value) {
+        return Arrays.stream(values()).filter(window -> window.value.equals(value)).findFirst();
+    }
+
+    public Duration getLength() {
+        return length;
+    }
+
+    public Duration getBucket() {
+        return bucket;
+    }
+
+    /**
+     * Метод возвращает количество интервалов в окне
+     *
+     * @return количество интервалов
+     */
+    public int getBuckets() {
+        return (int) (length.toMillis() / bucket.toMillis());
+    }
+}
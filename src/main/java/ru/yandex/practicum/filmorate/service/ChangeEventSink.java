@@ -0,0 +1,25 @@
+package ru.yandex.practicum.filmorate.service;
+
+import java.util.List;
+import ru.yandex.practicum.filmorate.model.ChangeEvent;
+
+/**
+ * Потребитель журнала изменений. Подписывается через {@link OutboxRelay#subscribe}, либо регистрируется бином
+ */
+public interface ChangeEventSink {
+
+    /**
+     * Метод возвращает имя потребителя, под которым хранится его позиция в журнале
+     *
+     * @return имя потребителя
+     */
+    String getName();
+
+    /**
+     * Метод принимает очередную порцию изменений по возрастанию идентификатора. Позиция потребителя сохраняется после
+     * успешного возврата, поэтому после сбоя изменения могут прийти повторно: повторы отсекаются по идентификатору
+     *
+     * @param events список {@link ChangeEvent}
+     */
+    void publish(List<ChangeEvent> events);
+}
@@ -0,0 +1,79 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.config.OutboxProperties;
+import ru.yandex.practicum.filmorate.model.ChangeEvent;
+
+/**
+ * Потребитель журнала изменений, дописывающий изменения в конец файла по одному JSON на строку. Порция сбрасывается
+ * на диск до сохранения позиции, поэтому после сбоя в файле возможны повторы, но не пропуски
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "filmorate.outbox", name = "log-enabled", havingValue = "true")
+public class ChangeLogFileSink implements ChangeEventSink {
+
+    public static final String NAME = "change-log-file";
+
+    private final ObjectMapper objectMapper;
+    private final FileChannel channel;
+
+    public ChangeLogFileSink(ObjectMapper objectMapper, OutboxProperties properties) throws IOException {
+        this.objectMapper = objectMapper;
+
+        Path file = properties.logFile().toAbsolutePath();
+        Files.createDirectories(file.getParent());
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        log.info("Журнал изменений записывается в файл {}", file);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void publish(List<ChangeEvent> events) {
+        ByteArrayOutputStream lines = new ByteArrayOutputStream();
+        try {
+            for (ChangeEvent event : events) {
+                lines.writeBytes(objectMapper.writeValueAsBytes(event));
+                lines.write('\n');
+            }
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException("Не удалось преобразовать изменение в JSON", e);
+        }
+
+        try {
+            synchronized (channel) {
+                ByteBuffer buffer = ByteBuffer.wrap(lines.toByteArray());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать изменения в файл", e);
+        }
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        channel.close();
+    }
+}
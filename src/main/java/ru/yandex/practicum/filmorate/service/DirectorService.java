@@ -5,13 +5,18 @@ import java.util.Collection;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.dal.director.DirectorStorage;
+import ru.yandex.practicum.filmorate.dal.film.FilmAudienceSketches;
+import ru.yandex.practicum.filmorate.dto.director.DirectorAudienceDto;
 import ru.yandex.practicum.filmorate.dto.director.DirectorDto;
+import ru.yandex.practicum.filmorate.dto.director.DirectorStatsDto;
 import ru.yandex.practicum.filmorate.dto.director.NewDirectorRequest;
 import ru.yandex.practicum.filmorate.dto.director.UpdateDirectorRequest;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.mapper.DirectorMapper;
 import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.DirectorStats;
 
 /**
  * Класс предварительное обработки и валидации сущностей {@link Director}
@@ -22,6 +27,7 @@ import ru.yandex.practicum.filmorate.model.Director;
 public class DirectorService {
 
     private final DirectorStorage directorStorage;
+    private final FilmAudienceSketches filmAudienceSketches;
 
     /**
      * Метод возвращает коллекцию {@link DirectorDto}
@@ -90,6 +96,60 @@ public class DirectorService {
         return result;
     }
 
+    /**
+     * Метод возвращает счётчики фильмов, лайков и оценок режиссера. Счётчики хранятся отдельно и изменяются вместе
+     * со связями фильмов с режиссерами и лайками, поэтому запрос не агрегирует фильмы режиссера
+     *
+     * @param directorId идентификатор режиссера
+     * @return экземпляр класса {@link DirectorStatsDto}
+     */
+    public DirectorStatsDto findStats(Long directorId) {
+        log.debug("Запрос счётчиков режиссера на уровне сервиса");
+
+        if (directorId == null) {
+            throw new ValidationException("Передан пустой directorId");
+        }
+
+        log.debug("Передан идентификатор режиссера: {}", directorId);
+
+        DirectorStats searchResult = directorStorage.findStats(directorId)
+                .orElseThrow(() -> new NotFoundException("Режиссер с id " + directorId + " не найден"));
+
+        DirectorStatsDto result = DirectorMapper.mapToDirectorStatsDto(searchResult);
+
+        log.debug("Возврат счётчиков режиссера на уровень контроллера");
+        return result;
+    }
+
+    /**
+     * Метод возвращает оценку количества различных пользователей, лайкнувших хотя бы один фильм режиссера. Оценка
+     * берётся из {@link FilmAudienceSketches} и может расходиться с точным значением на несколько процентов
+     *
+     * @param directorId идентификатор режиссера
+     * @return экземпляр класса {@link DirectorAudienceDto}
+     */
+    public DirectorAudienceDto findAudience(Long directorId) {
+        log.debug("Запрос аудитории режиссера на уровне сервиса");
+
+        if (directorId == null) {
+            throw new ValidationException("Передан пустой directorId");
+        }
+
+        log.debug("Передан идентификатор режиссера: {}", directorId);
+
+        Director director = directorStorage.findById(directorId)
+                .orElseThrow(() -> new NotFoundException("Режиссер с id " + directorId + " не найден"));
+
+        DirectorAudienceDto result = DirectorAudienceDto.builder()
+                .directorId(director.getId())
+                .audienceCount(filmAudienceSketches.estimateDirector(director.getId()))
+                .build();
+        log.debug("Оценка аудитории режиссера: {}", result.getAudienceCount());
+
+        log.debug("Возврат аудитории режиссера на уровень контроллера");
+        return result;
+    }
+
     /**
      * Метод проверяет полученную модель и передает для сохранения на уровень хранилища, после чего сохраненную модель
      * возвращает на уровень контроллера
@@ -97,6 +157,7 @@ public class DirectorService {
      * @param request несохраненный экземпляр {@link NewDirectorRequest}
      * @return сохраненный экземпляр {@link DirectorDto}
      */
+    @Transactional
     public DirectorDto create(NewDirectorRequest request) {
         log.debug("Запрошено создание режиссера на уровне сервиса");
 
@@ -123,6 +184,7 @@ public class DirectorService {
      * @param request несохраненный экземпляр класса {@link UpdateDirectorRequest}
      * @return сохраненный экземпляр класса {@link DirectorDto}
      */
+    @Transactional
     public DirectorDto update(UpdateDirectorRequest request) {
         log.debug("Запрошено обновление режиссера на уровне сервиса");
 
@@ -149,6 +211,7 @@ public class DirectorService {
         return result;
     }
 
+    @Transactional
     public void deleteDirector(Long directorId) {
         log.debug("Запрошено удаление режиссера на уровне сервиса");
 
@@ -168,6 +231,7 @@ public class DirectorService {
         log.debug("Возврат результатов удаления на уровень контроллера");
     }
 
+    @Transactional
     public void clearDirectors() {
         log.debug("Запрошена очистка хранилища режиссеров");
 
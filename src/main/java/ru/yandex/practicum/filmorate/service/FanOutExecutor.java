@@ -0,0 +1,168 @@
+package ru.yandex.practicum.filmorate.service;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.config.FanOutProperties;
+import ru.yandex.practicum.filmorate.util.RequestIdentityMap;
+
+/**
+ * Исполнитель независимых подзапросов одного запроса.
+ * <p>
+ * Подзапросы, переданные в {@link Scope#fork(Supplier)}, выполняются параллельно на ограниченном пуле потоков, а
+ * {@link Scope#join()} дожидается их завершения. При первой ошибке оставшиеся подзапросы отменяются, а ошибка
+ * пробрасывается вызывающему коду, поэтому время ответа определяется самым долгим подзапросом, а не их суммой.
+ * <p>
+ * Внутри любой транзакции, а также внутри другого подзапроса, подзапросы выполняются последовательно в текущем
+ * потоке: транзакция держит соединение, и подзапросы, ожидающие второго соединения, при нагрузке исчерпали бы пул.
+ * Поэтому методы чтения сервисов не открывают транзакцию: без неё соединение берётся из пула только на время
+ * отдельного запроса к БД.
+ */
+@Slf4j
+@Component
+public class FanOutExecutor {
+
+    private static final ThreadLocal<Boolean> WORKER = ThreadLocal.withInitial(() -> false);
+
+    private final FanOutProperties properties;
+    private final ThreadPoolExecutor executor;
+
+    public FanOutExecutor(FanOutProperties properties) {
+        this.properties = properties;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(properties.threads(), properties.threads(), 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(properties.queueCapacity()), runnable -> {
+            Thread thread = new Thread(() -> {
+                WORKER.set(true);
+                runnable.run();
+            }, "fan-out-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Метод открывает область выполнения подзапросов
+     *
+     * @return область выполнения подзапросов
+     */
+    public Scope open() {
+        boolean parallel = properties.enabled() && !WORKER.get()
+                && !TransactionSynchronizationManager.isActualTransactionActive();
+        return new Scope(parallel);
+    }
+
+    /**
+     * Метод выполняет переданные подзапросы и дожидается их завершения
+     *
+     * @param tasks подзапросы
+     */
+    public void runAll(Runnable... tasks) {
+        Scope scope = open();
+        for (Runnable task : tasks) {
+            scope.fork(() -> {
+                task.run();
+                return null;
+            });
+        }
+        scope.join();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Область выполнения подзапросов. Не предназначена для использования из нескольких потоков
+     */
+    public final class Scope {
+
+        private final boolean parallel;
+        private final CompletionService<Object> completionService;
+        private final List<Future<Object>> futures = new ArrayList<>();
+
+        private Scope(boolean parallel) {
+            this.parallel = parallel;
+            this.completionService = parallel ? new ExecutorCompletionService<>(executor) : null;
+        }
+
+        /**
+         * Метод запускает подзапрос
+         *
+         * @param task подзапрос
+         * @return результат подзапроса, доступный после {@link #join()}
+         */
+        public <T> Supplier<T> fork(Supplier<T> task) {
+            if (!parallel) {
+                T result = task.get();
+                return () -> result;
+            }
+
+            Supplier<T> bound = RequestIdentityMap.propagate(task);
+            Future<Object> future = completionService.submit(bound::get);
+            futures.add(future);
+            return () -> {
+                if (!future.isDone()) {
+                    throw new IllegalStateException("Результат подзапроса запрошен до завершения области");
+                }
+                return cast(future.resultNow());
+            };
+        }
+
+        /**
+         * Метод дожидается завершения всех подзапросов. При первой ошибке отменяет оставшиеся подзапросы и
+         * пробрасывает ошибку
+         */
+        public void join() {
+            if (!parallel) {
+                return;
+            }
+
+            try {
+                for (int i = 0; i < futures.size(); i++) {
+                    completionService.take().get();
+                }
+            } catch (InterruptedException e) {
+                cancelAll();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Ожидание подзапросов прервано", e);
+            } catch (ExecutionException e) {
+                cancelAll();
+                log.debug("Подзапрос завершился ошибкой, оставшиеся подзапросы отменены: {}", e.getCause().toString());
+                if (e.getCause() instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                if (e.getCause() instanceof Error error) {
+                    throw error;
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        private void cancelAll() {
+            for (Future<Object> future : futures) {
+                future.cancel(true);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T cast(Object value) {
+            return (T) value;
+        }
+    }
+}
@@ -9,22 +9,41 @@ import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.dal.DatabaseGeneration;
+import ru.yandex.practicum.filmorate.dal.EntityVersions;
 import ru.yandex.practicum.filmorate.dal.director.DirectorStorage;
 import ru.yandex.practicum.filmorate.dal.feed.FeedStorage;
+import ru.yandex.practicum.filmorate.dal.film.FilmFacetIndex;
+import ru.yandex.practicum.filmorate.dal.film.FilmTrendingIndex;
 import ru.yandex.practicum.filmorate.dal.film.FilmStorage;
+import ru.yandex.practicum.filmorate.dal.film.LikeWriteBehindBuffer;
+import ru.yandex.practicum.filmorate.dal.film.LikeWriteBehindBuffer.LikeChange;
 import ru.yandex.practicum.filmorate.dal.genre.GenreStorage;
+import ru.yandex.practicum.filmorate.dal.outbox.OutboxStorage;
 import ru.yandex.practicum.filmorate.dal.mpa.MpaStorage;
 import ru.yandex.practicum.filmorate.dal.user.UserStorage;
 import ru.yandex.practicum.filmorate.dto.director.DirectorDto;
+import ru.yandex.practicum.filmorate.dto.film.FilmBrowseDto;
+import ru.yandex.practicum.filmorate.dto.film.FilmChangeDto;
+import ru.yandex.practicum.filmorate.dto.film.FilmChangesDto;
 import ru.yandex.practicum.filmorate.dto.film.FilmDto;
 import ru.yandex.practicum.filmorate.dto.film.NewFilmRequest;
+import ru.yandex.practicum.filmorate.dto.film.RatingHistogramDto;
 import ru.yandex.practicum.filmorate.dto.film.UpdateFilmRequest;
 import ru.yandex.practicum.filmorate.dto.genre.GenreDto;
 import ru.yandex.practicum.filmorate.dto.user.UserShortDto;
@@ -33,14 +52,19 @@ import ru.yandex.practicum.filmorate.mapper.DirectorMapper;
 import ru.yandex.practicum.filmorate.mapper.FilmMapper;
 import ru.yandex.practicum.filmorate.mapper.GenreMapper;
 import ru.yandex.practicum.filmorate.mapper.UserMapper;
+import ru.yandex.practicum.filmorate.model.ChangeEvent;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Feed;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmChange;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Like;
 import ru.yandex.practicum.filmorate.model.Mpa;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.enums.ChangeEntityTypes;
 import ru.yandex.practicum.filmorate.model.enums.EventTypes;
 import ru.yandex.practicum.filmorate.model.enums.OperationTypes;
+import ru.yandex.practicum.filmorate.model.enums.TrendingWindow;
 
 /**
  * Класс предварительной обработки и валидации сущностей {@link User} на уровне сервиса
@@ -51,12 +75,29 @@ import ru.yandex.practicum.filmorate.model.enums.OperationTypes;
 public class FilmService {
 
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+    private static final int COMMON_FILMS_MAX_USERS = 100;
+    private static final Set<String> BROWSE_SORTS = Set.of("id", "year", "rate");
+    private static final int CHANGES_MAX_LIMIT = 1000;
     private final FilmStorage filmStorage;
     private final UserStorage userStorage;
     private final MpaStorage mpaStorage;
     private final GenreStorage genreStorage;
     private final DirectorStorage directorStorage;
     private final FeedStorage feedStorage;
+    private final OutboxStorage outboxStorage;
+    private final UserPurgeQueue userPurgeQueue;
+    private final FanOutExecutor fanOutExecutor;
+    private final SingleFlight singleFlight;
+    private final EntityVersions entityVersions;
+    private final FilmFacetIndex filmFacetIndex;
+    private final FilmTrendingIndex filmTrendingIndex;
+    private final DatabaseGeneration databaseGeneration;
+    private LikeWriteBehindBuffer likeWriteBehindBuffer;
+
+    @Autowired(required = false)
+    public void setLikeWriteBehindBuffer(LikeWriteBehindBuffer likeWriteBehindBuffer) {
+        this.likeWriteBehindBuffer = likeWriteBehindBuffer;
+    }
 
     /**
      * Метод возвращает коллекцию {@link FilmDto}
@@ -86,18 +127,38 @@ public class FilmService {
         return result;
     }
 
-    public Collection<FilmDto> findCommon(Long userId, Long friendId) {
+    /**
+     * Метод возвращает коллекцию фильмов, понравившихся всем переданным пользователям
+     *
+     * @param userIds идентификаторы пользователей
+     * @return коллекция {@link FilmDto}, упорядоченная по идентификатору
+     */
+    public Collection<FilmDto> findCommon(Collection<Long> userIds) {
         log.debug("Поиск общих фильмов на уровне сервиса");
 
-        // Проверяем наличие пользователя
-        User user = userStorage.findById(userId)
-                .orElseThrow(() -> new NotFoundException("Пользователь с id " + userId + " не найден"));
+        if (userIds == null || userIds.isEmpty()) {
+            throw new ValidationException("Не передан ни один идентификатор пользователя");
+        }
 
-        // Проверяем наличие друга
-        User friend = userStorage.findById(friendId)
-                .orElseThrow(() -> new NotFoundException("Пользователь с id " + friendId + " не найден"));
+        Set<Long> uniqueUserIds = new LinkedHashSet<>(userIds);
+        if (uniqueUserIds.contains(null)) {
+            throw new ValidationException("Идентификатор пользователя не может быть пустым");
+        }
+        if (uniqueUserIds.size() > COMMON_FILMS_MAX_USERS) {
+            throw new ValidationException(
+                    "Количество пользователей не может превышать " + COMMON_FILMS_MAX_USERS);
+        }
+
+        // Проверяем наличие всех пользователей одним запросом
+        Set<Long> foundUserIds = userStorage.findByIds(uniqueUserIds).stream().map(User::getId)
+                .collect(Collectors.toSet());
+        for (Long userId : uniqueUserIds) {
+            if (!foundUserIds.contains(userId)) {
+                throw new NotFoundException("Пользователь с id " + userId + " не найден");
+            }
+        }
 
-        Collection<Film> searchResult = filmStorage.findCommon(user.getId(), friend.getId());
+        Collection<Film> searchResult = filmStorage.findCommon(uniqueUserIds);
         log.debug("Получена коллекция общих фильмов размером {}", searchResult.size());
 
         Collection<FilmDto> result = searchResult.stream().map(FilmMapper::mapToFilmDto).toList();
@@ -121,6 +182,7 @@ public class FilmService {
      * @return результирующая коллекция
      * @throws ValidationException если передано пустой размер возвращаемой коллекции
      */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public Collection<FilmDto> findPopular(Integer count, Long genreId, Integer year) throws ValidationException {
         log.debug("Поиск топ фильмов на уровне сервиса");
 
@@ -148,6 +210,11 @@ public class FilmService {
             log.debug("Год для поиска топ-фильмов не указан");
         }
 
+        return singleFlight.execute("FilmService.findPopular", () -> loadPopular(count, genreId, year),
+                count, genreId, year);
+    }
+
+    private Collection<FilmDto> loadPopular(Integer count, Long genreId, Integer year) {
         Collection<Film> searchResult = filmStorage.findPopular(count, genreId, year);
         log.debug("Получена коллекция топ-фильмов размером {}", searchResult.size());
 
@@ -200,6 +267,7 @@ public class FilmService {
      * @param sortBy последовательность полей сортировки
      * @return коллекция {@link FilmDto}
      */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public Collection<FilmDto> findByDirectorId(Long directorId, String sortBy) {
         log.debug("Поиск фильмов по режиссеру на уровне сервиса");
 
@@ -209,6 +277,11 @@ public class FilmService {
             log.debug("Передан id режиссера: {}", directorId);
         }
 
+        return singleFlight.execute("FilmService.findByDirectorId", () -> loadByDirectorId(directorId, sortBy),
+                directorId, sortBy);
+    }
+
+    private Collection<FilmDto> loadByDirectorId(Long directorId, String sortBy) {
         log.debug("Передана последовательность полей сортировки: {}",
                 (sortBy == null || sortBy.isBlank()) ? "null" : sortBy);
 
@@ -219,11 +292,8 @@ public class FilmService {
         log.debug("Получена коллекция фильмов по режиссеру размером {}", searchResult.size());
 
         Collection<FilmDto> result = searchResult.stream().map(FilmMapper::mapToFilmDto).toList();
-        // Перебираем полученную коллекцию
-        for (FilmDto film : result) {
-            // Заполняем коллекции
-            completeDto(film);
-        }
+        // Заполняем коллекции всех фильмов режиссера разом
+        completeDtos(result);
         log.debug("Найденная коллекция фильмов по режиссеру преобразована. Размер после преобразования: {}",
                 result.size());
 
@@ -231,6 +301,142 @@ public class FilmService {
         return result;
     }
 
+    /**
+     * Метод отбирает фильмы по жанру, рейтингу MPA, диапазону лет выпуска и режиссеру и возвращает страницу
+     * отобранных фильмов вместе со счётчиками по каждому измерению. Счётчик измерения учитывает фильтры всех
+     * остальных измерений, но не своего
+     *
+     * @param filter фильтр; пустые поля не ограничивают выборку
+     * @param sort порядок фильмов: id, year или rate
+     * @param size максимальный размер страницы
+     * @param from номер стартового элемента
+     * @return экземпляр класса {@link FilmBrowseDto}
+     * @throws ValidationException в случае ошибок валидации
+     */
+    public FilmBrowseDto browse(FilmFacetIndex.Filter filter, String sort, Integer size, Integer from)
+            throws ValidationException {
+        log.debug("Отбор фильмов по измерениям на уровне сервиса");
+        log.debug("Передан фильтр: {}", filter);
+        log.debug("Передан порядок сортировки: {}", sort);
+
+        if (!BROWSE_SORTS.contains(sort)) {
+            throw new ValidationException("Передан некорректный порядок сортировки: " + sort);
+        }
+        if (filter.yearFrom() != null && filter.yearTo() != null && filter.yearFrom() > filter.yearTo()) {
+            throw new ValidationException("Начальный год диапазона больше конечного");
+        }
+        if (size <= 0) {
+            throw new ValidationException("Значение size должно быть больше нуля");
+        }
+        if (from < 0) {
+            throw new ValidationException("Значение from не может быть отрицательным");
+        }
+
+        FilmFacetIndex.Selection selection = filmFacetIndex.select(filter, "year".equals(sort));
+        log.debug("По фильтру отобрано {} фильмов", selection.filmIds().size());
+
+        // Средняя оценка меняется с каждым лайком, поэтому порядок по ней берём из FILM_STATS
+        Collection<Long> pageIds = "rate".equals(sort)
+                ? filmStorage.findIdsByRate(selection.filmIds(), size, from)
+                : selection.filmIds().stream().skip(from).limit(size).toList();
+
+        Map<Long, FilmDto> films = filmStorage.findByIds(pageIds).stream()
+                .map(FilmMapper::mapToFilmDto)
+                .collect(Collectors.toMap(FilmDto::getId, film -> film));
+        // Фильм мог удалиться между отбором и загрузкой
+        List<FilmDto> result = pageIds.stream().map(films::get).filter(film -> film != null).toList();
+        completeDtos(result);
+        log.debug("Страница отобранных фильмов преобразована. Размер страницы: {}", result.size());
+
+        log.debug("Возврат отобранных фильмов на уровень контроллера");
+        return FilmBrowseDto.builder()
+                .films(result)
+                .facets(FilmMapper.mapToFilmFacetsDto(selection.facets()))
+                .build();
+    }
+
+    /**
+     * Метод возвращает изменения каталога после версии, известной клиенту, в порядке версий. Фильм, изменённый
+     * несколько раз, попадает в выборку однажды, с последней версией. Версии сравнимы только в пределах поколения БД,
+     * которое передаётся в ответе: клиент, получивший другое поколение, выполняет полную выгрузку
+     *
+     * @param sinceVersion последняя версия, полученная клиентом; 0 для полной выгрузки
+     * @param limit максимальное количество изменений
+     * @return экземпляр класса {@link FilmChangesDto}
+     * @throws ValidationException в случае ошибок валидации
+     */
+    public FilmChangesDto findChanges(Long sinceVersion, Integer limit) throws ValidationException {
+        log.debug("Поиск изменений каталога на уровне сервиса");
+        log.debug("Передана версия {} и значение limit = {}", sinceVersion, limit);
+
+        if (sinceVersion < 0) {
+            throw new ValidationException("Значение sinceVersion не может быть отрицательным");
+        }
+        if (limit <= 0 || limit > CHANGES_MAX_LIMIT) {
+            throw new ValidationException("Значение limit должно быть от 1 до " + CHANGES_MAX_LIMIT);
+        }
+
+        // Лишнее изменение показывает, что за страницей есть ещё
+        List<FilmChange> changes = filmStorage.findChanges(sinceVersion, limit + 1);
+        boolean hasMore = changes.size() > limit;
+        List<FilmChange> page = hasMore ? changes.subList(0, limit) : changes;
+
+        Map<Long, FilmDto> films = filmStorage.findByIds(page.stream()
+                        .filter(change -> !change.isDeleted())
+                        .map(FilmChange::getFilmId)
+                        .toList()).stream()
+                .map(FilmMapper::mapToFilmDto)
+                .collect(Collectors.toMap(FilmDto::getId, film -> film));
+        completeDtos(films.values());
+
+        // Фильм мог удалиться между выборкой изменений и загрузкой: его удаление придёт со следующей страницей
+        List<FilmChangeDto> result = page.stream()
+                .filter(change -> change.isDeleted() || films.containsKey(change.getFilmId()))
+                .map(change -> FilmMapper.mapToFilmChangeDto(change, films.get(change.getFilmId())))
+                .toList();
+        long version = page.isEmpty() ? sinceVersion : page.getLast().getVersion();
+        log.debug("Найдено {} изменений каталога до версии {}", result.size(), version);
+
+        log.debug("Возврат изменений каталога на уровень контроллера");
+        return FilmChangesDto.builder()
+                .changes(result)
+                .epoch(databaseGeneration.get())
+                .version(version)
+                .hasMore(hasMore)
+                .build();
+    }
+
+    /**
+     * Метод возвращает фильмы, набравшие больше всего лайков за последнее время. Свежие лайки весят больше прошлых
+     *
+     * @param window окно: 1h, 24h или 7d
+     * @param count количество фильмов
+     * @return список фильмов по убыванию популярности в окне
+     * @throws ValidationException в случае ошибок валидации
+     */
+    public List<FilmDto> findTrending(String window, Integer count) throws ValidationException {
+        log.debug("Поиск популярных в моменте фильмов на уровне сервиса");
+        log.debug("Передано окно: {}", window);
+
+        TrendingWindow trendingWindow = TrendingWindow.fromValue(window)
+                .orElseThrow(() -> new ValidationException("Передано некорректное окно: " + window));
+        if (count <= 0) {
+            throw new ValidationException("Значение count должно быть больше нуля");
+        }
+
+        List<Long> filmIds = filmTrendingIndex.findTop(trendingWindow, count);
+        Map<Long, FilmDto> films = filmStorage.findByIds(filmIds).stream()
+                .map(FilmMapper::mapToFilmDto)
+                .collect(Collectors.toMap(FilmDto::getId, film -> film));
+        // Фильм мог удалиться между отбором и загрузкой
+        List<FilmDto> result = filmIds.stream().map(films::get).filter(film -> film != null).toList();
+        completeDtos(result);
+        log.debug("Найдено {} популярных в моменте фильмов", result.size());
+
+        log.debug("Возврат популярных в моменте фильмов на уровень контроллера");
+        return result;
+    }
+
     /**
      * Метод возвращает коллекцию рекомендованных к просмотру {@link FilmDto}
      *
@@ -264,6 +470,7 @@ public class FilmService {
      * @throws ValidationException если передан пустой filmId
      * @throws NotFoundException если экземпляр не найден
      */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public FilmDto findById(Long filmId) throws ValidationException, NotFoundException {
         log.debug("Поиск фильма по id на уровне сервиса");
 
@@ -272,6 +479,21 @@ public class FilmService {
         }
         log.debug("Передан id фильма: {}", filmId);
 
+        // Версия в ключе не даёт вызову, уже видящему изменение фильма, получить результат более раннего чтения
+        return singleFlight.execute("FilmService.findById", () -> loadById(filmId), filmId, findETag(filmId));
+    }
+
+    /**
+     * Метод возвращает ETag фильма. Не обращается к БД
+     *
+     * @param filmId идентификатор фильма
+     * @return ETag в кавычках; меняется при любом изменении фильма, его лайков и связанных справочников
+     */
+    public String findETag(Long filmId) {
+        return entityVersions.eTag(Film.class, filmId, Genre.class, Mpa.class, Director.class);
+    }
+
+    private FilmDto loadById(Long filmId) {
         Film searchResult = filmStorage.findById(filmId)
                 .orElseThrow(() -> new NotFoundException("Фильм с id " + filmId + " не найден"));
         log.debug("Фильм с id {} найден в хранилище", searchResult.getId());
@@ -286,6 +508,32 @@ public class FilmService {
         return result;
     }
 
+    /**
+     * Метод возвращает гистограмму оценок фильма: количество оценок от 1 до 10 и количество лайков без оценки.
+     * Гистограмма не собирается из лайков при запросе, а хранится в памяти и меняется вместе с ними
+     *
+     * @param filmId идентификатор фильма
+     * @return экземпляр класса {@link RatingHistogramDto}
+     * @throws ValidationException если передан пустой filmId
+     * @throws NotFoundException если фильм не найден
+     */
+    public RatingHistogramDto findRatingHistogram(Long filmId) throws ValidationException, NotFoundException {
+        log.debug("Запрос гистограммы оценок фильма на уровне сервиса");
+
+        if (filmId == null) {
+            throw new ValidationException("Передан пустой filmId");
+        }
+        log.debug("Передан id фильма: {}", filmId);
+
+        Film film = filmStorage.findById(filmId)
+                .orElseThrow(() -> new NotFoundException("Фильм с id " + filmId + " не найден"));
+
+        RatingHistogramDto result = FilmMapper.mapToRatingHistogramDto(filmStorage.findRatingHistogram(film.getId()));
+
+        log.debug("Возврат гистограммы оценок на уровень контроллера");
+        return result;
+    }
+
     /**
      * Метод проверяет полученную модель и передает для сохранения на уровень хранилища, после чего сохранённую модель
      * возвращает на уровень контроллера
@@ -294,6 +542,7 @@ public class FilmService {
      * @return сохраненный экземпляр {@link FilmDto}
      * @throws ValidationException в случае ошибок валидации
      */
+    @Transactional
     public FilmDto create(NewFilmRequest request) throws ValidationException {
         log.debug("Создание фильма на уровне сервиса");
 
@@ -311,6 +560,9 @@ public class FilmService {
         completeDto(result);
         log.debug("Сохранённая модель преобразована");
 
+        outboxStorage.addEvent(ChangeEvent.of(ChangeEntityTypes.FILM, ChangeEvent.keyOf(result.getId()),
+                OperationTypes.ADD, result));
+
         log.debug("Возврат результата добавления на уровень контроллера");
         return result;
     }
@@ -324,6 +576,7 @@ public class FilmService {
      * @throws ValidationException в случае ошибок валидации
      * @throws NotFoundException если фильм для обновления не найден
      */
+    @Transactional
     public FilmDto update(UpdateFilmRequest request) throws ValidationException, NotFoundException {
         log.debug("Обновление фильма на уровне сервиса");
 
@@ -350,6 +603,9 @@ public class FilmService {
         completeDto(result);
         log.debug("Обновленная модель преобразована");
 
+        outboxStorage.addEvent(ChangeEvent.of(ChangeEntityTypes.FILM, ChangeEvent.keyOf(result.getId()),
+                OperationTypes.UPDATE, result));
+
         log.debug("Возврат результата обновления на уровень контроллера");
         return result;
     }
@@ -362,6 +618,7 @@ public class FilmService {
      * @throws ValidationException в случае ошибок валидации
      * @throws NotFoundException если фильм или пользователь не найдены
      */
+    @Transactional
     public void addLike(Long filmId, Long userId, Double mark) throws ValidationException, NotFoundException {
         log.debug("Добавление лайка фильму на уровне сервиса");
 
@@ -377,29 +634,47 @@ public class FilmService {
             throw new ValidationException("Оценка должна находиться в пределах от 1 до 10");
         }
 
-        // Получаем фильм из хранилища
-        Film film = filmStorage.findById(filmId)
-                .orElseThrow(() -> new NotFoundException("Фильм с id " + filmId + " не найден в хранилище"));
+        userPurgeQueue.requireNotPending(userId);
 
-        // Получаем пользователя из хранилища
-        User user = userStorage.findById(userId)
-                .orElseThrow(() -> new NotFoundException("Пользователь с id " + userId + " не найден в хранилище"));
+        if (likeWriteBehindBuffer != null) {
+            // При отложенной записи внешние ключи сработают только при записи пакета
+            requireFilmAndUserExist(filmId, userId);
+            if (likeWriteBehindBuffer.addLike(filmId, userId, mark)) {
+                log.debug("Лайк принят для отложенной записи");
+            } else {
+                log.debug("Лайк уже поставлен с той же оценкой");
+            }
+            return;
+        }
 
-        // Добавляем пользователя в коллекцию пользователей, которым фильм понравился
-        log.debug("Добавляем пользователя с id {} в коллекцию любителей фильма с id {}", user.getId(), film.getId());
-        filmStorage.addLike(film.getId(), user.getId(), mark);
+        // Существование фильма и пользователя проверяют внешние ключи таблицы лайков
+        log.debug("Добавляем пользователя с id {} в коллекцию любителей фильма с id {}", userId, filmId);
+        if (!filmStorage.addLike(filmId, userId, mark)) {
+            // Повторный лайк с той же оценкой ничего не меняет и не попадает ни в ленту, ни в счётчики
+            log.debug("Лайк уже поставлен с той же оценкой");
+            return;
+        }
 
         log.debug("Регистрируем событие LIKE ADD");
+        Instant now = Instant.now();
         Feed feed = Feed.builder()
                 .entityId(filmId)
                 .userId(userId)
-                .timestamp(Timestamp.from(Instant.now()))
+                .timestamp(Timestamp.from(now))
                 .eventType(EventTypes.LIKE)
                 .operationType(OperationTypes.ADD)
                 .build();
         feedStorage.addFeed(feed);
         log.debug("Событие LIKE ADD зарегистрировано");
 
+        Like like = Like.builder()
+                .filmId(filmId)
+                .userId(userId)
+                .mark(mark)
+                .build();
+        outboxStorage.addEvent(ChangeEvent.of(ChangeEntityTypes.LIKE, ChangeEvent.keyOf(filmId, userId),
+                OperationTypes.ADD, like));
+
         log.debug("Возврат результата добавления лайка на уровень контроллера");
     }
 
@@ -411,51 +686,83 @@ public class FilmService {
      * @throws ValidationException в случае ошибок валидации
      * @throws NotFoundException если не найдены фильм или пользователь
      */
+    @Transactional
     public void removeLike(Long filmId, Long userId) throws ValidationException, NotFoundException {
         log.debug("Удаление лайка, поставленного фильму");
 
-        // Получаем фильм из хранилища
         if (filmId == null) {
             log.warn("Передан пустой идентификатор фильма при удалении лайка");
             throw new ValidationException("Передан пустой идентификатор фильма при удалении лайка");
         }
 
-        Film film = filmStorage.findById(filmId)
-                .orElseThrow(() -> new NotFoundException("Фильм с id " + filmId + " не найден в хранилище"));
-
-        // Получаем пользователя из хранилища
         if (userId == null) {
             log.warn("Передан пустой идентификатор пользователя при удалении лайка");
             throw new ValidationException("Передан пустой идентификатор пользователя при удалении лайка");
         }
 
-        User user = userStorage.findById(userId)
-                .orElseThrow(() -> new NotFoundException("Пользователь с id " + userId + " не найден в хранилище"));
+        userPurgeQueue.requireNotPending(userId);
+
+        if (likeWriteBehindBuffer != null) {
+            requireFilmAndUserExist(filmId, userId);
+            if (likeWriteBehindBuffer.removeLike(filmId, userId)) {
+                log.debug("Удаление лайка принято для отложенной записи");
+            } else {
+                log.debug("Лайк не был поставлен");
+            }
+            return;
+        }
 
         // Удаляем лайк пользователя
-        log.debug("Удаляем фильм с id {} из коллекции пользователя с id {}", film.getId(), user.getId());
-        filmStorage.removeLike(film.getId(), user.getId());
+        log.debug("Удаляем фильм с id {} из коллекции пользователя с id {}", filmId, userId);
+        if (!filmStorage.removeLike(filmId, userId)) {
+            // Удалять было нечего: проверяем, существуют ли фильм и пользователь
+            requireFilmAndUserExist(filmId, userId);
+            log.debug("Лайк не был поставлен");
+            return;
+        }
 
         log.debug("Регистрируем событие LIKE REMOVE");
+        Instant now = Instant.now();
         Feed feed = Feed.builder()
                 .entityId(filmId)
                 .userId(userId)
-                .timestamp(Timestamp.from(Instant.now()))
+                .timestamp(Timestamp.from(now))
                 .eventType(EventTypes.LIKE)
                 .operationType(OperationTypes.REMOVE)
                 .build();
         feedStorage.addFeed(feed);
         log.debug("Событие LIKE REMOVE зарегистрировано");
 
+        outboxStorage.addEvent(ChangeEvent.of(ChangeEntityTypes.LIKE, ChangeEvent.keyOf(filmId, userId),
+                OperationTypes.REMOVE, null));
+
         log.debug("Возврат результата удаления лайка на уровень контроллера");
     }
 
+    /**
+     * Метод проверяет наличие фильма и пользователя в хранилище. Используется только там, где запись не дала результата
+     * и нужно отличить отсутствие связи от отсутствия сущностей
+     *
+     * @param filmId идентификатор фильма
+     * @param userId идентификатор пользователя
+     * @throws NotFoundException если фильм или пользователь не найдены
+     */
+    private void requireFilmAndUserExist(Long filmId, Long userId) throws NotFoundException {
+        fanOutExecutor.runAll(
+                () -> filmStorage.findById(filmId)
+                        .orElseThrow(() -> new NotFoundException("Фильм с id " + filmId + " не найден в хранилище")),
+                () -> userStorage.findById(userId)
+                        .orElseThrow(() -> new NotFoundException(
+                                "Пользователь с id " + userId + " не найден в хранилище")));
+    }
+
     /**
      * Метод удаляет фильм и все его связи из хранилища
      *
      * @param filmId идентификатор фильма
      * @throws NotFoundException если фильм не найден
      */
+    @Transactional
     public void deleteFilm(Long filmId) throws NotFoundException {
         log.debug("Удаление фильма на уровне сервиса");
 
@@ -474,6 +781,9 @@ public class FilmService {
 
         // Удаляем фильм
         filmStorage.deleteFilm(film.getId());
+        // Лайки и отзывы фильма удаляются вместе с ним, отдельные изменения для них не регистрируются
+        outboxStorage.addEvent(ChangeEvent.of(ChangeEntityTypes.FILM, ChangeEvent.keyOf(film.getId()),
+                OperationTypes.REMOVE, null));
 
         log.debug("Возврат результатов удаления на уровень контроллера");
     }
@@ -481,6 +791,7 @@ public class FilmService {
     /**
      * Метод очищает хранилище фильмов
      */
+    @Transactional
     public void clearFilms() {
         log.debug("Очистка списка фильмов на уровне сервиса");
 
@@ -488,6 +799,11 @@ public class FilmService {
         filmStorage.clearFilms();
         log.debug("Все фильмы удалены");
 
+        outboxStorage.addEvents(Stream.of(ChangeEntityTypes.FILM, ChangeEntityTypes.LIKE, ChangeEntityTypes.REVIEW,
+                        ChangeEntityTypes.REVIEW_MARK)
+                .map(entityType -> ChangeEvent.of(entityType, ChangeEvent.ALL_KEYS, OperationTypes.REMOVE, null))
+                .toList());
+
         log.debug("Возврат результатов очистки на уровень контроллера");
     }
 
@@ -639,17 +955,42 @@ public class FilmService {
         if (dto != null) {
             log.debug("Формирование полей для фильма с id {}", dto.getId());
 
-            // Заполняем коллекцию жанров фильма
-            completeGenres(dto);
-
-            // Заполняем коллекцию лайков фильма
-            completeLikes(dto);
+            // Заполняем коллекции жанров, лайков и режиссеров фильма параллельно
+            fanOutExecutor.runAll(() -> completeGenres(dto), () -> completeLikes(dto), () -> completeDirectors(dto));
 
-            // Заполняем коллекцию режиссеров
-            completeDirectors(dto);
+            // Средняя оценка приходит из счётчиков лайков, для фильмов не из БД вычисляем её по лайкам
+            if (dto.getRate() == null) {
+                completeAverageRate(dto);
+            }
+        }
+    }
 
-            // Заполняем среднюю оценку фильма
-            completeAverageRate(dto);
+    /**
+     * Метод заполняет данными коллекции нескольких DTO. Жанры, лайки и режиссеры всех фильмов читаются тремя
+     * запросами вместо трёх запросов на каждый фильм
+     *
+     * @param dtos коллекция экземпляров класса {@link FilmDto}
+     */
+    void completeDtos(Collection<FilmDto> dtos) {
+        if (dtos.isEmpty()) {
+            return;
+        }
+        Collection<Long> filmIds = dtos.stream().map(FilmDto::getId).toList();
+        log.debug("Формирование полей для {} фильмов", filmIds.size());
+
+        FanOutExecutor.Scope scope = fanOutExecutor.open();
+        Supplier<Map<Long, List<Genre>>> genres = scope.fork(() -> genreStorage.findByFilmIds(filmIds));
+        Supplier<Map<Long, List<User>>> likers = scope.fork(() -> userStorage.findByFilmIds(filmIds));
+        Supplier<Map<Long, List<Director>>> directors = scope.fork(() -> directorStorage.findByFilmIds(filmIds));
+        scope.join();
+
+        for (FilmDto dto : dtos) {
+            setGenres(dto, genres.get().getOrDefault(dto.getId(), List.of()));
+            setLikes(dto, likers.get().getOrDefault(dto.getId(), List.of()));
+            setDirectors(dto, directors.get().getOrDefault(dto.getId(), List.of()));
+            if (dto.getRate() == null) {
+                completeAverageRate(dto);
+            }
         }
     }
 
@@ -662,7 +1003,11 @@ public class FilmService {
         log.debug("Заполнение коллекций жанров фильма");
 
         // Получаем список жанров фильма
-        Set<GenreDto> genres = genreStorage.findByFilmId(dto.getId()).stream()
+        setGenres(dto, genreStorage.findByFilmId(dto.getId()));
+    }
+
+    private void setGenres(FilmDto dto, Collection<Genre> filmGenres) {
+        Set<GenreDto> genres = filmGenres.stream()
                 .map(GenreMapper::mapToGenreDto)
                 .sorted(Comparator.comparing(GenreDto::getId))
                 .collect(Collectors.toCollection(LinkedHashSet::new));
@@ -682,7 +1027,14 @@ public class FilmService {
         log.debug("Заполнение коллекций лайков фильма");
 
         // Получаем список лайков фильма
-        Set<UserShortDto> likes = userStorage.findByFilmId(dto.getId()).stream()
+        setLikes(dto, userStorage.findByFilmId(dto.getId()));
+    }
+
+    private void setLikes(FilmDto dto, Collection<User> likers) {
+        if (likeWriteBehindBuffer != null) {
+            likers = overlayPendingLikes(dto.getId(), likers);
+        }
+        Set<UserShortDto> likes = likers.stream()
                 .map(UserMapper::mapToUserShortDto)
                 .collect(Collectors.toSet());
         log.debug("Для фильма с id {}  получена коллекция лайков размером {}", dto.getId(), likes.size());
@@ -692,11 +1044,50 @@ public class FilmService {
         log.debug("Полученная коллекция лайков установлена фильму");
     }
 
+    /**
+     * Метод накладывает на лайки фильма из БД изменения, ещё не записанные буфером отложенной записи
+     *
+     * @param filmId идентификатор фильма
+     * @param likers пользователи, лайкнувшие фильм, по данным БД
+     * @return пользователи, лайкнувшие фильм, с учётом ожидающих изменений
+     */
+    private Collection<User> overlayPendingLikes(Long filmId, Collection<User> likers) {
+        Map<Long, LikeChange> pending = likeWriteBehindBuffer.findPending(filmId);
+        if (pending.isEmpty()) {
+            return likers;
+        }
+
+        Map<Long, User> result = new LinkedHashMap<>();
+        likers.forEach(user -> result.put(user.getId(), user));
+        pending.values().stream()
+                .filter(LikeChange::removed)
+                .forEach(change -> result.remove(change.userId()));
+
+        Collection<Long> missingIds = pending.values().stream()
+                .filter(change -> !change.removed() && !result.containsKey(change.userId()))
+                .map(LikeChange::userId)
+                .toList();
+        if (!missingIds.isEmpty()) {
+            userStorage.findByIds(missingIds).forEach(user -> result.put(user.getId(), user));
+        }
+
+        pending.values().stream()
+                .filter(change -> !change.removed() && result.containsKey(change.userId()))
+                .forEach(change -> result.get(change.userId())
+                        .setMark(change.mark() == null ? -1 : change.mark().intValue()));
+        log.debug("К лайкам фильма с id {} применено {} ожидающих изменений", filmId, pending.size());
+        return result.values();
+    }
+
     private void completeDirectors(FilmDto dto) {
         log.debug("Заполнение коллекции режиссеров фильма");
 
         // Получаем список режиссеров фильма
-        Set<DirectorDto> directors = directorStorage.findByFilmId(dto.getId()).stream()
+        setDirectors(dto, directorStorage.findByFilmId(dto.getId()));
+    }
+
+    private void setDirectors(FilmDto dto, Collection<Director> filmDirectors) {
+        Set<DirectorDto> directors = filmDirectors.stream()
                 .map(DirectorMapper::mapToDirectorDto)
                 .collect(Collectors.toSet());
         log.debug("Для фильма с id {} получена коллекция режиссеров размером {}", dto.getId(), directors.size());
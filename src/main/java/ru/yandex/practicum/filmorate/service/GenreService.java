@@ -2,14 +2,19 @@ package ru.yandex.practicum.filmorate.service;
 
 import jakarta.validation.ValidationException;
 import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.dal.film.FilmAudienceSketches;
 import ru.yandex.practicum.filmorate.dal.film.FilmStorage;
 import ru.yandex.practicum.filmorate.dal.genre.GenreStorage;
+import ru.yandex.practicum.filmorate.dto.genre.GenreAudienceDto;
 import ru.yandex.practicum.filmorate.dto.genre.NewGenreRequest;
 import ru.yandex.practicum.filmorate.dto.genre.GenreDto;
 import ru.yandex.practicum.filmorate.dto.genre.UpdateGenreRequest;
@@ -25,6 +30,7 @@ public class GenreService {
 
     private final GenreStorage genreStorage;
     private final FilmStorage filmStorage;
+    private final FilmAudienceSketches filmAudienceSketches;
 
     /**
      * Метод возвращает коллекцию {@link GenreDto}
@@ -75,6 +81,42 @@ public class GenreService {
         return result;
     }
 
+    /**
+     * Метод возвращает оценку количества различных пользователей, лайкнувших хотя бы один фильм любого из жанров.
+     * Оценка берётся из {@link FilmAudienceSketches} и может расходиться с точным значением на несколько процентов
+     *
+     * @param genreIds идентификаторы жанров
+     * @return экземпляр класса {@link GenreAudienceDto}
+     * @throws ValidationException если не передан ни один идентификатор жанра
+     * @throws NotFoundException если какой-либо жанр не найден
+     */
+    public GenreAudienceDto findAudience(Collection<Long> genreIds) throws ValidationException, NotFoundException {
+        log.debug("Запрос аудитории жанров на уровне сервиса");
+
+        if (genreIds == null || genreIds.isEmpty()) {
+            throw new ValidationException("Не передан ни один идентификатор жанра");
+        }
+        Set<Long> uniqueGenreIds = new LinkedHashSet<>(genreIds);
+        if (uniqueGenreIds.contains(null)) {
+            throw new ValidationException("Передан пустой genreId");
+        }
+        log.debug("Переданы идентификаторы жанров: {}", uniqueGenreIds);
+
+        for (Long genreId : uniqueGenreIds) {
+            genreStorage.findById(genreId)
+                    .orElseThrow(() -> new NotFoundException("Жанр с id " + genreId + " не найден"));
+        }
+
+        GenreAudienceDto result = GenreAudienceDto.builder()
+                .genreIds(uniqueGenreIds)
+                .audienceCount(filmAudienceSketches.estimateGenres(uniqueGenreIds))
+                .build();
+        log.debug("Оценка аудитории жанров: {}", result.getAudienceCount());
+
+        log.debug("Возврат аудитории жанров на уровень контроллера");
+        return result;
+    }
+
     /**
      * Метод проверяет полученную модель и передает для сохранения на уровень хранилища, после чего сохранённую модель
      * возвращает на уровень контроллера
@@ -82,6 +124,7 @@ public class GenreService {
      * @param request несохранённый экземпляр класса {@link NewGenreRequest}
      * @return сохранённый экземпляр класса {@link GenreDto}
      */
+    @Transactional
     public GenreDto create(NewGenreRequest request) {
         log.debug("Создание жанра на уровне сервиса");
 
@@ -109,6 +152,7 @@ public class GenreService {
      * @return сохранённый экземпляр класса {@link GenreDto}
      * @throws ValidationException при ошибках валидации
      */
+    @Transactional
     public GenreDto update(UpdateGenreRequest request) throws ValidationException {
         log.debug("Обновление жанра на уровне сервиса");
 
@@ -145,6 +189,7 @@ public class GenreService {
      * @throws ValidationException при ошибках валидации
      * @throws NotFoundException если удаляемый жанр не найден в хранилище
      */
+    @Transactional
     public void deleteGenre(Long genreId) throws ValidationException, NotFoundException {
         log.debug("Удаление жанра на уровне сервиса");
 
@@ -180,6 +225,7 @@ public class GenreService {
         log.debug("Возврат результата удаления на уровень контроллера");
     }
 
+    @Transactional
     public void clearGenres() {
         log.debug("Очистка жанров на уровне сервиса");
 
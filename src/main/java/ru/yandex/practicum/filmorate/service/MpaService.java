@@ -5,6 +5,7 @@ import java.util.Collection;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Mpa;
@@ -79,6 +80,7 @@ public class MpaService {
      * @param request несохранённый экземпляр класса {@link NewMpaRequest}
      * @return сохранённый экземпляр класса {@link Mpa}
      */
+    @Transactional
     public MpaDto create(NewMpaRequest request) {
         log.debug("Создание рейтинга на уровне сервиса");
 
@@ -106,6 +108,7 @@ public class MpaService {
      * @return сохранённый экземпляр класса {@link MpaDto}
      * @throws ValidationException при ошибках валидации
      */
+    @Transactional
     public MpaDto update(UpdateMpaRequest request) throws ValidationException {
         log.debug("Обновление рейтинга на уровне сервиса");
 
@@ -143,6 +146,7 @@ public class MpaService {
      * @throws ValidationException при ошибках валидации
      * @throws NotFoundException если удаляемый рейтинг не найден в хранилище
      */
+    @Transactional
     public void deleteRating(Long ratingId) throws ValidationException, NotFoundException {
         log.debug("Удаление рейтинга на уровне сервиса");
 
@@ -178,6 +182,7 @@ public class MpaService {
         log.debug("Возврат результата удаления на уровень контроллера");
     }
 
+    @Transactional
     public void clearGenres() {
         log.debug("Очистка рейтингов на уровне сервиса");
 
@@ -0,0 +1,186 @@
+package ru.yandex.practicum.filmorate.service;
+
+import jakarta.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.config.OutboxProperties;
+import ru.yandex.practicum.filmorate.dal.outbox.OutboxStorage;
+import ru.yandex.practicum.filmorate.model.ChangeEvent;
+
+/**
+ * Передача журнала изменений потребителям.
+ * <p>
+ * Изменения фильмов, пользователей, лайков, дружбы и отзывов записываются в OUTBOX в транзакции самого изменения.
+ * Раз в {@link OutboxProperties#relayInterval()} каждому {@link ChangeEventSink} передаются изменения после его
+ * позиции порциями по возрастанию идентификатора, после чего позиция сохраняется в OUTBOX_OFFSETS. Доставка "хотя бы
+ * один раз": сбой потребителя оставляет позицию на месте, и порция передаётся повторно.
+ * <p>
+ * Идентификатор выдаётся при вставке, а видна запись становится при фиксации, поэтому пропуск в идентификаторах
+ * означает либо ещё не зафиксированную транзакцию, либо откаченную. Передача останавливается перед пропуском, пока
+ * следующему за ним изменению не исполнится {@link OutboxProperties#gapTimeout()}, иначе изменение долгой транзакции
+ * было бы пропущено.
+ * <p>
+ * Раз в {@link OutboxProperties#compactInterval()} журнал сжимается: из изменений, уже переданных всем потребителям,
+ * удаляются замещенные более поздним изменением той же сущности. Новый потребитель получает последнее состояние
+ * каждой сущности.
+ */
+@Slf4j
+@Component
+public class OutboxRelay {
+
+    private final OutboxStorage outboxStorage;
+    private final OutboxProperties properties;
+    private final Map<String, ChangeEventSink> sinks = new ConcurrentHashMap<>();
+    private final Object relayLock = new Object();
+    private final ScheduledExecutorService scheduler;
+
+    public OutboxRelay(OutboxStorage outboxStorage, OutboxProperties properties,
+                       ObjectProvider<ChangeEventSink> sinks) {
+        this.outboxStorage = outboxStorage;
+        this.properties = properties;
+        sinks.orderedStream().forEach(this::subscribe);
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "outbox-relay");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long relayMillis = properties.relayInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::relayQuietly, relayMillis, relayMillis, TimeUnit.MILLISECONDS);
+        long compactMillis = properties.compactInterval().toMillis();
+        scheduler.scheduleWithFixedDelay(this::compactQuietly, compactMillis, compactMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Метод подписывает потребителя на журнал изменений. Потребитель продолжает с сохраненной под его именем позиции,
+     * новый потребитель получает журнал с начала
+     *
+     * @param sink потребитель
+     * @throws IllegalArgumentException если потребитель с таким именем уже подписан
+     */
+    public void subscribe(ChangeEventSink sink) {
+        if (sinks.putIfAbsent(sink.getName(), sink) != null) {
+            throw new IllegalArgumentException("Потребитель " + sink.getName() + " уже подписан на журнал изменений");
+        }
+        log.info("Потребитель {} подписан на журнал изменений", sink.getName());
+    }
+
+    /**
+     * Метод отписывает потребителя от журнала изменений. Позиция потребителя сохраняется
+     *
+     * @param name имя потребителя
+     */
+    public void unsubscribe(String name) {
+        if (sinks.remove(name) != null) {
+            log.info("Потребитель {} отписан от журнала изменений", name);
+        }
+    }
+
+    /**
+     * Метод передает потребителям все готовые к передаче изменения
+     *
+     * @return количество переданных изменений по всем потребителям
+     */
+    public int relay() {
+        synchronized (relayLock) {
+            int result = 0;
+            for (ChangeEventSink sink : sinks.values()) {
+                try {
+                    result += relay(sink);
+                } catch (RuntimeException e) {
+                    log.error("Не удалось передать изменения потребителю {}, передача будет повторена",
+                            sink.getName(), e);
+                }
+            }
+            return result;
+        }
+    }
+
+    /**
+     * Метод сжимает журнал до наименьшей позиции подписанных потребителей, а без потребителей - целиком
+     *
+     * @return количество удаленных изменений
+     */
+    public long compact() {
+        synchronized (relayLock) {
+            long upToId = sinks.isEmpty()
+                    ? outboxStorage.findLastId()
+                    : sinks.keySet().stream().mapToLong(outboxStorage::findOffset).min().orElse(0);
+            return upToId > 0 ? outboxStorage.compact(upToId) : 0;
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    private int relay(ChangeEventSink sink) {
+        long offset = outboxStorage.findOffset(sink.getName());
+        int result = 0;
+        while (true) {
+            List<ChangeEvent> events = outboxStorage.findAfter(offset, properties.batchSize());
+            List<ChangeEvent> ready = takeReady(events, offset);
+            if (ready.isEmpty()) {
+                break;
+            }
+
+            sink.publish(ready);
+            offset = ready.getLast().getId();
+            outboxStorage.saveOffset(sink.getName(), offset);
+            result += ready.size();
+            if (ready.size() < events.size() || events.size() < properties.batchSize()) {
+                break;
+            }
+        }
+        if (result > 0) {
+            log.debug("Потребителю {} передано {} изменений, позиция {}", sink.getName(), result, offset);
+        }
+        return result;
+    }
+
+    /**
+     * Метод отбирает изменения до первого пропуска в идентификаторах, который ещё может заполниться
+     *
+     * @param events изменения после позиции потребителя
+     * @param offset позиция потребителя
+     * @return изменения, готовые к передаче
+     */
+    private List<ChangeEvent> takeReady(List<ChangeEvent> events, long offset) {
+        long settledBefore = System.currentTimeMillis() - properties.gapTimeout().toMillis();
+        long expectedId = offset + 1;
+        int count = 0;
+        for (ChangeEvent event : events) {
+            if (event.getId() != expectedId && event.getTimestamp().getTime() > settledBefore) {
+                break;
+            }
+            expectedId = event.getId() + 1;
+            count++;
+        }
+        return events.subList(0, count);
+    }
+
+    private void relayQuietly() {
+        try {
+            relay();
+        } catch (RuntimeException e) {
+            log.error("Не удалось передать журнал изменений", e);
+        }
+    }
+
+    private void compactQuietly() {
+        try {
+            long deleted = compact();
+            log.debug("Сжатие журнала изменений удалило {} изменений", deleted);
+        } catch (RuntimeException e) {
+            log.error("Не удалось сжать журнал изменений", e);
+        }
+    }
+}
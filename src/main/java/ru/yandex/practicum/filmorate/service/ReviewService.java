@@ -4,22 +4,34 @@ import jakarta.validation.ValidationException;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.dal.feed.FeedStorage;
 import ru.yandex.practicum.filmorate.dal.film.FilmStorage;
+import ru.yandex.practicum.filmorate.dal.outbox.OutboxStorage;
+import ru.yandex.practicum.filmorate.dal.review.ReviewSearchIndex;
 import ru.yandex.practicum.filmorate.dal.review.ReviewStorage;
 import ru.yandex.practicum.filmorate.dal.user.UserStorage;
 import ru.yandex.practicum.filmorate.dto.review.NewReviewRequest;
+import ru.yandex.practicum.filmorate.dto.review.ReviewCursor;
 import ru.yandex.practicum.filmorate.dto.review.ReviewDto;
+import ru.yandex.practicum.filmorate.dto.review.ReviewSummaryDto;
 import ru.yandex.practicum.filmorate.dto.review.UpdateReviewRequest;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.mapper.ReviewMapper;
+import ru.yandex.practicum.filmorate.model.ChangeEvent;
 import ru.yandex.practicum.filmorate.model.Feed;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Review;
-import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.enums.ChangeEntityTypes;
 import ru.yandex.practicum.filmorate.model.enums.EventTypes;
 import ru.yandex.practicum.filmorate.model.enums.OperationTypes;
 
@@ -29,9 +41,13 @@ import ru.yandex.practicum.filmorate.model.enums.OperationTypes;
 public class ReviewService {
 
     private final ReviewStorage reviewStorage;
+    private final ReviewSearchIndex reviewSearchIndex;
     private final UserStorage userStorage;
     private final FilmStorage filmStorage;
     private final FeedStorage feedStorage;
+    private final OutboxStorage outboxStorage;
+    private final UserPurgeQueue userPurgeQueue;
+    private final FanOutExecutor fanOutExecutor;
 
     /**
      * Метод возвращает коллекцию {@link ReviewDto}
@@ -90,6 +106,112 @@ public class ReviewService {
         return result;
     }
 
+    /**
+     * Метод возвращает страницу отзывов, следующую за курсором. Отзывы упорядочены по убыванию полезности, а при
+     * равной полезности по возрастанию идентификатора. Курсор указывает на последний отзыв предыдущей страницы, поэтому
+     * следующая страница выбирается по индексу без пропуска предыдущих строк
+     *
+     * @param filmId идентификатор фильма; если не указан, возвращаются отзывы ко всем фильмам
+     * @param count размер страницы
+     * @param cursor курсор предыдущей страницы; если не указан, возвращается первая страница
+     * @return результирующая коллекция
+     */
+    public Collection<ReviewDto> findPage(Long filmId, Integer count, String cursor) {
+        log.debug("Запрос страницы отзывов на уровне сервиса");
+        log.debug("Переданный идентификатор фильма: {}", filmId);
+        log.debug("Переданный курсор: {}", cursor);
+
+        if (cursor == null) {
+            return filmId == null ? findAll(count, 0) : findByFilmId(filmId, count);
+        }
+
+        if (count == null || count <= 0) {
+            throw new ValidationException("Размер запрашиваемой коллекции должен быть больше 0");
+        }
+        ReviewCursor after = ReviewCursor.parse(cursor);
+
+        Collection<Review> searchResult;
+        if (filmId == null) {
+            searchResult = reviewStorage.findAllAfter(count, after.useful(), after.reviewId());
+        } else {
+            Film film = filmStorage.findById(filmId)
+                    .orElseThrow(() -> new NotFoundException("Фильм с id " + filmId + " не найден в хранилище"));
+            searchResult = reviewStorage.findByFilmIdAfter(film.getId(), count, after.useful(), after.reviewId());
+        }
+        log.debug("На уровень сервиса вернулась страница отзывов размером {}", searchResult.size());
+
+        Collection<ReviewDto> result = searchResult.stream().map(ReviewMapper::mapToReviewDto).toList();
+
+        log.debug("Возврат страницы отзывов на уровень контроллера");
+        return result;
+    }
+
+    /**
+     * Метод возвращает сводку отзывов к фильму: количество положительных и отрицательных отзывов и распределение
+     * отзывов по рейтингу полезности. Сводка не собирается из отзывов при запросе, а хранится готовой и меняется в
+     * одной транзакции с отзывами и их оценками
+     *
+     * @param filmId идентификатор фильма
+     * @return экземпляр класса {@link ReviewSummaryDto}
+     */
+    public ReviewSummaryDto findSummary(Long filmId) {
+        log.debug("Запрос сводки отзывов к фильму на уровне сервиса");
+        log.debug("Переданный идентификатор фильма: {}", filmId);
+
+        Film film = filmStorage.findById(filmId)
+                .orElseThrow(() -> new NotFoundException("Фильм с id " + filmId + " не найден в хранилище"));
+
+        ReviewSummaryDto result = ReviewMapper.mapToReviewSummaryDto(reviewStorage.findSummary(film.getId()));
+
+        log.debug("Возврат сводки отзывов на уровень контроллера");
+        return result;
+    }
+
+    /**
+     * Метод выполняет полнотекстовый поиск по тексту отзывов. Поиск выполняется по индексу {@link ReviewSearchIndex}
+     * без просмотра таблицы отзывов, найденные отзывы упорядочены по убыванию релевантности
+     *
+     * @param query текст запроса
+     * @param filmId идентификатор фильма; если не указан, поиск выполняется по отзывам ко всем фильмам
+     * @param count максимальный размер результирующей коллекции
+     * @return результирующая коллекция
+     */
+    public Collection<ReviewDto> search(String query, Long filmId, Integer count) {
+        log.debug("Полнотекстовый поиск отзывов на уровне сервиса");
+        log.debug("Переданный запрос: {}", query);
+        log.debug("Переданный идентификатор фильма: {}", filmId);
+
+        if (query == null || query.isBlank()) {
+            throw new ValidationException("Текст запроса должен быть указан");
+        }
+        if (count == null || count <= 0) {
+            throw new ValidationException("Размер запрашиваемой коллекции должен быть больше 0");
+        }
+        if (filmId != null) {
+            filmStorage.findById(filmId)
+                    .orElseThrow(() -> new NotFoundException("Фильм с id " + filmId + " не найден в хранилище"));
+        }
+
+        List<Long> reviewIds = reviewSearchIndex.search(query, filmId, count);
+        Map<Long, Review> reviews = reviewStorage.findByIds(reviewIds).stream()
+                .collect(Collectors.toMap(Review::getId, Function.identity()));
+        log.debug("По запросу найдено {} отзывов, из них в хранилище {}", reviewIds.size(), reviews.size());
+
+        // Отзывы, удалённые вместе с пользователем или фильмом, убираем из индекса при первой встрече
+        reviewIds.stream()
+                .filter(reviewId -> !reviews.containsKey(reviewId))
+                .forEach(reviewSearchIndex::evict);
+
+        Collection<ReviewDto> result = reviewIds.stream()
+                .map(reviews::get)
+                .filter(Objects::nonNull)
+                .map(ReviewMapper::mapToReviewDto)
+                .toList();
+
+        log.debug("Возврат результатов полнотекстового поиска на уровень контроллера");
+        return result;
+    }
+
     /**
      * Метод возвращает экземпляр класса {@link ReviewDto}, найденный по идентификатору
      *
@@ -117,6 +239,7 @@ public class ReviewService {
      * @param request несохраненный экземпляр {@link NewReviewRequest}
      * @return сохраненный экземпляр {@link ReviewDto}
      */
+    @Transactional
     public ReviewDto create(NewReviewRequest request) {
         log.debug("Создание отзыва на уровне сервиса");
 
@@ -125,6 +248,7 @@ public class ReviewService {
         log.debug("Валидация переданной модели");
         validate(review);
         log.debug("Валидация модели завершена");
+        userPurgeQueue.requireNotPending(review.getUserId());
 
         review = reviewStorage.createReview(review);
 
@@ -142,6 +266,9 @@ public class ReviewService {
         feedStorage.addFeed(feed);
         log.debug("Событие REVIEW ADD зарегистрировано");
 
+        outboxStorage.addEvent(ChangeEvent.of(ChangeEntityTypes.REVIEW, ChangeEvent.keyOf(result.getReviewId()),
+                OperationTypes.ADD, result));
+
         log.debug("Возврат результатов добавления на уровень контроллера");
         return result;
     }
@@ -153,6 +280,7 @@ public class ReviewService {
      * @param request несохраненный экземпляр класса {@link UpdateReviewRequest}
      * @return обновленный экземпляр класса {@link ReviewDto}
      */
+    @Transactional
     public ReviewDto update(UpdateReviewRequest request) {
         log.debug("Обновление отзыва на уровне хранилища");
 
@@ -163,6 +291,7 @@ public class ReviewService {
         Review existingReview = reviewStorage.findById(request.getReviewId())
                 .orElseThrow(() -> new NotFoundException("Отзыв с id " + request.getReviewId() + " не найден"));
         log.debug("Отзыв с id {} найден в хранилище для обновления", request.getReviewId());
+        userPurgeQueue.requireNotPending(existingReview.getUserId());
 
         Review updatedReview = ReviewMapper.updateReviewFields(existingReview, request);
 
@@ -187,6 +316,9 @@ public class ReviewService {
         feedStorage.addFeed(feed);
         log.debug("Событие REVIEW UPDATE зарегистрировано");
 
+        outboxStorage.addEvent(ChangeEvent.of(ChangeEntityTypes.REVIEW, ChangeEvent.keyOf(result.getReviewId()),
+                OperationTypes.UPDATE, result));
+
         log.debug("Возврат результата обновления на уровень контроллера");
         return result;
 
@@ -198,6 +330,7 @@ public class ReviewService {
      * @param reviewId идентификатор отзыва
      * @param userId идентификатор пользователя
      */
+    @Transactional
     public void addLike(Long reviewId, Long userId) {
         log.debug("Добавление лайка отзыву на уровне сервиса");
         log.debug("Передан идентификатор отзыва: {}", reviewId);
@@ -211,17 +344,12 @@ public class ReviewService {
             throw new ValidationException("Передан пустой id пользователя");
         }
 
-        // Получаем отзыв из хранилища
-        Review review = reviewStorage.findById(reviewId)
-                .orElseThrow(() -> new NotFoundException("Отзыв с id " + reviewId + " не найден в хранилище"));
+        userPurgeQueue.requireNotPending(userId);
 
-        // Получаем пользователя из хранилища
-        User user = userStorage.findById(userId)
-                .orElseThrow(() -> new NotFoundException("Пользователь с id " + userId + " не найден в хранилище"));
-
-        // Добавляем лайк
-        reviewStorage.addReviewLike(review.getId(), user.getId());
+        // Существование отзыва и пользователя проверяют внешние ключи таблицы оценок
+        reviewStorage.addReviewLike(reviewId, userId);
         log.debug("Лайк отзыву от пользователя добавлен на уровне сервиса");
+        registerMarkChange(reviewId, userId, true);
 
         log.debug("Возврат результата добавления лайка на уровень контроллера");
     }
@@ -232,6 +360,7 @@ public class ReviewService {
      * @param reviewId идентификатор отзыва
      * @param userId идентификатор пользователя
      */
+    @Transactional
     public void removeLike(Long reviewId, Long userId) {
         log.debug("Удаление лайка от пользователя с отзыва");
         log.debug("Передан id отзыва: {}", reviewId);
@@ -245,16 +374,15 @@ public class ReviewService {
             throw new ValidationException("Передан пустой id пользователя");
         }
 
-        // Получаем отзыв из хранилища
-        Review review = reviewStorage.findById(reviewId)
-                .orElseThrow(() -> new NotFoundException("Отзыв с id " + reviewId + " не найден в хранилище"));
-
-        // Получаем пользователя из хранилища
-        User user = userStorage.findById(userId)
-                .orElseThrow(() -> new NotFoundException("Пользователь с id " + userId + " не найден в хранилище"));
+        userPurgeQueue.requireNotPending(userId);
 
         // Удаляем лайк
-        reviewStorage.removeReviewLike(review.getId(), user.getId());
+        if (reviewStorage.removeReviewLike(reviewId, userId)) {
+            registerMarkChange(reviewId, userId, null);
+        } else {
+            // Удалять было нечего: проверяем, существуют ли отзыв и пользователь
+            requireReviewAndUserExist(reviewId, userId);
+        }
         log.debug("Лайк от пользователя удален с отзыва на уровне сервиса");
 
         log.debug("Возврат результатов удаления лайка на уровень сервиса");
@@ -266,6 +394,7 @@ public class ReviewService {
      * @param reviewId идентификатор отзыва
      * @param userId идентификатор пользователя
      */
+    @Transactional
     public void addDislike(Long reviewId, Long userId) {
         log.debug("Добавление дизлайка от пользователя с отзыва");
         log.debug("Передан id  отзыва: {}", reviewId);
@@ -279,17 +408,12 @@ public class ReviewService {
             throw new ValidationException("Передан пустой id пользователя");
         }
 
-        // Получаем отзыв из хранилища
-        Review review = reviewStorage.findById(reviewId)
-                .orElseThrow(() -> new NotFoundException("Отзыв с id " + reviewId + " не найден в хранилище"));
-
-        // Получаем пользователя из хранилища
-        User user = userStorage.findById(userId)
-                .orElseThrow(() -> new NotFoundException("Пользователь с id " + userId + " не найден в хранилище"));
+        userPurgeQueue.requireNotPending(userId);
 
-        // Добавляем дизлайк
-        reviewStorage.addReviewDislike(review.getId(), user.getId());
+        // Существование отзыва и пользователя проверяют внешние ключи таблицы оценок
+        reviewStorage.addReviewDislike(reviewId, userId);
         log.debug("Дизлайк от пользователя добавлен к отзыву на уровне сервиса");
+        registerMarkChange(reviewId, userId, false);
 
         log.debug("Возврат результатов добавления дизлайка на уровень контроллера");
     }
@@ -300,6 +424,7 @@ public class ReviewService {
      * @param reviewId идентификатор отзыва
      * @param userId идентификатор пользователя
      */
+    @Transactional
     public void removeDislike(Long reviewId, Long userId) {
         log.debug("Удаление дизлайка от пользователя с отзыва");
         log.debug("Передан  id отзыва: {}", reviewId);
@@ -313,16 +438,15 @@ public class ReviewService {
             throw new ValidationException("Передан пустой id пользователя");
         }
 
-        // Получаем отзыв из хранилища
-        Review review = reviewStorage.findById(reviewId)
-                .orElseThrow(() -> new NotFoundException("Отзыв с id " + reviewId + " не найден в хранилище"));
-
-        // Получаем пользователя из хранилища
-        User user = userStorage.findById(userId)
-                .orElseThrow(() -> new NotFoundException("Пользователь с id " + userId + " не найден в хранилище"));
+        userPurgeQueue.requireNotPending(userId);
 
         // Удаляем дизлайк
-        reviewStorage.removeReviewDislike(review.getId(), user.getId());
+        if (reviewStorage.removeReviewDislike(reviewId, userId)) {
+            registerMarkChange(reviewId, userId, null);
+        } else {
+            // Удалять было нечего: проверяем, существуют ли отзыв и пользователь
+            requireReviewAndUserExist(reviewId, userId);
+        }
         log.debug("Дизлайк от пользователя удален с отзыва на уровне сервиса");
 
         log.debug("Возврат результатов удаления дизлайка на уровень контролера");
@@ -333,6 +457,7 @@ public class ReviewService {
      *
      * @param reviewId идентификатор отзыва
      */
+    @Transactional
     public void deleteReview(Long reviewId) {
         log.debug("Удаление отзыва");
         log.debug("Передан  идентификатор отзыва: {}", reviewId);
@@ -360,12 +485,16 @@ public class ReviewService {
         feedStorage.addFeed(feed);
         log.debug("Событие REVIEW REMOVE зарегистрировано");
 
+        outboxStorage.addEvent(ChangeEvent.of(ChangeEntityTypes.REVIEW, ChangeEvent.keyOf(review.getId()),
+                OperationTypes.REMOVE, null));
+
         log.debug("Возврат результатов удаления отзыва на уровень контроллера");
     }
 
     /**
      * Метод очищает хранилище отзывов
      */
+    @Transactional
     public void clearReviews() {
         log.debug("Удаление всех отзывов на уровне хранилища");
 
@@ -373,11 +502,47 @@ public class ReviewService {
         reviewStorage.clearReviews();
         log.debug("Все отзывы удалены");
 
+        outboxStorage.addEvents(Stream.of(ChangeEntityTypes.REVIEW, ChangeEntityTypes.REVIEW_MARK)
+                .map(entityType -> ChangeEvent.of(entityType, ChangeEvent.ALL_KEYS, OperationTypes.REMOVE, null))
+                .toList());
+
         log.debug("Возврат результатов очистки на уровень контроллера");
     }
 
     /**
-     * Валидация сущности {@link Review} на правильное заполнение ключевых полей
+     * Метод регистрирует в журнале изменений оценку отзыва пользователем
+     *
+     * @param reviewId идентификатор отзыва
+     * @param userId идентификатор пользователя
+     * @param isUseful {@code true} для лайка, {@code false} для дизлайка, {@code null} для удаления оценки
+     */
+    private void registerMarkChange(Long reviewId, Long userId, Boolean isUseful) {
+        String entityKey = ChangeEvent.keyOf(reviewId, userId);
+        outboxStorage.addEvent(isUseful == null
+                ? ChangeEvent.of(ChangeEntityTypes.REVIEW_MARK, entityKey, OperationTypes.REMOVE, null)
+                : ChangeEvent.of(ChangeEntityTypes.REVIEW_MARK, entityKey, OperationTypes.ADD,
+                        Map.of("reviewId", reviewId, "userId", userId, "isUseful", isUseful)));
+    }
+
+    /**
+     * Метод проверяет наличие отзыва и пользователя в хранилище. Используется только там, где запись не дала
+     * результата и нужно отличить отсутствие оценки от отсутствия сущностей
+     *
+     * @param reviewId идентификатор отзыва
+     * @param userId идентификатор пользователя
+     */
+    private void requireReviewAndUserExist(Long reviewId, Long userId) {
+        fanOutExecutor.runAll(
+                () -> reviewStorage.findById(reviewId)
+                        .orElseThrow(() -> new NotFoundException("Отзыв с id " + reviewId + " не найден в хранилище")),
+                () -> userStorage.findById(userId)
+                        .orElseThrow(() -> new NotFoundException(
+                                "Пользователь с id " + userId + " не найден в хранилище")));
+    }
+
+    /**
+     * Валидация сущности {@link Review} на правильное заполнение ключевых полей. Существование пользователя и фильма
+     * проверяют внешние ключи таблицы отзывов при сохранении
      *
      * @param review экземпляр класса {@link Review}
      */
@@ -419,10 +584,7 @@ public class ReviewService {
             throw new ValidationException("Id пользователя должен быть указан");
         }
 
-        User user = userStorage.findById(userId)
-                .orElseThrow(() -> new NotFoundException("Пользователь с id " + userId + " не найден в хранилище"));
-
-        log.debug("Передано корректное значение userId: {}", user.getId());
+        log.debug("Передано корректное значение userId: {}", userId);
         log.debug("Валидация пользователя успешно завершена");
     }
 
@@ -438,10 +600,7 @@ public class ReviewService {
             throw new ValidationException("Id фильма должен быть указан");
         }
 
-        Film film = filmStorage.findById(filmId)
-                .orElseThrow(() -> new NotFoundException("Фильм с id " + filmId + " не найден в хранилище"));
-
-        log.debug("Передано корректное значение filmId: {}", film.getId());
+        log.debug("Передано корректное значение filmId: {}", filmId);
         log.debug("Валидация фильма успешно завершена");
     }
 }
@@ -0,0 +1,89 @@
+package ru.yandex.practicum.filmorate.service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.config.SingleFlightProperties;
+
+/**
+ * Объединение одинаковых одновременных запросов на чтение.
+ * <p>
+ * Вычисления ключуются именем метода и аргументами. Первый вызов выполняет вычисление в своём потоке, а вызовы с тем
+ * же ключом, пришедшие до его окончания, ждут и получают тот же результат или ту же ошибку. Завершённые вычисления не
+ * запоминаются: следующий вызов снова читает БД. Поэтому результат общий только у пересекающихся по времени вызовов и
+ * может не учитывать запись, зафиксированную во время вычисления.
+ * <p>
+ * Внутри изменяющей транзакции вычисление выполняется отдельно: оно должно видеть незафиксированные изменения своей
+ * транзакции и не должно показывать их другим. Ожидающий вызов не должен держать соединение с БД, поэтому методы,
+ * использующие объединение, не открывают транзакцию сами.
+ */
+@Slf4j
+@Component
+public class SingleFlight {
+
+    private final SingleFlightProperties properties;
+    private final ConcurrentMap<Key, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    public SingleFlight(SingleFlightProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Метод выполняет вычисление или присоединяется к уже выполняемому вычислению с тем же ключом
+     *
+     * @param method имя метода
+     * @param computation вычисление
+     * @param args аргументы метода
+     * @return результат вычисления; общий для всех присоединившихся вызовов и не подлежащий изменению
+     */
+    public <T> T execute(String method, Supplier<T> computation, Object... args) {
+        if (!properties.enabled() || (TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly())) {
+            return computation.get();
+        }
+
+        Key key = new Key(method, Arrays.asList(args));
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> running = inFlight.putIfAbsent(key, flight);
+        if (running != null) {
+            log.debug("Вызов {} с аргументами {} присоединился к выполняемому вычислению", method, key.args());
+            return await(running);
+        }
+
+        try {
+            T result = computation.get();
+            flight.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T await(CompletableFuture<Object> flight) {
+        try {
+            return (T) flight.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw e;
+        }
+    }
+
+    private record Key(String method, List<Object> args) {
+    }
+}
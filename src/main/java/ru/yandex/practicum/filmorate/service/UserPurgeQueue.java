@@ -0,0 +1,88 @@
+package ru.yandex.practicum.filmorate.service;
+
+import jakarta.annotation.PreDestroy;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+
+/**
+ * Фоновая очередь удаления пользователей с большим количеством связей.
+ * <p>
+ * Задачи выполняются последовательно в одном потоке, чтобы удаление крупных аккаунтов не конкурировало между собой
+ * за соединения с БД. Повторная постановка в очередь уже ожидающего удаления пользователя игнорируется.
+ */
+@Slf4j
+@Component
+public class UserPurgeQueue {
+
+    private final Set<Long> pendingUserIds = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "user-purge");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Метод ставит удаление пользователя в очередь
+     *
+     * @param userId идентификатор пользователя
+     * @param purge задача удаления
+     * @return {@code true}, если задача поставлена в очередь, и {@code false}, если пользователь уже ожидает удаления
+     */
+    public boolean submit(Long userId, Runnable purge) {
+        if (!pendingUserIds.add(userId)) {
+            log.debug("Пользователь с id {} уже ожидает удаления", userId);
+            return false;
+        }
+
+        executor.execute(() -> {
+            try {
+                purge.run();
+                log.debug("Фоновое удаление пользователя с id {} завершено", userId);
+            } catch (RuntimeException e) {
+                log.error("Не удалось удалить пользователя с id {} в фоновом режиме", userId, e);
+            } finally {
+                pendingUserIds.remove(userId);
+            }
+        });
+        log.debug("Удаление пользователя с id {} поставлено в очередь", userId);
+        return true;
+    }
+
+    /**
+     * Метод проверяет, ожидает ли пользователь фонового удаления
+     *
+     * @param userId идентификатор пользователя
+     * @return {@code true}, если пользователь находится в очереди удаления
+     */
+    public boolean isPending(Long userId) {
+        return pendingUserIds.contains(userId);
+    }
+
+    /**
+     * Метод запрещает запись от имени пользователя, ожидающего фонового удаления: для клиентов он уже удалён, а его
+     * новые связи пришлось бы удалять повторно
+     *
+     * @param userId идентификатор пользователя
+     * @throws NotFoundException если пользователь находится в очереди удаления
+     */
+    public void requireNotPending(Long userId) throws NotFoundException {
+        if (userId != null && isPending(userId)) {
+            throw new NotFoundException("Пользователь с id " + userId + " удаляется");
+        }
+    }
+
+    @PreDestroy
+    void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.warn("Фоновое удаление пользователей не завершено за отведённое время: {}", pendingUserIds);
+            executor.shutdownNow();
+        }
+    }
+}
@@ -5,15 +5,29 @@ import java.sql.Timestamp;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.config.UserPurgeProperties;
 import ru.yandex.practicum.filmorate.dal.feed.FeedStorage;
+import ru.yandex.practicum.filmorate.dal.outbox.OutboxStorage;
 import ru.yandex.practicum.filmorate.dal.user.UserStorage;
 import ru.yandex.practicum.filmorate.dto.feed.FeedDto;
 import ru.yandex.practicum.filmorate.dto.film.FilmDto;
@@ -24,10 +38,14 @@ import ru.yandex.practicum.filmorate.dto.user.UserShortDto;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.mapper.FeedMapper;
 import ru.yandex.practicum.filmorate.mapper.UserMapper;
+import ru.yandex.practicum.filmorate.model.ChangeEvent;
 import ru.yandex.practicum.filmorate.model.Feed;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.enums.ChangeEntityTypes;
 import ru.yandex.practicum.filmorate.model.enums.EventTypes;
 import ru.yandex.practicum.filmorate.model.enums.OperationTypes;
+import ru.yandex.practicum.filmorate.util.LongIntHashMap;
+import ru.yandex.practicum.filmorate.util.TransactionCallbacks;
 
 /**
  * Класс предварительной обработки и валидации сущностей {@link User} на уровне сервиса
@@ -38,9 +56,23 @@ import ru.yandex.practicum.filmorate.model.enums.OperationTypes;
 public class UserService {
 
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd.MM.yyyy");
+    private static final int SUGGESTIONS_FIRST_CIRCLE_LIMIT = 1_000;
+    private static final int SUGGESTIONS_SECOND_CIRCLE_LIMIT = 100_000;
+    private static final int SUGGESTIONS_CACHE_DEPTH = 100;
+    private static final int SUGGESTIONS_CACHE_MAX_USERS = 10_000;
+    private static final double COMMON_LIKE_WEIGHT = 0.5;
+    private static final Comparator<FriendCandidate> CANDIDATE_ORDER = Comparator
+            .comparingDouble(FriendCandidate::score).reversed()
+            .thenComparingLong(FriendCandidate::userId);
     private final UserStorage userStorage;
     private final FeedStorage feedStorage;
+    private final OutboxStorage outboxStorage;
     private final FilmService filmService;
+    private final SingleFlight singleFlight;
+    private final UserPurgeQueue userPurgeQueue;
+    private final UserPurgeProperties purgeProperties;
+    private final TransactionTemplate transactionTemplate;
+    private final Map<Long, List<FriendCandidate>> suggestionsCache = new ConcurrentHashMap<>();
 
     /**
      * Метод возвращает коллекцию {@link UserDto}
@@ -151,12 +183,77 @@ public class UserService {
         return result;
     }
 
+    /**
+     * Метод возвращает коллекцию {@link UserDto}, рекомендуемых пользователю в друзья. Кандидаты ранжируются по
+     * количеству общих друзей и, при необходимости, дополнительно по количеству общих лайков
+     *
+     * @param userId идентификатор пользователя
+     * @param count максимальный размер коллекции
+     * @param byFilms признак учёта общих лайков при ранжировании
+     * @return коллекция рекомендуемых друзей в порядке убывания релевантности
+     * @throws ValidationException в случае ошибок валидации
+     * @throws NotFoundException если пользователь не найден
+     */
+    public Collection<UserDto> findFriendSuggestions(Long userId, Integer count, Boolean byFilms)
+            throws ValidationException, NotFoundException {
+        log.debug("Запрос рекомендаций друзей на уровне сервиса");
+        log.debug("Передан id пользователя для рекомендаций друзей: {}", userId);
+        log.debug("Передан размер коллекции рекомендаций друзей: {}", count);
+
+        if (userId == null) {
+            throw new ValidationException("Передан пустой userId");
+        }
+
+        if (count == null || count <= 0) {
+            throw new ValidationException("Размер коллекции должен быть больше нуля");
+        }
+
+        User user = userStorage.findById(userId)
+                .orElseThrow(() -> new NotFoundException("Пользователь с id " + userId + " не найден в хранилище"));
+
+        // Получаем кандидатов, ранжированных по количеству общих друзей
+        List<FriendCandidate> candidates = findFriendCandidates(user.getId(), count);
+        log.debug("Для пользователя с id {} найдено {} кандидатов в друзья", user.getId(), candidates.size());
+
+        // Учитываем общие лайки
+        if (Boolean.TRUE.equals(byFilms) && !candidates.isEmpty()) {
+            candidates = rankByCommonLikes(user.getId(), candidates);
+            log.debug("Кандидаты в друзья переранжированы с учётом общих лайков");
+        }
+
+        List<Long> ids = candidates.stream().limit(count).map(FriendCandidate::userId).toList();
+        if (ids.isEmpty()) {
+            log.debug("Рекомендации друзей для пользователя с id {} не найдены", user.getId());
+            return List.of();
+        }
+
+        // Получаем пользователей одним запросом и восстанавливаем порядок ранжирования
+        Map<Long, User> users = userStorage.findByIds(ids).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        Collection<UserDto> result = ids.stream()
+                .map(users::get)
+                .filter(Objects::nonNull)
+                .map(UserMapper::mapToUserDto)
+                .toList();
+
+        // Перебираем полученную коллекцию
+        for (UserDto model : result) {
+            // Заполняем коллекции
+            completeDto(model);
+        }
+        log.debug("Коллекция рекомендаций друзей преобразована. Размер коллекции {}", result.size());
+
+        log.debug("Возврат рекомендаций друзей на уровень контроллера");
+        return result;
+    }
+
     /**
      * Метод возвращает коллекцию рекомендаций {@link FilmDto} для пользователя
      *
      * @param userId идентификатор пользователя
      * @return коллекция фильмов для просмотра
      */
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public Collection<FilmDto> findUserRecommendations(Long userId) {
         log.debug("Запрос рекомендаций на уровне сервиса");
         log.debug("Передан идентификатор пользователя: {}", userId);
@@ -165,6 +262,11 @@ public class UserService {
             throw new ValidationException("Id пользователя должен быть указан");
         }
 
+        return singleFlight.execute("UserService.findUserRecommendations", () -> loadUserRecommendations(userId),
+                userId);
+    }
+
+    private Collection<FilmDto> loadUserRecommendations(Long userId) {
         User user = userStorage.findById(userId)
                 .orElseThrow(() -> new NotFoundException("Пользователь с id " + userId + " не найден"));
 
@@ -240,6 +342,7 @@ public class UserService {
      * @return сохраненный экземпляр класса {@link UserDto}
      * @throws ValidationException в случае ошибок валидации
      */
+    @Transactional
     public UserDto create(NewUserRequest request) throws ValidationException {
         log.debug("Создание пользователя на уровне сервиса");
 
@@ -261,6 +364,9 @@ public class UserService {
         completeDto(result);
         log.debug("Сохраненная модель преобразована");
 
+        outboxStorage.addEvent(ChangeEvent.of(ChangeEntityTypes.USER, ChangeEvent.keyOf(result.getId()),
+                OperationTypes.ADD, result));
+
         log.debug("Возврат результата добавления на уровень контроллера");
         return result;
     }
@@ -274,6 +380,7 @@ public class UserService {
      * @throws ValidationException в случае ошибок валидации
      * @throws NotFoundException если пользователь для обновления не найден
      */
+    @Transactional
     public UserDto update(UpdateUserRequest request) throws ValidationException, NotFoundException {
         log.debug("Обновление пользователя на уровне сервиса");
 
@@ -281,6 +388,7 @@ public class UserService {
             throw new ValidationException("Id должен быть указан");
         }
         log.debug("Передан пользователь с id: {}", request.getId());
+        userPurgeQueue.requireNotPending(request.getId());
 
         // Получаем пользователя из хранилища
         User existingUser = userStorage.findById(request.getId()).orElseThrow(
@@ -300,12 +408,16 @@ public class UserService {
 
         // Сохраняем изменения
         updatedUser = userStorage.updateUser(updatedUser);
+        evictFriendSuggestions(updatedUser.getId());
 
         UserDto result = UserMapper.mapToUserDto(updatedUser);
         // Заполняем коллекции
         completeDto(result);
         log.debug("Обновленная модель преобразована");
 
+        outboxStorage.addEvent(ChangeEvent.of(ChangeEntityTypes.USER, ChangeEvent.keyOf(result.getId()),
+                OperationTypes.UPDATE, result));
+
         log.debug("Возврат результата обновления на уровень контроллера");
         return result;
     }
@@ -319,6 +431,7 @@ public class UserService {
      * @throws NotFoundException если один из пользователей не найден
      * @throws RuntimeException при ошибке добавления друга
      */
+    @Transactional
     public void addFriend(Long userId, Long friendId) throws ValidationException, NotFoundException, RuntimeException {
         log.debug("Добавление друзей на уровне сервиса");
 
@@ -330,22 +443,17 @@ public class UserService {
             throw new ValidationException("Передан пустой friendId");
         }
 
-        // Получаем основного пользователя
-        User user = userStorage.findById(userId)
-                .orElseThrow(() -> new NotFoundException("Пользователь с id " + userId + " не найден в хранилище"));
+        userPurgeQueue.requireNotPending(userId);
+        userPurgeQueue.requireNotPending(friendId);
 
-        // Получаем добавляемого друга
-        User friend = userStorage.findById(friendId)
-                .orElseThrow(() -> new NotFoundException("Пользователь с id " + friendId + " не найден в хранилище"));
-
-        // Если все пользователи успешно получены
-        if (user != null && friend != null) {
-            // Добавляем пользователю друга в друзья
-            log.debug("Добавляем друга с id {} в коллекцию пользователя с id {}", friendId, userId);
-            userStorage.addFriend(userId, friendId);
-        } else {
-            throw new RuntimeException("Во время добавления в друзья произошла непредвиденная ошибка");
+        // Существование пользователей проверяют внешние ключи таблицы дружбы
+        log.debug("Добавляем друга с id {} в коллекцию пользователя с id {}", friendId, userId);
+        if (!userStorage.addFriend(userId, friendId)) {
+            // Повторное добавление ничего не меняет и не попадает ни в ленту, ни в журнал изменений
+            log.debug("Пользователь с id {} уже в друзьях пользователя с id {}", friendId, userId);
+            return;
         }
+        evictFriendSuggestions(userId);
 
         log.debug("Регистрируем событие FRIEND ADD");
         Feed feed = Feed.builder()
@@ -358,6 +466,9 @@ public class UserService {
         feedStorage.addFeed(feed);
         log.debug("Событие FRIEND ADD зарегистрировано");
 
+        outboxStorage.addEvent(ChangeEvent.of(ChangeEntityTypes.FRIEND, ChangeEvent.keyOf(userId, friendId),
+                OperationTypes.ADD, Map.of("userId", userId, "friendId", friendId)));
+
         log.debug("Возвращаем результат добавления на уровень контроллера");
     }
 
@@ -369,6 +480,7 @@ public class UserService {
      * @throws ValidationException в случае ошибок валидации
      * @throws NotFoundException если один из пользователей не найден
      */
+    @Transactional
     public void removeFriend(Long userId, Long friendId) throws ValidationException, NotFoundException {
         log.debug("Удаление друзей на уровне сервиса");
 
@@ -380,21 +492,16 @@ public class UserService {
             throw new ValidationException("Передан пустой friendId");
         }
 
-        // Проверяем наличие пользователя
-        User user = userStorage.findById(userId)
-                .orElseThrow(() -> new NotFoundException("Пользователь с id " + userId + " не найден в хранилище"));
-
-        // Проверяем наличие друга
-        User friend = userStorage.findById(friendId)
-                .orElseThrow(() -> new NotFoundException("Пользователь с id " + friendId + " не найден в хранилище"));
+        userPurgeQueue.requireNotPending(userId);
+        userPurgeQueue.requireNotPending(friendId);
 
-        // Если все пользователи успешно получены
-        if (user != null && friend != null) {
-            // Удаляем из друзей пользователя друга
-            log.debug("Удаляем друга с id {} из друзей пользователя с id {}", friend.getId(), user.getId());
-            userStorage.removeFriend(user.getId(), friend.getId());
+        log.debug("Удаляем друга с id {} из друзей пользователя с id {}", friendId, userId);
+        if (userStorage.removeFriend(userId, friendId)) {
+            evictFriendSuggestions(userId);
         } else {
-            throw new RuntimeException("Во время удаления из друзей произошла непредвиденная ошибка");
+            // Удалять было нечего: проверяем, существуют ли пользователи
+            requireUserExists(userId);
+            requireUserExists(friendId);
         }
 
         log.debug("Регистрируем событие FRIEND REMOVE");
@@ -408,16 +515,23 @@ public class UserService {
         feedStorage.addFeed(feed);
         log.debug("Событие FRIEND REMOVE зарегистрировано");
 
+        outboxStorage.addEvent(ChangeEvent.of(ChangeEntityTypes.FRIEND, ChangeEvent.keyOf(userId, friendId),
+                OperationTypes.REMOVE, null));
+
         log.debug("Возвращаем результат удаления на уровень контроллера");
     }
 
     /**
-     * Метод удаляет пользователя и все его связи из хранилища
+     * Метод удаляет пользователя и все его связи из хранилища. Пользователи, у которых удаляемый пользователь был в
+     * друзьях, получают событие FRIEND REMOVE. Пользователи с количеством связей не меньше порога фонового удаления
+     * удаляются через {@link UserPurgeQueue}
      *
      * @param userId идентификатор пользователя
+     * @return {@code true}, если пользователь удалён, и {@code false}, если удаление выполняется в фоне
      * @throws NotFoundException если пользователь не найден
      */
-    public void deleteUser(Long userId) throws NotFoundException {
+    @Transactional
+    public boolean deleteUser(Long userId) throws NotFoundException {
         log.debug("Удаление пользователя на уровне сервиса");
 
         if (userId == null) {
@@ -428,33 +542,42 @@ public class UserService {
         User user = userStorage.findById(userId)
                 .orElseThrow(() -> new NotFoundException("Пользователь с id " + userId + " не найден в хранилище"));
         log.debug("В хранилище найден пользователь с  id  {} ", user.getId());
+        if (userPurgeQueue.isPending(user.getId())) {
+            log.debug("Пользователь с id {} уже удаляется в фоне", user.getId());
+            return false;
+        }
 
-        // Получаем друзей пользователя
-        Collection<Long> friends = user.getFriends().stream().toList();
-
-        // Проверяем наличие друзей
-        if (!friends.isEmpty()) {
-            // Если друзья есть
-            log.debug("У пользователя есть друзья");
-            for (Long friendId : friends) {
-                // Удаляем дружбу с пользователем
-                removeFriend(friendId, user.getId());
-            }
+        // Крупные аккаунты удаляем в фоне порциями
+        if (purgeProperties.asyncThreshold() > 0
+                && userStorage.countLinks(user.getId()) >= purgeProperties.asyncThreshold()) {
+            log.debug("Количество связей пользователя превышает порог, удаление будет выполнено в фоне");
+            // Фоновое удаление начинается только после фиксации текущей транзакции
+            Long purgedUserId = user.getId();
+            TransactionCallbacks.afterCommit(() -> userPurgeQueue.submit(purgedUserId, () -> purgeUser(purgedUserId)));
+            return false;
         }
-        // Удаляем пользователя
-        userStorage.deleteUser(user.getId());
+
+        removeUser(user.getId());
 
         log.debug("Возврат результата удаления на уровень контроллера");
+        return true;
     }
 
     /**
      * Метод очищает хранилище пользователей
      */
+    @Transactional
     public void clearUsers() {
         log.debug("Очистка списка пользователей на уровне сервиса");
 
         // Очищаем хранилище
         userStorage.clearUsers();
+        clearFriendSuggestions();
+
+        outboxStorage.addEvents(Stream.of(ChangeEntityTypes.USER, ChangeEntityTypes.LIKE, ChangeEntityTypes.FRIEND,
+                        ChangeEntityTypes.REVIEW, ChangeEntityTypes.REVIEW_MARK)
+                .map(entityType -> ChangeEvent.of(entityType, ChangeEvent.ALL_KEYS, OperationTypes.REMOVE, null))
+                .toList());
 
         log.debug("Возврат результата очистки на уровень контроллера");
     }
@@ -502,12 +625,6 @@ public class UserService {
             throw new ValidationException("Передан неправильный почтовый адрес: " + user.getEmail());
         }
 
-        // Почта не должна быть ранее использована
-        boolean exists = userStorage.isMailAlreadyUsed(user);
-
-        if (exists) {
-            throw new ValidationException("Электронная почта " + user.getEmail() + " уже используется");
-        }
         log.debug("Передано корректное значение email: {}", user.getEmail());
         log.debug("Валидация электронной успешно почты завершена");
     }
@@ -531,13 +648,6 @@ public class UserService {
             throw new ValidationException("Логин не должен содержать пробелы: " + user.getLogin());
         }
 
-        // Логин не должен быть ранее использован
-        boolean exists = userStorage.isLoginAlreadyUsed(user);
-
-        if (exists) {
-            log.warn("Логин {} уже используется другим пользователем", user.getLogin());
-            throw new ValidationException("Логин " + user.getLogin() + " уже используется");
-        }
         log.debug("Передано корректное значение login: {}", user.getLogin());
         log.debug("Валидация логина успешно завершена");
     }
@@ -614,6 +724,184 @@ public class UserService {
         log.debug("Полученная коллекция друзей установлена пользователю");
     }
 
+    /**
+     * Метод удаляет пользователя набором запросов по таблицам связей и регистрирует события FRIEND REMOVE одним пакетом
+     * для пользователей, у которых удаляемый пользователь был в друзьях
+     *
+     * @param userId идентификатор пользователя
+     */
+    private void removeUser(Long userId) {
+        // Получаем пользователей, у которых удаляемый пользователь находится в друзьях
+        Collection<Long> followerIds = userStorage.findFollowerIds(userId);
+        log.debug("Удаляемый пользователь находится в друзьях у {} пользователей", followerIds.size());
+
+        // Удаляем пользователя со всеми связями
+        userStorage.deleteUser(userId);
+        clearFriendSuggestions();
+
+        log.debug("Регистрируем события FRIEND REMOVE");
+        Timestamp timestamp = Timestamp.from(Instant.now());
+        List<Feed> feeds = followerIds.stream()
+                .map(followerId -> Feed.builder()
+                        .entityId(userId)
+                        .userId(followerId)
+                        .timestamp(timestamp)
+                        .eventType(EventTypes.FRIEND)
+                        .operationType(OperationTypes.REMOVE)
+                        .build())
+                .toList();
+        feedStorage.addFeeds(feeds);
+        log.debug("Зарегистрировано {} событий FRIEND REMOVE", feeds.size());
+
+        // Лайки, дружба и отзывы пользователя удаляются вместе с ним, отдельные изменения для них не регистрируются
+        outboxStorage.addEvent(ChangeEvent.of(ChangeEntityTypes.USER, ChangeEvent.keyOf(userId),
+                OperationTypes.REMOVE, null));
+    }
+
+    /**
+     * Метод удаляет связи пользователя порциями, после чего удаляет самого пользователя. Используется фоновой очередью,
+     * чтобы не удерживать блокировки на время удаления всех связей крупного аккаунта. Каждая порция выполняется в
+     * своей транзакции, поэтому сбой оставляет связи удалёнными целыми порциями
+     *
+     * @param userId идентификатор пользователя
+     */
+    private void purgeUser(Long userId) {
+        log.debug("Фоновое удаление связей пользователя с id {}", userId);
+
+        Long deletedRows;
+        do {
+            deletedRows = transactionTemplate.execute(status ->
+                    userStorage.purgeLinks(userId, purgeProperties.batchSize()));
+        } while (deletedRows != null && deletedRows > 0);
+
+        transactionTemplate.executeWithoutResult(status -> removeUser(userId));
+    }
+
+    /**
+     * Метод возвращает кандидатов в друзья, ранжированных по количеству общих друзей. Результат для запросов, не
+     * превышающих глубину кеша, кешируется до изменения дружбы пользователя или его друзей. При заполнении кеш
+     * очищается целиком
+     *
+     * @param userId идентификатор пользователя
+     * @param count запрошенный размер коллекции
+     * @return упорядоченная коллекция кандидатов
+     */
+    private List<FriendCandidate> findFriendCandidates(Long userId, int count) {
+        if (count > SUGGESTIONS_CACHE_DEPTH) {
+            log.debug("Запрошено больше кандидатов, чем хранится в кеше. Кандидаты будут рассчитаны заново");
+            return computeFriendCandidates(userId, count);
+        }
+
+        if (suggestionsCache.size() >= SUGGESTIONS_CACHE_MAX_USERS && !suggestionsCache.containsKey(userId)) {
+            log.debug("Кеш рекомендаций друзей заполнен и очищен");
+            suggestionsCache.clear();
+        }
+        return suggestionsCache.computeIfAbsent(userId,
+                id -> computeFriendCandidates(id, SUGGESTIONS_CACHE_DEPTH));
+    }
+
+    /**
+     * Метод рассчитывает кандидатов в друзья обходом друзей второго круга. Сам пользователь и все его друзья
+     * исключаются при обходе. Количество общих друзей накапливается в примитивной хеш-таблице, лучшие кандидаты
+     * отбираются кучей ограниченного размера
+     *
+     * @param userId идентификатор пользователя
+     * @param depth максимальное количество кандидатов
+     * @return упорядоченная коллекция кандидатов
+     */
+    private List<FriendCandidate> computeFriendCandidates(Long userId, int depth) {
+        log.debug("Расчёт кандидатов в друзья для пользователя с id {}", userId);
+
+        // Подсчитываем общих друзей для пользователей второго круга
+        LongIntHashMap mutualCounts = new LongIntHashMap();
+        userStorage.forEachFriendOfFriends(userId, SUGGESTIONS_FIRST_CIRCLE_LIMIT, SUGGESTIONS_SECOND_CIRCLE_LIMIT,
+                candidateId -> mutualCounts.increment(candidateId, 1));
+        log.debug("Во втором круге найдено {} пользователей", mutualCounts.size());
+
+        // Отбираем лучших кандидатов: в вершине кучи находится худший из отобранных
+        PriorityQueue<FriendCandidate> heap = new PriorityQueue<>(depth + 1, CANDIDATE_ORDER.reversed());
+        mutualCounts.forEach((candidateId, mutualFriends) -> {
+            heap.offer(new FriendCandidate(candidateId, mutualFriends, mutualFriends));
+            if (heap.size() > depth) {
+                heap.poll();
+            }
+        });
+
+        List<FriendCandidate> result = new ArrayList<>(heap);
+        result.sort(CANDIDATE_ORDER);
+
+        log.debug("Расчёт кандидатов в друзья завершён");
+        return List.copyOf(result);
+    }
+
+    /**
+     * Метод переранжирует кандидатов в друзья с учётом количества фильмов, понравившихся и пользователю, и кандидату
+     *
+     * @param userId идентификатор пользователя
+     * @param candidates кандидаты, ранжированные по количеству общих друзей
+     * @return упорядоченная коллекция кандидатов
+     */
+    private List<FriendCandidate> rankByCommonLikes(Long userId, List<FriendCandidate> candidates) {
+        List<Long> candidateIds = candidates.stream().map(FriendCandidate::userId).toList();
+        LongIntHashMap commonLikes = userStorage.countCommonLikes(userId, candidateIds);
+
+        return candidates.stream()
+                .map(candidate -> new FriendCandidate(candidate.userId(), candidate.mutualFriends(),
+                        candidate.mutualFriends() + COMMON_LIKE_WEIGHT * commonLikes.get(candidate.userId(), 0)))
+                .sorted(CANDIDATE_ORDER)
+                .toList();
+    }
+
+    /**
+     * Метод проверяет наличие пользователя в хранилище. Используется только там, где запись не дала результата и
+     * нужно отличить отсутствие связи от отсутствия пользователя
+     *
+     * @param userId идентификатор пользователя
+     * @throws NotFoundException если пользователь не найден
+     */
+    private void requireUserExists(Long userId) throws NotFoundException {
+        userStorage.findById(userId)
+                .orElseThrow(() -> new NotFoundException("Пользователь с id " + userId + " не найден в хранилище"));
+    }
+
+    /**
+     * Метод сбрасывает кешированные рекомендации друзей, зависящие от списка друзей пользователя: его собственные и
+     * пользователей, у которых он находится в друзьях. После фиксации транзакции сброс повторяется: рекомендации,
+     * посчитанные параллельно до фиксации, опираются на прежний список друзей
+     *
+     * @param userId идентификатор пользователя, у которого изменился список друзей
+     */
+    private void evictFriendSuggestions(Long userId) {
+        if (suggestionsCache.isEmpty()) {
+            TransactionCallbacks.onCompletion(suggestionsCache::clear, () -> { });
+            return;
+        }
+
+        List<Long> affectedIds = new ArrayList<>(userStorage.findFollowerIds(userId));
+        affectedIds.add(userId);
+        affectedIds.forEach(suggestionsCache::remove);
+        TransactionCallbacks.onCompletion(() -> affectedIds.forEach(suggestionsCache::remove), () -> { });
+        log.debug("Сброшены рекомендации друзей, зависящие от пользователя с id {}", userId);
+    }
+
+    /**
+     * Метод сбрасывает все кешированные рекомендации друзей сейчас и после фиксации текущей транзакции
+     */
+    private void clearFriendSuggestions() {
+        suggestionsCache.clear();
+        TransactionCallbacks.onCompletion(suggestionsCache::clear, () -> { });
+    }
+
+    /**
+     * Кандидат в друзья
+     *
+     * @param userId идентификатор пользователя-кандидата
+     * @param mutualFriends количество общих друзей
+     * @param score итоговая оценка релевантности
+     */
+    private record FriendCandidate(long userId, int mutualFriends, double score) {
+    }
+
     /**
      * Метод очищает поля пользователя от мусорных символов
      *
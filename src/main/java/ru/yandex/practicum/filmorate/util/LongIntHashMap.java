@@ -0,0 +1,221 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.Arrays;
+
+/**
+ * Хеш-таблица с открытой адресацией для пар "long-ключ — int-значение" без упаковки примитивов.
+ * <p>
+ * Используется для подсчётов по идентификаторам сущностей, когда количество ключей заранее неизвестно, а создание
+ * объектов {@link Long} и {@link Integer} на каждый инкремент нежелательно. Класс не потокобезопасен.
+ */
+public final class LongIntHashMap {
+
+    private static final long EMPTY_KEY = Long.MIN_VALUE;
+    private static final float LOAD_FACTOR = 0.5f;
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private int resizeThreshold;
+
+    /**
+     * Создаёт таблицу с ёмкостью по умолчанию
+     */
+    public LongIntHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Создаёт таблицу, рассчитанную на указанное количество ключей без перестроения
+     *
+     * @param expectedSize ожидаемое количество ключей
+     */
+    public LongIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(MIN_CAPACITY, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Метод увеличивает значение по ключу на переданную величину. Отсутствующий ключ считается равным нулю
+     *
+     * @param key ключ
+     * @param delta величина приращения
+     * @return значение после приращения
+     */
+    public int increment(long key, int delta) {
+        checkKey(key);
+        int index = indexOf(key);
+        if (keys[index] == key) {
+            values[index] += delta;
+            return values[index];
+        }
+
+        keys[index] = key;
+        values[index] = delta;
+        if (++size > resizeThreshold) {
+            rehash(keys.length << 1);
+        }
+        return delta;
+    }
+
+    /**
+     * Метод устанавливает значение по ключу
+     *
+     * @param key ключ
+     * @param value значение
+     */
+    public void put(long key, int value) {
+        checkKey(key);
+        int index = indexOf(key);
+        if (keys[index] != key) {
+            keys[index] = key;
+            if (++size > resizeThreshold) {
+                values[index] = value;
+                rehash(keys.length << 1);
+                return;
+            }
+        }
+        values[index] = value;
+    }
+
+    /**
+     * Метод возвращает значение по ключу
+     *
+     * @param key ключ
+     * @param defaultValue значение, возвращаемое при отсутствии ключа
+     * @return найденное значение или {@code defaultValue}
+     */
+    public int get(long key, int defaultValue) {
+        if (key == EMPTY_KEY) {
+            return defaultValue;
+        }
+        int index = indexOf(key);
+        return keys[index] == key ? values[index] : defaultValue;
+    }
+
+    /**
+     * Метод удаляет ключ из таблицы. Следующие за ним ключи той же цепочки сдвигаются назад, поэтому поиск по-прежнему
+     * останавливается на первой пустой ячейке
+     *
+     * @param key ключ
+     * @return {@code true}, если ключ присутствовал
+     */
+    public boolean remove(long key) {
+        if (key == EMPTY_KEY) {
+            return false;
+        }
+        int mask = keys.length - 1;
+        int index = indexOf(key);
+        if (keys[index] != key) {
+            return false;
+        }
+
+        int next = (index + 1) & mask;
+        while (keys[next] != EMPTY_KEY) {
+            int home = mix(keys[next]) & mask;
+            // Ключ можно перенести в освободившуюся ячейку, если она лежит на пути от его исходной ячейки к текущей
+            if (((next - home) & mask) >= ((next - index) & mask)) {
+                keys[index] = keys[next];
+                values[index] = values[next];
+                index = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[index] = EMPTY_KEY;
+        size--;
+        return true;
+    }
+
+    /**
+     * Метод проверяет наличие ключа в таблице
+     *
+     * @param key ключ
+     * @return {@code true}, если ключ присутствует
+     */
+    public boolean containsKey(long key) {
+        return key != EMPTY_KEY && keys[indexOf(key)] == key;
+    }
+
+    /**
+     * Метод возвращает количество ключей в таблице
+     *
+     * @return количество ключей
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Метод проверяет таблицу на пустоту
+     *
+     * @return {@code true}, если таблица не содержит ключей
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Метод последовательно передаёт все пары "ключ — значение" обработчику
+     *
+     * @param consumer обработчик пар
+     */
+    public void forEach(Entry consumer) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY_KEY) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    /**
+     * Обработчик пары "ключ — значение" без упаковки примитивов
+     */
+    @FunctionalInterface
+    public interface Entry {
+
+        void accept(long key, int value);
+    }
+
+    private int indexOf(long key) {
+        int mask = keys.length - 1;
+        int index = mix(key) & mask;
+        while (keys[index] != EMPTY_KEY && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY_KEY) {
+                int index = indexOf(oldKeys[i]);
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+                size++;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY_KEY);
+        values = new int[capacity];
+        size = 0;
+        resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static void checkKey(long key) {
+        if (key == EMPTY_KEY) {
+            throw new IllegalArgumentException("Значение " + key + " зарезервировано и не может быть ключом");
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * Сущности, уже загруженные по идентификатору в рамках текущего HTTP-запроса.
+ * <p>
+ * Хранилища пропускают через карту свои методы findById, поэтому повторный поиск той же сущности в одном запросе
+ * возвращает уже загруженный экземпляр, в том числе пустой результат. Карта хранится в атрибутах запроса и пропадает
+ * вместе с ним. Запись сущности удаляет её из карты, а откат транзакции с записями очищает карту целиком: следующий
+ * поиск снова читает БД. Вне HTTP-запроса, например в фоновых задачах, карта не используется.
+ * <p>
+ * Возвращаемые экземпляры общие для всего запроса: изменять их можно только перед записью в хранилище.
+ */
+@Slf4j
+public final class RequestIdentityMap {
+
+    private static final String ATTRIBUTE = RequestIdentityMap.class.getName();
+    // Карта запроса, переданная в поток подзапроса
+    private static final ThreadLocal<Map<Key, Optional<?>>> FORKED = new ThreadLocal<>();
+
+    private RequestIdentityMap() {
+    }
+
+    /**
+     * Метод возвращает сущность из карты текущего запроса, а при её отсутствии загружает и запоминает
+     *
+     * @param type класс сущности
+     * @param id идентификатор сущности
+     * @param loader загрузка сущности из БД
+     * @return результат поиска
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> Optional<T> find(Class<T> type, Long id, Supplier<Optional<T>> loader) {
+        Map<Key, Optional<?>> entities = current(true);
+        if (entities == null || id == null) {
+            return loader.get();
+        }
+
+        Key key = new Key(type, id);
+        Optional<?> loaded = entities.get(key);
+        if (loaded != null) {
+            log.debug("{} с id {} уже загружен в текущем запросе", type.getSimpleName(), id);
+            return (Optional<T>) loaded;
+        }
+
+        Optional<T> result = loader.get();
+        entities.putIfAbsent(key, result);
+        return result;
+    }
+
+    /**
+     * Метод удаляет сущность из карты текущего запроса. Вызывается хранилищами при записи сущности
+     *
+     * @param type класс сущности
+     * @param id идентификатор сущности
+     */
+    public static void evict(Class<?> type, Long id) {
+        Map<Key, Optional<?>> entities = current(false);
+        if (entities != null) {
+            entities.remove(new Key(type, id));
+            clearOnRollback(entities);
+        }
+    }
+
+    /**
+     * Метод удаляет из карты текущего запроса все сущности класса. Вызывается при массовых и каскадных изменениях
+     *
+     * @param type класс сущностей
+     */
+    public static void evictAll(Class<?> type) {
+        Map<Key, Optional<?>> entities = current(false);
+        if (entities != null) {
+            entities.keySet().removeIf(key -> key.type() == type);
+            clearOnRollback(entities);
+        }
+    }
+
+    /**
+     * Метод привязывает подзапрос к карте текущего запроса, чтобы подзапрос, выполненный в другом потоке, видел
+     * загруженные сущности и пополнял их
+     *
+     * @param task подзапрос
+     * @return подзапрос, выполняемый с картой текущего запроса
+     */
+    public static <T> Supplier<T> propagate(Supplier<T> task) {
+        Map<Key, Optional<?>> entities = current(true);
+        if (entities == null) {
+            return task;
+        }
+
+        return () -> {
+            Map<Key, Optional<?>> previous = FORKED.get();
+            FORKED.set(entities);
+            try {
+                return task.get();
+            } finally {
+                if (previous == null) {
+                    FORKED.remove();
+                } else {
+                    FORKED.set(previous);
+                }
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<Key, Optional<?>> current(boolean create) {
+        Map<Key, Optional<?>> forked = FORKED.get();
+        if (forked != null) {
+            return forked;
+        }
+
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return null;
+        }
+
+        Map<Key, Optional<?>> entities =
+                (Map<Key, Optional<?>>) attributes.getAttribute(ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (entities == null && create) {
+            entities = new ConcurrentHashMap<>();
+            attributes.setAttribute(ATTRIBUTE, entities, RequestAttributes.SCOPE_REQUEST);
+        }
+        return entities;
+    }
+
+    private static void clearOnRollback(Map<Key, Optional<?>> entities) {
+        // Сущности, загруженные после записи, могли увидеть незафиксированные изменения
+        TransactionCallbacks.onCompletion(() -> { }, entities::clear);
+    }
+
+    private record Key(Class<?> type, Long id) {
+    }
+}
@@ -0,0 +1,59 @@
+package ru.yandex.practicum.filmorate.util;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Действия, привязанные к завершению текущей транзакции.
+ * <p>
+ * Используется для структур в памяти, которые повторяют содержимое БД: они не должны расходиться с данными после
+ * отката и не должны раньше фиксации отдавать читателям то, чего в БД ещё нет. Вне транзакции действия выполняются
+ * сразу.
+ */
+public final class TransactionCallbacks {
+
+    private TransactionCallbacks() {
+    }
+
+    /**
+     * Метод выполняет действие после фиксации текущей транзакции или сразу, если транзакции нет
+     *
+     * @param action действие
+     */
+    public static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    /**
+     * Метод регистрирует действия на завершение текущей транзакции. Вне транзакции ничего не делает
+     *
+     * @param onCommit действие после фиксации
+     * @param onRollback действие после отката
+     */
+    public static void onCompletion(Runnable onCommit, Runnable onRollback) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    onCommit.run();
+                } else {
+                    onRollback.run();
+                }
+            }
+        });
+    }
+}
@@ -1,18 +1,3 @@
--- Удаление таблиц (Важен порядок удаления таблиц)
-DROP TABLE IF EXISTS FILMS_GENRES;
-DROP TABLE IF EXISTS GENRES;
-DROP TABLE IF EXISTS USERS_FILMS;
-DROP TABLE IF EXISTS FRIENDS;
-DROP TABLE IF EXISTS USERS_REVIEWS;
-DROP TABLE IF EXISTS REVIEWS;
-DROP TABLE IF EXISTS FILMS_DIRECTORS;
-DROP TABLE IF EXISTS DIRECTORS;
-DROP TABLE IF EXISTS FILMS;
-DROP TABLE IF EXISTS FEED;
-DROP TABLE IF EXISTS USERS;
-DROP TABLE IF EXISTS RATINGS;
-
-
 -- Создание таблиц
 CREATE TABLE IF NOT EXISTS RATINGS (
 	ID INTEGER NOT NULL AUTO_INCREMENT,
@@ -40,6 +25,7 @@ CREATE TABLE IF NOT EXISTS FILMS (
 	RELEASE_DATE DATE,
 	DURATION INTEGER,
 	RATING_ID INTEGER,
+	CHANGE_VERSION BIGINT DEFAULT 0 NOT NULL,
 	CONSTRAINT FILMS_PK PRIMARY KEY (ID),
 	CONSTRAINT FILMS_RATINGS_FK FOREIGN KEY (RATING_ID) REFERENCES RATINGS(ID) ON DELETE SET NULL,
 	CONSTRAINT FILMS_DURATION_CHK CHECK (DURATION > 0)
@@ -51,6 +37,8 @@ COMMENT ON COLUMN FILMS.DESCRIPTION IS 'Описание';
 COMMENT ON COLUMN FILMS.RELEASE_DATE IS 'Дата релиза';
 COMMENT ON COLUMN FILMS.DURATION IS 'Длительность';
 COMMENT ON COLUMN FILMS.RATING_ID IS 'Идентификатор рейтинга';
+COMMENT ON COLUMN FILMS.CHANGE_VERSION IS 'Версия последнего изменения фильма, его жанров или режиссеров';
+CREATE INDEX IF NOT EXISTS FILMS_CHANGE_VERSION_IDX ON FILMS (CHANGE_VERSION);
 
 CREATE TABLE IF NOT EXISTS FILMS_GENRES (
 	FILM_ID INTEGER NOT NULL,
@@ -65,8 +53,8 @@ COMMENT ON COLUMN FILMS_GENRES.GENRE_ID IS 'Идентификатор жанр
 
 CREATE TABLE IF NOT EXISTS USERS (
 	ID INTEGER NOT NULL AUTO_INCREMENT,
-	EMAIL CHARACTER(256) NOT NULL,
-	LOGIN CHARACTER(256) NOT NULL,
+	EMAIL VARCHAR_IGNORECASE(256) NOT NULL,
+	LOGIN VARCHAR_IGNORECASE(256) NOT NULL,
 	FULL_NAME CHARACTER VARYING,
 	BIRTHDAY DATE NOT NULL,
 	CONSTRAINT USERS_PK PRIMARY KEY (ID),
@@ -96,6 +84,23 @@ COMMENT ON COLUMN USERS_FILMS.USER_ID IS 'Идентификатор польз
 COMMENT ON COLUMN USERS_FILMS.FILM_ID IS 'Идентификатор фильма';
 COMMENT ON COLUMN USERS_FILMS.MARK IS 'Оценка фильма';
 
+CREATE TABLE IF NOT EXISTS FILM_STATS (
+	FILM_ID INTEGER NOT NULL,
+	LIKES_COUNT INTEGER DEFAULT 0 NOT NULL,
+	MARK_SUM DOUBLE PRECISION DEFAULT 0 NOT NULL,
+	MARK_COUNT INTEGER DEFAULT 0 NOT NULL,
+	RATE DOUBLE PRECISION GENERATED ALWAYS AS (CASE WHEN MARK_COUNT > 0 THEN MARK_SUM / MARK_COUNT ELSE 0 END),
+	CONSTRAINT FILM_STATS_PK PRIMARY KEY (FILM_ID),
+	CONSTRAINT FILM_STATS_FILMS_FK FOREIGN KEY (FILM_ID) REFERENCES FILMS(ID) ON DELETE CASCADE
+);
+CREATE INDEX IF NOT EXISTS FILM_STATS_RATE_LIKES_IDX ON FILM_STATS (RATE DESC, LIKES_COUNT DESC, FILM_ID);
+COMMENT ON TABLE FILM_STATS IS 'Счётчики лайков и оценок фильмов';
+COMMENT ON COLUMN FILM_STATS.FILM_ID IS 'Идентификатор фильма';
+COMMENT ON COLUMN FILM_STATS.LIKES_COUNT IS 'Количество лайков';
+COMMENT ON COLUMN FILM_STATS.MARK_SUM IS 'Сумма оценок';
+COMMENT ON COLUMN FILM_STATS.MARK_COUNT IS 'Количество оценок';
+COMMENT ON COLUMN FILM_STATS.RATE IS 'Средняя оценка';
+
 CREATE TABLE IF NOT EXISTS FRIENDS (
   USER_ID INTEGER NOT NULL,
   OTHER_ID INTEGER NOT NULL,
@@ -113,6 +118,7 @@ CREATE TABLE IF NOT EXISTS REVIEWS (
   FILM_ID INTEGER NOT NULL,
   CONTENT CHARACTER VARYING NOT NULL,
   IS_POSITIVE BOOLEAN,
+  USEFUL INTEGER DEFAULT 0 NOT NULL,
   CONSTRAINT REVIEWS_PK PRIMARY KEY (ID),
   CONSTRAINT USERS_REVIEWS_USER_ID_FK FOREIGN KEY (USER_ID) REFERENCES USERS (ID) ON DELETE CASCADE,
   CONSTRAINT FILMS_REVIEWS_FILM_ID_FK FOREIGN KEY (FILM_ID) REFERENCES FILMS (ID) ON DELETE CASCADE
@@ -123,8 +129,25 @@ COMMENT ON COLUMN REVIEWS.USER_ID IS 'Идентификатор пользов
 COMMENT ON COLUMN REVIEWS.FILM_ID IS 'Идентификатор фильма, на который оставляют отзыв';
 COMMENT ON COLUMN REVIEWS.CONTENT IS 'Описание отзыва';
 COMMENT ON COLUMN REVIEWS.IS_POSITIVE IS 'Признак положительного отзыва';
+COMMENT ON COLUMN REVIEWS.USEFUL IS 'Рейтинг полезности отзыва: сумма оценок пользователей';
+CREATE INDEX IF NOT EXISTS REVIEWS_FILM_ID_USEFUL_IDX ON REVIEWS (FILM_ID, USEFUL DESC, ID);
+CREATE INDEX IF NOT EXISTS REVIEWS_USEFUL_IDX ON REVIEWS (USEFUL DESC, ID);
 
-CREATE TABLE USERS_REVIEWS (
+CREATE TABLE IF NOT EXISTS FILM_REVIEW_SUMMARY (
+  FILM_ID INTEGER NOT NULL,
+  USEFUL INTEGER NOT NULL,
+  POSITIVE_COUNT INTEGER DEFAULT 0 NOT NULL,
+  NEGATIVE_COUNT INTEGER DEFAULT 0 NOT NULL,
+  CONSTRAINT FILM_REVIEW_SUMMARY_PK PRIMARY KEY (FILM_ID, USEFUL),
+  CONSTRAINT FILM_REVIEW_SUMMARY_FILMS_FK FOREIGN KEY (FILM_ID) REFERENCES FILMS (ID) ON DELETE CASCADE
+);
+COMMENT ON TABLE FILM_REVIEW_SUMMARY IS 'Количество отзывов к фильму по рейтингу полезности';
+COMMENT ON COLUMN FILM_REVIEW_SUMMARY.FILM_ID IS 'Идентификатор фильма';
+COMMENT ON COLUMN FILM_REVIEW_SUMMARY.USEFUL IS 'Рейтинг полезности отзыва';
+COMMENT ON COLUMN FILM_REVIEW_SUMMARY.POSITIVE_COUNT IS 'Количество положительных отзывов с этим рейтингом';
+COMMENT ON COLUMN FILM_REVIEW_SUMMARY.NEGATIVE_COUNT IS 'Количество отрицательных отзывов с этим рейтингом';
+
+CREATE TABLE IF NOT EXISTS USERS_REVIEWS (
   REVIEW_ID INTEGER NOT NULL,
   USER_ID INTEGER NOT NULL,
   USEFUL INTEGER NOT NULL,
@@ -138,7 +161,7 @@ COMMENT ON COLUMN USERS_REVIEWS.REVIEW_ID IS 'Идентификатор отз
 COMMENT ON COLUMN USERS_REVIEWS.USER_ID IS 'Идентификатор пользователя';
 COMMENT ON COLUMN USERS_REVIEWS.USEFUL IS 'Рейтинг полезности отзыва (-1; 1)';
 
-CREATE TABLE DIRECTORS (
+CREATE TABLE IF NOT EXISTS DIRECTORS (
   ID INTEGER NOT NULL AUTO_INCREMENT,
   FULL_NAME CHARACTER VARYING NOT NULL,
   CONSTRAINT DIRECTORS_PK PRIMARY KEY (ID)
@@ -147,7 +170,7 @@ COMMENT ON TABLE DIRECTORS IS 'Режиссеры';
 COMMENT ON COLUMN DIRECTORS.ID IS 'Идентификатор записи';
 COMMENT ON COLUMN DIRECTORS.FULL_NAME IS 'Имя режиссера';
 
-CREATE TABLE FILMS_DIRECTORS (
+CREATE TABLE IF NOT EXISTS FILMS_DIRECTORS (
   FILM_ID INTEGER NOT NULL,
   DIRECTOR_ID INTEGER NOT NULL,
   CONSTRAINT FILMS_DIRECTORS_PK PRIMARY KEY (FILM_ID, DIRECTOR_ID),
@@ -157,6 +180,25 @@ CREATE TABLE FILMS_DIRECTORS (
 COMMENT ON TABLE FILMS_DIRECTORS IS 'Связь фильмов и режиссеров';
 COMMENT ON COLUMN FILMS_DIRECTORS.FILM_ID IS 'Идентификатор фильма';
 COMMENT ON COLUMN FILMS_DIRECTORS.DIRECTOR_ID IS 'Идентификатор режиссера';
+CREATE INDEX IF NOT EXISTS FILMS_DIRECTORS_DIRECTOR_ID_IDX ON FILMS_DIRECTORS (DIRECTOR_ID, FILM_ID);
+
+CREATE TABLE IF NOT EXISTS DIRECTOR_STATS (
+	DIRECTOR_ID INTEGER NOT NULL,
+	FILMS_COUNT INTEGER DEFAULT 0 NOT NULL,
+	LIKES_COUNT INTEGER DEFAULT 0 NOT NULL,
+	MARK_SUM DOUBLE PRECISION DEFAULT 0 NOT NULL,
+	MARK_COUNT INTEGER DEFAULT 0 NOT NULL,
+	RATE DOUBLE PRECISION GENERATED ALWAYS AS (CASE WHEN MARK_COUNT > 0 THEN MARK_SUM / MARK_COUNT ELSE 0 END),
+	CONSTRAINT DIRECTOR_STATS_PK PRIMARY KEY (DIRECTOR_ID),
+	CONSTRAINT DIRECTOR_STATS_DIRECTORS_FK FOREIGN KEY (DIRECTOR_ID) REFERENCES DIRECTORS(ID) ON DELETE CASCADE
+);
+COMMENT ON TABLE DIRECTOR_STATS IS 'Счётчики фильмов, лайков и оценок режиссеров';
+COMMENT ON COLUMN DIRECTOR_STATS.DIRECTOR_ID IS 'Идентификатор режиссера';
+COMMENT ON COLUMN DIRECTOR_STATS.FILMS_COUNT IS 'Количество фильмов';
+COMMENT ON COLUMN DIRECTOR_STATS.LIKES_COUNT IS 'Количество лайков фильмов';
+COMMENT ON COLUMN DIRECTOR_STATS.MARK_SUM IS 'Сумма оценок фильмов';
+COMMENT ON COLUMN DIRECTOR_STATS.MARK_COUNT IS 'Количество оценок фильмов';
+COMMENT ON COLUMN DIRECTOR_STATS.RATE IS 'Средняя оценка фильмов';
 
 CREATE TABLE IF NOT EXISTS FEED (
   EVENT_ID INTEGER NOT NULL AUTO_INCREMENT,
@@ -168,10 +210,75 @@ CREATE TABLE IF NOT EXISTS FEED (
   CONSTRAINT FEED_PK PRIMARY KEY (EVENT_ID),
   CONSTRAINT FEED_USERS_USER_ID_FK FOREIGN KEY (USER_ID) REFERENCES USERS (ID) ON DELETE CASCADE
 );
+CREATE INDEX IF NOT EXISTS FEED_EVENT_TYPE_TIME_IDX ON FEED (EVENT_TYPE, TIME_FIELD);
 COMMENT ON TABLE FEED IS 'Лента событий';
 COMMENT ON COLUMN FEED.EVENT_ID IS 'Идентификатор записи';
 COMMENT ON COLUMN FEED.ENTITY_ID IS 'Идентификатор обработанной сущности';
 COMMENT ON COLUMN FEED.USER_ID IS 'Идентификатор пользователя';
 COMMENT ON COLUMN FEED.TIME_FIELD IS 'Метка времени';
 COMMENT ON COLUMN FEED.EVENT_TYPE IS 'Тип события';
-COMMENT ON COLUMN FEED.OPERATION_TYPE IS 'Тип операции';
\ No newline at end of file
+COMMENT ON COLUMN FEED.OPERATION_TYPE IS 'Тип операции';
+
+CREATE TABLE IF NOT EXISTS LIKE_JOURNAL_OFFSETS (
+  JOURNAL CHARACTER VARYING NOT NULL,
+  LAST_SEGMENT BIGINT NOT NULL,
+  CONSTRAINT LIKE_JOURNAL_OFFSETS_PK PRIMARY KEY (JOURNAL)
+);
+COMMENT ON TABLE LIKE_JOURNAL_OFFSETS IS 'Сегменты журналов отложенной записи лайков, записанные в БД';
+COMMENT ON COLUMN LIKE_JOURNAL_OFFSETS.JOURNAL IS 'Имя журнала';
+COMMENT ON COLUMN LIKE_JOURNAL_OFFSETS.LAST_SEGMENT IS 'Номер последнего записанного сегмента';
+
+CREATE TABLE IF NOT EXISTS DB_GENERATION (
+  GENERATION CHARACTER VARYING NOT NULL
+);
+INSERT INTO DB_GENERATION (GENERATION)
+SELECT CAST(RANDOM_UUID() AS CHARACTER VARYING)
+ WHERE NOT EXISTS (SELECT 1 FROM DB_GENERATION);
+COMMENT ON TABLE DB_GENERATION IS 'Поколение БД, создаётся вместе со схемой';
+COMMENT ON COLUMN DB_GENERATION.GENERATION IS 'Случайный идентификатор поколения';
+
+CREATE TABLE IF NOT EXISTS OUTBOX (
+  ID BIGINT NOT NULL AUTO_INCREMENT,
+  ENTITY_TYPE CHARACTER VARYING NOT NULL,
+  ENTITY_KEY CHARACTER VARYING NOT NULL,
+  OPERATION_TYPE CHARACTER VARYING NOT NULL,
+  PAYLOAD CHARACTER VARYING,
+  CREATED_AT TIMESTAMP(9) NOT NULL,
+  CONSTRAINT OUTBOX_PK PRIMARY KEY (ID)
+);
+CREATE INDEX IF NOT EXISTS OUTBOX_ENTITY_IDX ON OUTBOX (ENTITY_TYPE, ENTITY_KEY, ID);
+COMMENT ON TABLE OUTBOX IS 'Журнал изменений сущностей для внешних потребителей';
+COMMENT ON COLUMN OUTBOX.ID IS 'Идентификатор записи, задает порядок изменений';
+COMMENT ON COLUMN OUTBOX.ENTITY_TYPE IS 'Тип сущности';
+COMMENT ON COLUMN OUTBOX.ENTITY_KEY IS 'Ключ сущности';
+COMMENT ON COLUMN OUTBOX.OPERATION_TYPE IS 'Тип операции';
+COMMENT ON COLUMN OUTBOX.PAYLOAD IS 'Состояние сущности после изменения в JSON';
+COMMENT ON COLUMN OUTBOX.CREATED_AT IS 'Метка времени';
+
+CREATE TABLE IF NOT EXISTS OUTBOX_OFFSETS (
+  CONSUMER CHARACTER VARYING NOT NULL,
+  LAST_EVENT_ID BIGINT NOT NULL,
+  CONSTRAINT OUTBOX_OFFSETS_PK PRIMARY KEY (CONSUMER)
+);
+COMMENT ON TABLE OUTBOX_OFFSETS IS 'Позиции потребителей журнала изменений';
+COMMENT ON COLUMN OUTBOX_OFFSETS.CONSUMER IS 'Имя потребителя';
+COMMENT ON COLUMN OUTBOX_OFFSETS.LAST_EVENT_ID IS 'Идентификатор последнего обработанного изменения';
+
+CREATE TABLE IF NOT EXISTS FILM_TOMBSTONES (
+  FILM_ID INTEGER NOT NULL,
+  CHANGE_VERSION BIGINT NOT NULL,
+  CONSTRAINT FILM_TOMBSTONES_PK PRIMARY KEY (FILM_ID)
+);
+CREATE INDEX IF NOT EXISTS FILM_TOMBSTONES_CHANGE_VERSION_IDX ON FILM_TOMBSTONES (CHANGE_VERSION);
+COMMENT ON TABLE FILM_TOMBSTONES IS 'Удаленные фильмы для синхронизации каталога';
+COMMENT ON COLUMN FILM_TOMBSTONES.FILM_ID IS 'Идентификатор удаленного фильма';
+COMMENT ON COLUMN FILM_TOMBSTONES.CHANGE_VERSION IS 'Версия изменения каталога, в которой фильм удален';
+
+CREATE TABLE IF NOT EXISTS FILM_CHANGE_VERSION (
+  VERSION BIGINT NOT NULL
+);
+INSERT INTO FILM_CHANGE_VERSION (VERSION)
+SELECT 0
+ WHERE NOT EXISTS (SELECT 1 FROM FILM_CHANGE_VERSION);
+COMMENT ON TABLE FILM_CHANGE_VERSION IS 'Последняя выданная версия изменения каталога фильмов';
+COMMENT ON COLUMN FILM_CHANGE_VERSION.VERSION IS 'Версия изменения';
@@ -0,0 +1,89 @@
+package ru.yandex.practicum.filmorate.dal;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.yandex.practicum.filmorate.dal.film.FilmStatsRepairJob;
+import ru.yandex.practicum.filmorate.dto.film.NewFilmRequest;
+import ru.yandex.practicum.filmorate.dto.user.NewUserRequest;
+import ru.yandex.practicum.filmorate.dto.user.UserShortDto;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DisplayName("Запись связей одним слиянием")
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class BaseDbStorageTest {
+
+    private final FilmService filmService;
+    private final UserService userService;
+    private final FilmStatsRepairJob filmStatsRepairJob;
+
+    @DisplayName("Одновременные повторные лайки сохраняются один раз")
+    @Test
+    public void concurrentLikeTest() throws InterruptedException {
+        // Без транзакции теста каждый лайк фиксируется отдельно, и потоки действительно соревнуются
+        Long filmId = filmService.create(NewFilmRequest.builder()
+                .name("Concurrent")
+                .description("Concurrent description")
+                .releaseDate(LocalDate.now().minusYears(5))
+                .duration(120)
+                .build()).getId();
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            userIds.add(userService.create(NewUserRequest.builder()
+                    .email("concurrent" + i + "@ya.ru")
+                    .login("concurrent" + i)
+                    .name("Concurrent" + i)
+                    .birthday(LocalDate.now().minusYears(20 + i))
+                    .build()).getId());
+        }
+
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Throwable> errors = new CopyOnWriteArrayList<>();
+            List<Thread> threads = new ArrayList<>();
+            for (Long userId : userIds) {
+                for (int i = 0; i < 2; i++) {
+                    threads.add(new Thread(() -> {
+                        try {
+                            start.await();
+                            filmService.addLike(filmId, userId, 8.0);
+                        } catch (Throwable e) {
+                            errors.add(e);
+                        }
+                    }));
+                }
+            }
+            threads.forEach(Thread::start);
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            assertThat(errors).isEmpty();
+            assertThat(filmService.findById(filmId).getLikes()).extracting(UserShortDto::getId)
+                    .containsExactlyInAnyOrderElementsOf(userIds);
+            assertEquals(userIds.size(), filmService.findRatingHistogram(filmId).getMarkCounts().get(8));
+            for (Long userId : userIds) {
+                assertEquals(1, userService.findFeed(userId).size());
+            }
+            assertEquals(0, filmStatsRepairJob.repair());
+        } finally {
+            userIds.forEach(userService::deleteUser);
+            filmService.deleteFilm(filmId);
+        }
+    }
+}
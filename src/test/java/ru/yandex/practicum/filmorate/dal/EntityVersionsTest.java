@@ -0,0 +1,98 @@
+package ru.yandex.practicum.filmorate.dal;
+
+import java.time.LocalDate;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.dto.film.FilmDto;
+import ru.yandex.practicum.filmorate.dto.film.NewFilmRequest;
+import ru.yandex.practicum.filmorate.dto.film.UpdateFilmRequest;
+import ru.yandex.practicum.filmorate.dto.genre.UpdateGenreRequest;
+import ru.yandex.practicum.filmorate.dto.user.NewUserRequest;
+import ru.yandex.practicum.filmorate.dto.user.UpdateUserRequest;
+import ru.yandex.practicum.filmorate.model.Genre;
+import ru.yandex.practicum.filmorate.model.Mpa;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.GenreService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+@DisplayName("Версии сущностей для ETag")
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Transactional
+class EntityVersionsTest {
+
+    private final FilmService filmService;
+    private final UserService userService;
+    private final GenreService genreService;
+    private final EntityVersions entityVersions;
+
+    @DisplayName("ETag фильма меняется вместе с ответом")
+    @Test
+    public void eTagTest() {
+        FilmDto first = createFilm("First");
+        FilmDto second = createFilm("Second");
+        Long userId = userService.create(NewUserRequest.builder()
+                .email("etag@ya.ru")
+                .login("etag")
+                .name("ETag")
+                .birthday(LocalDate.now().minusYears(20))
+                .build()).getId();
+
+        String firstTag = filmService.findETag(first.getId());
+        String secondTag = filmService.findETag(second.getId());
+        filmService.findById(first.getId());
+        assertEquals(firstTag, filmService.findETag(first.getId()));
+
+        // Лайк меняет только свой фильм
+        filmService.addLike(first.getId(), userId, null);
+        assertNotEquals(firstTag, filmService.findETag(first.getId()));
+        assertEquals(secondTag, filmService.findETag(second.getId()));
+
+        filmService.update(UpdateFilmRequest.builder()
+                .id(first.getId())
+                .name("First renamed")
+                .description(first.getDescription())
+                .releaseDate(first.getReleaseDate())
+                .duration(first.getDuration())
+                .build());
+        String renamedTag = filmService.findETag(first.getId());
+        assertNotEquals(firstTag, renamedTag);
+        assertEquals(secondTag, filmService.findETag(second.getId()));
+
+        // Переименование пользователя меняет только понравившиеся ему фильмы
+        userService.update(UpdateUserRequest.builder().id(userId).name("ETag renamed").build());
+        assertNotEquals(renamedTag, filmService.findETag(first.getId()));
+        assertEquals(secondTag, filmService.findETag(second.getId()));
+        renamedTag = filmService.findETag(first.getId());
+
+        // Переименование жанра меняет все фильмы и список жанров, но не список рейтингов
+        String genresTag = entityVersions.eTag(Genre.class);
+        String ratingsTag = entityVersions.eTag(Mpa.class);
+        UpdateGenreRequest genre = new UpdateGenreRequest();
+        genre.setId(1L);
+        genre.setName("Renamed");
+        genreService.update(genre);
+        assertNotEquals(renamedTag, filmService.findETag(first.getId()));
+        assertNotEquals(secondTag, filmService.findETag(second.getId()));
+        assertNotEquals(genresTag, entityVersions.eTag(Genre.class));
+        assertEquals(ratingsTag, entityVersions.eTag(Mpa.class));
+    }
+
+    private FilmDto createFilm(String name) {
+        return filmService.create(NewFilmRequest.builder()
+                .name(name)
+                .description(name + " description")
+                .releaseDate(LocalDate.now().minusYears(5))
+                .duration(120)
+                .build());
+    }
+}
@@ -0,0 +1,91 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import jakarta.validation.ValidationException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.dto.director.DirectorDto;
+import ru.yandex.practicum.filmorate.dto.director.NewDirectorRequest;
+import ru.yandex.practicum.filmorate.dto.film.NewFilmRequest;
+import ru.yandex.practicum.filmorate.dto.genre.GenreDto;
+import ru.yandex.practicum.filmorate.dto.user.NewUserRequest;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.service.DirectorService;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.GenreService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Оценки аудитории жанров и режиссеров")
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Transactional
+class FilmAudienceSketchesTest {
+
+    private final FilmService filmService;
+    private final UserService userService;
+    private final GenreService genreService;
+    private final DirectorService directorService;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @DisplayName("Оценки считают различных пользователей")
+    @Test
+    public void audienceTest() {
+        DirectorDto director = directorService.create(NewDirectorRequest.builder().name("Audience").build());
+        Long firstId = createFilm("First", 1L, Set.of(director));
+        Long secondId = createFilm("Second", 2L, Set.of());
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            userIds.add(createUser("audience" + i));
+        }
+        filmService.addLike(firstId, userIds.get(0), null);
+        filmService.addLike(firstId, userIds.get(1), null);
+        filmService.addLike(secondId, userIds.get(1), null);
+
+        // Отдельный экземпляр не зависит от фонового пересчёта после отката других тестов
+        FilmAudienceSketches sketches = new FilmAudienceSketches(jdbcTemplate);
+        sketches.rebuild();
+        filmService.addLike(secondId, userIds.get(2), null);
+        sketches.addLike(userIds.get(2), secondId);
+        assertEquals(2, sketches.estimateGenres(List.of(1L)));
+        assertEquals(2, sketches.estimateGenres(List.of(2L)));
+        assertEquals(3, sketches.estimateGenres(List.of(1L, 2L)));
+        assertEquals(2, sketches.estimateDirector(director.getId()));
+
+        assertEquals(director.getId(), directorService.findAudience(director.getId()).getDirectorId());
+        assertThrows(NotFoundException.class, () -> directorService.findAudience(director.getId() + 1000));
+        assertThrows(ValidationException.class, () -> genreService.findAudience(List.of()));
+    }
+
+    private Long createFilm(String name, Long genreId, Set<DirectorDto> directors) {
+        return filmService.create(NewFilmRequest.builder()
+                .name(name)
+                .description(name + " description")
+                .releaseDate(LocalDate.now().minusYears(5))
+                .duration(120)
+                .genres(Set.of(GenreDto.builder().id(genreId).build()))
+                .directors(directors)
+                .build()).getId();
+    }
+
+    private Long createUser(String login) {
+        return userService.create(NewUserRequest.builder()
+                .email(login + "@ya.ru")
+                .login(login)
+                .name(login)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build()).getId();
+    }
+}
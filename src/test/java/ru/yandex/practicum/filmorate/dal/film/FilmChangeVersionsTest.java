@@ -0,0 +1,81 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import jakarta.validation.ValidationException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.dal.DatabaseGeneration;
+import ru.yandex.practicum.filmorate.dto.director.DirectorDto;
+import ru.yandex.practicum.filmorate.dto.director.NewDirectorRequest;
+import ru.yandex.practicum.filmorate.dto.director.UpdateDirectorRequest;
+import ru.yandex.practicum.filmorate.dto.film.FilmChangeDto;
+import ru.yandex.practicum.filmorate.dto.film.FilmChangesDto;
+import ru.yandex.practicum.filmorate.dto.film.FilmDto;
+import ru.yandex.practicum.filmorate.dto.film.NewFilmRequest;
+import ru.yandex.practicum.filmorate.service.DirectorService;
+import ru.yandex.practicum.filmorate.service.FilmService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Версии изменений каталога")
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Transactional
+class FilmChangeVersionsTest {
+
+    private final FilmService filmService;
+    private final DirectorService directorService;
+    private final DatabaseGeneration databaseGeneration;
+
+    @DisplayName("Изменения каталога после версии клиента")
+    @Test
+    public void changesTest() {
+        long start = filmService.findChanges(0L, 1000).getVersion();
+        DirectorDto director = directorService.create(NewDirectorRequest.builder().name("Director").build());
+        FilmDto first = createFilm("Changed", Set.of(director));
+        FilmDto second = createFilm("Deleted", Set.of());
+        // Переименование режиссера меняет первый фильм, удаление второго записывается отдельно
+        directorService.update(UpdateDirectorRequest.builder().id(director.getId()).name("Renamed").build());
+        filmService.deleteFilm(second.getId());
+
+        FilmChangesDto all = filmService.findChanges(start, 10);
+        assertEquals(List.of(first.getId(), second.getId()), all.getChanges().stream()
+                .map(FilmChangeDto::getFilmId)
+                .toList());
+        assertEquals(false, all.getHasMore());
+        assertEquals(databaseGeneration.get(), all.getEpoch());
+        assertEquals(all.getChanges().getLast().getVersion(), all.getVersion());
+        assertEquals("Renamed", all.getChanges().getFirst().getFilm().getDirectors().iterator().next().getName());
+        assertEquals(true, all.getChanges().getLast().getDeleted());
+
+        FilmChangesDto page = filmService.findChanges(start, 1);
+        assertEquals(true, page.getHasMore());
+        assertEquals(all.getChanges().getFirst(), page.getChanges().getFirst());
+        FilmChangesDto next = filmService.findChanges(page.getVersion(), 1);
+        assertEquals(List.of(all.getChanges().getLast()), next.getChanges());
+        assertEquals(false, next.getHasMore());
+        assertEquals(next.getVersion(), filmService.findChanges(next.getVersion(), 1).getVersion());
+
+        assertThrows(ValidationException.class, () -> filmService.findChanges(-1L, 10));
+        assertThrows(ValidationException.class, () -> filmService.findChanges(start, 0));
+    }
+
+    private FilmDto createFilm(String name, Set<DirectorDto> directors) {
+        return filmService.create(NewFilmRequest.builder()
+                .name(name)
+                .description(name + " description")
+                .releaseDate(LocalDate.now().minusYears(5))
+                .duration(120)
+                .directors(directors)
+                .build());
+    }
+}
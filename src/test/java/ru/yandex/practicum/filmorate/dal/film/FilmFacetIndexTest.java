@@ -0,0 +1,83 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import jakarta.validation.ValidationException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.dto.director.DirectorDto;
+import ru.yandex.practicum.filmorate.dto.director.NewDirectorRequest;
+import ru.yandex.practicum.filmorate.dto.film.FilmBrowseDto;
+import ru.yandex.practicum.filmorate.dto.film.FilmDto;
+import ru.yandex.practicum.filmorate.dto.film.NewFilmRequest;
+import ru.yandex.practicum.filmorate.mapper.FilmMapper;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.DirectorService;
+import ru.yandex.practicum.filmorate.service.FilmService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Индекс измерений фильмов")
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Transactional
+class FilmFacetIndexTest {
+
+    private final FilmService filmService;
+    private final DirectorService directorService;
+
+    @DisplayName("Отбор фильмов по измерениям со счётчиками")
+    @Test
+    public void browseTest() {
+        DirectorDto director = directorService.create(NewDirectorRequest.builder().name("Director").build());
+        DirectorDto other = directorService.create(NewDirectorRequest.builder().name("Other").build());
+        FilmDto film = createFilm("Film", 5, Set.of(director));
+        FilmDto both = createFilm("Both", 4, Set.of(director, other));
+        long year = film.getReleaseDate().getYear();
+
+        FilmBrowseDto result = filmService.browse(
+                new FilmFacetIndex.Filter(null, null, null, null, director.getId()), "id", 10, 0);
+        assertEquals(List.of(film.getId(), both.getId()), result.getFilms().stream().map(FilmDto::getId).toList());
+        assertEquals(2, result.getFacets().getTotal());
+        assertEquals(Map.of(year, 1L, year + 1, 1L), result.getFacets().getYears());
+        assertEquals(Map.of(director.getId(), 2L, other.getId(), 1L), result.getFacets().getDirectors());
+
+        result = filmService.browse(
+                new FilmFacetIndex.Filter(null, null, (int) year + 1, null, director.getId()), "year", 10, 0);
+        assertEquals(List.of(both.getId()), result.getFilms().stream().map(FilmDto::getId).toList());
+        assertEquals(Map.of(director.getId(), 1L, other.getId(), 1L), result.getFacets().getDirectors());
+        assertEquals(2, result.getFilms().iterator().next().getDirectors().size());
+
+        Film updated = FilmMapper.mapToFilm(both);
+        updated.setDirectors(List.of(other.getId()));
+        filmService.update(FilmMapper.mapToUpdateFilmRequest(updated));
+        filmService.deleteFilm(film.getId());
+        result = filmService.browse(
+                new FilmFacetIndex.Filter(null, null, null, null, director.getId()), "rate", 10, 0);
+        assertEquals(0, result.getFacets().getTotal());
+        assertEquals(List.of(), result.getFilms());
+        assertEquals(Map.of(other.getId(), 1L), result.getFacets().getDirectors());
+
+        assertThrows(ValidationException.class, () -> filmService.browse(
+                new FilmFacetIndex.Filter(null, null, null, null, null), "likes", 10, 0));
+    }
+
+    private FilmDto createFilm(String name, int age, Set<DirectorDto> directors) {
+        return filmService.create(NewFilmRequest.builder()
+                .name(name)
+                .description(name + " description")
+                .releaseDate(LocalDate.now().minusYears(age))
+                .duration(120)
+                .directors(directors)
+                .build());
+    }
+}
@@ -0,0 +1,73 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.dto.film.NewFilmRequest;
+import ru.yandex.practicum.filmorate.dto.film.RatingHistogramDto;
+import ru.yandex.practicum.filmorate.dto.user.NewUserRequest;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Гистограмма оценок фильмов")
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Transactional
+class FilmRatingHistogramTest {
+
+    private final FilmService filmService;
+    private final UserService userService;
+
+    @DisplayName("Гистограмма меняется вместе с лайками")
+    @Test
+    public void ratingHistogramTest() {
+        Long filmId = filmService.create(NewFilmRequest.builder()
+                .name("Film name")
+                .description("Film description")
+                .releaseDate(LocalDate.now().minusYears(5))
+                .duration(120)
+                .build()).getId();
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            userIds.add(createUser("histogram" + i));
+        }
+        assertEquals(0, filmService.findRatingHistogram(filmId).getUnratedCount());
+
+        filmService.addLike(filmId, userIds.get(0), null);
+        filmService.addLike(filmId, userIds.get(1), 7.0);
+        filmService.addLike(filmId, userIds.get(2), 3.0);
+        filmService.addLike(filmId, userIds.get(2), 7.4);
+        filmService.addLike(filmId, userIds.get(3), 10.0);
+        filmService.removeLike(filmId, userIds.get(3));
+
+        RatingHistogramDto histogram = filmService.findRatingHistogram(filmId);
+        assertEquals(1, histogram.getUnratedCount());
+        assertEquals(10, histogram.getMarkCounts().size());
+        assertEquals(2, histogram.getMarkCounts().get(7));
+        assertEquals(0, histogram.getMarkCounts().get(3));
+        assertEquals(0, histogram.getMarkCounts().get(10));
+
+        assertThrows(NotFoundException.class, () -> filmService.findRatingHistogram(filmId + 1000));
+    }
+
+    private Long createUser(String login) {
+        return userService.create(NewUserRequest.builder()
+                .email(login + "@ya.ru")
+                .login(login)
+                .name(login)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build()).getId();
+    }
+}
@@ -0,0 +1,95 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.stream.IntStream;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.dto.film.FilmDto;
+import ru.yandex.practicum.filmorate.dto.film.NewFilmRequest;
+import ru.yandex.practicum.filmorate.dto.user.NewUserRequest;
+import ru.yandex.practicum.filmorate.dto.user.UserDto;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DisplayName("Счётчики лайков фильмов")
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Transactional
+class FilmStatsRepairJobTest {
+
+    private final FilmService filmService;
+    private final UserService userService;
+    private final FilmStatsRepairJob filmStatsRepairJob;
+    private final JdbcTemplate jdbcTemplate;
+
+    @DisplayName("Счётчики меняются вместе с лайками")
+    @Test
+    public void filmStatsTest() {
+        FilmDto film = createFilm("Film");
+        FilmDto other = createFilm("Other");
+        List<Long> userIds = IntStream.rangeClosed(1, 3)
+                .mapToObj(i -> createUser("stats" + i).getId())
+                .toList();
+
+        filmService.addLike(film.getId(), userIds.get(0), 4.0);
+        filmService.addLike(film.getId(), userIds.get(1), 6.0);
+        filmService.addLike(film.getId(), userIds.get(1), 9.0);
+        filmService.addLike(film.getId(), userIds.get(2), null);
+        filmService.addLike(film.getId(), userIds.get(2), 5.0);
+        filmService.addLike(other.getId(), userIds.get(0), 3.0);
+        assertEquals(6.0, filmService.findById(film.getId()).getRate());
+        assertEquals(List.of(film.getId(), other.getId()),
+                filmService.findPopular(10, null, null).stream().map(FilmDto::getId).toList());
+
+        filmService.removeLike(film.getId(), userIds.get(1));
+        assertEquals(4.5, filmService.findById(film.getId()).getRate());
+
+        userService.deleteUser(userIds.get(0));
+        assertEquals(5.0, filmService.findById(film.getId()).getRate());
+        assertEquals(0.0, filmService.findById(other.getId()).getRate());
+        assertEquals(0, filmStatsRepairJob.repair());
+    }
+
+    @DisplayName("Сверка пересчитывает только разошедшиеся счётчики")
+    @Test
+    public void repairTest() {
+        FilmDto film = createFilm("Film");
+        FilmDto other = createFilm("Other");
+        UserDto user = createUser("repair");
+        filmService.addLike(film.getId(), user.getId(), 8.0);
+        filmService.addLike(other.getId(), user.getId(), 2.0);
+
+        jdbcTemplate.update("UPDATE FILM_STATS SET LIKES_COUNT = 5, MARK_SUM = 1 WHERE FILM_ID = ?", film.getId());
+        assertEquals(1, filmStatsRepairJob.repair());
+        assertEquals(8.0, filmService.findById(film.getId()).getRate());
+        assertEquals(0, filmStatsRepairJob.repair());
+    }
+
+    private FilmDto createFilm(String name) {
+        return filmService.create(NewFilmRequest.builder()
+                .name(name)
+                .description(name + " description")
+                .releaseDate(LocalDate.now().minusYears(5))
+                .duration(120)
+                .build());
+    }
+
+    private UserDto createUser(String login) {
+        return userService.create(NewUserRequest.builder()
+                .email(login + "@ya.ru")
+                .login(login)
+                .name(login)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build());
+    }
+}
@@ -0,0 +1,78 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import jakarta.validation.ValidationException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.dto.film.FilmDto;
+import ru.yandex.practicum.filmorate.dto.film.NewFilmRequest;
+import ru.yandex.practicum.filmorate.dto.user.NewUserRequest;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Популярные в моменте фильмы")
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Transactional
+class FilmTrendingIndexTest {
+
+    private final FilmService filmService;
+    private final UserService userService;
+
+    @DisplayName("Фильмы упорядочиваются по лайкам за окно")
+    @Test
+    public void trendingTest() {
+        List<Long> filmIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            filmIds.add(filmService.create(NewFilmRequest.builder()
+                    .name("Trending " + i)
+                    .description("Trending description")
+                    .releaseDate(LocalDate.now().minusYears(5))
+                    .duration(120)
+                    .build()).getId());
+        }
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 1; i <= 2; i++) {
+            userIds.add(createUser("trending" + i));
+        }
+        filmService.addLike(filmIds.get(0), userIds.get(0), null);
+        filmService.addLike(filmIds.get(0), userIds.get(1), null);
+        filmService.addLike(filmIds.get(1), userIds.get(0), null);
+        filmService.addLike(filmIds.get(2), userIds.get(0), null);
+        filmService.removeLike(filmIds.get(2), userIds.get(0));
+
+        for (String window : List.of("1h", "24h", "7d")) {
+            assertEquals(filmIds.subList(0, 2), filmService.findTrending(window, 10).stream()
+                    .map(FilmDto::getId)
+                    .filter(filmIds::contains)
+                    .toList());
+        }
+        // Повторные лайки ничего не меняют и не учитываются
+        filmService.addLike(filmIds.get(1), userIds.get(0), null);
+        filmService.addLike(filmIds.get(1), userIds.get(0), null);
+        assertEquals(List.of(filmIds.getFirst()),
+                filmService.findTrending("24h", 1).stream().map(FilmDto::getId).toList());
+        assertThrows(ValidationException.class, () -> filmService.findTrending("2h", 10));
+        assertThrows(ValidationException.class, () -> filmService.findTrending("24h", 0));
+    }
+
+    private Long createUser(String login) {
+        return userService.create(NewUserRequest.builder()
+                .email(login + "@ya.ru")
+                .login(login)
+                .name(login)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build()).getId();
+    }
+}
@@ -0,0 +1,38 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DisplayName("Журнал отложенной записи лайков")
+class LikeJournalTest {
+
+    @TempDir
+    private Path directory;
+
+    @DisplayName("Воспроизводятся только незаписанные сегменты того же поколения БД")
+    @Test
+    public void replayTest() throws IOException {
+        try (LikeJournal journal = new LikeJournal(directory, false, "first", 0)) {
+            journal.append("1");
+            journal.rotate();
+            journal.append("2");
+            journal.rotate();
+            journal.append("3");
+        }
+
+        // Первый сегмент уже записан в БД
+        try (LikeJournal journal = new LikeJournal(directory, false, "first", 1)) {
+            assertThat(journal.readClosedSegments()).containsExactly("2", "3");
+        }
+
+        // БД пересоздана: сегменты прежней БД не воспроизводятся
+        try (LikeJournal journal = new LikeJournal(directory, false, "second", 0)) {
+            assertThat(journal.readClosedSegments()).isEmpty();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package ru.yandex.practicum.filmorate.dal.film;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.dto.film.FilmDto;
+import ru.yandex.practicum.filmorate.dto.film.NewFilmRequest;
+import ru.yandex.practicum.filmorate.dto.genre.GenreDto;
+import ru.yandex.practicum.filmorate.dto.user.NewUserRequest;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("Предрассчитанные списки популярных фильмов")
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Transactional
+class PopularFilmsCubeTest {
+
+    private final FilmService filmService;
+    private final UserService userService;
+    private final PopularFilmsCube popularFilmsCube;
+
+    @DisplayName("Списки ячеек совпадают с запросом популярных фильмов")
+    @Test
+    public void popularCubeTest() {
+        List<FilmDto> films = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            films.add(filmService.create(NewFilmRequest.builder()
+                    .name("Popular " + i)
+                    .description("Popular description")
+                    .releaseDate(LocalDate.of(2000 + i % 2, 1, 1))
+                    .duration(120)
+                    .genres(Set.of(GenreDto.builder().id(1L + i % 3).build()))
+                    .build()));
+        }
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            userIds.add(createUser("popular" + i));
+        }
+        for (int i = 0; i < films.size(); i++) {
+            for (int j = 0; j < i % 4; j++) {
+                filmService.addLike(films.get(i).getId(), userIds.get(j), i % 3 == 0 ? null : 5.0 + i);
+            }
+        }
+
+        popularFilmsCube.rebuild();
+        for (Long genreId : Arrays.asList(null, 1L, 2L, 3L, 4L)) {
+            for (Integer year : Arrays.asList(null, 2000, 2001, 2002)) {
+                for (int count : List.of(1, 3, 10)) {
+                    assertEquals(filmService.findPopular(count, genreId, year).stream().map(FilmDto::getId).toList(),
+                            popularFilmsCube.findTop(genreId, year, count).orElseThrow());
+                }
+            }
+        }
+        assertTrue(popularFilmsCube.findTop(null, null, 1000).isEmpty());
+    }
+
+    private Long createUser(String login) {
+        return userService.create(NewUserRequest.builder()
+                .email(login + "@ya.ru")
+                .login(login)
+                .name(login)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build()).getId();
+    }
+}
@@ -0,0 +1,84 @@
+package ru.yandex.practicum.filmorate.dal.review;
+
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.config.ReviewSearchProperties;
+import ru.yandex.practicum.filmorate.dal.DatabaseGeneration;
+import ru.yandex.practicum.filmorate.dto.film.NewFilmRequest;
+import ru.yandex.practicum.filmorate.dto.review.NewReviewRequest;
+import ru.yandex.practicum.filmorate.dto.user.NewUserRequest;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.ReviewService;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+@DisplayName("Индекс поиска по отзывам")
+@SpringBootTest(properties = "filmorate.reviews.search.index-file=target/reviews-index-segment.seg")
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Transactional
+class ReviewSearchIndexTest {
+
+    private final ReviewService reviewService;
+    private final FilmService filmService;
+    private final UserService userService;
+    private final ReviewSearchIndex reviewSearchIndex;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final DatabaseGeneration databaseGeneration;
+    private final ReviewSearchProperties properties;
+
+    @DisplayName("Сохранённый индекс читается только для той же БД")
+    @Test
+    public void segmentTest() {
+        Long filmId = filmService.create(NewFilmRequest.builder()
+                .name("Film name")
+                .description("Film description")
+                .releaseDate(LocalDate.now().minusYears(5))
+                .duration(120)
+                .build()).getId();
+        Long userId = userService.create(NewUserRequest.builder()
+                .email("segment@ya.ru")
+                .login("segment")
+                .name("Segment")
+                .birthday(LocalDate.now().minusYears(20))
+                .build()).getId();
+        Long reviewId = reviewService.create(NewReviewRequest.builder()
+                .content("Ёлка")
+                .isPositive(true)
+                .userId(userId)
+                .filmId(filmId)
+                .build()).getReviewId();
+        assertEquals(List.of(reviewId), reviewSearchIndex.search("ёлка", null, 10));
+
+        reviewSearchIndex.saveSegment();
+        ReviewSearchIndex restored = new ReviewSearchIndex(jdbcTemplate, databaseGeneration, properties);
+        restored.loadSavedSegment();
+        assertFalse(Files.exists(properties.indexFile()));
+        assertEquals(List.of(reviewId), restored.search("ёлка", null, 10));
+
+        // Файл другой БД с теми же количеством и идентификаторами отзывов не читается
+        reviewSearchIndex.saveSegment();
+        jdbcTemplate.getJdbcTemplate().update("UPDATE REVIEWS SET CONTENT = 'Сюжет' WHERE ID = ?", reviewId);
+        ReviewSearchIndex recreated = new ReviewSearchIndex(jdbcTemplate, new DatabaseGeneration(jdbcTemplate) {
+            @Override
+            public String get() {
+                return "other";
+            }
+        }, properties);
+        recreated.loadSavedSegment();
+        assertFalse(Files.exists(properties.indexFile()));
+        assertEquals(List.of(), recreated.search("ёлка", null, 10));
+        assertEquals(List.of(reviewId), recreated.search("сюжет", null, 10));
+    }
+}
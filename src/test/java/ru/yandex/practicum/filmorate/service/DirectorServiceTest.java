@@ -0,0 +1,93 @@
+package ru.yandex.practicum.filmorate.service;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.dto.director.DirectorDto;
+import ru.yandex.practicum.filmorate.dto.director.DirectorStatsDto;
+import ru.yandex.practicum.filmorate.dto.director.NewDirectorRequest;
+import ru.yandex.practicum.filmorate.dto.film.FilmDto;
+import ru.yandex.practicum.filmorate.dto.film.NewFilmRequest;
+import ru.yandex.practicum.filmorate.dto.user.NewUserRequest;
+import ru.yandex.practicum.filmorate.mapper.FilmMapper;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DisplayName("Работа с хранилищем режиссеров")
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Transactional
+class DirectorServiceTest {
+
+    private final DirectorService directorService;
+    private final FilmService filmService;
+    private final UserService userService;
+
+    @DisplayName("Счётчики и фильмы режиссера")
+    @Test
+    public void directorStatsTest() {
+        DirectorDto director = directorService.create(NewDirectorRequest.builder().name("Director").build());
+        DirectorDto other = directorService.create(NewDirectorRequest.builder().name("Other").build());
+        FilmDto film = createFilm("Film", 5, Set.of(director));
+        FilmDto both = createFilm("Both", 4, Set.of(director, other));
+        Long firstUserId = createUser("director1");
+        Long secondUserId = createUser("director2");
+
+        filmService.addLike(film.getId(), firstUserId, 8.0);
+        filmService.addLike(both.getId(), secondUserId, 6.0);
+        filmService.addLike(both.getId(), firstUserId, null);
+        assertStats(director, 2, 3, 7.0);
+        assertStats(other, 1, 2, 6.0);
+        assertEquals(List.of(film.getId(), both.getId()),
+                filmService.findByDirectorId(director.getId(), "year").stream().map(FilmDto::getId).toList());
+        assertEquals(2, filmService.findByDirectorId(other.getId(), "likes").iterator().next().getLikes().size());
+
+        Film updated = FilmMapper.mapToFilm(both);
+        updated.setDirectors(List.of(other.getId()));
+        filmService.update(FilmMapper.mapToUpdateFilmRequest(updated));
+        assertStats(director, 1, 1, 8.0);
+        assertStats(other, 1, 2, 6.0);
+
+        userService.deleteUser(firstUserId);
+        assertStats(director, 1, 0, 0.0);
+        assertStats(other, 1, 1, 6.0);
+
+        filmService.deleteFilm(both.getId());
+        assertStats(other, 0, 0, 0.0);
+    }
+
+    private FilmDto createFilm(String name, int age, Set<DirectorDto> directors) {
+        return filmService.create(NewFilmRequest.builder()
+                .name(name)
+                .description(name + " description")
+                .releaseDate(LocalDate.now().minusYears(age))
+                .duration(120)
+                .directors(directors)
+                .build());
+    }
+
+    private Long createUser(String login) {
+        return userService.create(NewUserRequest.builder()
+                .email(login + "@ya.ru")
+                .login(login)
+                .name(login)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build()).getId();
+    }
+
+    private void assertStats(DirectorDto director, int filmsCount, int likesCount, double rate) {
+        DirectorStatsDto stats = directorService.findStats(director.getId());
+        assertEquals(filmsCount, stats.getFilmsCount());
+        assertEquals(likesCount, stats.getLikesCount());
+        assertEquals(rate, stats.getRate());
+    }
+}
@@ -0,0 +1,54 @@
+package ru.yandex.practicum.filmorate.service;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("Параллельное выполнение подзапросов")
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class FanOutExecutorTest {
+
+    private final FanOutExecutor fanOutExecutor;
+
+    @DisplayName("Ошибка подзапроса отменяет остальные подзапросы")
+    @Test
+    public void fanOutCancellationTest() throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        // Вне транзакции подзапросы выполняются параллельно
+        FanOutExecutor.Scope scope = fanOutExecutor.open();
+        scope.fork(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(Duration.ofMinutes(1));
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return null;
+        });
+        scope.fork(() -> {
+            try {
+                started.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new NotFoundException("Фильм не найден");
+        });
+
+        assertThrows(NotFoundException.class, scope::join);
+        assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+    }
+}
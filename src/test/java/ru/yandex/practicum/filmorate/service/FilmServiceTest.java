@@ -1,7 +1,9 @@
 package ru.yandex.practicum.filmorate.service;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import lombok.RequiredArgsConstructor;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -9,13 +11,17 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.dto.user.UserDto;
+import ru.yandex.practicum.filmorate.mapper.UserMapper;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.dto.film.FilmDto;
 import ru.yandex.practicum.filmorate.mapper.FilmMapper;
+import ru.yandex.practicum.filmorate.model.User;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @DisplayName("Работа с хранилищем фильмов")
 @SpringBootTest
@@ -25,6 +31,7 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 class FilmServiceTest {
 
     private final FilmService filmService;
+    private final UserService userService;
 
     private final Film film1 = Film.builder()
             .name("Film name")
@@ -53,9 +60,10 @@ class FilmServiceTest {
     @DisplayName("Получение фильма по идентификатору")
     @Test
     public void getFilmByIdTest() {
-        filmService.create(FilmMapper.mapToNewFilmRequest(film1));
-        FilmDto dbFilm = filmService.findById(1L);
-        assertThat(dbFilm).hasFieldOrPropertyWithValue("id", 1L);
+        // Идентификатор не предполагается равным 1: другие тестовые классы работают с той же БД
+        FilmDto created = filmService.create(FilmMapper.mapToNewFilmRequest(film1));
+        FilmDto dbFilm = filmService.findById(created.getId());
+        assertThat(dbFilm).hasFieldOrPropertyWithValue("id", created.getId());
     }
 
     @DisplayName("Обновление фильма")
@@ -81,4 +89,32 @@ class FilmServiceTest {
         Collection<FilmDto> afterDelete = filmService.findAll(10, 0);
         assertEquals(beforeDelete.size() - 1, afterDelete.size());
     }
-}
\ No newline at end of file
+
+    @DisplayName("Общие фильмы нескольких пользователей")
+    @Test
+    public void findCommonFilmsTest() {
+        FilmDto first = filmService.create(FilmMapper.mapToNewFilmRequest(film1));
+        FilmDto second = filmService.create(FilmMapper.mapToNewFilmRequest(film2));
+
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            UserDto user = userService.create(UserMapper.mapToNewUserRequest(User.builder()
+                    .email("common" + i + "@ya.ru")
+                    .login("common" + i)
+                    .name("Common" + i)
+                    .birthday(LocalDate.now().minusYears(20 + i))
+                    .build()));
+            userIds.add(user.getId());
+            filmService.addLike(first.getId(), user.getId(), null);
+        }
+        filmService.addLike(second.getId(), userIds.get(0), null);
+        filmService.addLike(second.getId(), userIds.get(1), null);
+
+        Collection<FilmDto> common = filmService.findCommon(userIds);
+        assertEquals(List.of(first.getId()), common.stream().map(FilmDto::getId).toList());
+
+        filmService.removeLike(first.getId(), userIds.get(2));
+        assertTrue(filmService.findCommon(userIds).isEmpty());
+        assertEquals(2, filmService.findCommon(userIds.subList(0, 2)).size());
+    }
+}
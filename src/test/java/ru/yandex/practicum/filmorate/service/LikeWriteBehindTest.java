@@ -0,0 +1,86 @@
+package ru.yandex.practicum.filmorate.service;
+
+import java.nio.file.Path;
+import java.time.LocalDate;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.dal.film.FilmStorage;
+import ru.yandex.practicum.filmorate.dal.film.LikeWriteBehindBuffer;
+import ru.yandex.practicum.filmorate.dal.user.UserStorage;
+import ru.yandex.practicum.filmorate.dto.film.FilmDto;
+import ru.yandex.practicum.filmorate.dto.film.NewFilmRequest;
+import ru.yandex.practicum.filmorate.dto.user.NewUserRequest;
+import ru.yandex.practicum.filmorate.dto.user.UserDto;
+import ru.yandex.practicum.filmorate.dto.user.UserShortDto;
+import ru.yandex.practicum.filmorate.model.User;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@DisplayName("Отложенная запись лайков")
+@SpringBootTest(properties = {
+        "filmorate.likes.write-behind.enabled=true",
+        "filmorate.likes.write-behind.flush-interval=1h",
+        "filmorate.likes.write-behind.journal-directory=target/likes-journal"
+})
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Transactional
+class LikeWriteBehindTest {
+
+    private static final String JOURNAL = Path.of("target/likes-journal").toAbsolutePath().normalize().toString();
+
+    private final FilmService filmService;
+    private final UserService userService;
+    private final UserStorage userStorage;
+    private final FilmStorage filmStorage;
+    private final LikeWriteBehindBuffer likeWriteBehindBuffer;
+
+    @DisplayName("Лайки видны до записи в БД и схлопываются при записи")
+    @Test
+    public void coalescedFlushTest() {
+        FilmDto film = filmService.create(NewFilmRequest.builder()
+                .name("Film name")
+                .description("Film description")
+                .releaseDate(LocalDate.now().minusYears(5))
+                .duration(120)
+                .build());
+        UserDto first = createUser("first");
+        UserDto second = createUser("second");
+
+        filmService.addLike(film.getId(), first.getId(), 5.0);
+        filmService.addLike(film.getId(), first.getId(), 8.0);
+        filmService.addLike(film.getId(), second.getId(), 7.0);
+        filmService.removeLike(film.getId(), second.getId());
+
+        assertThat(userStorage.findByFilmId(film.getId())).isEmpty();
+        assertThat(filmService.findById(film.getId()).getLikes())
+                .extracting(UserShortDto::getId, UserShortDto::getMark)
+                .containsExactly(tuple(first.getId(), 8));
+
+        long flushedSegment = filmStorage.findFlushedLikeSegment(JOURNAL);
+        likeWriteBehindBuffer.flush();
+
+        assertThat(filmStorage.findFlushedLikeSegment(JOURNAL)).isGreaterThan(flushedSegment);
+
+        assertThat(userStorage.findByFilmId(film.getId()))
+                .extracting(User::getId, User::getMark)
+                .containsExactly(tuple(first.getId(), 8));
+        assertThat(userService.findFeed(first.getId())).hasSize(2);
+        assertThat(userService.findFeed(second.getId())).hasSize(2);
+    }
+
+    private UserDto createUser(String login) {
+        return userService.create(NewUserRequest.builder()
+                .email(login + "@ya.ru")
+                .login(login)
+                .name(login)
+                .birthday(LocalDate.of(1990, 1, 1))
+                .build());
+    }
+}
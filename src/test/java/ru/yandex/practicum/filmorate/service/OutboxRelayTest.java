@@ -0,0 +1,97 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.config.OutboxProperties;
+import ru.yandex.practicum.filmorate.dal.outbox.OutboxStorage;
+import ru.yandex.practicum.filmorate.dto.film.FilmDto;
+import ru.yandex.practicum.filmorate.dto.film.NewFilmRequest;
+import ru.yandex.practicum.filmorate.dto.user.NewUserRequest;
+import ru.yandex.practicum.filmorate.model.ChangeEvent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Журнал изменений")
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Transactional
+class OutboxRelayTest {
+
+    private final FilmService filmService;
+    private final UserService userService;
+    private final OutboxStorage outboxStorage;
+    private final ObjectProvider<ChangeEventSink> changeEventSinks;
+
+    @DisplayName("Запись изменений, передача потребителю и сжатие")
+    @Test
+    public void outboxTest() {
+        long lastId = outboxStorage.findLastId();
+        FilmDto film = filmService.create(NewFilmRequest.builder()
+                .name("Outbox film")
+                .description("Outbox description")
+                .releaseDate(LocalDate.now().minusYears(5))
+                .duration(120)
+                .build());
+        Long userId = userService.create(NewUserRequest.builder()
+                .email("outbox@ya.ru")
+                .login("outbox")
+                .name("Outbox")
+                .birthday(LocalDate.now().minusYears(30))
+                .build()).getId();
+        filmService.addLike(film.getId(), userId, 7.0);
+        filmService.removeLike(film.getId(), userId);
+        filmService.addLike(film.getId(), userId, null);
+
+        List<ChangeEvent> events = outboxStorage.findAfter(lastId, 100);
+        assertEquals(List.of("FILM ADD", "USER ADD", "LIKE ADD", "LIKE REMOVE", "LIKE ADD"), events.stream()
+                .map(event -> event.getEntityType() + " " + event.getOperationType())
+                .toList());
+        assertEquals(film.getName(), ((JsonNode) events.getFirst().getPayload()).get("name").asText());
+        assertEquals(ChangeEvent.keyOf(film.getId(), userId), events.getLast().getEntityKey());
+
+        // Отдельный экземпляр без фоновой передачи и без ожидания пропусков в идентификаторах
+        OutboxRelay relay = new OutboxRelay(outboxStorage, new OutboxProperties(Duration.ofHours(1), 2,
+                Duration.ZERO, Duration.ofHours(1), false, Path.of("changes.log")), changeEventSinks);
+        try {
+            List<ChangeEvent> received = new ArrayList<>();
+            ChangeEventSink sink = new ChangeEventSink() {
+                @Override
+                public String getName() {
+                    return "outbox-test";
+                }
+
+                @Override
+                public void publish(List<ChangeEvent> batch) {
+                    received.addAll(batch);
+                }
+            };
+            outboxStorage.saveOffset(sink.getName(), lastId);
+            relay.subscribe(sink);
+            assertThrows(IllegalArgumentException.class, () -> relay.subscribe(sink));
+
+            assertEquals(events.size(), relay.relay());
+            assertEquals(events, received);
+            assertEquals(events.getLast().getId(), outboxStorage.findOffset(sink.getName()));
+            assertEquals(0, relay.relay());
+
+            relay.compact();
+            assertEquals(List.of(events.get(0), events.get(1), events.get(4)), outboxStorage.findAfter(lastId, 100));
+        } finally {
+            relay.shutdown();
+        }
+    }
+}
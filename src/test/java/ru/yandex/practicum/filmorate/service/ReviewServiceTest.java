@@ -0,0 +1,188 @@
+package ru.yandex.practicum.filmorate.service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.dto.film.FilmDto;
+import ru.yandex.practicum.filmorate.dto.film.NewFilmRequest;
+import ru.yandex.practicum.filmorate.dto.review.NewReviewRequest;
+import ru.yandex.practicum.filmorate.dto.review.ReviewCursor;
+import ru.yandex.practicum.filmorate.dto.review.ReviewDto;
+import ru.yandex.practicum.filmorate.dto.review.ReviewSummaryDto;
+import ru.yandex.practicum.filmorate.dto.review.UpdateReviewRequest;
+import ru.yandex.practicum.filmorate.dto.user.NewUserRequest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DisplayName("Работа с хранилищем отзывов")
+@SpringBootTest(properties = "filmorate.reviews.search.index-file=target/reviews-index.seg")
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Transactional
+class ReviewServiceTest {
+
+    private final ReviewService reviewService;
+    private final FilmService filmService;
+    private final UserService userService;
+
+    @DisplayName("Рейтинг полезности отзывов")
+    @Test
+    public void usefulTest() {
+        FilmDto film = filmService.create(NewFilmRequest.builder()
+                .name("Film name")
+                .description("Film description")
+                .releaseDate(LocalDate.now().minusYears(5))
+                .duration(120)
+                .build());
+
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            userIds.add(userService.create(NewUserRequest.builder()
+                    .email("review" + i + "@ya.ru")
+                    .login("review" + i)
+                    .name("Review" + i)
+                    .birthday(LocalDate.now().minusYears(20 + i))
+                    .build()).getId());
+        }
+
+        ReviewDto first = createReview(film.getId(), userIds.get(0));
+        ReviewDto second = createReview(film.getId(), userIds.get(1));
+
+        reviewService.addLike(first.getReviewId(), userIds.get(1));
+        reviewService.addLike(first.getReviewId(), userIds.get(2));
+        reviewService.addLike(first.getReviewId(), userIds.get(2));
+        reviewService.addDislike(second.getReviewId(), userIds.get(2));
+        reviewService.addLike(second.getReviewId(), userIds.get(2));
+        reviewService.addLike(second.getReviewId(), userIds.get(0));
+        assertEquals(2, reviewService.findById(first.getReviewId()).getUseful());
+        assertEquals(2, reviewService.findById(second.getReviewId()).getUseful());
+        assertEquals(List.of(first.getReviewId(), second.getReviewId()),
+                reviewService.findByFilmId(film.getId(), 10).stream().map(ReviewDto::getReviewId).toList());
+
+        reviewService.removeLike(first.getReviewId(), userIds.get(1));
+        reviewService.removeDislike(first.getReviewId(), userIds.get(0));
+        assertEquals(1, reviewService.findById(first.getReviewId()).getUseful());
+        assertEquals(List.of(second.getReviewId(), first.getReviewId()),
+                reviewService.findByFilmId(film.getId(), 10).stream().map(ReviewDto::getReviewId).toList());
+
+        userService.deleteUser(userIds.get(2));
+        assertEquals(0, reviewService.findById(first.getReviewId()).getUseful());
+        assertEquals(1, reviewService.findById(second.getReviewId()).getUseful());
+    }
+
+    @DisplayName("Постраничный вывод и сводка отзывов к фильму")
+    @Test
+    public void summaryAndPagingTest() {
+        FilmDto film = filmService.create(NewFilmRequest.builder()
+                .name("Film name")
+                .description("Film description")
+                .releaseDate(LocalDate.now().minusYears(5))
+                .duration(120)
+                .build());
+
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            userIds.add(userService.create(NewUserRequest.builder()
+                    .email("summary" + i + "@ya.ru")
+                    .login("summary" + i)
+                    .name("Summary" + i)
+                    .birthday(LocalDate.now().minusYears(20 + i))
+                    .build()).getId());
+        }
+
+        List<ReviewDto> reviews = new ArrayList<>();
+        for (Long userId : userIds) {
+            reviews.add(createReview(film.getId(), userId));
+        }
+        reviewService.update(UpdateReviewRequest.builder()
+                .reviewId(reviews.get(3).getReviewId())
+                .isPositive(false)
+                .build());
+        reviewService.addLike(reviews.get(1).getReviewId(), userIds.get(0));
+        reviewService.addLike(reviews.get(1).getReviewId(), userIds.get(2));
+        reviewService.addLike(reviews.get(2).getReviewId(), userIds.get(0));
+        reviewService.addDislike(reviews.get(3).getReviewId(), userIds.get(0));
+
+        ReviewSummaryDto summary = reviewService.findSummary(film.getId());
+        assertEquals(3, summary.getPositiveCount());
+        assertEquals(1, summary.getNegativeCount());
+        assertEquals(Map.of(2, 1, 1, 1, 0, 1, -1, 1), summary.getUsefulDistribution());
+
+        List<Long> pages = new ArrayList<>();
+        String cursor = null;
+        do {
+            List<ReviewDto> page = List.copyOf(reviewService.findPage(film.getId(), 3, cursor));
+            page.forEach(review -> pages.add(review.getReviewId()));
+            cursor = page.size() < 3 ? null : ReviewCursor.after(page.getLast()).toString();
+        } while (cursor != null);
+        assertEquals(List.of(reviews.get(1).getReviewId(), reviews.get(2).getReviewId(),
+                reviews.get(0).getReviewId(), reviews.get(3).getReviewId()), pages);
+
+        reviewService.deleteReview(reviews.get(2).getReviewId());
+        userService.deleteUser(userIds.get(0));
+        summary = reviewService.findSummary(film.getId());
+        assertEquals(1, summary.getPositiveCount());
+        assertEquals(1, summary.getNegativeCount());
+        assertEquals(Map.of(1, 1, 0, 1), summary.getUsefulDistribution());
+    }
+
+    @DisplayName("Полнотекстовый поиск по отзывам")
+    @Test
+    public void searchTest() {
+        List<Long> filmIds = new ArrayList<>();
+        for (int i = 1; i <= 2; i++) {
+            filmIds.add(filmService.create(NewFilmRequest.builder()
+                    .name("Film name " + i)
+                    .description("Film description")
+                    .releaseDate(LocalDate.now().minusYears(5))
+                    .duration(120)
+                    .build()).getId());
+        }
+        Long userId = userService.create(NewUserRequest.builder()
+                .email("search@ya.ru")
+                .login("search")
+                .name("Search")
+                .birthday(LocalDate.now().minusYears(20))
+                .build()).getId();
+
+        ReviewDto shortReview = createReview(filmIds.get(0), userId, "Ёлка, Ёлка и снова ёлка!");
+        ReviewDto longReview = createReview(filmIds.get(0), userId,
+                "Длинный отзыв: сюжет, актёры, музыка, операторская работа и одна елка в финале");
+        ReviewDto other = createReview(filmIds.get(1), userId, "Про ёлку здесь ни слова, только сюжет");
+
+        assertEquals(List.of(shortReview.getReviewId(), longReview.getReviewId()),
+                reviewService.search("ЕЛКА", null, 10).stream().map(ReviewDto::getReviewId).toList());
+        assertEquals(List.of(other.getReviewId()),
+                reviewService.search("сюжет", filmIds.get(1), 10).stream().map(ReviewDto::getReviewId).toList());
+
+        reviewService.update(UpdateReviewRequest.builder()
+                .reviewId(shortReview.getReviewId())
+                .content("Теперь про сюжет")
+                .build());
+        reviewService.deleteReview(longReview.getReviewId());
+        assertEquals(List.of(), reviewService.search("ёлка", null, 10));
+        assertEquals(List.of(shortReview.getReviewId(), other.getReviewId()),
+                reviewService.search("сюжет", null, 10).stream().map(ReviewDto::getReviewId).toList());
+    }
+
+    private ReviewDto createReview(Long filmId, Long userId) {
+        return createReview(filmId, userId, "Review content");
+    }
+
+    private ReviewDto createReview(Long filmId, Long userId, String content) {
+        return reviewService.create(NewReviewRequest.builder()
+                .content(content)
+                .isPositive(true)
+                .userId(userId)
+                .filmId(filmId)
+                .build());
+    }
+}
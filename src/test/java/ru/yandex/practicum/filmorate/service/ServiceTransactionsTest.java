@@ -0,0 +1,56 @@
+package ru.yandex.practicum.filmorate.service;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.Set;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import ru.yandex.practicum.filmorate.dal.outbox.OutboxStorage;
+import ru.yandex.practicum.filmorate.dto.director.DirectorDto;
+import ru.yandex.practicum.filmorate.dto.film.NewFilmRequest;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@DisplayName("Транзакции изменений на уровне сервисов")
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class ServiceTransactionsTest {
+
+    private final FilmService filmService;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final OutboxStorage outboxStorage;
+
+    @DisplayName("Ошибка при создании фильма откатывает все его записи")
+    @Test
+    public void createRollbackTest() {
+        // Без транзакции теста транзакция сервиса фиксируется или откатывается сама
+        long lastEventId = outboxStorage.findLastId();
+        Integer filmsCount = countRows("FILMS");
+        NewFilmRequest request = NewFilmRequest.builder()
+                .name("Rollback")
+                .description("Rollback description")
+                .releaseDate(LocalDate.now().minusYears(5))
+                .duration(120)
+                .directors(Set.of(DirectorDto.builder().id(999_999L).build()))
+                .build();
+
+        assertThrows(NotFoundException.class, () -> filmService.create(request));
+
+        assertEquals(filmsCount, countRows("FILMS"));
+        assertEquals(filmsCount, countRows("FILM_STATS"));
+        assertEquals(lastEventId, outboxStorage.findLastId());
+        assertEquals(filmsCount, filmService.findAll(filmsCount + 1, 0).size());
+    }
+
+    private Integer countRows(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Map.of(), Integer.class);
+    }
+}
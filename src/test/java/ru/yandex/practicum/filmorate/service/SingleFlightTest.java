@@ -0,0 +1,71 @@
+package ru.yandex.practicum.filmorate.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.annotation.Transactional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DisplayName("Объединение одинаковых чтений")
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Transactional
+class SingleFlightTest {
+
+    private final SingleFlight singleFlight;
+
+    @DisplayName("Объединение одинаковых одновременных чтений")
+    @Test
+    public void singleFlightTest() throws InterruptedException {
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Map<String, Object> results = new ConcurrentHashMap<>();
+
+        // Потоки без транзакции, поэтому вычисление у них общее
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            String name = "reader-" + i;
+            threads.add(new Thread(() -> results.put(name, singleFlight.execute("test", () -> {
+                computations.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new Object();
+            }, 1L))));
+        }
+        threads.getFirst().start();
+        started.await();
+        threads.stream().skip(1).forEach(Thread::start);
+        for (Thread thread : threads.subList(1, threads.size())) {
+            while (thread.getState() != Thread.State.WAITING) {
+                Thread.onSpinWait();
+            }
+        }
+
+        // Тест выполняется в изменяющей транзакции, поэтому вычисляет отдельно
+        assertEquals("own", singleFlight.execute("test", () -> "own", 1L));
+        release.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1, computations.get());
+        assertEquals(1, results.values().stream().distinct().count());
+        assertEquals(4, results.size());
+    }
+}
@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.service;
 
+import jakarta.validation.ValidationException;
 import java.time.LocalDate;
 import java.util.Collection;
 import lombok.RequiredArgsConstructor;
@@ -9,6 +10,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.dto.user.UserDto;
 import ru.yandex.practicum.filmorate.mapper.UserMapper;
@@ -16,6 +18,8 @@ import ru.yandex.practicum.filmorate.mapper.UserMapper;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @DisplayName("Работа с хранилищем пользователей")
 @SpringBootTest
@@ -98,6 +102,22 @@ public class UserServiceTest {
         assertNotEquals(beforeDelete.size(), afterDelete.size());
     }
 
+    @DisplayName("Удаление пользователя, находящегося в друзьях")
+    @Test
+    public void deleteUserWithFollowersTest() {
+        UserDto first = userService.create(UserMapper.mapToNewUserRequest(user1));
+        UserDto second = userService.create(UserMapper.mapToNewUserRequest(user2));
+        userService.addFriend(second.getId(), first.getId());
+        userService.addFriend(first.getId(), second.getId());
+
+        userService.deleteUser(first.getId());
+
+        assertTrue(userService.findFriends(second.getId()).isEmpty());
+        assertTrue(userService.findFeed(second.getId()).stream()
+                .anyMatch(feed -> feed.getEntityId().equals(first.getId())
+                        && feed.getOperation().equals("REMOVE")));
+    }
+
     @DisplayName("Операции с дружбой пользователей")
     @Test
     public void friendshipTest() {
@@ -126,4 +146,49 @@ public class UserServiceTest {
 
         assertNotEquals(friendsBeforeDelete, friendsAfterDelete);
     }
+
+    @DisplayName("Рекомендации друзей по общим друзьям")
+    @Test
+    public void friendSuggestionsTest() {
+        UserDto first = userService.create(UserMapper.mapToNewUserRequest(user1));
+        UserDto second = userService.create(UserMapper.mapToNewUserRequest(user2));
+        UserDto third = userService.create(UserMapper.mapToNewUserRequest(user3));
+
+        userService.addFriend(first.getId(), second.getId());
+        userService.addFriend(second.getId(), third.getId());
+
+        Collection<UserDto> suggestions = userService.findFriendSuggestions(first.getId(), 10, false);
+        assertEquals(1, suggestions.size());
+        assertEquals(third.getId(), suggestions.iterator().next().getId());
+
+        userService.addFriend(first.getId(), third.getId());
+        assertTrue(userService.findFriendSuggestions(first.getId(), 10, true).isEmpty());
+    }
+
+    @DisplayName("Нарушение ограничений при записи")
+    @Test
+    public void constraintViolationTest() {
+        UserDto first = userService.create(UserMapper.mapToNewUserRequest(user1));
+
+        User sameEmail = User.builder()
+                .email(user1.getEmail().toUpperCase())
+                .login(user2.getLogin())
+                .name(user2.getName())
+                .birthday(user2.getBirthday())
+                .build();
+        assertThrows(ValidationException.class,
+                () -> userService.create(UserMapper.mapToNewUserRequest(sameEmail)));
+
+        User sameLogin = User.builder()
+                .email(user2.getEmail())
+                .login(user1.getLogin().toUpperCase())
+                .name(user2.getName())
+                .birthday(user2.getBirthday())
+                .build();
+        assertThrows(ValidationException.class,
+                () -> userService.create(UserMapper.mapToNewUserRequest(sameLogin)));
+
+        assertThrows(NotFoundException.class, () -> userService.addFriend(first.getId(), first.getId() + 1000));
+        assertThrows(NotFoundException.class, () -> userService.removeFriend(first.getId(), first.getId() + 1000));
+    }
 }
@@ -0,0 +1,92 @@
+package ru.yandex.practicum.filmorate.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.dal.JdbcOffloadExecutor;
+import ru.yandex.practicum.filmorate.dto.film.FilmDto;
+import ru.yandex.practicum.filmorate.dto.film.NewFilmRequest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DisplayName("Работа на виртуальных потоках")
+@SpringBootTest(properties = "spring.threads.virtual.enabled=true")
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+class VirtualThreadsTest {
+
+    private final FilmService filmService;
+    private final JdbcOffloadExecutor jdbcOffloadExecutor;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @DisplayName("JDBC-вызовы вне транзакции выполняются на платформенных потоках")
+    @Test
+    public void jdbcOffloadTest() throws InterruptedException {
+        Map<String, Object> results = new ConcurrentHashMap<>();
+
+        Thread.ofVirtual().start(() -> {
+            results.put("outside", jdbcOffloadExecutor.call(VirtualThreadsTest::describeThread));
+            // Соединение транзакции привязано к потоку, поэтому вызов остаётся в нём
+            results.put("inside", transactionTemplate.execute(status ->
+                    jdbcOffloadExecutor.call(VirtualThreadsTest::describeThread)));
+            results.put("film", filmService.create(NewFilmRequest.builder()
+                    .name("Film name")
+                    .description("Film description")
+                    .releaseDate(LocalDate.now().minusYears(5))
+                    .duration(120)
+                    .build()));
+        }).join();
+
+        assertThat((String) results.get("outside")).startsWith("jdbc-").endsWith(":platform");
+        assertThat((String) results.get("inside")).endsWith(":virtual");
+        FilmDto film = (FilmDto) results.get("film");
+        assertEquals(film.getName(), filmService.findById(film.getId()).getName());
+    }
+
+    @DisplayName("Закрепление виртуального потока попадает в метрики")
+    @Test
+    public void pinningMetricsTest() throws InterruptedException {
+        Counter pinned = meterRegistry.get("filmorate.virtual.pinned").tag("source", "other").counter();
+        double before = pinned.count();
+
+        // Ожидание внутри synchronized закрепляет виртуальный поток за несущим дольше порога в 20 мс
+        Object monitor = new Object();
+        Thread.ofVirtual().start(() -> {
+            synchronized (monitor) {
+                try {
+                    Thread.sleep(Duration.ofMillis(100));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }).join();
+
+        // События JFR доставляются с задержкой
+        long deadline = System.nanoTime() + Duration.ofSeconds(30).toNanos();
+        while (pinned.count() == before && System.nanoTime() < deadline) {
+            Thread.sleep(100);
+        }
+        assertTrue(pinned.count() > before);
+        assertTrue(meterRegistry.get("filmorate.virtual.pinned.duration").tag("source", "other").timer()
+                .totalTime(TimeUnit.MILLISECONDS) >= 20);
+    }
+
+    private static String describeThread() {
+        Thread thread = Thread.currentThread();
+        return thread.getName() + (thread.isVirtual() ? ":virtual" : ":platform");
+    }
+}
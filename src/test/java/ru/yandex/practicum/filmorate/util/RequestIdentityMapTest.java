@@ -0,0 +1,70 @@
+package ru.yandex.practicum.filmorate.util;
+
+import java.time.LocalDate;
+import java.util.Map;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import ru.yandex.practicum.filmorate.dal.film.FilmStorage;
+import ru.yandex.practicum.filmorate.dto.film.NewFilmRequest;
+import ru.yandex.practicum.filmorate.mapper.FilmMapper;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.FilmService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+@DisplayName("Карта сущностей запроса")
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@Transactional
+class RequestIdentityMapTest {
+
+    private final FilmService filmService;
+    private final FilmStorage filmStorage;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    @DisplayName("Повторный поиск сущностей в одном запросе")
+    @Test
+    public void requestIdentityMapTest() {
+        Film created = FilmMapper.mapToFilm(filmService.create(NewFilmRequest.builder()
+                .name("Film name")
+                .description("Film description")
+                .releaseDate(LocalDate.now().minusYears(5))
+                .duration(120)
+                .build()));
+        Long filmId = created.getId();
+
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+        try {
+            Film loaded = filmStorage.findById(filmId).orElseThrow();
+            assertSame(loaded, filmStorage.findById(filmId).orElseThrow());
+
+            // Запись фильма убирает его из карты запроса
+            created.setName("Film updated");
+            filmService.update(FilmMapper.mapToUpdateFilmRequest(created));
+            Film updated = filmStorage.findById(filmId).orElseThrow();
+            assertNotSame(loaded, updated);
+            assertEquals("Film updated", updated.getName());
+
+            // Изменение в обход хранилища не видно до конца запроса: повторного чтения не было
+            jdbcTemplate.update("UPDATE FILMS SET FULL_NAME = 'Direct' WHERE ID = :filmId", Map.of("filmId", filmId));
+            assertSame(updated, filmStorage.findById(filmId).orElseThrow());
+        } finally {
+            RequestContextHolder.resetRequestAttributes();
+        }
+
+        assertEquals("Direct", filmStorage.findById(filmId).orElseThrow().getName());
+        assertNotSame(filmStorage.findById(filmId).orElseThrow(), filmStorage.findById(filmId).orElseThrow());
+    }
+}